@@ -0,0 +1,98 @@
+package org.telegrise.telegrise.processing;
+
+import javax.annotation.processing.*;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Records classes annotated with TelegRise annotations that are discovered at runtime
+ * (handlers, tree controllers, static reference holders and transcription elements)
+ * into index resources, so that the application doesn't have to scan the classpath at startup.
+ * <p>
+ * Each annotation gets the resource {@value #INDEX_DIRECTORY}<code>&lt;annotation name&gt;</code>,
+ * which lists binary names of the annotated classes, one per line.
+ * Lists are merged with the ones produced by previous compilations of the same module,
+ * classes that no longer exist are skipped at runtime.
+ * Every annotation gets its resource, even if no classes are annotated with it,
+ * so that the runtime knows the module is indexed and doesn't scan it.
+ * For the same reason the processor is called for all sources, but never claims their annotations.
+ * <p>
+ * The processor is used if this artifact is on the annotation processor path (or the classpath) of the application.
+ *
+ * @since 1.0
+ */
+@SupportedAnnotationTypes("*")
+public class IndexProcessor extends AbstractProcessor {
+    public static final String INDEX_DIRECTORY = "META-INF/telegrise/index/";
+
+    static final String HANDLER = "org.telegrise.telegrise.annotations.Handler";
+    static final String TREE_CONTROLLER = "org.telegrise.telegrise.annotations.TreeController";
+    static final String STATIC_REFERENCE_HOLDER = "org.telegrise.telegrise.annotations.StaticReferenceHolder";
+    static final String ELEMENT = "org.telegrise.telegrise.core.parser.Element";
+    static final List<String> INDEXED_ANNOTATIONS = List.of(HANDLER, TREE_CONTROLLER, STATIC_REFERENCE_HOLDER, ELEMENT);
+
+    private final Map<String, Set<String>> indexed = new TreeMap<>();
+
+    public IndexProcessor() {
+        INDEXED_ANNOTATIONS.forEach(a -> this.indexed.put(a, new TreeSet<>()));
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (TypeElement annotation : annotations) {
+            Set<String> classes = this.indexed.get(annotation.getQualifiedName().toString());
+            if (classes == null) continue;
+
+            for (Element element : roundEnv.getElementsAnnotatedWith(annotation))
+                if (element instanceof TypeElement type)
+                    classes.add(this.processingEnv.getElementUtils().getBinaryName(type).toString());
+        }
+
+        if (roundEnv.processingOver())
+            this.indexed.forEach(this::write);
+
+        return false;
+    }
+
+    private void write(String annotation, Set<String> classes) {
+        String resource = INDEX_DIRECTORY + annotation;
+        Set<String> merged = new TreeSet<>(classes);
+        merged.addAll(this.readExisting(resource));
+
+        try {
+            FileObject file = this.processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", resource);
+            try (Writer writer = new BufferedWriter(new OutputStreamWriter(file.openOutputStream(), StandardCharsets.UTF_8))) {
+                for (String name : merged)
+                    writer.write(name + "\n");
+            }
+        } catch (IOException e) {
+            this.processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Unable to write TelegRise index '" + resource + "': " + e);
+        }
+    }
+
+    private Set<String> readExisting(String resource) {
+        Set<String> result = new TreeSet<>();
+        try {
+            FileObject file = this.processingEnv.getFiler().getResource(StandardLocation.CLASS_OUTPUT, "", resource);
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(file.openInputStream(), StandardCharsets.UTF_8))) {
+                reader.lines().map(String::strip).filter(s -> !s.isEmpty()).forEach(result::add);
+            }
+        } catch (IOException | IllegalArgumentException ignored) {
+            // No index was produced by previous compilations
+        }
+
+        return result;
+    }
+}
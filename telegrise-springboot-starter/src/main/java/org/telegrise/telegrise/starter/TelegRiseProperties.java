@@ -7,4 +7,5 @@ import org.springframework.boot.context.properties.ConfigurationProperties;
 @ConfigurationProperties(prefix = "telegrise")
 public class TelegRiseProperties {
     private String transcription;
+    private boolean watchTranscription;
 }
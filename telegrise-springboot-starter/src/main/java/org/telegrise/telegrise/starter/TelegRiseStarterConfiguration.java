@@ -19,6 +19,7 @@ import org.telegrise.telegrise.core.ResourceInjector;
 import org.telegrise.telegrise.core.utils.ReflectionUtils;
 import org.telegrise.telegrise.exceptions.TelegRiseRuntimeException;
 import org.telegrise.telegrise.senders.BotSender;
+import org.telegrise.telegrise.storage.ValueCodec;
 import org.telegrise.telegrise.types.BotUser;
 
 import java.io.File;
@@ -36,6 +37,9 @@ public class TelegRiseStarterConfiguration {
                     " to the application properties with a valid path to the transcription file.");
 
         var app = new TelegRiseApplication(new File(transcription), this.getApplicationClass(context));
+        app.setWatchTranscription(context.getEnvironment().getProperty("telegrise.watchTranscription", Boolean.class, false));
+        // Client is created during preloading, so the policy can't wait for the runner
+        context.getBeanProvider(RateLimitPolicy.class).ifAvailable(app::setRateLimitPolicy);
 
         ResourceInjector.setInstanceInitializer(context::getBean);
         ReflectionUtils.setClassGetter(AopProxyUtils::ultimateTargetClass);
@@ -53,8 +57,11 @@ public class TelegRiseStarterConfiguration {
     @Bean
     public ApplicationRunner telegRiseRunner(TelegRiseApplication app, GenericApplicationContext context){
         context.getBeansOfType(Service.class).values().forEach(app::addService);
+        context.getBeansOfType(ValueCodec.class).values().forEach(app::addSessionValueCodec);
         context.getBeansOfType(SessionInitializer.class).values().stream().findFirst().ifPresent(app::setSessionInitializer);
         context.getBeansOfType(RoleProvider.class).values().stream().findFirst().ifPresent(app::setRoleProvider);
+        context.getBeansOfType(SessionEvictionPolicy.class).values().stream().findFirst().ifPresent(app::setSessionEvictionPolicy);
+        context.getBeansOfType(SessionStore.class).values().stream().findFirst().ifPresent(app::setSessionStore);
         context.getBeansOfType(TelegRiseExecutorService.class).values().stream().findFirst()
                 .ifPresent(e -> app.setExecutorService(() -> e));
 
@@ -40,8 +40,11 @@ public class WebhookApplicationRunner implements ApplicationRunner{
             var context = new ServletContextHandler();
             var holder = new ServletHolder(new WebhookServlet(
                     consumer, executor,
-                    GeneratedValue.generate(webhook.getSecretToken(), pool)
+                    GeneratedValue.generate(webhook.getSecretToken(), pool),
+                    GeneratedValue.generate(webhook.getReplyTimeout(), pool),
+                    webhook.getMaxBodySize().generate(pool)
             ));
+            holder.setAsyncSupported(true);
             context.addServlet(holder, "/");
 
             connector.setPort(webhook.getPort().generate(pool));
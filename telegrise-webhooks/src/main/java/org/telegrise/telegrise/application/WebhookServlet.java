@@ -1,6 +1,10 @@
 package org.telegrise.telegrise.application;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.util.JsonRecyclerPools;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import jakarta.servlet.AsyncContext;
 import jakarta.servlet.http.HttpServlet;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
@@ -10,11 +14,13 @@ import org.slf4j.LoggerFactory;
 import org.telegram.telegrambots.meta.api.objects.Update;
 import org.telegrise.telegrise.core.TelegramSessionsController;
 
-import java.io.BufferedReader;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.Serial;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
 /**
@@ -22,6 +28,9 @@ import java.util.function.Consumer;
  * ({@link Executors#newVirtualThreadPerTaskExecutor()} by default).
  * Instance of this class is meant to be used as a wrapper for {@link TelegramSessionsController TelegramSessionController}
  * that provides a concurrent execution (based on {@code executor}) and can be served by Jetty.
+ * <p>
+ * If {@code replyTimeout} is specified, requests are suspended until their updates are handled
+ * in order to send a captured method as the response, see {@link WebhookReply}.
  *
  * @see ApplicationRunner
  * @since 0.10
@@ -32,15 +41,24 @@ class WebhookServlet extends HttpServlet {
     private static final String SECRET_TOKEN_HEADER = "X-Telegram-Bot-Api-Secret-Token";
     private static final Logger log = LoggerFactory.getLogger(WebhookServlet.class);
 
-    private final ObjectMapper mapper = new ObjectMapper();
+    // Buffers are shared between threads, since the default thread-local pool is of no use for virtual threads
+    private static final ObjectMapper MAPPER = new ObjectMapper(
+            JsonFactory.builder().recyclerPool(JsonRecyclerPools.sharedConcurrentDequePool()).build());
+    private static final ObjectReader UPDATE_READER = MAPPER.readerFor(Update.class);
+
     private final Consumer<Update> updateConsumer;
     private final ExecutorService executor;
     private final String secretToken;
+    private final Integer replyTimeout;
+    private final int maxBodySize;
 
-    WebhookServlet(Consumer<Update> updateConsumer, @Nullable ExecutorService executor, String secretToken) {
+    WebhookServlet(Consumer<Update> updateConsumer, @Nullable ExecutorService executor, String secretToken,
+                   @Nullable Integer replyTimeout, int maxBodySize) {
         this.updateConsumer = updateConsumer;
         this.executor = executor == null ? Executors.newVirtualThreadPerTaskExecutor() : executor;
         this.secretToken = secretToken;
+        this.replyTimeout = replyTimeout;
+        this.maxBodySize = maxBodySize;
     }
 
     @Override
@@ -53,30 +71,116 @@ class WebhookServlet extends HttpServlet {
             return;
         }
 
-        final StringBuilder bodyString = new StringBuilder();
-        String line;
-        BufferedReader reader = req.getReader();
-        while ((line = reader.readLine()) != null) {
-            bodyString.append(line);
+        Update update = this.readUpdate(req, resp);
+        if (update == null) return;
+        log.trace("'{}' request received from address '{}'", req.getMethod(), req.getRemoteAddr());
+
+        if (replyTimeout != null) {
+            this.reply(req, resp, update);
+            return;
         }
 
+        executor.submit(() -> updateConsumer.accept(update));
+        resp.setStatus(HttpServletResponse.SC_OK);
+    }
+
+    /**
+     * Decodes the update right from the request body, rejecting bodies larger than {@code maxBodySize}.
+     */
+    private @Nullable Update readUpdate(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        if (req.getContentLengthLong() > maxBodySize) {
+            log.warn("Webhook server encountered request of {} bytes from {}, which exceeds the limit of {} bytes",
+                    req.getContentLengthLong(), req.getRemoteAddr(), maxBodySize);
+            resp.setStatus(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+            return null;
+        }
+
+        LimitedInputStream body = new LimitedInputStream(req.getInputStream(), maxBodySize);
+        try {
+            return UPDATE_READER.readValue(body);
+        } catch (IOException e) {
+            if (body.isExceeded()) {
+                log.warn("Webhook server encountered request body from {} that exceeds the limit of {} bytes", req.getRemoteAddr(), maxBodySize);
+                resp.setStatus(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+            } else {
+                log.error("Unable to convert request body to Update object", e);
+                resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            }
+
+            return null;
+        }
+    }
+
+    /**
+     * Suspends the request until the update is handled, sending the method captured by {@link WebhookReply}, if any,
+     * as the response.
+     */
+    private void reply(HttpServletRequest req, HttpServletResponse resp, Update update) {
+        AsyncContext context = req.startAsync();
+        context.setTimeout(0);    // Bounded by the reply timeout
+        WebhookReply reply = WebhookReply.expect(update);
+
+        reply.await(replyTimeout, TimeUnit.MILLISECONDS).whenComplete((method, e) -> {
+            try {
+                resp.setStatus(HttpServletResponse.SC_OK);
+                if (method != null) {
+                    resp.setContentType("application/json");
+                    resp.setCharacterEncoding("UTF-8");
+                    MAPPER.writeValue(resp.getOutputStream(), method);
+                }
+            } catch (IOException ex) {
+                log.error("Unable to send a webhook reply", ex);
+            } finally {
+                context.complete();
+            }
+        });
+
         executor.submit(() -> {
-            /*TODO HUGE (MAYBE) PERFORMANCE IMPROVEMENT POSSIBILITY
-                We can leverage webhook's ability to return bot method as an answer to the request.
-                Currently, webhooks bots behave as longpolling bots in this regard, making it less efficient.
-                It is possible to capture the first BotApiMethod sent to BotSender to execute and pass it here,
-                and execute others normally. However, this is really tricky and bug-prone to do.
-                I am not sure if this even worth it.
-            */
             try {
-                updateConsumer.accept(mapper.readValue(bodyString.toString(), Update.class));
-            } catch (IOException e) {
-                log.error("Unable to convert request body to Update object", e);
+                updateConsumer.accept(update);
             } finally {
-                log.trace("'{}' request received from address '{}'", req.getMethod(), req.getRemoteAddr());
+                // Updates that weren't taken by a session right away are not waited for
+                reply.cancel();
             }
         });
+    }
 
-        resp.setStatus(HttpServletResponse.SC_OK);
+    /**
+     * Fails reading once more than {@code limit} bytes are read, for bodies without a content length.
+     */
+    private static final class LimitedInputStream extends FilterInputStream {
+        private long remaining;
+        private boolean exceeded;
+
+        LimitedInputStream(InputStream in, long limit) {
+            super(in);
+            this.remaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) this.consume(1);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) this.consume(read);
+            return read;
+        }
+
+        private void consume(int count) throws IOException {
+            this.remaining -= count;
+            if (this.remaining < 0) {
+                this.exceeded = true;
+                throw new IOException("Request body exceeds the size limit");
+            }
+        }
+
+        boolean isExceeded() {
+            return this.exceeded;
+        }
     }
 }
@@ -0,0 +1,192 @@
+package org.telegrise.telegrise.application;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.eclipse.jetty.ee10.servlet.ServletContextHandler;
+import org.eclipse.jetty.ee10.servlet.ServletHolder;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestReporter;
+import org.telegram.telegrambots.meta.api.methods.AnswerCallbackQuery;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.io.ByteArrayInputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WebhookServletTest {
+    private static final String UPDATE = """
+            {
+              "update_id": %d,
+              "message": {
+                "message_id": 1,
+                "date": 1700000000,
+                "chat": {"id": 1, "type": "private"},
+                "from": {"id": 1, "is_bot": false, "first_name": "Name"},
+                "text": "multi\\nline text"
+              }
+            }""";
+
+    private Server server;
+    private URI uri;
+    private final HttpClient client = HttpClient.newBuilder().executor(Executors.newVirtualThreadPerTaskExecutor()).build();
+
+    private void start(Consumer<Update> consumer, int maxBodySize) throws Exception {
+        this.start(consumer, maxBodySize, null);
+    }
+
+    private void start(Consumer<Update> consumer, int maxBodySize, Integer replyTimeout) throws Exception {
+        this.server = new Server();
+        ServerConnector connector = new ServerConnector(this.server);
+        connector.setPort(0);
+        this.server.addConnector(connector);
+
+        var context = new ServletContextHandler();
+        var holder = new ServletHolder(new WebhookServlet(consumer, null, null, replyTimeout, maxBodySize));
+        holder.setAsyncSupported(true);
+        context.addServlet(holder, "/");
+        this.server.setHandler(context);
+        this.server.start();
+
+        this.uri = URI.create("http://localhost:" + connector.getLocalPort() + "/");
+    }
+
+    @AfterEach
+    void after() throws Exception {
+        this.server.stop();
+    }
+
+    private HttpRequest request(String body) {
+        return HttpRequest.newBuilder(this.uri).POST(HttpRequest.BodyPublishers.ofString(body))
+                .header("Content-Type", "application/json").build();
+    }
+
+    @Test
+    void decodeUpdate() throws Exception {
+        BlockingQueue<Update> updates = new LinkedBlockingQueue<>();
+        this.start(updates::add, 1 << 20);
+
+        assertEquals(200, this.client.send(this.request(UPDATE.formatted(7)), HttpResponse.BodyHandlers.discarding()).statusCode());
+
+        Update update = updates.poll(5, TimeUnit.SECONDS);
+        assertNotNull(update);
+        assertEquals(7, update.getUpdateId());
+        // Body is no longer read line by line, so line breaks are preserved
+        assertEquals("multi\nline text", update.getMessage().getText());
+    }
+
+    @Test
+    void rejectInvalidBodies() throws Exception {
+        BlockingQueue<Update> updates = new LinkedBlockingQueue<>();
+        this.start(updates::add, 256);
+
+        assertEquals(413, this.client.send(this.request(UPDATE.formatted(1) + " ".repeat(256)), HttpResponse.BodyHandlers.discarding()).statusCode());
+
+        // Body of unknown length is limited while being read
+        HttpRequest chunked = HttpRequest.newBuilder(this.uri)
+                .POST(HttpRequest.BodyPublishers.ofInputStream(() -> new ByteArrayInputStream((UPDATE.formatted(2) + " ".repeat(256)).getBytes())))
+                .build();
+        assertEquals(413, this.client.send(chunked, HttpResponse.BodyHandlers.discarding()).statusCode());
+
+        assertEquals(400, this.client.send(this.request("{\"update_id\": "), HttpResponse.BodyHandlers.discarding()).statusCode());
+        assertNull(updates.poll(200, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void replyWithMethod() throws Exception {
+        this.start(update -> {
+            WebhookReply.bind(update);
+            try {
+                assertTrue(WebhookReply.offer(AnswerCallbackQuery.builder().callbackQueryId("query").build()));
+            } finally {
+                WebhookReply.release();
+            }
+        }, 1 << 20, 5_000);
+
+        HttpResponse<String> response = this.client.send(this.request(UPDATE.formatted(1)), HttpResponse.BodyHandlers.ofString());
+        assertEquals(200, response.statusCode());
+        // Bot API method names are case-insensitive, and the library writes them in lower case
+        JsonNode body = new ObjectMapper().readTree(response.body());
+        assertTrue("answerCallbackQuery".equalsIgnoreCase(body.path("method").asText()), response.body());
+        assertEquals("query", body.path("callback_query_id").asText());
+    }
+
+    @Test
+    void replyAfterTimeout() throws Exception {
+        CountDownLatch responded = new CountDownLatch(1);
+        CompletableFuture<Boolean> offered = new CompletableFuture<>();
+        this.start(update -> {
+            WebhookReply.bind(update);
+            try {
+                // The method is offered after the webhook request has been answered
+                responded.await(5, TimeUnit.SECONDS);
+                offered.complete(WebhookReply.offer(AnswerCallbackQuery.builder().callbackQueryId("query").build()));
+            } catch (InterruptedException e) {
+                offered.completeExceptionally(e);
+            } finally {
+                WebhookReply.release();
+            }
+        }, 1 << 20, 100);
+
+        HttpResponse<String> response = this.client.send(this.request(UPDATE.formatted(2)), HttpResponse.BodyHandlers.ofString());
+        responded.countDown();
+        assertEquals(200, response.statusCode());
+        assertEquals("", response.body());
+        // The method is left to be executed by the sender
+        assertFalse(offered.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void concurrentRequests() throws Exception {
+        this.sendConcurrently(0, 200, 16);
+    }
+
+    @Test
+    @Tag("benchmark")
+    void throughput(TestReporter reporter) throws Exception {
+        final int requests = 5_000, concurrency = 64;
+        long elapsed = this.sendConcurrently(500, requests, concurrency);
+
+        reporter.publishEntry("throughput", "%d updates with %d concurrent requests in %d ms (%.0f updates/s)".formatted(
+                requests, concurrency, TimeUnit.NANOSECONDS.toMillis(elapsed), requests / (elapsed / 1e9)));
+    }
+
+    private long sendConcurrently(int warmup, int requests, int concurrency) throws Exception {
+        CountDownLatch received = new CountDownLatch(warmup + requests);
+        this.start(u -> received.countDown(), 1 << 20);
+
+        // Warm up the server and the connection pool
+        for (int i = 0; i < warmup; i++)
+            this.client.send(this.request(UPDATE.formatted(i)), HttpResponse.BodyHandlers.discarding());
+
+        Semaphore permits = new Semaphore(concurrency);
+        ConcurrentLinkedQueue<Integer> failures = new ConcurrentLinkedQueue<>();
+        long start = System.nanoTime();
+        for (int i = 0; i < requests; i++) {
+            permits.acquire();
+            this.client.sendAsync(this.request(UPDATE.formatted(i)), HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((r, e) -> {
+                        if (e != null || r.statusCode() != 200) failures.add(e != null ? -1 : r.statusCode());
+                        permits.release();
+                    });
+        }
+
+        // All responses are received and all updates are passed on
+        assertTrue(permits.tryAcquire(concurrency, 60, TimeUnit.SECONDS));
+        assertTrue(received.await(60, TimeUnit.SECONDS));
+        long elapsed = System.nanoTime() - start;
+        assertEquals(List.of(), List.copyOf(failures));
+
+        return elapsed;
+    }
+}
@@ -0,0 +1,56 @@
+package org.telegrise.telegrise;
+
+/**
+ * Describes how fast the application sends requests to the Bot API, so that Telegram doesn't reject them
+ * with {@code 429 Too Many Requests}.
+ * <p>
+ * Messages are limited per chat and globally, messages to groups and channels are also limited per minute;
+ * private chats allow a short burst over the chat limit.
+ * Other requests, such as editing messages, aren't limited, but requests of the same chat
+ * are sent in the order they were made, one after another.
+ * Threads that make requests wait until the limits allow them to be sent,
+ * so sessions that send too much are slowed down instead of being rejected.
+ * If Telegram still responds with {@code 429}, the request is retried after the time specified by {@code retry_after}.
+ * <pre>
+ * {@code
+ * application.setRateLimitPolicy(RateLimitPolicy.DEFAULT.withMaxRetries(5));
+ * }
+ * </pre>
+ *
+ * @param globalPerSecond maximum number of messages to all chats per second
+ * @param chatPerSecond maximum number of messages to a single chat per second
+ * @param groupPerMinute maximum number of messages to a single group or channel per minute
+ * @param maxRetries number of times a request is retried after {@code 429} responses
+ * @see <a href="https://core.telegram.org/bots/faq#my-bot-is-hitting-limits-how-do-i-avoid-this">Telegram limits</a>
+ * @since 1.0
+ */
+public record RateLimitPolicy(double globalPerSecond, double chatPerSecond, double groupPerMinute, int maxRetries) {
+    /**
+     * Limits that are documented by Telegram: 30 messages per second, 1 message per second to a chat
+     * and 20 messages per minute to a group.
+     */
+    public static final RateLimitPolicy DEFAULT = new RateLimitPolicy(30, 1, 20, 3);
+
+    public RateLimitPolicy {
+        if (globalPerSecond <= 0 || chatPerSecond <= 0 || groupPerMinute <= 0)
+            throw new IllegalArgumentException("Rate limits must be positive");
+        if (maxRetries < 0)
+            throw new IllegalArgumentException("Number of retries can't be negative");
+    }
+
+    public RateLimitPolicy withGlobalPerSecond(double globalPerSecond) {
+        return new RateLimitPolicy(globalPerSecond, chatPerSecond, groupPerMinute, maxRetries);
+    }
+
+    public RateLimitPolicy withChatPerSecond(double chatPerSecond) {
+        return new RateLimitPolicy(globalPerSecond, chatPerSecond, groupPerMinute, maxRetries);
+    }
+
+    public RateLimitPolicy withGroupPerMinute(double groupPerMinute) {
+        return new RateLimitPolicy(globalPerSecond, chatPerSecond, groupPerMinute, maxRetries);
+    }
+
+    public RateLimitPolicy withMaxRetries(int maxRetries) {
+        return new RateLimitPolicy(globalPerSecond, chatPerSecond, groupPerMinute, maxRetries);
+    }
+}
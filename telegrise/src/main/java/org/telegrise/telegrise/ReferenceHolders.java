@@ -6,6 +6,7 @@ import org.telegrise.telegrise.annotations.StaticReferenceHolder;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * This class statically stores instances of all classes that have been annotated with {@link StaticReferenceHolder} annotation.
@@ -24,6 +25,11 @@ public class ReferenceHolders {
         return tClass.cast(holders.get(tClass.getName()));
     }
 
+    @ApiStatus.Internal
+    public static Set<String> getHolderClassNames(){
+        return Set.copyOf(holders.keySet());
+    }
+
     @ApiStatus.Internal
     public static void add(Class<?> clazz, Object holder){
         holders.put(clazz.getName(), holder);
@@ -0,0 +1,97 @@
+package org.telegrise.telegrise;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.time.Duration;
+
+/**
+ * Describes when sessions are evicted from the memory of the application.
+ * <p>
+ * By default, sessions live for as long as the application does.
+ * With an eviction policy, a session is evicted if it was idle for longer than {@code idleTimeout},
+ * or if the number of sessions or their estimated retained size exceeds the limits.
+ * In the latter case, victims are chosen by the {@link Algorithm algorithm} of the policy.
+ * Sessions that are processing updates are never evicted.
+ * <p>
+ * Evicted sessions are removed from memory and all {@link SessionsManager#registerSessionDestructionCallback destruction callbacks}
+ * are executed for them. What happens next depends on whether a {@link SessionStore} is used:
+ * <ul>
+ *     <li>Without a session store, eviction is equivalent to {@link SessionsManager#killSession(SessionIdentifier) killing}
+ *     the session: its state is lost, and the next update from the same user creates a new session.</li>
+ *     <li>With a session store, the state of the evicted session is written to the store,
+ *     and the next update from the same user restores the session from it.
+ *     Destruction callbacks are still executed on eviction, so they are also called for sessions that come back later;
+ *     callbacks that release resources of a session for good should be used together with a store only if
+ *     the resources can be recreated when the session is restored.</li>
+ * </ul>
+ * <pre>
+ * {@code
+ * application.setSessionEvictionPolicy(SessionEvictionPolicy.lru()
+ *         .withIdleTimeout(Duration.ofHours(12))
+ *         .withMaxSessions(500_000));
+ * }
+ * </pre>
+ *
+ * @param idleTimeout sessions that haven't received updates for this duration are evicted; null means no timeout
+ * @param maxSessions maximum number of sessions; zero or less means no limit
+ * @param maxRetainedSize maximum estimated size of all sessions in bytes; zero or less means no limit
+ * @param algorithm algorithm that chooses which sessions to evict when limits are exceeded
+ * @see SessionsManager#estimateRetainedSize(SessionIdentifier)
+ * @since 1.0
+ */
+public record SessionEvictionPolicy(@Nullable Duration idleTimeout, int maxSessions, long maxRetainedSize, Algorithm algorithm) {
+    /**
+     * Policy that never evicts sessions.
+     */
+    public static final SessionEvictionPolicy NONE = new SessionEvictionPolicy(null, 0, 0, Algorithm.LRU);
+
+    /**
+     * @return unbounded policy that evicts the least recently used sessions when limits are set
+     */
+    public static SessionEvictionPolicy lru() {
+        return NONE;
+    }
+
+    /**
+     * @return unbounded policy that evicts sessions using W-TinyLFU algorithm when limits are set
+     */
+    public static SessionEvictionPolicy tinyLfu() {
+        return new SessionEvictionPolicy(null, 0, 0, Algorithm.W_TINY_LFU);
+    }
+
+    public SessionEvictionPolicy withIdleTimeout(@Nullable Duration idleTimeout) {
+        return new SessionEvictionPolicy(idleTimeout, maxSessions, maxRetainedSize, algorithm);
+    }
+
+    public SessionEvictionPolicy withMaxSessions(int maxSessions) {
+        return new SessionEvictionPolicy(idleTimeout, maxSessions, maxRetainedSize, algorithm);
+    }
+
+    public SessionEvictionPolicy withMaxRetainedSize(long bytes) {
+        return new SessionEvictionPolicy(idleTimeout, maxSessions, bytes, algorithm);
+    }
+
+    /**
+     * @return true if this policy can evict any session
+     */
+    public boolean isBounded() {
+        return idleTimeout != null || maxSessions > 0 || maxRetainedSize > 0;
+    }
+
+    /**
+     * Algorithms that choose victims when the limits of sessions are exceeded.
+     */
+    public enum Algorithm {
+        /**
+         * Evicts sessions that received updates least recently.
+         */
+        LRU,
+        /**
+         * Evicts sessions of the least frequent users, estimating frequencies with a decaying sketch
+         * that remembers users even after their sessions are evicted.
+         * The most recently active sessions form an admission window and are evicted only as a last resort,
+         * so new users are not evicted right after their first update.
+         */
+        W_TINY_LFU
+    }
+}
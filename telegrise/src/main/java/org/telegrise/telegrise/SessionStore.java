@@ -0,0 +1,59 @@
+package org.telegrise.telegrise;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Represents an external storage of sessions that are not present in the memory of the application.
+ * <p>
+ * When an update arrives for a session that is not active, the store is consulted
+ * and the session is hydrated from the stored state, instead of being created with a blank one.
+ * Sessions are written back to the store when they are evicted according to the {@link SessionEvictionPolicy},
+ * so that the number of active sessions is bounded by the policy, while the total number of sessions is not.
+ * Killed sessions are deleted from the store.
+ * <p>
+ * States are opaque binary snapshots of {@link SessionMemory} that are produced by the framework.
+ * Snapshots only remain valid for the transcription they were made with.
+ * Implementations must be thread-safe.
+ * <p>
+ * The framework provides {@link org.telegrise.telegrise.storage.MappedFileSessionStore MappedFileSessionStore},
+ * which keeps states on disk; other storages, such as databases, can be used by implementing this interface.
+ * <pre>
+ * {@code
+ * application.setSessionStore(new MappedFileSessionStore(Path.of("sessions")));
+ * application.setSessionEvictionPolicy(SessionEvictionPolicy.lru().withIdleTimeout(Duration.ofMinutes(30)));
+ * }
+ * </pre>
+ *
+ * @see org.telegrise.telegrise.storage.MappedFileSessionStore
+ * @since 1.0
+ */
+public interface SessionStore extends Closeable {
+    /**
+     * Loads the state of the session.
+     *
+     * @param identifier credentials of the session
+     * @return stored state, or null if the session wasn't stored
+     */
+    byte @Nullable [] load(SessionIdentifier identifier) throws IOException;
+
+    /**
+     * Stores the state of the session, replacing the previous one.
+     *
+     * @param identifier credentials of the session
+     * @param state state to store
+     */
+    void save(SessionIdentifier identifier, byte[] state) throws IOException;
+
+    /**
+     * Deletes the state of the session if it exists.
+     *
+     * @param identifier credentials of the session
+     */
+    void delete(SessionIdentifier identifier) throws IOException;
+
+    @Override
+    default void close() throws IOException {}
+}
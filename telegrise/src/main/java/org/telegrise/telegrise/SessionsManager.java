@@ -29,6 +29,7 @@ public interface SessionsManager {
      * Destroys the session with a specified identifier.
      * Killed session can reappear (with a new state)
      * if update with the same credentials causes the creating of a new session.
+     * If {@link SessionStore} is used, the stored state of the session is deleted as well.
      *
      * @param identifier credentials of the session
      */
@@ -52,8 +53,19 @@ public interface SessionsManager {
      */
     void reinitializeSession(SessionIdentifier sessionIdentifier);
 
+    /**
+     * Roughly estimates the heap size retained by the session, including its memory and pending updates.
+     * Values stored in the session memory are measured shallowly,
+     * so the result is an approximation that is used by {@link SessionEvictionPolicy}, not a precise measurement.
+     *
+     * @param identifier credentials of the session
+     * @return estimated size in bytes, or zero if no such session exists
+     */
+    long estimateRetainedSize(SessionIdentifier identifier);
+
     /**
      * Retrieves session memory of the session with the same identifier as specified, or null if no such session exists.
+     * Sessions that are kept in {@link SessionStore} but are not active are not retrieved.
      * @param sessionIdentifier credentials of the session
      * @return session memory of the session or null
      */
@@ -75,6 +87,8 @@ public interface SessionsManager {
 
     /**
      * Registers a functional callback that will be invoked when a user session is being destroyed.
+     * Callbacks are also invoked when a session is evicted, including sessions that are written to a {@link SessionStore}
+     * and restored later, see {@link SessionEvictionPolicy}.
      * @param callback function to be executed
      */
     void registerSessionDestructionCallback(BiConsumer<SessionIdentifier, SessionMemory> callback);
@@ -4,29 +4,33 @@ import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.jetbrains.annotations.NotNull;
-import org.reflections.Reflections;
+import org.jetbrains.annotations.Nullable;
 import org.telegram.telegrambots.meta.api.methods.GetMe;
 import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
 import org.telegram.telegrambots.meta.generics.TelegramClient;
 import org.telegrise.telegrise.annotations.Handler;
 import org.telegrise.telegrise.application.ApplicationRunner;
+import org.telegrise.telegrise.application.CompiledTranscription;
+import org.telegrise.telegrise.application.TranscriptionWatcher;
 import org.telegrise.telegrise.core.ResourceInjector;
 import org.telegrise.telegrise.core.ResourcePool;
+import org.telegrise.telegrise.core.ScheduledTelegramClient;
 import org.telegrise.telegrise.core.ServiceManager;
 import org.telegrise.telegrise.core.TelegramSessionsController;
+import org.telegrise.telegrise.core.elements.BotTranscription;
 import org.telegrise.telegrise.core.parser.ApplicationNamespace;
-import org.telegrise.telegrise.core.parser.LocalNamespace;
-import org.telegrise.telegrise.core.parser.XMLElementsParser;
 import org.telegrise.telegrise.core.parser.XMLTranscriptionParser;
-import org.telegrise.telegrise.core.utils.XMLUtils;
+import org.telegrise.telegrise.core.utils.ClassIndex;
 import org.telegrise.telegrise.exceptions.TelegRiseInternalException;
 import org.telegrise.telegrise.exceptions.TelegRiseRuntimeException;
 import org.telegrise.telegrise.exceptions.TranscriptionParsingException;
 import org.telegrise.telegrise.resources.ResourceFactory;
 import org.telegrise.telegrise.senders.BotSender;
+import org.telegrise.telegrise.storage.ValueCodec;
 import org.telegrise.telegrise.types.BotUser;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
@@ -38,6 +42,19 @@ import java.util.stream.Collectors;
 public final class TelegRiseApplication {
     @Setter
     private File transcription;
+    /**
+     * File produced by {@link CompiledTranscription}, which is loaded instead of parsing the transcription if it exists
+     * and the transcription files haven't changed since it was produced.
+     */
+    @Setter
+    private File compiledTranscription;
+    /**
+     * If enabled, the transcription and its linked files are watched for changes
+     * and the transcription is reloaded without dropping active sessions, see {@link TranscriptionWatcher}.
+     * Can be enabled by the system property {@code telegrise.watchTranscription}.
+     */
+    @Setter
+    private boolean watchTranscription = Boolean.getBoolean("telegrise.watchTranscription");
     @Setter
     private ClassLoader classLoader = this.getClass().getClassLoader();
     private List<Class<? extends UpdateHandler>> handlersClasses = new ArrayList<>();
@@ -54,7 +71,19 @@ public final class TelegRiseApplication {
     private SessionInitializer sessionInitializer;
     @Setter
     private ApplicationRunner applicationRunner;
+    @Setter
+    private SessionEvictionPolicy sessionEvictionPolicy;
+    @Setter
+    private SessionStore sessionStore;
+    /**
+     * If specified, requests to the Bot API are sent according to the policy, see {@link ScheduledTelegramClient}.
+     * Must be set before the application is preloaded.
+     */
+    @Setter
+    private RateLimitPolicy rateLimitPolicy;
+    private final List<ValueCodec<?>> sessionValueCodecs = new ArrayList<>();
     private TelegramSessionsController sessionsController;
+    private ApplicationNamespace applicationNamespace;
     private TelegramClient client;
     private String token;
 
@@ -77,6 +106,8 @@ public final class TelegRiseApplication {
             throw new TelegRiseRuntimeException("Invalid bot token: " + token);
 
         client = sessionsController.getTranscription().produceClient();
+        if (this.rateLimitPolicy != null)
+            client = new ScheduledTelegramClient(client, this.rateLimitPolicy);
         sessionsController.setClient(client);
 
         try {
@@ -97,6 +128,10 @@ public final class TelegRiseApplication {
         sessionsController.setMainInjector(injector);
         serviceManager.setInjector(injector);
 
+        if (this.sessionEvictionPolicy != null)
+            sessionsController.setEvictionPolicy(this.sessionEvictionPolicy);
+        sessionsController.setSessionStore(this.sessionStore);
+        this.sessionValueCodecs.forEach(sessionsController::addSessionValueCodec);
         sessionsController.initialize();
 
         if (this.roleProvider != null) {
@@ -113,6 +148,8 @@ public final class TelegRiseApplication {
             this.applicationRunner = sessionsController.getTranscription().isWebhookBot() ?
                     ApplicationRunner.getWebhookRunner() : ApplicationRunner.LONG_POLLING;
 
+        TranscriptionWatcher watcher = this.startWatcher();
+
         log.info("Starting bot server...");
         serviceManager.startServices();
 
@@ -120,21 +157,30 @@ public final class TelegRiseApplication {
             this.applicationRunner.run(sessionsController::onUpdateReceived, token, sessionsController.getTranscription(),
                     executorService == null ? null : executorService.get());
         } finally {
+            if (watcher != null) this.closeWatcher(watcher);
             serviceManager.stop();
+            sessionsController.shutdown();
         }
     }
 
     @NotNull
     private TelegramSessionsController createController() {
-        ApplicationNamespace applicationNamespace = new ApplicationNamespace(classLoader, this.mainClass.getPackageName());
-        XMLElementsParser elementsParser = new XMLElementsParser(new LocalNamespace(null, applicationNamespace), transcription.getParentFile());
-        elementsParser.load();
-        elementsParser.getTranscriptionMemory().getLinkedFiles().add(transcription); // to prevent cyclic imports
-
         TelegramSessionsController controller;
         try {
-            XMLTranscriptionParser parser = new XMLTranscriptionParser(XMLUtils.loadDocument(transcription), elementsParser);
-            controller = new TelegramSessionsController(parser.parse(), resourceFactories, this.handlersClasses);
+            BotTranscription botTranscription = null;
+            if (this.compiledTranscription != null && this.compiledTranscription.exists()) {
+                log.info("Loading compiled transcription from {}", this.compiledTranscription);
+                botTranscription = CompiledTranscription.read(this.compiledTranscription, transcription, classLoader);
+                if (botTranscription == null)
+                    log.warn("Compiled transcription {} is outdated, the transcription will be parsed", this.compiledTranscription);
+            }
+
+            if (botTranscription == null) {
+                this.applicationNamespace = new ApplicationNamespace(classLoader, this.mainClass.getPackageName());
+                botTranscription = XMLTranscriptionParser.of(transcription, applicationNamespace).parse();
+            }
+
+            controller = new TelegramSessionsController(botTranscription, resourceFactories, this.handlersClasses);
         } catch (TelegRiseRuntimeException | TelegRiseInternalException | TranscriptionParsingException e) {
             throw TelegRiseRuntimeException.unfold(e);
         } catch (Exception e) {
@@ -144,8 +190,34 @@ public final class TelegRiseApplication {
         return controller;
     }
 
+    private @Nullable TranscriptionWatcher startWatcher() {
+        if (!this.watchTranscription) return null;
+        if (this.applicationNamespace == null) {
+            log.warn("Compiled transcription can't be watched for changes");
+            return null;
+        }
+
+        try {
+            TranscriptionWatcher watcher = new TranscriptionWatcher(this.transcription, this.applicationNamespace,
+                    sessionsController::reloadTranscription);
+            watcher.start(sessionsController.getTranscription().getMemory().getLinkedFiles());
+            return watcher;
+        } catch (IOException e) {
+            log.error("Unable to watch transcription for changes", e);
+            return null;
+        }
+    }
+
+    private void closeWatcher(TranscriptionWatcher watcher) {
+        try {
+            watcher.close();
+        } catch (IOException e) {
+            log.error("Unable to stop watching transcription", e);
+        }
+    }
+
     private List<Class<? extends UpdateHandler>> loadUpdateHandlers(){
-        Set<Class<?>> handlerCandidates = new Reflections(this.mainClass.getPackageName()).getTypesAnnotatedWith(Handler.class);
+        Set<Class<?>> handlerCandidates = ClassIndex.getTypesAnnotatedWith(Handler.class, this.mainClass.getPackageName(), this.classLoader);
 
         for (Class<?> clazz : handlerCandidates) {
             if (!UpdateHandler.class.isAssignableFrom(clazz))
@@ -170,6 +242,14 @@ public final class TelegRiseApplication {
         this.serviceManager.add(service);
     }
 
+    /**
+     * Adds a codec for values that are stored in the memory map of sessions, see {@link SessionStore}.
+     */
+    @SuppressWarnings("unused")
+    public void addSessionValueCodec(ValueCodec<?> codec){
+        this.sessionValueCodecs.add(codec);
+    }
+
     public SessionsManager getSessionManager() {
         return sessionsController;
     }
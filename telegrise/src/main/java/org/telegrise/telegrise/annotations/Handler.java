@@ -1,6 +1,7 @@
 package org.telegrise.telegrise.annotations;
 
 import org.telegrise.telegrise.UpdateHandler;
+import org.telegrise.telegrise.types.UpdateType;
 
 import java.lang.annotation.*;
 
@@ -22,6 +23,7 @@ import java.lang.annotation.*;
  *     (and the handler's condition was satisfied).</li>
  *     <li><code>priority</code>: indicates which handlers will be looked at first determining which will process the update (if any).
  *     Handlers with higher <code>priority</code> value will be looked at first.</li>
+ *     <li><code>updateTypes</code>: types of updates that the handler is checked for, all types if empty.</li>
  * </ul>
  *
  * @see UpdateHandler
@@ -59,4 +61,13 @@ public @interface Handler {
      * Handlers with higher <code>priority</code> value will be looked at first.
      */
     int priority() default 0;
+
+    /**
+     * Types of updates that this handler can handle.
+     * Updates of other types are skipped without calling {@link UpdateHandler#canHandle canHandle}.
+     * If empty, the handler is checked for updates of all types.
+     *
+     * @since 1.0
+     */
+    UpdateType[] updateTypes() default {};
 }
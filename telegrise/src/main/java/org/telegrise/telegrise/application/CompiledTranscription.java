@@ -0,0 +1,179 @@
+package org.telegrise.telegrise.application;
+
+import org.jetbrains.annotations.Nullable;
+import org.telegrise.telegrise.ReferenceHolders;
+import org.telegrise.telegrise.core.ResourceInjector;
+import org.telegrise.telegrise.core.elements.BotTranscription;
+import org.telegrise.telegrise.core.expressions.JavaExpressionCompiler;
+import org.telegrise.telegrise.core.parser.ApplicationNamespace;
+import org.telegrise.telegrise.core.parser.XMLTranscriptionParser;
+import org.telegrise.telegrise.exceptions.TelegRiseRuntimeException;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Ahead-of-time compilation of transcriptions.
+ * <p>
+ * A compiled transcription is a parsed and validated transcription,
+ * serialized together with the bytecode of its Java expressions and the list of static reference holders.
+ * Loading it doesn't require parsing XML, scanning the classpath or compiling expressions.
+ * Use {@link org.telegrise.telegrise.TelegRiseApplication#setCompiledTranscription TelegRiseApplication.setCompiledTranscription}
+ * to start the application from the compiled transcription.
+ * <p>
+ * Compiled transcription can be produced at build time by running the {@link #main main} method of this class,
+ * for example, by <code>exec-maven-plugin</code> after classes are compiled:
+ * <pre>{@code
+ * <plugin>
+ *     <groupId>org.codehaus.mojo</groupId>
+ *     <artifactId>exec-maven-plugin</artifactId>
+ *     <executions>
+ *         <execution>
+ *             <phase>process-classes</phase>
+ *             <goals><goal>java</goal></goals>
+ *             <configuration>
+ *                 <mainClass>org.telegrise.telegrise.application.CompiledTranscription</mainClass>
+ *                 <arguments>
+ *                     <argument>src/main/resources/index.xml</argument>
+ *                     <argument>org.example.bot.Main</argument>
+ *                     <argument>${project.build.outputDirectory}/index.telegrise</argument>
+ *                 </arguments>
+ *             </configuration>
+ *         </execution>
+ *     </executions>
+ * </plugin>
+ * }</pre>
+ * Compiled transcription must be produced by the same version of the framework and the application classes that load it.
+ * It keeps digests of the transcription file and its linked files,
+ * so that the application parses the transcription anew if any of them has changed since the compilation.
+ *
+ * @since 1.0
+ */
+public final class CompiledTranscription {
+    private static final String FORMAT = "TelegRise compiled transcription 2 " + JavaExpressionCompiler.VERSION;
+
+    /**
+     * Compiles the transcription.
+     * Arguments: path to the transcription file, name of the application's main class and path of the output file.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length != 3)
+            throw new IllegalArgumentException("Usage: CompiledTranscription <transcription> <main class> <output>");
+
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        Class<?> mainClass = Class.forName(args[1], false, classLoader);
+        write(new File(args[0]), new ApplicationNamespace(classLoader, mainClass.getPackageName()), new File(args[2]));
+    }
+
+    /**
+     * Parses the transcription and writes it to the output file in the compiled form.
+     */
+    public static void write(File transcription, ApplicationNamespace namespace, File output) throws Exception {
+        XMLTranscriptionParser parser = XMLTranscriptionParser.of(transcription, namespace);
+        BotTranscription result = parser.parse();
+
+        Path base = transcription.getAbsoluteFile().getParentFile().toPath();
+        TreeMap<String, String> sources = new TreeMap<>();
+        sources.put(transcription.getName(), digest(transcription));
+        for (File file : result.getMemory().getLinkedFiles())
+            sources.put(base.relativize(file.getAbsoluteFile().toPath()).toString().replace(File.separatorChar, '/'), digest(file));
+
+        File parent = output.getAbsoluteFile().getParentFile();
+        Files.createDirectories(parent.toPath());
+        try (ObjectOutputStream out = new ObjectOutputStream(new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(output))))) {
+            out.writeUTF(FORMAT);
+            out.writeObject(sources);
+            // Only holders of this application, other transcriptions of the JVM might have registered their own
+            out.writeObject(List.copyOf(parser.getReferenceHolderNames()));
+            out.writeObject(result);
+        }
+    }
+
+    /**
+     * Reads compiled transcription and instantiates its static reference holders.
+     *
+     * @param classLoader class loader of the application classes
+     */
+    public static BotTranscription read(File file, ClassLoader classLoader) throws IOException, ClassNotFoundException {
+        return Objects.requireNonNull(read(file, null, classLoader));
+    }
+
+    /**
+     * Reads compiled transcription and instantiates its static reference holders,
+     * unless it was compiled from a different version of the transcription or the framework.
+     *
+     * @param transcription transcription file the compiled transcription was produced from;
+     *                      if null or doesn't exist, the compiled transcription is considered up to date
+     * @param classLoader class loader of the application classes
+     * @return null if the transcription or its linked files have changed since the compilation
+     */
+    public static @Nullable BotTranscription read(File file, @Nullable File transcription, ClassLoader classLoader) throws IOException, ClassNotFoundException {
+        boolean verify = transcription != null && transcription.isFile();
+        try (ObjectInputStream in = new ApplicationObjectInputStream(new GZIPInputStream(new BufferedInputStream(new FileInputStream(file))), classLoader)) {
+            String format = in.readUTF();
+            if (!format.equals(FORMAT)) {
+                if (verify) return null;
+                throw new TelegRiseRuntimeException("Compiled transcription '%s' has incompatible format '%s', recompile it".formatted(file, format));
+            }
+
+            @SuppressWarnings("unchecked")
+            Map<String, String> sources = (Map<String, String>) in.readObject();
+            if (verify && !isUpToDate(sources, transcription.getAbsoluteFile().getParentFile().toPath()))
+                return null;
+
+            @SuppressWarnings("unchecked")
+            List<String> holders = (List<String>) in.readObject();
+            for (String name : holders) {
+                Class<?> holder = Class.forName(name, true, classLoader);
+                ReferenceHolders.add(holder, ResourceInjector.createInstance(holder));
+            }
+
+            return (BotTranscription) in.readObject();
+        }
+    }
+
+    private static boolean isUpToDate(Map<String, String> sources, Path base) {
+        for (var source : sources.entrySet()) {
+            File file = base.resolve(source.getKey()).toFile();
+            if (!file.isFile() || !source.getValue().equals(digest(file))) return false;
+        }
+
+        return true;
+    }
+
+    private static String digest(File file) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(Files.readAllBytes(file.toPath())));
+        } catch (IOException e) {
+            return "";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final class ApplicationObjectInputStream extends ObjectInputStream {
+        private final ClassLoader classLoader;
+
+        private ApplicationObjectInputStream(InputStream in, ClassLoader classLoader) throws IOException {
+            super(in);
+            this.classLoader = classLoader;
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            try {
+                return Class.forName(desc.getName(), false, this.classLoader);
+            } catch (ClassNotFoundException e) {
+                return super.resolveClass(desc);
+            }
+        }
+    }
+
+    private CompiledTranscription() {}
+}
@@ -0,0 +1,127 @@
+package org.telegrise.telegrise.application;
+
+import lombok.extern.slf4j.Slf4j;
+import org.telegrise.telegrise.core.elements.BotTranscription;
+import org.telegrise.telegrise.core.parser.ApplicationNamespace;
+import org.telegrise.telegrise.core.parser.XMLTranscriptionParser;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Watches the transcription file and the files it links, parsing the transcription anew in the background
+ * when any of them changes. Linked files that weren't changed are not parsed again, see {@code LinkedFileCache},
+ * and expressions that weren't changed are not recompiled, since compiled expressions are cached by their source.
+ * <p>
+ * Successfully parsed transcriptions are passed to the consumer, while parsing errors are logged
+ * and the previous transcription remains in use.
+ *
+ * @since 1.0
+ */
+@Slf4j
+public final class TranscriptionWatcher implements AutoCloseable {
+    // Editors often save files in several steps, so changes are collected until the files stay unchanged for this time
+    private static final long DEBOUNCE_MILLIS = 300;
+
+    private final File transcription;
+    private final ApplicationNamespace namespace;
+    private final Consumer<BotTranscription> consumer;
+    private final WatchService watchService;
+    private final Map<Path, WatchKey> directories = new HashMap<>();
+    private volatile Set<Path> files = Set.of();
+    private Thread thread;
+
+    public TranscriptionWatcher(File transcription, ApplicationNamespace namespace, Consumer<BotTranscription> consumer) throws IOException {
+        this.transcription = transcription;
+        this.namespace = namespace;
+        this.consumer = consumer;
+        this.watchService = FileSystems.getDefault().newWatchService();
+    }
+
+    /**
+     * Starts watching the files, which are the transcription and its linked files.
+     */
+    public synchronized void start(Set<File> linkedFiles) throws IOException {
+        this.register(linkedFiles);
+        this.thread = Thread.ofPlatform().daemon().name("telegrise-transcription-watcher").start(this::watch);
+        log.info("Watching transcription {} for changes", this.transcription);
+    }
+
+    private synchronized void register(Set<File> linkedFiles) throws IOException {
+        Set<Path> paths = new HashSet<>();
+        paths.add(this.transcription.toPath().toAbsolutePath().normalize());
+        linkedFiles.forEach(f -> paths.add(f.toPath().toAbsolutePath().normalize()));
+
+        for (Path path : paths) {
+            Path directory = path.getParent();
+            if (!this.directories.containsKey(directory))
+                this.directories.put(directory, directory.register(this.watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE));
+        }
+
+        this.files = Set.copyOf(paths);
+    }
+
+    private void watch() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                if (!this.isRelevant(this.watchService.take())) continue;
+
+                WatchKey key;
+                while ((key = this.watchService.poll(DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS)) != null)
+                    this.isRelevant(key);
+
+                this.reload();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException ignored) {
+            // Watcher was closed
+        }
+    }
+
+    /**
+     * Consumes events of the key, returning true if any of them relates to the transcription.
+     * New files of watched directories are considered relevant, since they may be linked by directory links.
+     */
+    private boolean isRelevant(WatchKey key) {
+        boolean relevant = false;
+        Path directory = (Path) key.watchable();
+
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW || !(event.context() instanceof Path name)) {
+                relevant = true;
+                continue;
+            }
+
+            Path path = directory.resolve(name);
+            relevant |= this.files.contains(path) || name.toString().endsWith(".xml");
+        }
+
+        key.reset();
+        return relevant;
+    }
+
+    private void reload() {
+        log.info("Transcription has changed, reloading...");
+        try {
+            BotTranscription result = XMLTranscriptionParser.of(this.transcription, this.namespace).parse();
+            this.register(result.getMemory().getLinkedFiles());
+            this.consumer.accept(result);
+        } catch (Exception e) {
+            log.error("Unable to reload transcription, the previous one remains in use", e);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (this.thread != null) this.thread.interrupt();
+        this.watchService.close();
+    }
+}
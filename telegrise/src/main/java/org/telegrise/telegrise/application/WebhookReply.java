@@ -0,0 +1,111 @@
+package org.telegrise.telegrise.application;
+
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.Nullable;
+import org.telegram.telegrambots.meta.api.methods.AnswerCallbackQuery;
+import org.telegram.telegrambots.meta.api.methods.AnswerInlineQuery;
+import org.telegram.telegrambots.meta.api.methods.AnswerPreCheckoutQuery;
+import org.telegram.telegrambots.meta.api.methods.AnswerShippingQuery;
+import org.telegram.telegrambots.meta.api.methods.botapimethods.PartialBotApiMethod;
+import org.telegram.telegrambots.meta.api.methods.send.SendChatAction;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Captures a bot API method issued while handling an update, so that the webhook server can send it
+ * as the response to the webhook request instead of making a separate request to the Bot API,
+ * see {@link org.telegrise.telegrise.core.elements.head.Webhook#getReplyTimeout()}.
+ * <p>
+ * The webhook server {@link #expect(Update) expects} a reply before passing the update on,
+ * and the session that handles the update {@link #bind(Update) binds} the reply to its thread.
+ * The first eligible method executed by the thread's {@link org.telegrise.telegrise.senders.BotSender BotSender}
+ * is {@link #offer(PartialBotApiMethod) offered} to the reply and, if accepted, isn't sent by the sender.
+ * <p>
+ * Telegram doesn't report the result of a method sent as a webhook response,
+ * and executes it independently of the requests that the bot makes afterward.
+ * Therefore, only answers to queries and chat actions are eligible,
+ * since they return no data and their order relative to other requests doesn't matter.
+ *
+ * @since 1.0
+ */
+@ApiStatus.Internal
+public final class WebhookReply {
+    private static final Set<Class<?>> ELIGIBLE_METHODS = Set.of(
+            AnswerCallbackQuery.class, AnswerInlineQuery.class, AnswerPreCheckoutQuery.class,
+            AnswerShippingQuery.class, SendChatAction.class
+    );
+    private static final Map<Integer, WebhookReply> expected = new ConcurrentHashMap<>();
+    private static final ThreadLocal<WebhookReply> current = new ThreadLocal<>();
+
+    /**
+     * Registers a reply for the update that is about to be handled.
+     */
+    public static WebhookReply expect(Update update) {
+        WebhookReply reply = new WebhookReply(update.getUpdateId());
+        expected.put(reply.updateId, reply);
+        return reply;
+    }
+
+    /**
+     * Binds the reply expected for the update, if any, to the current thread.
+     */
+    public static void bind(Update update) {
+        WebhookReply reply = update.getUpdateId() == null ? null : expected.remove(update.getUpdateId());
+        if (reply != null) current.set(reply);
+    }
+
+    /**
+     * Unbinds the reply of the current thread, completing it without a method if none was captured.
+     */
+    public static void release() {
+        WebhookReply reply = current.get();
+        if (reply == null) return;
+
+        current.remove();
+        reply.method.complete(null);
+    }
+
+    /**
+     * Offers the method to the reply bound to the current thread.
+     *
+     * @return true if the method was captured and must not be executed by the caller
+     */
+    public static boolean offer(PartialBotApiMethod<?> method) {
+        WebhookReply reply = current.get();
+        if (reply == null || method == null || !ELIGIBLE_METHODS.contains(method.getClass())) return false;
+
+        // Only the first eligible method is captured
+        current.remove();
+        return reply.method.complete(method);
+    }
+
+    private final Integer updateId;
+    private final CompletableFuture<PartialBotApiMethod<?>> method = new CompletableFuture<>();
+
+    private WebhookReply(Integer updateId) {
+        this.updateId = updateId;
+    }
+
+    /**
+     * Returns a future of the captured method, which completes with {@code null} if the update was handled without
+     * an eligible method or the timeout has passed. Methods offered after that are executed normally.
+     */
+    public CompletableFuture<@Nullable PartialBotApiMethod<?>> await(long timeout, TimeUnit unit) {
+        return this.method.completeOnTimeout(null, timeout, unit)
+                .whenComplete((m, e) -> expected.remove(this.updateId, this));
+    }
+
+    /**
+     * Completes the reply without a method if no session has bound it yet,
+     * for example, if the update was handled without a session or was queued behind other updates of the session.
+     */
+    public void cancel() {
+        if (expected.remove(this.updateId, this))
+            this.method.complete(null);
+    }
+}
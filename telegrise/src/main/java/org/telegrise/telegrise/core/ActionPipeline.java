@@ -0,0 +1,127 @@
+package org.telegrise.telegrise.core;
+
+import org.telegram.telegrambots.meta.api.methods.botapimethods.PartialBotApiMethod;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegrise.telegrise.core.elements.actions.ActionElement;
+import org.telegrise.telegrise.exceptions.TelegRiseInternalException;
+import org.telegrise.telegrise.senders.UniversalSender;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Executes actions of a branch asynchronously, see {@link org.telegrise.telegrise.core.elements.BotTranscription#isAsyncActions()}.
+ * <p>
+ * Methods of actions are generated one by one on the session's thread, as in synchronous execution,
+ * but requests are sent without waiting for responses of previous ones.
+ * Requests to the same chat are sent one after another in order of the actions,
+ * while requests to different chats and requests that don't address a chat, like answers to callback queries, are sent at once.
+ * <p>
+ * Responses are applied in order of the actions when the pipeline is {@link #flush() flushed}:
+ * sent messages are marked as the last sent message, {@code returnConsumer} and {@code onError} expressions are invoked.
+ * If a request fails and its action has no {@code onError}, following requests to its chat are not sent
+ * and the exception is thrown after responses of previous actions are applied.
+ * <p>
+ * Actions that depend on previous ones wait for them: actions that aren't {@link ActionElement#isIndependent() independent}
+ * are generated after all pending responses are applied, and actions with {@code returnConsumer} are waited for right after they are sent,
+ * so that following expressions can use the consumed response.
+ */
+final class ActionPipeline {
+    private record Pending(ActionElement action, PartialBotApiMethod<?> method, CompletableFuture<Serializable> result) {}
+
+    private final UniversalSender sender;
+    private final ResourcePool pool;
+    private final List<Pending> pending = new ArrayList<>();
+    // Completes with true if following requests to the chat can be sent
+    private final Map<String, CompletableFuture<Boolean>> chats = new HashMap<>();
+
+    ActionPipeline(UniversalSender sender, ResourcePool pool) {
+        this.sender = sender;
+        this.pool = pool;
+    }
+
+    /**
+     * Executes all actions and waits for their responses.
+     */
+    void execute(List<ActionElement> actions) throws TelegramApiException {
+        try {
+            for (ActionElement action : actions)
+                this.submit(action);
+        } catch (RuntimeException | TelegramApiException e) {
+            // Responses of actions that were sent before the failure are applied anyway
+            try {
+                this.flush();
+            } catch (RuntimeException | TelegramApiException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+
+        this.flush();
+    }
+
+    void submit(ActionElement action) throws TelegramApiException {
+        if (!action.isIndependent()) this.flush();
+        if (action.getWhen() != null && !action.getWhen().generate(this.pool)) return;
+
+        PartialBotApiMethod<?> method = UniversalSender.generateMethod(action, this.pool);
+        if (method == null) return;
+
+        @SuppressWarnings("unchecked")
+        var typed = (PartialBotApiMethod<? extends Serializable>) method;
+        String chatId = ScheduledTelegramClient.getChatId(method);
+        CompletableFuture<Serializable> result;
+        if (chatId == null) {
+            result = this.sender.executeAsync(typed);
+        } else {
+            CompletableFuture<Boolean> previous = this.chats.get(chatId);
+            result = previous == null ? this.sender.executeAsync(typed) : previous.thenCompose(proceed -> proceed
+                    ? this.sender.executeAsync(typed)
+                    : CompletableFuture.failedFuture(new CancellationException("Previous request to the chat has failed")));
+
+            boolean handled = action.getOnError() != null;
+            CompletableFuture<Boolean> next = result.handle((r, e) -> e == null || handled && !(unwrap(e) instanceof CancellationException));
+            this.chats.put(chatId, next);
+        }
+
+        this.pending.add(new Pending(action, method, result));
+        if (action.getReturnConsumer() != null) this.flush();
+    }
+
+    /**
+     * Waits for the pending responses and applies them in order of their actions.
+     */
+    void flush() throws TelegramApiException {
+        try {
+            for (Pending pending : this.pending) {
+                Serializable result;
+                try {
+                    result = pending.result().join();
+                } catch (CompletionException | CancellationException e) {
+                    Throwable cause = unwrap(e);
+                    if (cause instanceof TelegramApiException exception) {
+                        UniversalSender.handleError(pending.action(), this.pool, exception);
+                        continue;
+                    }
+
+                    throw cause instanceof RuntimeException runtime ? runtime : new TelegRiseInternalException(cause);
+                }
+
+                UniversalSender.handleResult(pending.action(), this.pool, pending.method(), result);
+            }
+        } finally {
+            this.pending.clear();
+            this.chats.clear();
+        }
+    }
+
+    private static Throwable unwrap(Throwable e) {
+        return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+    }
+}
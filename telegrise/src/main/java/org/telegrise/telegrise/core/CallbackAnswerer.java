@@ -0,0 +1,76 @@
+package org.telegrise.telegrise.core;
+
+import lombok.extern.slf4j.Slf4j;
+import org.jetbrains.annotations.ApiStatus;
+import org.telegram.telegrambots.meta.api.methods.AnswerCallbackQuery;
+import org.telegram.telegrambots.meta.api.objects.Update;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegrise.telegrise.application.WebhookReply;
+import org.telegrise.telegrise.core.elements.actions.ActionElement;
+import org.telegrise.telegrise.core.elements.actions.ActionGroup;
+import org.telegrise.telegrise.core.elements.actions.Answer;
+import org.telegrise.telegrise.senders.BotSender;
+
+import java.util.List;
+
+/**
+ * Answers callback queries as soon as a branch is invoked for them, so that Telegram clients stop showing
+ * the loading indicator without waiting for the branch to finish,
+ * see {@link org.telegrise.telegrise.core.elements.BotTranscription#isAutoAnswerCallbacks()}.
+ * <p>
+ * Answers are sent asynchronously and their failures are only logged.
+ * Callback queries of branches that contain their own {@link Answer} are left to them.
+ * Each callback query is considered once, so that branches invoked later for the same update,
+ * for example by transitions, don't answer it again.
+ * If such a branch contains its own {@link Answer}, the answer is skipped for a query that was answered automatically,
+ * see {@link #isAnswered(String)}.
+ *
+ * @since 1.0
+ */
+@Slf4j
+@ApiStatus.Internal
+public final class CallbackAnswerer {
+    // Sessions handle updates one by one, so the field is accessed by a single thread at a time
+    private String lastQueryId;
+    private String answeredQueryId;
+
+    public void answer(Update update, List<ActionElement> actions, BotSender sender) {
+        if (update == null || !update.hasCallbackQuery()) return;
+
+        String queryId = update.getCallbackQuery().getId();
+        if (queryId.equals(this.lastQueryId)) return;
+        this.lastQueryId = queryId;
+
+        if (containsAnswer(actions)) return;
+
+        this.answeredQueryId = queryId;
+        var method = AnswerCallbackQuery.builder().callbackQueryId(queryId).build();
+        if (WebhookReply.offer(method)) return;
+
+        try {
+            sender.getClient().executeAsync(method)
+                    .whenComplete((r, e) -> {
+                        if (e != null) log.debug("Unable to answer callback query {} automatically", queryId, e);
+                    });
+        } catch (TelegramApiException e) {
+            log.debug("Unable to answer callback query {} automatically", queryId, e);
+        }
+    }
+
+    /**
+     * Returns true if the callback query has been answered automatically, so that it can't be answered again.
+     */
+    public boolean isAnswered(String queryId) {
+        return queryId.equals(this.answeredQueryId);
+    }
+
+    private static boolean containsAnswer(List<ActionElement> actions) {
+        if (actions == null) return false;
+
+        for (ActionElement action : actions)
+            if (action instanceof Answer || action instanceof ActionGroup group && containsAnswer(group.getActions()))
+                return true;
+
+        return false;
+    }
+}
@@ -1,9 +1,8 @@
 package org.telegrise.telegrise.core;
 
-import lombok.Data;
-import lombok.Getter;
-import lombok.NoArgsConstructor;
+import lombok.*;
 import org.apache.commons.lang3.ClassUtils;
+import org.jetbrains.annotations.Nullable;
 import org.telegram.telegrambots.meta.api.objects.Update;
 import org.telegram.telegrambots.meta.generics.TelegramClient;
 import org.telegrise.telegrise.SessionMemory;
@@ -12,26 +11,24 @@ import org.telegrise.telegrise.senders.BotSender;
 import org.telegrise.telegrise.types.ApiResponse;
 import org.telegrise.telegrise.types.BotUser;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.io.Serializable;
 import java.util.concurrent.BlockingQueue;
 
 //TODO refactor
 // Resource pool must not be created arbitrarily, but using a factory that can have parent factory.
 // This approach will resolve the mess of manually including every essential resource in every class that uses it.
 
+/**
+ * Resources that are available to expressions while handling an update.
+ * <p>
+ * Essential resources are stored in their own fields, while other components are kept in a small class-keyed table.
+ * Components of essential types should be resolved using {@link #slotOf(Class)} once, at compile time,
+ * which avoids looking through all components on each evaluation.
+ */
 @Data
 @NoArgsConstructor
 public final class ResourcePool {
-    public static Object extractComponent(Map<Class<?>, Object> components, Class<?> target){
-        if (components.containsKey(target)) return components.get(target);
-
-        for (Class<?> k : components.keySet())
-            if (ClassUtils.isAssignable(k, target))
-                return components.get(k);
-
-        return null;
-    }
+    private static final int INITIAL_CAPACITY = 8;
 
     private Update update;
     private Object handler;
@@ -46,8 +43,13 @@ public final class ResourcePool {
     private BotUser botUser;
     private ApiResponse apiResponse;
 
-    @Getter
-    private final Map<Class<?>, Object> components = new HashMap<>(Map.of(ResourcePool.class,this));
+    // Open-addressed table of other components, keyed by their classes
+    @Getter(AccessLevel.NONE) @Setter(AccessLevel.NONE) @EqualsAndHashCode.Exclude
+    private Class<?>[] componentTypes;
+    @Getter(AccessLevel.NONE) @Setter(AccessLevel.NONE) @EqualsAndHashCode.Exclude
+    private Object[] components;
+    @Getter(AccessLevel.NONE) @Setter(AccessLevel.NONE) @EqualsAndHashCode.Exclude
+    private int componentsCount;
 
     public ResourcePool(Update update, Object handler, BotSender sender, SessionMemoryImpl memory, BotUser botUser) {
         this.update = update;
@@ -55,7 +57,6 @@ public final class ResourcePool {
         this.sender = sender;
         this.memory = memory;
         this.botUser = botUser;
-        bakeComponents();
     }
 
     public ResourcePool(Update update, Object handler, BotSender sender, SessionMemoryImpl memory, BotUser botUser,
@@ -67,25 +68,122 @@ public final class ResourcePool {
         this.botUser = botUser;
         this.currentExecutor = executor;
         this.updates = updates;
-        bakeComponents();
+    }
+
+    /**
+     * Returns a slot that resolves components of the specified type.
+     * Essential resources are read from their fields directly, other types are looked up by {@link #getComponent(Class)}.
+     */
+    public static ComponentSlot slotOf(Class<?> type) {
+        ComponentSlot fixed = fixedSlotOf(type);
+        if (fixed == null) return pool -> pool.getComponent(type);
+
+        return pool -> {
+            Object value = fixed.get(pool);
+            return value != null ? value : pool.getComponent(type);
+        };
+    }
+
+    private static @Nullable ComponentSlot fixedSlotOf(Class<?> type) {
+        if (type == ResourcePool.class) return pool -> pool;
+        if (type == Update.class) return ResourcePool::getUpdate;
+        if (type == SessionMemory.class || type == SessionMemoryImpl.class) return ResourcePool::getMemory;
+        if (type == BotSender.class) return ResourcePool::getSender;
+        if (type == TelegramClient.class) return pool -> pool.getSender() != null ? pool.getSender().getClient() : null;
+        if (type == BotUser.class) return ResourcePool::getBotUser;
+        if (type == ApiResponse.class) return ResourcePool::getApiResponse;
+        if (type == TreeExecutor.class) return ResourcePool::getCurrentExecutor;
+        return null;
+    }
+
+    /**
+     * Finds a component of the specified type: first by exact type, then among those which type is assignable to it.
+     *
+     * @return component or null if there is no such component
+     */
+    public @Nullable Object getComponent(Class<?> type) {
+        ComponentSlot fixed = fixedSlotOf(type);
+        Object value = fixed != null ? fixed.get(this) : null;
+        if (value != null) return value;
+
+        int index = this.indexOf(type);
+        if (index >= 0) return this.components[index];
+
+        if (type.isInstance(this.update)) return this.update;
+        if (type.isInstance(this.sender)) return this.sender;
+        if (type.isInstance(this.memory)) return this.memory;
+        if (type.isInstance(this.botUser)) return this.botUser;
+        if (type.isInstance(this.apiResponse)) return this.apiResponse;
+
+        if (this.componentTypes != null)
+            for (int i = 0; i < this.componentTypes.length; i++)
+                if (this.componentTypes[i] != null && ClassUtils.isAssignable(this.componentTypes[i], type))
+                    return this.components[i];
+
+        return null;
     }
 
     public void addComponent(Object object){
-        this.components.put(ReflectionUtils.getClass(object), object);
+        Class<?> type = ReflectionUtils.getClass(object);
+        if (this.componentTypes == null) {
+            this.componentTypes = new Class[INITIAL_CAPACITY];
+            this.components = new Object[INITIAL_CAPACITY];
+        } else if ((this.componentsCount + 1) * 4 > this.componentTypes.length * 3)
+            this.resize();
+
+        int index = this.probe(this.componentTypes, type);
+        if (this.componentTypes[index] == null) {
+            this.componentTypes[index] = type;
+            this.componentsCount++;
+        }
+
+        this.components[index] = object;
+    }
+
+    private int indexOf(Class<?> type) {
+        if (this.componentTypes == null) return -1;
+
+        int index = this.probe(this.componentTypes, type);
+        return this.componentTypes[index] == null ? -1 : index;
+    }
+
+    // Returns the index of the type or of the free cell where it must be placed
+    private int probe(Class<?>[] types, Class<?> type) {
+        int mask = types.length - 1;
+        int index = System.identityHashCode(type) & mask;
+        while (types[index] != null && types[index] != type)
+            index = (index + 1) & mask;
+
+        return index;
     }
 
-    private void bakeComponents(){
-        if (update != null) this.addComponent(update);
-        if (sender != null) {
-            this.addComponent(sender);
-            this.components.put(TelegramClient.class, sender.getClient());
+    private void resize() {
+        Class<?>[] oldTypes = this.componentTypes;
+        Object[] oldComponents = this.components;
+        this.componentTypes = new Class[oldTypes.length * 2];
+        this.components = new Object[oldTypes.length * 2];
+
+        for (int i = 0; i < oldTypes.length; i++) {
+            if (oldTypes[i] == null) continue;
+
+            int index = this.probe(this.componentTypes, oldTypes[i]);
+            this.componentTypes[index] = oldTypes[i];
+            this.components[index] = oldComponents[i];
         }
-        if (memory != null) this.components.put(SessionMemory.class, memory);
-        if (apiResponse != null) this.components.put(ApiResponse.class, apiResponse);
     }
 
     @Override
     public String toString() {
         return "ResourcePool{" + "update=" + update + '}';
     }
-}
\ No newline at end of file
+
+    /**
+     * Resolves a component of a certain type from resource pools.
+     *
+     * @see #slotOf(Class)
+     */
+    @FunctionalInterface
+    public interface ComponentSlot extends Serializable {
+        @Nullable Object get(ResourcePool pool);
+    }
+}
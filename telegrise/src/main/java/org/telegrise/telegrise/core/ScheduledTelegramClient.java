@@ -0,0 +1,568 @@
+package org.telegrise.telegrise.core;
+
+import lombok.extern.slf4j.Slf4j;
+import org.jetbrains.annotations.Nullable;
+import org.telegram.telegrambots.meta.api.methods.CopyMessage;
+import org.telegram.telegrambots.meta.api.methods.CopyMessages;
+import org.telegram.telegrambots.meta.api.methods.ForwardMessage;
+import org.telegram.telegrambots.meta.api.methods.ForwardMessages;
+import org.telegram.telegrambots.meta.api.methods.botapimethods.BotApiMethod;
+import org.telegram.telegrambots.meta.api.methods.groupadministration.SetChatPhoto;
+import org.telegram.telegrambots.meta.api.methods.send.*;
+import org.telegram.telegrambots.meta.api.methods.stickers.*;
+import org.telegram.telegrambots.meta.api.methods.updates.SetWebhook;
+import org.telegram.telegrambots.meta.api.methods.updatingmessages.EditMessageMedia;
+import org.telegram.telegrambots.meta.api.objects.File;
+import org.telegram.telegrambots.meta.api.objects.message.Message;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
+import org.telegram.telegrambots.meta.generics.TelegramClient;
+import org.telegrise.telegrise.RateLimitPolicy;
+
+import java.io.InputStream;
+import java.io.Serializable;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * {@link TelegramClient} that sends requests of the wrapped client according to the {@link RateLimitPolicy}.
+ * <p>
+ * Requests are assigned to chats by their {@code chat_id}. Each chat has a lane that passes its requests
+ * one by one in the order they were made, and a token bucket that limits the rate of messages in the chat;
+ * messages to groups and channels also pass a token bucket of the group limit.
+ * A message that reached its turn passes the group and global token buckets, then the bucket of its chat,
+ * and is executed on the calling thread, so that threads of busy chats wait instead of flooding the Bot API.
+ * Messages of a chat are spaced from the completion of the previous message of the chat;
+ * private chats allow a short burst of {@value #PRIVATE_CHAT_BURST} messages.
+ * Asynchronous requests take their place in the lane immediately and wait on virtual threads.
+ * <p>
+ * Only methods that send messages are limited: other requests to a chat, such as editing messages or chat actions,
+ * keep their place in the lane but don't consume the limits.
+ * Responses {@code 429 Too Many Requests} pause the lane of the chat, or all requests if the method doesn't address a chat,
+ * for the time specified by {@code retry_after}, after which the request is retried.
+ * Requests that don't address a chat are not limited otherwise, as well as file downloads.
+ *
+ * @since 1.0
+ */
+@Slf4j
+public final class ScheduledTelegramClient implements TelegramClient {
+    private static final int TOO_MANY_REQUESTS = 429;
+    // Idle lanes are removed once per this number of requests
+    private static final int CLEANUP_INTERVAL = 1024;
+    static final int PRIVATE_CHAT_BURST = 3;
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+    private static final ClassValue<MethodHandle> CHAT_ID_GETTERS = new ClassValue<>() {
+        @Override
+        protected MethodHandle computeValue(Class<?> type) {
+            try {
+                return MethodHandles.publicLookup().unreflect(type.getMethod("getChatId")).asType(GETTER_TYPE);
+            } catch (NoSuchMethodException | IllegalAccessException e) {
+                return null;
+            }
+        }
+    };
+
+    private static final ClassValue<Boolean> SENDS_MESSAGES = new ClassValue<>() {
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+            if (type == SendChatAction.class) return false;
+            return type.getSimpleName().startsWith("Send") || type == CopyMessage.class || type == CopyMessages.class
+                    || type == ForwardMessage.class || type == ForwardMessages.class;
+        }
+    };
+
+    private final TelegramClient client;
+    private final RateLimitPolicy policy;
+    private final TokenBucket global;
+    private final Map<String, Lane> lanes = new ConcurrentHashMap<>();
+    private final AtomicInteger requests = new AtomicInteger();
+    private final ExecutorService asyncExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+    public ScheduledTelegramClient(TelegramClient client, RateLimitPolicy policy) {
+        this.client = client;
+        this.policy = policy;
+        this.global = new TokenBucket(policy.globalPerSecond(), TimeUnit.SECONDS, policy.globalPerSecond());
+    }
+
+    /**
+     * @return number of chats which requests are being sent or which rate limits are not restored yet
+     */
+    int getActiveChats() {
+        return this.lanes.size();
+    }
+
+    @FunctionalInterface
+    private interface Request<T> {
+        T execute() throws TelegramApiException;
+    }
+
+    private <T> T schedule(Object method, Request<T> request) throws TelegramApiException {
+        return this.run(this.enter(method), request);
+    }
+
+    private <T> CompletableFuture<T> scheduleAsync(Object method, Request<T> request) {
+        Ticket ticket = this.enter(method);
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return this.run(ticket, request);
+            } catch (TelegramApiException e) {
+                throw new CompletionException(e);
+            }
+        }, this.asyncExecutor);
+    }
+
+    private record Ticket(@Nullable String chatId, @Nullable Lane lane, long number, boolean limited) {}
+
+    /**
+     * Takes the place of the request in the lane of its chat.
+     */
+    private Ticket enter(Object method) {
+        String chatId = getChatId(method);
+        if (chatId == null) return new Ticket(null, null, 0, false);
+
+        long[] number = new long[1];
+        Lane lane = this.lanes.compute(chatId, (k, l) -> {
+            if (l == null) l = new Lane(chatId);
+            number[0] = l.next++;
+            return l;
+        });
+
+        return new Ticket(chatId, lane, number[0], SENDS_MESSAGES.get(method.getClass()));
+    }
+
+    private void leave(Ticket ticket) {
+        if (ticket.lane() == null) return;
+
+        ticket.lane().advance();
+        if (this.requests.incrementAndGet() % CLEANUP_INTERVAL == 0)
+            this.releaseIdleChats();
+    }
+
+    /**
+     * Removes lanes of chats that have no requests and which rate limits are fully restored.
+     */
+    void releaseIdleChats() {
+        this.lanes.keySet().forEach(chatId -> this.lanes.computeIfPresent(chatId, (k, l) -> l.isReleasable() ? null : l));
+    }
+
+    private <T> T run(Ticket ticket, Request<T> request) throws TelegramApiException {
+        Lane lane = ticket.lane();
+        try {
+            if (lane != null) lane.awaitTurn(ticket.number());
+
+            for (int attempt = 0; ; attempt++) {
+                if (ticket.limited()) {
+                    if (lane.groupBucket != null) lane.groupBucket.acquire();
+                    this.global.acquire();
+                    // Chat token is taken right before the request, so that waiting for other limits doesn't consume its interval
+                    lane.bucket.acquire();
+                } else {
+                    if (lane != null) lane.bucket.awaitPause();
+                    this.global.awaitPause();
+                }
+
+                long sentAt = System.nanoTime();
+                try {
+                    return request.execute();
+                } catch (TelegramApiRequestException e) {
+                    Integer retryAfter = getRetryAfter(e);
+                    if (retryAfter == null || attempt >= this.policy.maxRetries()) throw e;
+
+                    log.warn("Bot API requests to chat {} are limited, retrying after {} s", ticket.chatId(), retryAfter);
+                    (lane != null ? lane.bucket : this.global).pause(TimeUnit.SECONDS.toNanos(retryAfter));
+                } finally {
+                    // Interval between messages of a chat is counted from the time the previous one was delivered
+                    if (ticket.limited()) lane.bucket.suspendRefill(sentAt);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TelegramApiException("Interrupted while waiting for rate limits", e);
+        } finally {
+            this.leave(ticket);
+        }
+    }
+
+    private static @Nullable Integer getRetryAfter(TelegramApiRequestException e) {
+        if (e.getErrorCode() == null || e.getErrorCode() != TOO_MANY_REQUESTS) return null;
+
+        return e.getParameters() != null && e.getParameters().getRetryAfter() != null ? e.getParameters().getRetryAfter() : 1;
+    }
+
+    /**
+     * @return {@code chat_id} of the API method, or null if it doesn't address a chat
+     */
+    static @Nullable String getChatId(Object method) {
+        MethodHandle getter = CHAT_ID_GETTERS.get(method.getClass());
+        if (getter == null) return null;
+
+        try {
+            Object chatId = getter.invokeExact(method);
+            return chatId == null ? null : chatId.toString();
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return true if the chat is a group, a supergroup or a channel, which are addressed by negative ids or by {@code @username}
+     */
+    static boolean isGroup(String chatId) {
+        return chatId.startsWith("-") || chatId.startsWith("@");
+    }
+
+    /**
+     * Passes requests of a chat one by one in order of their tickets.
+     */
+    private final class Lane {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition turn = this.lock.newCondition();
+        private final TokenBucket bucket;
+        private final @Nullable TokenBucket groupBucket;
+        // Guarded by the bin of the lanes map
+        private long next;
+        private volatile long serving;
+
+        private Lane(String chatId) {
+            boolean group = isGroup(chatId);
+            // Telegram tolerates short bursts in private chats, while messages to groups are spread evenly
+            this.bucket = new TokenBucket(policy.chatPerSecond(), TimeUnit.SECONDS, group ? 1 : PRIVATE_CHAT_BURST);
+            this.groupBucket = group ? new TokenBucket(policy.groupPerMinute(), TimeUnit.MINUTES, policy.groupPerMinute()) : null;
+        }
+
+        private void awaitTurn(long ticket) {
+            if (this.serving == ticket) return;
+
+            this.lock.lock();
+            try {
+                // Interrupted requests still wait for their turn, so that the order of following ones is kept
+                while (this.serving != ticket)
+                    this.turn.awaitUninterruptibly();
+            } finally {
+                this.lock.unlock();
+            }
+        }
+
+        private void advance() {
+            this.lock.lock();
+            try {
+                this.serving++;
+                this.turn.signalAll();
+            } finally {
+                this.lock.unlock();
+            }
+        }
+
+        /**
+         * Called within the bin of the lanes map, so no requests can enter the lane concurrently.
+         */
+        private boolean isReleasable() {
+            return this.serving == this.next && this.bucket.isFull() && (this.groupBucket == null || this.groupBucket.isFull());
+        }
+    }
+
+    /**
+     * Token bucket that restores {@code rate} tokens per unit of time.
+     * Tokens are reserved in advance, so that concurrent requests are spread evenly.
+     */
+    static final class TokenBucket {
+        private final double capacity;
+        private final double tokensPerNano;
+        private double tokens;
+        private long updatedAt = System.nanoTime();
+        private long pausedUntil = this.updatedAt;
+
+        TokenBucket(double rate, TimeUnit unit, double capacity) {
+            this.capacity = Math.max(1, capacity);
+            this.tokensPerNano = rate / unit.toNanos(1);
+            this.tokens = this.capacity;
+        }
+
+        /**
+         * Reserves a token and waits until it is available.
+         */
+        void acquire() throws InterruptedException {
+            sleep(this.reserve(System.nanoTime()));
+        }
+
+        void awaitPause() throws InterruptedException {
+            long delay;
+            synchronized (this) {
+                delay = this.pausedUntil - System.nanoTime();
+            }
+            sleep(delay);
+        }
+
+        /**
+         * @return nanoseconds to wait until the reserved token is available
+         */
+        synchronized long reserve(long now) {
+            this.refill(now);
+            this.tokens -= 1;
+
+            long delay = this.tokens >= 0 ? 0 : (long) Math.ceil(-this.tokens / this.tokensPerNano);
+            return Math.max(delay, this.pausedUntil - now);
+        }
+
+        /**
+         * Empties the bucket and stops restoring tokens for the given time.
+         */
+        synchronized void pause(long nanos) {
+            long now = System.nanoTime();
+            this.refill(now);
+            this.pausedUntil = Math.max(this.pausedUntil, now + nanos);
+            // Tokens are not restored during the pause
+            this.tokens = Math.min(this.tokens, 0);
+            this.updatedAt = this.pausedUntil;
+        }
+
+        /**
+         * Doesn't restore tokens for the time passed since {@code since}, keeping the tokens that are left.
+         */
+        synchronized void suspendRefill(long since) {
+            this.refill(since);
+            this.updatedAt = Math.max(this.updatedAt, System.nanoTime());
+        }
+
+        synchronized boolean isFull() {
+            this.refill(System.nanoTime());
+            return this.tokens >= this.capacity;
+        }
+
+        private void refill(long now) {
+            if (now <= this.updatedAt) return;
+
+            this.tokens = Math.min(this.capacity, this.tokens + (now - this.updatedAt) * this.tokensPerNano);
+            this.updatedAt = now;
+        }
+
+        private static void sleep(long nanos) throws InterruptedException {
+            long deadline = System.nanoTime() + nanos;
+            for (long left = nanos; left > 0; left = deadline - System.nanoTime()) {
+                LockSupport.parkNanos(left);
+                if (Thread.interrupted()) throw new InterruptedException();
+            }
+        }
+    }
+
+    @Override
+    public <T extends Serializable, Method extends BotApiMethod<T>> CompletableFuture<T> executeAsync(Method method) {
+        return this.scheduleAsync(method, () -> this.client.execute(method));
+    }
+
+    @Override
+    public <T extends Serializable, Method extends BotApiMethod<T>> T execute(Method method) throws TelegramApiException {
+        return this.schedule(method, () -> this.client.execute(method));
+    }
+
+    @Override
+    public Message execute(SendDocument sendDocument) throws TelegramApiException {
+        return this.schedule(sendDocument, () -> this.client.execute(sendDocument));
+    }
+
+    @Override
+    public Message execute(SendPhoto sendPhoto) throws TelegramApiException {
+        return this.schedule(sendPhoto, () -> this.client.execute(sendPhoto));
+    }
+
+    @Override
+    public Boolean execute(SetWebhook setWebhook) throws TelegramApiException {
+        return this.schedule(setWebhook, () -> this.client.execute(setWebhook));
+    }
+
+    @Override
+    public Message execute(SendVideo sendVideo) throws TelegramApiException {
+        return this.schedule(sendVideo, () -> this.client.execute(sendVideo));
+    }
+
+    @Override
+    public Message execute(SendVideoNote sendVideoNote) throws TelegramApiException {
+        return this.schedule(sendVideoNote, () -> this.client.execute(sendVideoNote));
+    }
+
+    @Override
+    public Message execute(SendSticker sendSticker) throws TelegramApiException {
+        return this.schedule(sendSticker, () -> this.client.execute(sendSticker));
+    }
+
+    @Override
+    public Message execute(SendAudio sendAudio) throws TelegramApiException {
+        return this.schedule(sendAudio, () -> this.client.execute(sendAudio));
+    }
+
+    @Override
+    public Message execute(SendVoice sendVoice) throws TelegramApiException {
+        return this.schedule(sendVoice, () -> this.client.execute(sendVoice));
+    }
+
+    @Override
+    public List<Message> execute(SendMediaGroup sendMediaGroup) throws TelegramApiException {
+        return this.schedule(sendMediaGroup, () -> this.client.execute(sendMediaGroup));
+    }
+
+    @Override
+    public List<Message> execute(SendPaidMedia sendPaidMedia) throws TelegramApiException {
+        return this.schedule(sendPaidMedia, () -> this.client.execute(sendPaidMedia));
+    }
+
+    @Override
+    public Boolean execute(SetChatPhoto setChatPhoto) throws TelegramApiException {
+        return this.schedule(setChatPhoto, () -> this.client.execute(setChatPhoto));
+    }
+
+    @Override
+    public Boolean execute(AddStickerToSet addStickerToSet) throws TelegramApiException {
+        return this.schedule(addStickerToSet, () -> this.client.execute(addStickerToSet));
+    }
+
+    @Override
+    public Boolean execute(ReplaceStickerInSet replaceStickerInSet) throws TelegramApiException {
+        return this.schedule(replaceStickerInSet, () -> this.client.execute(replaceStickerInSet));
+    }
+
+    @Override
+    public Boolean execute(SetStickerSetThumbnail setStickerSetThumbnail) throws TelegramApiException {
+        return this.schedule(setStickerSetThumbnail, () -> this.client.execute(setStickerSetThumbnail));
+    }
+
+    @Override
+    public Boolean execute(CreateNewStickerSet createNewStickerSet) throws TelegramApiException {
+        return this.schedule(createNewStickerSet, () -> this.client.execute(createNewStickerSet));
+    }
+
+    @Override
+    public File execute(UploadStickerFile uploadStickerFile) throws TelegramApiException {
+        return this.schedule(uploadStickerFile, () -> this.client.execute(uploadStickerFile));
+    }
+
+    @Override
+    public Serializable execute(EditMessageMedia editMessageMedia) throws TelegramApiException {
+        return this.schedule(editMessageMedia, () -> this.client.execute(editMessageMedia));
+    }
+
+    @Override
+    public Message execute(SendAnimation sendAnimation) throws TelegramApiException {
+        return this.schedule(sendAnimation, () -> this.client.execute(sendAnimation));
+    }
+
+    @Override
+    public java.io.File downloadFile(File file) throws TelegramApiException {
+        return this.client.downloadFile(file);
+    }
+
+    @Override
+    public InputStream downloadFileAsStream(File file) throws TelegramApiException {
+        return this.client.downloadFileAsStream(file);
+    }
+
+    @Override
+    public CompletableFuture<Message> executeAsync(SendDocument sendDocument) {
+        return this.scheduleAsync(sendDocument, () -> this.client.execute(sendDocument));
+    }
+
+    @Override
+    public CompletableFuture<Message> executeAsync(SendPhoto sendPhoto) {
+        return this.scheduleAsync(sendPhoto, () -> this.client.execute(sendPhoto));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> executeAsync(SetWebhook setWebhook) {
+        return this.scheduleAsync(setWebhook, () -> this.client.execute(setWebhook));
+    }
+
+    @Override
+    public CompletableFuture<Message> executeAsync(SendVideo sendVideo) {
+        return this.scheduleAsync(sendVideo, () -> this.client.execute(sendVideo));
+    }
+
+    @Override
+    public CompletableFuture<Message> executeAsync(SendVideoNote sendVideoNote) {
+        return this.scheduleAsync(sendVideoNote, () -> this.client.execute(sendVideoNote));
+    }
+
+    @Override
+    public CompletableFuture<Message> executeAsync(SendSticker sendSticker) {
+        return this.scheduleAsync(sendSticker, () -> this.client.execute(sendSticker));
+    }
+
+    @Override
+    public CompletableFuture<Message> executeAsync(SendAudio sendAudio) {
+        return this.scheduleAsync(sendAudio, () -> this.client.execute(sendAudio));
+    }
+
+    @Override
+    public CompletableFuture<Message> executeAsync(SendVoice sendVoice) {
+        return this.scheduleAsync(sendVoice, () -> this.client.execute(sendVoice));
+    }
+
+    @Override
+    public CompletableFuture<List<Message>> executeAsync(SendMediaGroup sendMediaGroup) {
+        return this.scheduleAsync(sendMediaGroup, () -> this.client.execute(sendMediaGroup));
+    }
+
+    @Override
+    public CompletableFuture<List<Message>> executeAsync(SendPaidMedia sendPaidMedia) {
+        return this.scheduleAsync(sendPaidMedia, () -> this.client.execute(sendPaidMedia));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> executeAsync(SetChatPhoto setChatPhoto) {
+        return this.scheduleAsync(setChatPhoto, () -> this.client.execute(setChatPhoto));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> executeAsync(AddStickerToSet addStickerToSet) {
+        return this.scheduleAsync(addStickerToSet, () -> this.client.execute(addStickerToSet));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> executeAsync(ReplaceStickerInSet replaceStickerInSet) {
+        return this.scheduleAsync(replaceStickerInSet, () -> this.client.execute(replaceStickerInSet));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> executeAsync(SetStickerSetThumbnail setStickerSetThumbnail) {
+        return this.scheduleAsync(setStickerSetThumbnail, () -> this.client.execute(setStickerSetThumbnail));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> executeAsync(CreateNewStickerSet createNewStickerSet) {
+        return this.scheduleAsync(createNewStickerSet, () -> this.client.execute(createNewStickerSet));
+    }
+
+    @Override
+    public CompletableFuture<File> executeAsync(UploadStickerFile uploadStickerFile) {
+        return this.scheduleAsync(uploadStickerFile, () -> this.client.execute(uploadStickerFile));
+    }
+
+    @Override
+    public CompletableFuture<Serializable> executeAsync(EditMessageMedia editMessageMedia) {
+        return this.scheduleAsync(editMessageMedia, () -> this.client.execute(editMessageMedia));
+    }
+
+    @Override
+    public CompletableFuture<Message> executeAsync(SendAnimation sendAnimation) {
+        return this.scheduleAsync(sendAnimation, () -> this.client.execute(sendAnimation));
+    }
+
+    @Override
+    public CompletableFuture<java.io.File> downloadFileAsync(File file) {
+        return this.client.downloadFileAsync(file);
+    }
+
+    @Override
+    public CompletableFuture<InputStream> downloadFileAsStreamAsync(File file) {
+        return this.client.downloadFileAsStreamAsync(file);
+    }
+}
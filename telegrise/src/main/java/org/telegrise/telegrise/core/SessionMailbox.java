@@ -0,0 +1,123 @@
+package org.telegrise.telegrise.core;
+
+import lombok.Getter;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * A mailbox of a single session that serializes processing of its updates.
+ * <p>
+ * Any thread can {@link #post(Update) post} an update and then try to {@link #drain(Consumer) drain} the mailbox.
+ * The {@code scheduled} flag is acquired using compare-and-set,
+ * so at most one thread drains the mailbox at a time while the others return immediately, without blocking or spinning.
+ * After releasing the flag, the drainer checks the queue once again and re-acquires the flag if it isn't empty,
+ * which guarantees that an update posted right before the release is never left unprocessed.
+ * <p>
+ * The mailbox can be created held, in which case no thread is able to drain it until {@link #open()} is called.
+ * This is used to accumulate updates of a session that is still being initialized.
+ * A mailbox of an evicted session is {@link #close() closed}: it rejects new updates,
+ * and updates that were posted concurrently with closing are handed over to the closing thread.
+ *
+ * @since 1.0
+ */
+public final class SessionMailbox {
+    /**
+     * Queue of pending updates.
+     * It is shared with the components that consume updates directly, like {@link org.telegrise.telegrise.MediaCollector}.
+     */
+    @Getter
+    private final BlockingQueue<Update> queue = new LinkedBlockingQueue<>();
+    private final AtomicBoolean scheduled;
+    private volatile boolean closed;
+
+    public SessionMailbox() {
+        this(false);
+    }
+
+    public SessionMailbox(boolean held) {
+        this.scheduled = new AtomicBoolean(held);
+    }
+
+    /**
+     * Adds an update to the queue.
+     *
+     * @param update update to add
+     * @return false if the mailbox is closed and the update was rejected
+     */
+    public boolean post(Update update) {
+        this.queue.add(update);
+
+        // If the update is still in the queue, the closing thread hasn't collected it and never will.
+        // Otherwise, it was collected by that thread and is going to be handled.
+        return !this.closed || !this.queue.remove(update);
+    }
+
+    /**
+     * Processes all pending updates using {@code consumer} if no other thread is draining this mailbox.
+     * The consumer must not throw exceptions, otherwise updates queued after the failed one
+     * will wait for the next drain.
+     *
+     * @param consumer function that processes a single update
+     * @return true if the current thread has drained the mailbox
+     */
+    public boolean drain(Consumer<Update> consumer) {
+        boolean drained = false;
+
+        while (this.scheduled.compareAndSet(false, true)) {
+            drained = true;
+            try {
+                Update update;
+                while ((update = this.queue.poll()) != null)
+                    consumer.accept(update);
+            } finally {
+                this.scheduled.set(false);
+            }
+
+            // Another thread could have posted an update after the last poll but before the release,
+            // and then failed to acquire the flag. This thread is responsible for such updates.
+            if (this.queue.isEmpty()) break;
+        }
+
+        return drained;
+    }
+
+    /**
+     * Releases a mailbox that was created held. Doesn't drain pending updates.
+     */
+    public void open() {
+        this.scheduled.set(false);
+    }
+
+    /**
+     * Closes the mailbox if it is neither held nor being drained.
+     * Closed mailbox can't be drained and rejects new updates.
+     *
+     * @return updates that were left in the queue, or null if the mailbox is in use and wasn't closed
+     */
+    public List<Update> close() {
+        if (!this.scheduled.compareAndSet(false, true)) return null;
+        this.closed = true;
+
+        List<Update> leftovers = new ArrayList<>();
+        this.queue.drainTo(leftovers);
+        return leftovers;
+    }
+
+    public boolean isClosed() {
+        return this.closed;
+    }
+
+    public boolean isDraining() {
+        return this.scheduled.get();
+    }
+
+    public boolean isEmpty() {
+        return this.queue.isEmpty();
+    }
+}
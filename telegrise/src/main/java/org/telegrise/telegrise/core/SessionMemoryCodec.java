@@ -0,0 +1,627 @@
+package org.telegrise.telegrise.core;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.jetbrains.annotations.Nullable;
+import org.telegram.telegrambots.meta.api.objects.message.Message;
+import org.telegrise.telegrise.SessionIdentifier;
+import org.telegrise.telegrise.core.elements.BotTranscription;
+import org.telegrise.telegrise.core.elements.Branch;
+import org.telegrise.telegrise.core.elements.Transition;
+import org.telegrise.telegrise.core.elements.base.BranchingElement;
+import org.telegrise.telegrise.core.transition.JumpPoint;
+import org.telegrise.telegrise.keyboard.KeyboardState;
+import org.telegrise.telegrise.storage.ValueCodec;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Converts {@link SessionMemoryImpl} to compact binary snapshots that are kept by {@link org.telegrise.telegrise.SessionStore}.
+ * <p>
+ * A snapshot starts with a magic number and a format version, followed by the identity of the session,
+ * its language and role, the state of navigation, keyboard states, registries, the last sent message and the memory map.
+ * Transcription elements are referenced by their path in the tree of branching elements, starting from the root,
+ * so the navigation of a snapshot is valid only for the same structure of the transcription,
+ * which is verified using a fingerprint of the tree of branching elements.
+ * When the transcription is reloaded with another structure, snapshots of the previous one are decoded
+ * using the previous structure and {@link SessionMigration migrated}; older snapshots are restored without navigation.
+ * Snapshots of other transcriptions, which have another hashcode, are not restored.
+ * Integers are written as variable-length numbers and strings as UTF-8.
+ * <p>
+ * Values of the memory map are encoded natively if they are strings, primitive wrappers, byte arrays or messages,
+ * as well as {@code ArrayList}, {@code HashSet}, {@code LinkedHashSet}, {@code HashMap} and {@code LinkedHashMap}, which are restored with the same type.
+ * Other values are encoded by a registered {@link ValueCodec} if there is one for their type, or by Java serialization otherwise,
+ * so that other collections, such as sorted or concurrent ones, keep their type and ordering.
+ * Entries that can't be encoded are skipped.
+ * If the navigation state references an element that can't be addressed, the navigation is not stored
+ * and the restored session starts from the root.
+ *
+ * @since 1.0
+ */
+@Slf4j
+final class SessionMemoryCodec {
+    private static final int MAGIC = 0x5453;  // TS
+    private static final int VERSION = 3;
+
+    private static final byte NULL = 0;
+    private static final byte STRING = 1;
+    private static final byte INTEGER = 2;
+    private static final byte LONG = 3;
+    private static final byte BOOLEAN = 4;
+    private static final byte DOUBLE = 5;
+    private static final byte BYTES = 6;
+    private static final byte LIST = 7;
+    private static final byte SET = 8;
+    private static final byte MAP = 9;
+    private static final byte MESSAGE = 10;
+    private static final byte CUSTOM = 11;
+    private static final byte SERIALIZED = 12;
+    private static final byte HASH_SET = 13;
+    private static final byte HASH_MAP = 14;
+
+    private static final ObjectMapper MESSAGE_MAPPER = new ObjectMapper()
+            .setSerializationInclusion(JsonInclude.Include.NON_NULL)
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private final BotTranscription transcription;
+    private final Map<BranchingElement, int[]> paths = new IdentityHashMap<>();
+    private int structure = 1;
+    // Codec of the transcription that was replaced by this one, and the migration of its sessions
+    private @Nullable SessionMemoryCodec previous;
+    private @Nullable SessionMigration migration;
+    private final Map<String, ValueCodec<?>> codecsByName = new HashMap<>();
+    private final List<ValueCodec<?>> codecs = new ArrayList<>();
+
+    SessionMemoryCodec(BotTranscription transcription) {
+        this.transcription = transcription;
+        this.indexPaths(transcription.getRoot(), new int[0]);
+    }
+
+    public void addValueCodec(ValueCodec<?> codec) {
+        if (this.codecsByName.putIfAbsent(codec.name(), codec) != null)
+            throw new IllegalArgumentException("Value codec named '%s' already exists".formatted(codec.name()));
+
+        this.codecs.add(codec);
+    }
+
+    /**
+     * Creates a codec for the reloaded transcription with the same value codecs,
+     * which decodes snapshots of this codec using the migration.
+     */
+    SessionMemoryCodec withTranscription(BotTranscription transcription, SessionMigration migration) {
+        SessionMemoryCodec result = new SessionMemoryCodec(transcription);
+        this.codecs.forEach(result::addValueCodec);
+
+        // Only the last replaced transcription is kept, older snapshots lose their navigation
+        this.previous = null;
+        this.migration = null;
+        result.previous = this;
+        result.migration = migration;
+        return result;
+    }
+
+    /**
+     * Returns the codec that encodes sessions of the given transcription with its structure:
+     * this codec, or the one of the replaced transcription.
+     * Sessions of older transcriptions are encoded by this codec, which stores them without navigation.
+     */
+    SessionMemoryCodec forTranscription(BotTranscription transcription) {
+        SessionMemoryCodec previous = this.previous;
+        return previous != null && previous.transcription == transcription ? previous : this;
+    }
+
+    private void indexPaths(BranchingElement element, int[] path) {
+        if (this.paths.putIfAbsent(element, path) != null) return;
+        this.structure = 31 * this.structure + Objects.hash(element.getClass().getName(), element.getName(), Arrays.hashCode(path));
+
+        List<? extends BranchingElement> children = element.getChildren();
+        if (children == null) return;
+
+        for (int i = 0; i < children.size(); i++) {
+            int[] childPath = Arrays.copyOf(path, path.length + 1);
+            childPath[path.length] = i;
+            this.indexPaths(children.get(i), childPath);
+        }
+    }
+
+    public byte[] encode(SessionMemoryImpl memory) throws IOException {
+        Output buffer = new Output();
+        DataOutputStream output = new DataOutputStream(buffer);
+
+        output.writeShort(MAGIC);
+        output.writeByte(VERSION);
+        output.writeInt(memory.getTranscriptionHashcode());
+        output.writeInt(this.structure);
+        output.writeLong(memory.getSessionIdentifier().getUserId());
+        output.writeLong(memory.getSessionIdentifier().getChatId());
+        writeNullableString(output, memory.getLanguageCode());
+        writeNullableString(output, memory.getUserRole() == null ? null : memory.getUserRole().name());
+
+        int mark = buffer.size();
+        try {
+            this.writeNavigation(output, memory);
+        } catch (UnaddressableElementException e) {
+            log.warn("Navigation of session {} can't be stored: {}", memory.getSessionIdentifier(), e.getMessage());
+            buffer.truncate(mark);
+            writeVarInt(output, 0);   // Empty stack
+            writeVarInt(output, 0);   // No current branch
+            writeVarInt(output, 0);   // No jump points
+            writeVarInt(output, 0);   // No keyboard states
+        }
+
+        writeVarInt(output, memory.getRegistryMap().size());
+        for (var registry : memory.getRegistryMap().entrySet()) {
+            List<Message> messages = List.copyOf(registry.getValue());
+            writeString(output, registry.getKey());
+            writeVarInt(output, messages.size());
+            for (Message message : messages)
+                writeMessage(output, message);
+        }
+
+        output.writeBoolean(memory.getLastSentMessage() != null);
+        if (memory.getLastSentMessage() != null)
+            writeMessage(output, memory.getLastSentMessage());
+
+        for (var entry : memory.getMemoryMap().entrySet()) {
+            mark = buffer.size();
+            try {
+                output.writeBoolean(true);
+                writeString(output, entry.getKey());
+                this.writeValue(output, entry.getValue());
+            } catch (NotSerializableException e) {
+                buffer.truncate(mark);
+                log.warn("Value of '{}' in memory of session {} can't be encoded and won't be stored",
+                        entry.getKey(), memory.getSessionIdentifier());
+            }
+        }
+        output.writeBoolean(false);
+
+        return buffer.toByteArray();
+    }
+
+    /**
+     * @return restored memory, or null if the snapshot was made for another transcription
+     */
+    public @Nullable SessionMemoryImpl decode(byte[] state) throws IOException {
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(state));
+        if (input.readUnsignedShort() != MAGIC)
+            throw new IOException("Data is not a session snapshot");
+        int version = input.readUnsignedByte();
+        if (version != VERSION)
+            throw new IOException("Unsupported version of session snapshot: " + version);
+        if (input.readInt() != this.transcription.hashCode())
+            return null;
+
+        int structure = input.readInt();
+        SessionMemoryCodec previous = this.previous;
+        SessionMigration migration = this.migration;
+        if (structure == this.structure)
+            return this.decode(input, true);
+        else if (previous != null && migration != null && structure == previous.structure)
+            return migration.migrate(previous.decode(input, true));
+        else {
+            SessionMemoryImpl memory = this.decode(input, false);
+            log.warn("Session {} was stored with another structure of the transcription and will start from the root",
+                    memory.getSessionIdentifier());
+            return memory;
+        }
+    }
+
+    /**
+     * @param navigation if false, the navigation of the snapshot is skipped and the restored session starts from the root
+     */
+    private SessionMemoryImpl decode(DataInputStream input, boolean navigation) throws IOException {
+        SessionIdentifier identifier = SessionIdentifier.of(input.readLong(), input.readLong());
+        SessionMemoryImpl memory = new SessionMemoryImpl(this.transcription.hashCode(), identifier, this.transcription.getRoleMap());
+        memory.setLanguageCode(readNullableString(input));
+
+        String role = readNullableString(input);
+        if (role != null && this.transcription.getRoleMap() != null && this.transcription.getRoleMap().containsKey(role))
+            memory.setUserRole(role);
+        else if (role != null)
+            log.warn("Role '{}' of session {} no longer exists", role, identifier);
+
+        this.readNavigation(input, navigation ? memory : null);
+
+        for (int i = readVarInt(input); i > 0; i--) {
+            String name = readString(input);
+            List<Message> messages = new ArrayList<>();
+            for (int j = readVarInt(input); j > 0; j--)
+                messages.add(readMessage(input));
+            memory.getRegistryMap().put(name, messages);
+        }
+
+        if (input.readBoolean())
+            memory.setLastSentMessage(readMessage(input));
+
+        while (input.readBoolean()) {
+            String key = readString(input);
+            Object value = this.readValue(input);
+            if (value != null) memory.getMemoryMap().put(key, value);
+        }
+
+        return memory;
+    }
+
+    private void writeNavigation(DataOutputStream output, SessionMemoryImpl memory) throws IOException {
+        List<BranchingElement> stack = List.copyOf(memory.getBranchingElements());
+        writeVarInt(output, stack.size());
+        for (BranchingElement element : stack)
+            this.writeElement(output, element);
+
+        this.writeElement(output, memory.getCurrentBranch());
+
+        List<JumpPoint> jumpPoints = List.copyOf(memory.getJumpPoints());
+        writeVarInt(output, jumpPoints.size());
+        for (JumpPoint point : jumpPoints) {
+            this.writeElement(output, point.from());
+            this.writeElement(output, point.to());
+            this.writeJumpTransition(output, point);
+        }
+
+        writeVarInt(output, memory.getKeyboardStates().size());
+        for (var entry : memory.getKeyboardStates().entrySet()) {
+            KeyboardState state = entry.getValue();
+            writeString(output, entry.getKey());
+            this.writeElement(output, state.getParent());
+
+            KeyboardState.ButtonData[][] rows = state.getButtonsData();
+            writeVarInt(output, rows.length);
+            for (KeyboardState.ButtonData[] row : rows) {
+                writeVarInt(output, row.length);
+                for (KeyboardState.ButtonData button : row) {
+                    output.writeBoolean(button != null);
+                    if (button == null) continue;
+
+                    output.writeBoolean(button.isVisible());
+                    writeNullableString(output, button.getText());
+                    writeNullableString(output, button.getCallback());
+                }
+            }
+
+            writeVarInt(output, state.getSwitchStates().size());
+            for (var entrySwitch : state.getSwitchStates().entrySet()) {
+                writeString(output, entrySwitch.getKey());
+                writeString(output, entrySwitch.getValue());
+            }
+        }
+    }
+
+    /**
+     * @param memory memory to restore the navigation to, or null to skip the navigation without resolving its elements
+     */
+    private void readNavigation(DataInputStream input, @Nullable SessionMemoryImpl memory) throws IOException {
+        for (int i = readVarInt(input); i > 0; i--) {
+            BranchingElement element = this.readElement(input, memory != null);
+            if (memory != null) memory.getBranchingElements().add(element);
+        }
+
+        Branch current = (Branch) this.readElement(input, memory != null);
+        if (memory != null) memory.setCurrentBranch(current);
+
+        for (int i = readVarInt(input); i > 0; i--) {
+            BranchingElement from = this.readElement(input, memory != null), to = this.readElement(input, memory != null);
+            BranchingElement declaring = this.readElement(input, memory != null);
+            int depth = readVarInt(input);
+            if (memory == null) continue;
+
+            Transition transition = findJumpTransition(declaring, depth);
+            memory.getJumpPoints().add(new JumpPoint(from, to, transition.getActions(), transition.getNextTransition()));
+        }
+
+        for (int i = readVarInt(input); i > 0; i--) {
+            String key = readString(input);
+            BranchingElement parent = this.readElement(input, memory != null);
+
+            KeyboardState.ButtonData[][] rows = new KeyboardState.ButtonData[readVarInt(input)][];
+            for (int r = 0; r < rows.length; r++) {
+                rows[r] = new KeyboardState.ButtonData[readVarInt(input)];
+                for (int b = 0; b < rows[r].length; b++)
+                    if (input.readBoolean())
+                        rows[r][b] = new KeyboardState.ButtonData(input.readBoolean(), readNullableString(input), readNullableString(input));
+            }
+
+            Map<String, String> switches = new HashMap<>();
+            for (int s = readVarInt(input); s > 0; s--)
+                switches.put(readString(input), readString(input));
+
+            if (memory != null)
+                memory.getKeyboardStates().put(key, new KeyboardState(parent, rows, switches));
+        }
+    }
+
+    private void writeElement(DataOutputStream output, @Nullable BranchingElement element) throws IOException {
+        if (element == null) {
+            writeVarInt(output, 0);
+            return;
+        }
+
+        int[] path = this.paths.get(element);
+        if (path == null)
+            throw new UnaddressableElementException("element '%s' is not reachable from the root".formatted(element.getName()));
+
+        writeVarInt(output, path.length + 1);
+        for (int index : path)
+            writeVarInt(output, index);
+    }
+
+    /**
+     * @param resolve if false, the path of the element is skipped and null is returned
+     */
+    private @Nullable BranchingElement readElement(DataInputStream input, boolean resolve) throws IOException {
+        if (resolve) return this.readElement(input);
+
+        for (int i = readVarInt(input) - 1; i > 0; i--)
+            readVarInt(input);
+        return null;
+    }
+
+    private @Nullable BranchingElement readElement(DataInputStream input) throws IOException {
+        int length = readVarInt(input);
+        if (length == 0) return null;
+
+        BranchingElement element = this.transcription.getRoot();
+        for (int i = 1; i < length; i++) {
+            int index = readVarInt(input);
+            List<? extends BranchingElement> children = element.getChildren();
+            if (children == null || index >= children.size())
+                throw new IOException("Session snapshot references an element that doesn't exist");
+
+            element = children.get(index);
+        }
+
+        return element;
+    }
+
+    /**
+     * Jump points keep the actions and the next transition of the transition that created them,
+     * which is addressed by the branch that declares it and its position in the chain of next transitions.
+     */
+    private void writeJumpTransition(DataOutputStream output, JumpPoint point) throws IOException {
+        for (var entry : this.paths.entrySet()) {
+            if (!(entry.getKey() instanceof Branch branch)) continue;
+
+            int depth = 0;
+            for (Transition t = branch.getTransition(); t != null; t = t.getNextTransition(), depth++) {
+                if (t.getActions() == point.actions() && t.getNextTransition() == point.nextTransition()) {
+                    this.writeElement(output, branch);
+                    writeVarInt(output, depth);
+                    return;
+                }
+            }
+        }
+
+        throw new UnaddressableElementException("transition of jump to '%s' is not declared by any branch".formatted(point.to().getName()));
+    }
+
+    private static Transition findJumpTransition(@Nullable BranchingElement declaring, int depth) throws IOException {
+        if (!(declaring instanceof Branch branch))
+            throw new IOException("Session snapshot references a transition that doesn't exist");
+
+        Transition transition = branch.getTransition();
+        for (; depth > 0 && transition != null; depth--)
+            transition = transition.getNextTransition();
+
+        if (transition == null)
+            throw new IOException("Session snapshot references a transition that doesn't exist");
+
+        return transition;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private void writeValue(DataOutputStream output, @Nullable Object value) throws IOException {
+        switch (value) {
+            case null -> output.writeByte(NULL);
+            case String s -> {
+                output.writeByte(STRING);
+                writeString(output, s);
+            }
+            case Integer i -> {
+                output.writeByte(INTEGER);
+                writeVarLong(output, i);
+            }
+            case Long l -> {
+                output.writeByte(LONG);
+                writeVarLong(output, l);
+            }
+            case Boolean b -> {
+                output.writeByte(BOOLEAN);
+                output.writeBoolean(b);
+            }
+            case Double d -> {
+                output.writeByte(DOUBLE);
+                output.writeDouble(d);
+            }
+            case byte[] bytes -> {
+                output.writeByte(BYTES);
+                writeVarInt(output, bytes.length);
+                output.write(bytes);
+            }
+            case Message message -> {
+                output.writeByte(MESSAGE);
+                writeMessage(output, message);
+            }
+            default -> {
+                ValueCodec codec = this.findCodec(value.getClass());
+                if (codec != null) {
+                    output.writeByte(CUSTOM);
+                    writeString(output, codec.name());
+                    codec.write(value, output);
+                } else if (value.getClass() == ArrayList.class) {
+                    output.writeByte(LIST);
+                    this.writeValues(output, (Collection<?>) value);
+                } else if (value.getClass() == LinkedHashSet.class || value.getClass() == HashSet.class) {
+                    output.writeByte(value.getClass() == HashSet.class ? HASH_SET : SET);
+                    this.writeValues(output, (Collection<?>) value);
+                } else if (value.getClass() == LinkedHashMap.class || value.getClass() == HashMap.class) {
+                    output.writeByte(value.getClass() == HashMap.class ? HASH_MAP : MAP);
+                    Map<?, ?> copy = new LinkedHashMap<>((Map<?, ?>) value);
+                    writeVarInt(output, copy.size());
+                    for (var entry : copy.entrySet()) {
+                        this.writeValue(output, entry.getKey());
+                        this.writeValue(output, entry.getValue());
+                    }
+                } else if (value instanceof Serializable) {
+                    output.writeByte(SERIALIZED);
+                    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                    try (ObjectOutputStream objectOutput = new ObjectOutputStream(bytes)) {
+                        objectOutput.writeObject(value);
+                    }
+                    writeVarInt(output, bytes.size());
+                    bytes.writeTo(output);
+                } else
+                    throw new NotSerializableException(value.getClass().getName());
+            }
+        }
+    }
+
+    private void writeValues(DataOutputStream output, Collection<?> collection) throws IOException {
+        // Array copy keeps null elements
+        Object[] values = collection.toArray();
+        writeVarInt(output, values.length);
+        for (Object value : values)
+            this.writeValue(output, value);
+    }
+
+    private @Nullable Object readValue(DataInputStream input) throws IOException {
+        byte tag = input.readByte();
+        return switch (tag) {
+            case NULL -> null;
+            case STRING -> readString(input);
+            case INTEGER -> (int) readVarLong(input);
+            case LONG -> readVarLong(input);
+            case BOOLEAN -> input.readBoolean();
+            case DOUBLE -> input.readDouble();
+            case BYTES -> input.readNBytes(readVarInt(input));
+            case MESSAGE -> readMessage(input);
+            case LIST -> this.readValues(input, new ArrayList<>());
+            case SET -> this.readValues(input, new LinkedHashSet<>());
+            case HASH_SET -> this.readValues(input, new HashSet<>());
+            case MAP -> this.readEntries(input, new LinkedHashMap<>());
+            case HASH_MAP -> this.readEntries(input, new HashMap<>());
+            case CUSTOM -> {
+                String name = readString(input);
+                ValueCodec<?> codec = this.codecsByName.get(name);
+                if (codec == null)
+                    throw new IOException("Session snapshot contains a value of unknown codec '%s'".formatted(name));
+                yield codec.read(input);
+            }
+            case SERIALIZED -> {
+                byte[] bytes = input.readNBytes(readVarInt(input));
+                try (ObjectInputStream objectInput = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+                    yield objectInput.readObject();
+                } catch (ClassNotFoundException e) {
+                    throw new IOException("Session snapshot contains a value of unknown class", e);
+                }
+            }
+            default -> throw new IOException("Session snapshot is corrupted: unknown value type " + tag);
+        };
+    }
+
+    private <C extends Collection<Object>> C readValues(DataInputStream input, C collection) throws IOException {
+        for (int i = readVarInt(input); i > 0; i--)
+            collection.add(this.readValue(input));
+        return collection;
+    }
+
+    private Map<Object, Object> readEntries(DataInputStream input, Map<Object, Object> map) throws IOException {
+        for (int i = readVarInt(input); i > 0; i--)
+            map.put(this.readValue(input), this.readValue(input));
+        return map;
+    }
+
+    private @Nullable ValueCodec<?> findCodec(Class<?> type) {
+        for (ValueCodec<?> codec : this.codecs)
+            if (codec.type().isAssignableFrom(type)) return codec;
+        return null;
+    }
+
+    private static void writeMessage(DataOutputStream output, Message message) throws IOException {
+        byte[] json = MESSAGE_MAPPER.writeValueAsBytes(message);
+        writeVarInt(output, json.length);
+        output.write(json);
+    }
+
+    private static Message readMessage(DataInputStream input) throws IOException {
+        return MESSAGE_MAPPER.readValue(input.readNBytes(readVarInt(input)), Message.class);
+    }
+
+    private static void writeString(DataOutputStream output, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(output, bytes.length);
+        output.write(bytes);
+    }
+
+    private static String readString(DataInputStream input) throws IOException {
+        return new String(input.readNBytes(readVarInt(input)), StandardCharsets.UTF_8);
+    }
+
+    private static void writeNullableString(DataOutputStream output, @Nullable String value) throws IOException {
+        output.writeBoolean(value != null);
+        if (value != null) writeString(output, value);
+    }
+
+    private static @Nullable String readNullableString(DataInputStream input) throws IOException {
+        return input.readBoolean() ? readString(input) : null;
+    }
+
+    private static void writeVarInt(DataOutputStream output, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            output.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        output.writeByte(value);
+    }
+
+    private static int readVarInt(DataInputStream input) throws IOException {
+        return (int) readUnsignedVarLong(input);
+    }
+
+    /**
+     * Signed numbers are zigzag-encoded, so that small negative numbers take few bytes as well.
+     */
+    private static void writeVarLong(DataOutputStream output, long value) throws IOException {
+        long zigzag = (value << 1) ^ (value >> 63);
+        while ((zigzag & ~0x7FL) != 0) {
+            output.writeByte((int) ((zigzag & 0x7F) | 0x80));
+            zigzag >>>= 7;
+        }
+        output.writeByte((int) zigzag);
+    }
+
+    private static long readVarLong(DataInputStream input) throws IOException {
+        long zigzag = readUnsignedVarLong(input);
+        return (zigzag >>> 1) ^ -(zigzag & 1);
+    }
+
+    private static long readUnsignedVarLong(DataInputStream input) throws IOException {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = input.readByte();
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return result;
+        }
+
+        throw new IOException("Session snapshot is corrupted: malformed number");
+    }
+
+    private static final class Output extends ByteArrayOutputStream {
+        Output() {
+            super(256);
+        }
+
+        void truncate(int size) {
+            this.count = size;
+        }
+    }
+
+    private static final class UnaddressableElementException extends IOException {
+        UnaddressableElementException(String message) {
+            super(message);
+        }
+    }
+}
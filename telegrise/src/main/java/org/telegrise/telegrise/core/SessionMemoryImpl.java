@@ -26,6 +26,13 @@ import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.atomic.AtomicReference;
 
 public class SessionMemoryImpl implements SessionMemory {
+    // Shallow size estimations, see #estimateRetainedSize
+    static final long MESSAGE_SIZE = 1024;
+    private static final long BASE_SIZE = 1024;
+    private static final long ENTRY_SIZE = 64;
+    private static final long OBJECT_SIZE = 64;
+    private static final long KEYBOARD_STATE_SIZE = 512;
+
     private final Map<String, Object> memory = new ConcurrentHashMap<>();
     @Getter
     private final int transcriptionHashcode;
@@ -41,6 +48,7 @@ public class SessionMemoryImpl implements SessionMemory {
 
     @Getter
     private final transient Map<MethodReference, MethodReferenceCache> cacheMap = new ConcurrentHashMap<>();
+    @Getter
     private final Map<String, List<Message>> registryMap = new ConcurrentHashMap<>();
     @Getter
     private final Map<String, KeyboardState> keyboardStates = new ConcurrentHashMap<>();
@@ -171,6 +179,42 @@ public class SessionMemoryImpl implements SessionMemory {
         return res;
     }
 
+    /**
+     * Roughly estimates the heap size retained by this memory.
+     * Values of user memory are measured shallowly: strings and arrays by their length, collections by their size.
+     *
+     * @return estimated size in bytes
+     */
+    public long estimateRetainedSize() {
+        long size = BASE_SIZE;
+        for (var entry : this.memory.entrySet())
+            size += ENTRY_SIZE + estimateShallowSize(entry.getKey()) + estimateShallowSize(entry.getValue());
+
+        for (List<Message> registry : this.registryMap.values())
+            size += ENTRY_SIZE + registry.size() * MESSAGE_SIZE;
+
+        size += this.keyboardStates.size() * KEYBOARD_STATE_SIZE;
+        size += (this.branchingElements.size() + this.jumpPoints.size() + this.cacheMap.size()) * ENTRY_SIZE;
+        if (this.lastSentMessage != null) size += MESSAGE_SIZE;
+
+        return size;
+    }
+
+    private static long estimateShallowSize(Object value) {
+        return switch (value) {
+            case null -> 0;
+            case String s -> 40 + 2L * s.length();
+            case Number ignored -> 16;
+            case Boolean ignored -> 16;
+            case byte[] bytes -> 16 + bytes.length;
+            case Object[] array -> 16 + 8L * array.length + array.length * OBJECT_SIZE;
+            case Collection<?> collection -> OBJECT_SIZE + collection.size() * (ENTRY_SIZE + OBJECT_SIZE);
+            case Map<?, ?> map -> OBJECT_SIZE + map.size() * (ENTRY_SIZE + 2 * OBJECT_SIZE);
+            case Message ignored -> MESSAGE_SIZE;
+            default -> OBJECT_SIZE;
+        };
+    }
+
     public boolean isOnRoot() {
         return branchingElements.size() == 1 && branchingElements.getFirst() instanceof Root;
     }
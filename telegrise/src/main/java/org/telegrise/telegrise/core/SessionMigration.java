@@ -0,0 +1,174 @@
+package org.telegrise.telegrise.core;
+
+import lombok.extern.slf4j.Slf4j;
+import org.jetbrains.annotations.Nullable;
+import org.telegrise.telegrise.core.elements.BotTranscription;
+import org.telegrise.telegrise.core.elements.Branch;
+import org.telegrise.telegrise.core.elements.Transition;
+import org.telegrise.telegrise.core.elements.Tree;
+import org.telegrise.telegrise.core.elements.base.BranchingElement;
+import org.telegrise.telegrise.core.elements.keyboard.Keyboard;
+import org.telegrise.telegrise.core.elements.keyboard.Row;
+import org.telegrise.telegrise.core.transition.JumpPoint;
+import org.telegrise.telegrise.keyboard.KeyboardState;
+
+import java.util.*;
+
+/**
+ * Moves the state of live sessions from one transcription to its reloaded version.
+ * <p>
+ * Branching elements of the previous transcription are matched with the elements of the new one along the tree,
+ * starting from the root: named elements by their names and types, unnamed ones by their position among
+ * unnamed siblings of the same type. If the navigation of a session references an element that has no match,
+ * the navigation is dropped and the session starts from the root.
+ * Keyboard states are kept only if their keyboards have the same layout.
+ *
+ * @since 1.0
+ */
+@Slf4j
+final class SessionMigration {
+    private final BotTranscription transcription;
+    private final Map<BranchingElement, BranchingElement> mapping = new IdentityHashMap<>();
+
+    SessionMigration(BotTranscription previous, BotTranscription transcription) {
+        this.transcription = transcription;
+        this.match(previous.getRoot(), transcription.getRoot());
+    }
+
+    private void match(BranchingElement previous, BranchingElement current) {
+        if (this.mapping.putIfAbsent(previous, current) != null) return;
+
+        List<? extends BranchingElement> previousChildren = previous.getChildren(), currentChildren = current.getChildren();
+        if (previousChildren == null || currentChildren == null) return;
+
+        for (BranchingElement child : previousChildren) {
+            BranchingElement counterpart = findCounterpart(child, previousChildren, currentChildren);
+            if (counterpart != null) this.match(child, counterpart);
+        }
+    }
+
+    private static @Nullable BranchingElement findCounterpart(BranchingElement element, List<? extends BranchingElement> siblings,
+                                                              List<? extends BranchingElement> candidates) {
+        if (element.getName() != null)
+            return candidates.stream()
+                    .filter(c -> c.getClass() == element.getClass() && element.getName().equals(c.getName()))
+                    .findFirst().orElse(null);
+
+        int position = unnamedOfType(siblings, element.getClass()).indexOf(element);
+        List<BranchingElement> unnamed = unnamedOfType(candidates, element.getClass());
+        return position < unnamed.size() ? unnamed.get(position) : null;
+    }
+
+    private static List<BranchingElement> unnamedOfType(List<? extends BranchingElement> elements, Class<?> type) {
+        return elements.stream().filter(e -> e.getName() == null && e.getClass() == type)
+                .map(BranchingElement.class::cast).toList();
+    }
+
+    /**
+     * @return element of the new transcription that corresponds to the given one, or null if it was removed
+     */
+    @Nullable BranchingElement map(BranchingElement element) {
+        return this.mapping.get(element);
+    }
+
+    /**
+     * Creates memory for the new transcription that contains the state of the given one.
+     * Method reference caches are not carried over, since the references are parsed anew.
+     */
+    SessionMemoryImpl migrate(SessionMemoryImpl previous) {
+        SessionMemoryImpl memory = new SessionMemoryImpl(this.transcription.hashCode(), previous.getSessionIdentifier(),
+                this.transcription.getRoleMap());
+        memory.setLanguageCode(previous.getLanguageCode());
+
+        if (previous.getUserRole() != null) {
+            if (this.transcription.getRoleMap() != null && this.transcription.getRoleMap().containsKey(previous.getUserRole().name()))
+                memory.setUserRole(previous.getUserRole().name());
+            else
+                log.warn("Role '{}' of session {} no longer exists", previous.getUserRole().name(), previous.getSessionIdentifier());
+        }
+
+        if (!this.migrateNavigation(previous, memory)) {
+            log.warn("Navigation of session {} references removed elements, the session will start from the root",
+                    previous.getSessionIdentifier());
+            memory.getBranchingElements().clear();
+            memory.setCurrentBranch(null);
+            memory.getJumpPoints().clear();
+            memory.getKeyboardStates().clear();
+        }
+
+        previous.getRegistryMap().forEach((name, messages) -> memory.getRegistryMap().put(name, new ArrayList<>(messages)));
+        memory.setLastSentMessage(previous.getLastSentMessage());
+        memory.getMemoryMap().putAll(previous.getMemoryMap());
+
+        return memory;
+    }
+
+    private boolean migrateNavigation(SessionMemoryImpl previous, SessionMemoryImpl memory) {
+        for (BranchingElement element : previous.getBranchingElements()) {
+            BranchingElement counterpart = this.map(element);
+            if (counterpart == null) return false;
+            memory.getBranchingElements().add(counterpart);
+        }
+
+        if (previous.getCurrentBranch() != null) {
+            if (!(this.map(previous.getCurrentBranch()) instanceof Branch branch)) return false;
+            memory.setCurrentBranch(branch);
+        }
+
+        for (JumpPoint point : previous.getJumpPoints()) {
+            BranchingElement from = this.map(point.from()), to = this.map(point.to());
+            Transition transition = this.findTransition(point);
+            if (from == null || to == null || transition == null) return false;
+
+            memory.getJumpPoints().add(new JumpPoint(from, to, transition.getActions(), transition.getNextTransition()));
+        }
+
+        previous.getKeyboardStates().forEach((key, state) -> {
+            BranchingElement parent = this.map(state.getParent());
+            if (parent != null && this.hasSameLayout(key, state))
+                memory.getKeyboardStates().put(key, new KeyboardState(parent, state.getButtonsData(), state.getSwitchStates()));
+        });
+
+        return true;
+    }
+
+    /**
+     * Finds the transition that created the jump point by the branch that declares it
+     * and its position in the chain of next transitions, see {@link SessionMemoryCodec}.
+     */
+    private @Nullable Transition findTransition(JumpPoint point) {
+        for (var entry : this.mapping.entrySet()) {
+            if (!(entry.getKey() instanceof Branch branch) || !(entry.getValue() instanceof Branch counterpart)) continue;
+
+            Transition current = counterpart.getTransition();
+            for (Transition t = branch.getTransition(); t != null && current != null; t = t.getNextTransition()) {
+                if (t.getActions() == point.actions() && t.getNextTransition() == point.nextTransition())
+                    return current;
+
+                current = current.getNextTransition();
+            }
+        }
+
+        return null;
+    }
+
+    private boolean hasSameLayout(String key, KeyboardState state) {
+        // Keys are composed as '<tree name>:<keyboard name>', see SessionMemoryImpl#putKeyboardState
+        int separator = key.indexOf(':');
+        if (separator < 0) return false;
+
+        if (!(this.transcription.getMemory().get(key.substring(0, separator)) instanceof Tree tree)
+                || !(this.transcription.getMemory().get(tree, key.substring(separator + 1)) instanceof Keyboard keyboard)
+                || keyboard.getRows() == null)
+            return false;
+
+        KeyboardState.ButtonData[][] rows = state.getButtonsData();
+        List<Row> currentRows = keyboard.getRows();
+        if (rows.length != currentRows.size()) return false;
+
+        for (int i = 0; i < rows.length; i++)
+            if (rows[i].length != currentRows.get(i).getButtons().size()) return false;
+
+        return true;
+    }
+}
@@ -0,0 +1,363 @@
+package org.telegrise.telegrise.core;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.telegram.telegrambots.meta.api.objects.Update;
+import org.telegrise.telegrise.SessionEvictionPolicy;
+import org.telegrise.telegrise.SessionIdentifier;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Table of active sessions that evicts them according to the {@link SessionEvictionPolicy}.
+ * <p>
+ * Eviction is performed by a maintenance task, which runs periodically and after insertions that exceed the limit
+ * of sessions. Only one maintenance task runs at a time, and lookups are never blocked by it.
+ * When limits are exceeded, the table is trimmed a bit below them so that maintenance isn't triggered by every insertion.
+ * <p>
+ * Sessions that are processing updates or being initialized are skipped by the maintenance.
+ * An evicted session is removed from the table first and then passed to the {@code writeBack} callback.
+ * Until the callback returns, {@link #awaitRemoval(SessionIdentifier)} blocks,
+ * so that a new session for the same identifier isn't restored from a state that is being written.
+ * Updates that were queued to the evicted session are kept by the table and posted to the next session
+ * that is put for the same identifier before it is published, so that they are processed before any newer update.
+ * After that, the session is passed to the eviction listener along with these updates.
+ *
+ * @since 1.0
+ */
+@Slf4j
+final class SessionTable {
+    private static final long MAX_SWEEP_PERIOD = TimeUnit.SECONDS.toMillis(30);
+    private static final long MIN_SWEEP_PERIOD = TimeUnit.SECONDS.toMillis(1);
+    // Share of the most recently active sessions that forms the admission window of W-TinyLFU
+    private static final int WINDOW_DIVISOR = 100;
+    // Share of the limit to trim after it is exceeded
+    private static final int TRIM_DIVISOR = 20;
+
+    private final ConcurrentMap<SessionIdentifier, UserSession> sessions = new ConcurrentHashMap<>();
+    // Completed once evicted sessions are written back
+    private final ConcurrentMap<SessionIdentifier, CompletableFuture<Void>> removals = new ConcurrentHashMap<>();
+    // Updates queued to evicted sessions, taken by the sessions that replace them
+    private final ConcurrentMap<SessionIdentifier, List<Update>> leftovers = new ConcurrentHashMap<>();
+    private final Consumer<UserSession> writeBack;
+    private final BiConsumer<UserSession, List<Update>> evictionListener;
+    private final AtomicBoolean maintaining = new AtomicBoolean();
+    @Getter
+    private volatile SessionEvictionPolicy policy = SessionEvictionPolicy.NONE;
+    private volatile FrequencySketch sketch;
+    private ScheduledExecutorService sweeper;
+
+    SessionTable(Consumer<UserSession> writeBack, BiConsumer<UserSession, List<Update>> evictionListener) {
+        this.writeBack = writeBack;
+        this.evictionListener = evictionListener;
+    }
+
+    public void setPolicy(SessionEvictionPolicy policy) {
+        this.policy = Objects.requireNonNull(policy);
+        boolean frequencyBased = policy.algorithm() == SessionEvictionPolicy.Algorithm.W_TINY_LFU
+                && (policy.maxSessions() > 0 || policy.maxRetainedSize() > 0);
+        this.sketch = frequencyBased ? new FrequencySketch(policy.maxSessions() > 0 ? policy.maxSessions() : 1 << 16) : null;
+    }
+
+    /**
+     * Starts periodic maintenance if the policy is bounded.
+     */
+    public synchronized void start() {
+        if (this.sweeper != null || !this.policy.isBounded()) return;
+
+        Duration timeout = this.policy.idleTimeout();
+        long period = timeout == null ? MAX_SWEEP_PERIOD
+                : Math.max(MIN_SWEEP_PERIOD, Math.min(MAX_SWEEP_PERIOD, timeout.toMillis() / 2));
+
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "telegrise-session-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.sweeper.scheduleWithFixedDelay(this::maintain, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (this.sweeper != null) {
+            this.sweeper.shutdownNow();
+            this.sweeper = null;
+        }
+    }
+
+    /**
+     * Returns session and records an access to it.
+     */
+    public UserSession get(SessionIdentifier identifier) {
+        UserSession session = this.sessions.get(identifier);
+        if (session != null) this.recordAccess(identifier, session);
+        return session;
+    }
+
+    /**
+     * Returns session without recording an access to it.
+     */
+    public UserSession peek(SessionIdentifier identifier) {
+        return this.sessions.get(identifier);
+    }
+
+    /**
+     * Puts the session unless the table already contains one for the identifier.
+     * Leftover updates of an evicted session with the same identifier are posted to the session before it is published.
+     *
+     * @return the existing session, or null if the session was put
+     */
+    public UserSession putIfAbsent(SessionIdentifier identifier, UserSession session) {
+        UserSession existing = this.sessions.compute(identifier, (k, current) -> current != null ? current : this.takeLeftovers(k, session));
+        if (existing != session) {
+            this.recordAccess(identifier, existing);
+            return existing;
+        }
+
+        this.afterInsertion(identifier);
+        return null;
+    }
+
+    public void put(SessionIdentifier identifier, UserSession session) {
+        this.sessions.compute(identifier, (k, current) -> this.takeLeftovers(k, session));
+        this.afterInsertion(identifier);
+    }
+
+    /**
+     * @return true if updates of an evicted session with this identifier wait for a new session
+     */
+    public boolean hasLeftovers(SessionIdentifier identifier) {
+        return this.leftovers.containsKey(identifier);
+    }
+
+    private UserSession takeLeftovers(SessionIdentifier identifier, UserSession session) {
+        List<Update> updates = this.leftovers.remove(identifier);
+        if (updates != null) updates.forEach(session::update);
+        return session;
+    }
+
+    /**
+     * Replaces the session only if the table still contains the given previous one.
+     */
+    public boolean replace(SessionIdentifier identifier, UserSession previous, UserSession session) {
+        return this.sessions.replace(identifier, previous, session);
+    }
+
+    /**
+     * Waits until the session with this identifier, if it is being evicted, is written back.
+     */
+    public void awaitRemoval(SessionIdentifier identifier) {
+        CompletableFuture<Void> removal = this.removals.get(identifier);
+        if (removal != null) removal.join();
+    }
+
+    public UserSession remove(SessionIdentifier identifier) {
+        return this.sessions.remove(identifier);
+    }
+
+    public boolean containsKey(SessionIdentifier identifier) {
+        return this.sessions.containsKey(identifier);
+    }
+
+    public int size() {
+        return this.sessions.size();
+    }
+
+    public Collection<UserSession> values() {
+        return this.sessions.values();
+    }
+
+    private void recordAccess(SessionIdentifier identifier, UserSession session) {
+        session.touch();
+        FrequencySketch sketch = this.sketch;
+        if (sketch != null) sketch.increment(identifier.hashCode());
+    }
+
+    private void afterInsertion(SessionIdentifier identifier) {
+        FrequencySketch sketch = this.sketch;
+        if (sketch != null) sketch.increment(identifier.hashCode());
+
+        int maxSessions = this.policy.maxSessions();
+        if (maxSessions > 0 && this.sessions.size() > maxSessions && !this.maintaining.get())
+            Thread.ofVirtual().start(this::maintain);
+    }
+
+    private void maintain() {
+        if (!this.maintaining.compareAndSet(false, true)) return;
+        try {
+            int evicted = this.evict();
+            if (evicted > 0) log.debug("Evicted {} sessions, {} left", evicted, this.sessions.size());
+        } catch (Throwable e) {
+            log.error("Session eviction has failed", e);
+        } finally {
+            this.maintaining.set(false);
+        }
+    }
+
+    /**
+     * Evicts sessions that exceed the limits of the current policy.
+     * This method must not be called concurrently.
+     *
+     * @return number of evicted sessions
+     */
+    int evict() {
+        SessionEvictionPolicy policy = this.policy;
+        if (!policy.isBounded()) return 0;
+
+        long now = System.currentTimeMillis();
+        long timeout = policy.idleTimeout() == null ? Long.MAX_VALUE : policy.idleTimeout().toMillis();
+        int evicted = 0;
+
+        List<Candidate> candidates = new ArrayList<>(this.sessions.size());
+        for (UserSession session : this.sessions.values()) {
+            long lastAccess = session.getLastAccessedAt();
+            if (now - lastAccess > timeout) {
+                if (this.tryEvict(session)) evicted++;
+            } else
+                candidates.add(new Candidate(session, lastAccess));
+        }
+
+        int maxSessions = policy.maxSessions();
+        long maxSize = policy.maxRetainedSize();
+        boolean countExceeded = maxSessions > 0 && candidates.size() > maxSessions;
+        long size = maxSize > 0 ? candidates.stream().mapToLong(c -> c.session.estimateRetainedSize()).sum() : 0;
+        boolean sizeExceeded = maxSize > 0 && size > maxSize;
+        if (!countExceeded && !sizeExceeded) return evicted;
+
+        int targetCount = countExceeded ? maxSessions - maxSessions / TRIM_DIVISOR : Integer.MAX_VALUE;
+        long targetSize = sizeExceeded ? maxSize - maxSize / TRIM_DIVISOR : Long.MAX_VALUE;
+        int count = candidates.size();
+
+        for (Candidate candidate : this.orderVictims(candidates, policy)) {
+            if (count <= targetCount && size <= targetSize) break;
+
+            long retained = maxSize > 0 ? candidate.session.estimateRetainedSize() : 0;
+            if (this.tryEvict(candidate.session)) {
+                evicted++;
+                count--;
+                size -= retained;
+            }
+        }
+
+        return evicted;
+    }
+
+    private List<Candidate> orderVictims(List<Candidate> candidates, SessionEvictionPolicy policy) {
+        // Access times are captured in candidates, so the ordering is stable even if sessions are accessed during sorting
+        candidates.sort(Comparator.comparingLong(Candidate::lastAccess));
+
+        FrequencySketch sketch = this.sketch;
+        if (policy.algorithm() != SessionEvictionPolicy.Algorithm.W_TINY_LFU || sketch == null) return candidates;
+
+        int window = Math.max(1, candidates.size() / WINDOW_DIVISOR);
+        List<Candidate> main = new ArrayList<>(candidates.subList(0, Math.max(0, candidates.size() - window)));
+        List<Candidate> recent = candidates.subList(main.size(), candidates.size());
+
+        main.replaceAll(c -> new Candidate(c.session, c.lastAccess, sketch.frequency(c.session.getSessionMemory().getSessionIdentifier().hashCode())));
+        main.sort(Comparator.comparingInt(Candidate::frequency).thenComparingLong(Candidate::lastAccess));
+        main.addAll(recent);
+
+        return main;
+    }
+
+    private boolean tryEvict(UserSession session) {
+        List<Update> queued = session.close();
+        if (queued == null) return false;   // Session is busy
+
+        SessionIdentifier identifier = session.getSessionMemory().getSessionIdentifier();
+        CompletableFuture<Void> removal = new CompletableFuture<>();
+        // Registered before the removal, so that lookups that miss the session find it
+        this.removals.put(identifier, removal);
+        try {
+            // Session could have been killed or replaced meanwhile, in which case it is already gone
+            if (!this.sessions.remove(identifier, session)) return false;
+
+            // Lookups that miss the session wait for the removal, so the updates are kept before any new session is put
+            if (!queued.isEmpty())
+                this.leftovers.merge(identifier, queued, (previous, added) -> {
+                    List<Update> merged = new ArrayList<>(previous);
+                    merged.addAll(added);
+                    return merged;
+                });
+            this.writeBack.accept(session);
+        } finally {
+            this.removals.remove(identifier, removal);
+            removal.complete(null);
+        }
+
+        this.evictionListener.accept(session, queued);
+        return true;
+    }
+
+    private record Candidate(UserSession session, long lastAccess, int frequency) {
+        Candidate(UserSession session, long lastAccess) {
+            this(session, lastAccess, 0);
+        }
+    }
+
+    /**
+     * Count-min sketch that estimates how often keys are accessed, using four 4-bit counters per key.
+     * Counters are halved periodically, so that the frequencies of former users decay over time.
+     * <p>
+     * Updates are not synchronized: concurrent increments may be lost, which only makes estimations less precise.
+     */
+    static final class FrequencySketch {
+        private static final int DEPTH = 4;
+        private static final int MAX_COUNT = 15;
+        private static final int[] SEEDS = {0x97cb3127, 0xb27e3bd1, 0x4ae8c1f3, 0x6d2b79f5};
+
+        private final byte[] table;
+        private final int mask;
+        private final int sampleSize;
+        private int additions;
+
+        FrequencySketch(int capacity) {
+            int width = Integer.highestOneBit(Math.clamp(capacity, 64, 1 << 24) - 1) << 1;
+            this.table = new byte[width * DEPTH];
+            this.mask = width - 1;
+            this.sampleSize = width * 10;
+        }
+
+        void increment(int hash) {
+            boolean added = false;
+            for (int i = 0; i < DEPTH; i++) {
+                int index = this.indexOf(hash, i);
+                if (this.table[index] < MAX_COUNT) {
+                    this.table[index]++;
+                    added = true;
+                }
+            }
+
+            if (added && ++this.additions >= this.sampleSize)
+                this.reset();
+        }
+
+        int frequency(int hash) {
+            int frequency = MAX_COUNT;
+            for (int i = 0; i < DEPTH; i++)
+                frequency = Math.min(frequency, this.table[this.indexOf(hash, i)]);
+            return frequency;
+        }
+
+        private int indexOf(int hash, int row) {
+            int h = (hash + SEEDS[row]) * 0x9e3779b9;
+            h ^= h >>> 16;
+            return row * (this.mask + 1) + (h & this.mask);
+        }
+
+        private void reset() {
+            for (int i = 0; i < this.table.length; i++)
+                this.table[i] = (byte) (this.table[i] >>> 1);
+            this.additions /= 2;
+        }
+    }
+}
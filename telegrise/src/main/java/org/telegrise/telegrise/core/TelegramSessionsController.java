@@ -18,24 +18,28 @@ import org.telegrise.telegrise.exceptions.TelegRiseRuntimeException;
 import org.telegrise.telegrise.exceptions.TelegRiseSessionException;
 import org.telegrise.telegrise.resources.ResourceFactory;
 import org.telegrise.telegrise.senders.BotSender;
+import org.telegrise.telegrise.storage.ValueCodec;
 import org.telegrise.telegrise.types.BotUser;
 import org.telegrise.telegrise.utils.ChatTypes;
 import org.telegrise.telegrise.utils.MessageUtils;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 import java.util.function.BiConsumer;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 @Slf4j
 public class TelegramSessionsController implements SessionsManager, InternalSessionExtensions {
-    private final ConcurrentMap<SessionIdentifier, UserSession> sessions = new ConcurrentHashMap<>();
-    @Getter
-    private final BotTranscription transcription;
+    private final SessionTable sessions = new SessionTable(this::writeBack, this::onSessionEvicted);
+    // Replaced as a whole when the transcription is reloaded, so that readers never mix its parts
+    private volatile TranscriptionState state;
+    @Setter
+    private @Nullable SessionStore sessionStore;
     @Setter
     private RoleProvider roleProvider;
     @Setter
@@ -47,15 +51,19 @@ public class TelegramSessionsController implements SessionsManager, InternalSess
     private TelegramClient client;
     private List<Class<? extends UpdateHandler>> userHandlersClasses;
     private UpdateHandlersController handlersController;
-    @Getter
-    private TranscriptionManager transcriptionManager;
+    private BotSender botSender;
     @Getter @Setter
     private BotUser botUser;
     @Setter
     private ResourceInjector mainInjector;
 
+    /**
+     * Transcription with the codec of its sessions and its manager, which is null until the controller is initialized.
+     */
+    private record TranscriptionState(BotTranscription transcription, SessionMemoryCodec codec, @Nullable TranscriptionManager manager) {}
+
     public TelegramSessionsController(BotTranscription transcription, List<ResourceFactory<?>> resourceFactories, List<Class<? extends UpdateHandler>> handlersClasses) {
-        this.transcription = transcription;
+        this.state = new TranscriptionState(transcription, new SessionMemoryCodec(transcription), null);
         this.resourceFactories = resourceFactories;
         this.handlersController = new UpdateHandlersController(null);
         this.userHandlersClasses = handlersClasses;
@@ -70,33 +78,115 @@ public class TelegramSessionsController implements SessionsManager, InternalSess
                 .collect(Collectors.<Class<? extends UpdateHandler>>partitioningBy(h -> h.getAnnotation(Handler.class).independent()));
         this.userHandlersClasses = splitHandlers.get(false);
 
-        BotSender botSender = new BotSender(client, null);
-        this.transcriptionManager = new TranscriptionManager(transcription, u -> new ResourcePool(u, null, botSender, null, botUser));
+        this.botSender = new BotSender(client, null);
+        BotTranscription transcription = this.state.transcription();
+        this.state = new TranscriptionState(transcription, this.state.codec(), this.createTranscriptionManager(transcription));
 
         this.handlersController = new UpdateHandlersController(mainInjector);
         splitHandlers.get(true).forEach(this.handlersController::add);
+        this.sessions.start();
+
+        if (transcription.getRoot().getChatTypes() == null)
+            transcription.getRoot().setChatTypes(new String[]{ChatTypes.ALL});
+
+        if (Boolean.parseBoolean(transcription.getAutoCommands()))
+            this.updateCommands();
+    }
+
+    public BotTranscription getTranscription() {
+        return this.state.transcription();
+    }
+
+    @Override
+    public TranscriptionManager getTranscriptionManager() {
+        return this.state.manager();
+    }
 
-        if (this.transcription.getRoot().getChatTypes() == null)
-            this.transcription.getRoot().setChatTypes(new String[]{ChatTypes.ALL});
+    private TranscriptionManager createTranscriptionManager(BotTranscription transcription) {
+        return new TranscriptionManager(transcription, u -> new ResourcePool(u, null, this.botSender, null, this.botUser));
+    }
+
+    private void updateCommands() {
+        try {
+            this.client.execute(new DeleteMyCommands());
+        } catch (TelegramApiException e) {
+            log.error("Unable to delete commands", e);
+        }
+
+        ChatTypes.GENERAL_SCOPES_LIST.forEach(l -> {
+            SetMyCommands setMyCommands = this.state.transcription().getSetCommands(l);
 
-        if (Boolean.parseBoolean(this.transcription.getAutoCommands())) {
             try {
-                this.client.execute(new DeleteMyCommands());
+                if (!setMyCommands.getCommands().isEmpty())
+                    this.client.execute(setMyCommands);
             } catch (TelegramApiException e) {
-                log.error("Unable to delete commands", e);
+                log.error("Unable to set commands", e);
             }
+        });
+    }
+
+    /**
+     * Replaces the transcription with its reloaded version, keeping live sessions, see {@link SessionMigration}.
+     * Sessions that are processing updates at the moment are migrated after they finish,
+     * updates they have queued are processed by the migrated sessions.
+     * New sessions are created with the new transcription as soon as this method starts migrating.
+     */
+    public synchronized void reloadTranscription(BotTranscription transcription) {
+        if (transcription.getRoot().getChatTypes() == null)
+            transcription.getRoot().setChatTypes(new String[]{ChatTypes.ALL});
+
+        TranscriptionState previous = this.state;
+        SessionMigration migration = new SessionMigration(previous.transcription(), transcription);
+        this.state = new TranscriptionState(transcription, previous.codec().withTranscription(transcription, migration),
+                this.createTranscriptionManager(transcription));
+
+        if (Boolean.parseBoolean(transcription.getAutoCommands()))
+            this.updateCommands();
+
+        // Sessions created concurrently with the previous transcription are picked up by subsequent passes
+        int migrated = 0;
+        List<UserSession> pending;
+        while (!(pending = this.sessions.values().stream().filter(s -> s.getTranscription() != transcription).toList()).isEmpty()) {
+            int passed = migrated;
+            for (UserSession session : pending)
+                if (this.migrateSession(session, transcription, migration)) migrated++;
+
+            if (passed == migrated)
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));   // All remaining sessions are busy
+        }
+
+        log.info("Transcription reloaded, {} sessions migrated", migrated);
+    }
 
-            ChatTypes.GENERAL_SCOPES_LIST.forEach(l -> {
-                SetMyCommands setMyCommands = this.transcription.getSetCommands(l);
+    /**
+     * @return false if the session is busy and must be migrated later
+     */
+    private boolean migrateSession(UserSession previous, BotTranscription transcription, SessionMigration migration) {
+        List<Update> leftovers = previous.close();
+        if (leftovers == null) return false;
 
-                try {
-                    if (!setMyCommands.getCommands().isEmpty())
-                        this.client.execute(setMyCommands);
-                } catch (TelegramApiException e) {
-                    log.error("Unable to set commands", e);
-                }
-            });
+        SessionIdentifier identifier = previous.getSessionMemory().getSessionIdentifier();
+        UserSession session;
+        boolean hydrated = true;
+        try {
+            session = new UserSession(identifier, migration.migrate(previous.getSessionMemory()), transcription);
+        } catch (RuntimeException e) {
+            log.error("Unable to migrate session {}, a new one will be created", identifier, e);
+            session = new UserSession(identifier, transcription);
+            hydrated = false;
         }
+
+        // Posted before the session is published, so that they are processed before newer updates
+        leftovers.forEach(session::update);
+        // Killed sessions are not restored
+        if (!this.sessions.replace(identifier, previous, session)) return true;
+
+        if (hydrated)
+            this.initializeHydratedSession(session);
+        else
+            this.initializeSession(session, previous.getSessionMemory().getLanguageCode());
+
+        return true;
     }
 
     public void initializeSessions() {
@@ -114,6 +204,7 @@ public class TelegramSessionsController implements SessionsManager, InternalSess
         User from = MessageUtils.getFrom(update);
         if (from != null && !from.getIsBot()) {
             SessionIdentifier identifier;
+            BotTranscription transcription = this.state.transcription();
             if (transcription.getSessionType().equals(SessionIdentifier.SESSION_CHAT)){
                 Chat chat = MessageUtils.getChat(update);
                 identifier = chat != null ? SessionIdentifier.of(from, chat) : SessionIdentifier.ofUserOnly(from);
@@ -122,18 +213,134 @@ public class TelegramSessionsController implements SessionsManager, InternalSess
             } else
                 throw new IllegalStateException(transcription.getSessionType());
 
-            if (!sessions.containsKey(identifier))
-                this.createSession(identifier, from.getLanguageCode());
+            this.dispatch(identifier, update, from.getLanguageCode());
+        }
+    }
+
+    private void dispatch(SessionIdentifier identifier, Update update, @Nullable String languageCode){
+        while (true) {
+            UserSession session = this.sessions.get(identifier);
+            if (session == null)
+                session = this.obtainSession(identifier, languageCode);
+
+            if (session.update(update)) {
+                // Returns immediately if another thread is processing updates of this session
+                session.run();
+                return;
+            }
+
+            Thread.yield();   // Session is being evicted and will be removed from the table right away
+        }
+    }
+
+    public void addSessionValueCodec(ValueCodec<?> codec) {
+        this.state.codec().addValueCodec(codec);
+    }
+
+    public void setEvictionPolicy(SessionEvictionPolicy policy) {
+        this.sessions.setPolicy(policy);
+    }
+
+    /**
+     * Stops eviction and writes all active sessions to the session store, if it is used.
+     */
+    public void shutdown() {
+        this.sessions.stop();
+        if (this.sessionStore == null) return;
+
+        this.sessions.values().forEach(this::writeBack);
+        try {
+            this.sessionStore.close();
+        } catch (IOException e) {
+            log.error("Unable to close session store", e);
+        }
+    }
+
+    void writeBack(UserSession session) {
+        if (this.sessionStore == null) return;
+
+        SessionMemoryImpl memory = session.getSessionMemory();
+        try {
+            // Sessions of the replaced transcription are encoded with its structure, so that they are migrated when restored
+            SessionMemoryCodec codec = this.state.codec().forTranscription(session.getTranscription());
+            this.sessionStore.save(memory.getSessionIdentifier(), codec.encode(memory));
+        } catch (IOException | RuntimeException e) {
+            log.error("Unable to store session {}", memory.getSessionIdentifier(), e);
+        }
+    }
+
+    private @Nullable SessionMemoryImpl hydrate(SessionIdentifier identifier, SessionMemoryCodec codec) {
+        if (this.sessionStore == null) return null;
+
+        try {
+            byte[] state = this.sessionStore.load(identifier);
+            SessionMemoryImpl memory = state == null ? null : codec.decode(state);
+            if (state != null && memory == null)
+                log.warn("Stored session {} relates to another bot transcription and will be replaced", identifier);
+
+            return memory;
+        } catch (IOException | RuntimeException e) {
+            log.error("Unable to load stored session {}, a new one will be created", identifier, e);
+            return null;
+        }
+    }
+
+    private void deleteStored(SessionIdentifier identifier) {
+        if (this.sessionStore == null) return;
+
+        try {
+            this.sessionStore.delete(identifier);
+        } catch (IOException e) {
+            log.error("Unable to delete stored session {}", identifier, e);
+        }
+    }
+
+    private void onSessionEvicted(UserSession session, List<Update> leftovers) {
+        SessionIdentifier identifier = session.getSessionMemory().getSessionIdentifier();
+        log.debug("Session {} was evicted", identifier);
+        destructionCallbacks.forEach(c -> c.accept(identifier, session.getSessionMemory()));
 
-            this.updateSession(this.sessions.get(identifier), update);
+        // Leftovers are kept by the table and taken by the next session of this identifier before it is published,
+        // so they are never processed after newer updates. The session is created right away if no update comes first.
+        if (!leftovers.isEmpty()) {
+            String languageCode = session.getSessionMemory().getLanguageCode();
+            Thread.ofVirtual().start(() -> this.resumeEvicted(identifier, languageCode));
         }
     }
 
-    private void updateSession(UserSession session, Update update){
-        session.update(update);
+    private void resumeEvicted(SessionIdentifier identifier, @Nullable String languageCode) {
+        UserSession session = this.sessions.peek(identifier);
+        if (session == null) {
+            if (!this.sessions.hasLeftovers(identifier)) return;
+            session = this.obtainSession(identifier, languageCode);
+        }
+
+        // Processes the leftovers if the session that took them has already been initialized
+        session.run();
+    }
 
-        if (!session.isRunning())
-            session.run();
+    /**
+     * Creates a session unless a concurrent update has already done it, in which case returns the existing one.
+     * If the session store contains the session, it is hydrated from the stored state,
+     * once the write-back of its evicted instance, if any, is finished.
+     * Updates posted to the session before it is initialized are processed by the thread that finishes the initialization.
+     */
+    private UserSession obtainSession(SessionIdentifier identifier, @Nullable String languageCode) {
+        this.sessions.awaitRemoval(identifier);
+        // Stored state is decoded by the codec of the transcription the session is built with
+        TranscriptionState state = this.state;
+        SessionMemoryImpl stored = this.hydrate(identifier, state.codec());
+        UserSession session = stored == null ? new UserSession(identifier, state.transcription())
+                : new UserSession(identifier, stored, state.transcription());
+        UserSession existing = this.sessions.putIfAbsent(identifier, session);  // This MUST happen before session#initialize
+        if (existing != null) return existing;
+
+        if (stored == null)
+            this.initializeSession(session, languageCode);
+        else
+            this.initializeHydratedSession(session);
+
+        return session;
     }
 
     @Override
@@ -146,49 +353,92 @@ public class TelegramSessionsController implements SessionsManager, InternalSess
             return;
         }
 
-        UserSession session = new UserSession(sessionMemory.getSessionIdentifier(), sessionMemory, transcription);
+        UserSession session = new UserSession(sessionMemory.getSessionIdentifier(), sessionMemory, this.state.transcription());
         session.setStandardLanguage(memory.getLanguageCode());
         session.initialize(client, this.userHandlersClasses, mainInjector);
+        session.open();
 
         this.sessions.put(sessionMemory.getSessionIdentifier(), session);
     }
 
     @Override
     public void createSession(SessionIdentifier identifier, @Nullable String languageCode) {
-        UserSession session = new UserSession(identifier, this.transcription);
-        this.sessions.put(identifier, session);  // This MUST happen before session#addHandlersClasses
-        session.setStandardLanguage(languageCode);
-        session.initialize(client, this.userHandlersClasses, mainInjector);
+        UserSession session = new UserSession(identifier, this.state.transcription());
+        this.sessions.put(identifier, session);  // This MUST happen before session#initialize
+        this.initializeSession(session, languageCode);
+    }
+
+    private void initializeSession(UserSession session, @Nullable String languageCode) {
+        try {
+            session.setStandardLanguage(languageCode);
+            session.initialize(client, this.userHandlersClasses, mainInjector);
+
+            if (this.sessionInitializer != null)
+                this.sessionInitializer.initialize(session.getSessionMemory());
+            if (this.roleProvider != null)
+                session.getSessionMemory().setUserRole(this.roleProvider.getRole(session.getSessionMemory()));
+        } finally {
+            session.open();
+        }
+
+        // Handles updates that were posted by concurrent threads during the initialization
+        session.run();
+    }
 
-        if (this.sessionInitializer != null)
-            this.sessionInitializer.initialize(session.getSessionMemory());
-        if (this.roleProvider != null)
-            session.getSessionMemory().setUserRole(this.roleProvider.getRole(session.getSessionMemory()));
+    private void initializeHydratedSession(UserSession session) {
+        try {
+            // Language and role are restored from the stored state
+            session.initialize(client, this.userHandlersClasses, mainInjector);
+        } finally {
+            session.open();
+        }
+
+        session.run();
     }
 
     @Override
     public void reinitializeSession(SessionIdentifier sessionIdentifier) {
         var session = sessions.remove(sessionIdentifier);
-        createSession(sessionIdentifier, session.getSessionMemory().getLanguageCode());
+        this.sessions.awaitRemoval(sessionIdentifier);
+        this.deleteStored(sessionIdentifier);
+        createSession(sessionIdentifier, session == null ? null : session.getSessionMemory().getLanguageCode());
     }
 
     @Override
     public void killSession(SessionIdentifier identifier) {
         var session = this.sessions.remove(identifier);
-        destructionCallbacks.forEach(c -> c.accept(identifier, session.getSessionMemory()));
+        // Session that is being evicted must be written back before its state is deleted, otherwise it would be restored
+        this.sessions.awaitRemoval(identifier);
+        this.deleteStored(identifier);
+        // Session might be inactive, e.g. evicted or never created
+        if (session != null)
+            destructionCallbacks.forEach(c -> c.accept(identifier, session.getSessionMemory()));
     }
 
     @Override
     public @Nullable SessionMemory getSessionMemory(SessionIdentifier sessionIdentifier) {
-        return Optional.ofNullable(this.sessions.get(sessionIdentifier)).map(UserSession::getSessionMemory).orElse(null);
+        return Optional.ofNullable(this.sessions.peek(sessionIdentifier)).map(UserSession::getSessionMemory).orElse(null);
+    }
+
+    /**
+     * Returns the active session without recording an access to it.
+     */
+    @Nullable UserSession peekSession(SessionIdentifier identifier) {
+        return this.sessions.peek(identifier);
     }
 
     @Override
     public TranscriptionManager getTranscriptionManager(SessionIdentifier identifier){
-        UserSession session = this.sessions.get(identifier);
+        UserSession session = this.sessions.peek(identifier);
         return session == null ? null : session.getTranscriptionManager();
     }
 
+    @Override
+    public long estimateRetainedSize(SessionIdentifier identifier) {
+        UserSession session = this.sessions.peek(identifier);
+        return session == null ? 0 : session.estimateRetainedSize();
+    }
+
     @Override
     public void registerSessionDestructionCallback(BiConsumer<SessionIdentifier, SessionMemory> callback) {
         destructionCallbacks.add(callback);
@@ -201,7 +451,7 @@ public class TelegramSessionsController implements SessionsManager, InternalSess
 
     @Override
     public <T> T runWithSessionContext(SessionIdentifier identifier, Supplier<T> runnable) {
-        UserSession session = this.sessions.get(identifier);
+        UserSession session = this.sessions.peek(identifier);
         if (session == null)
             throw new TelegRiseSessionException("Session not found: " + identifier);
 
@@ -2,10 +2,12 @@ package org.telegrise.telegrise.core;
 
 import lombok.Getter;
 import lombok.Setter;
+import org.jetbrains.annotations.Nullable;
 import org.telegram.telegrambots.meta.api.objects.Update;
 import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
 import org.telegrise.telegrise.annotations.OnClose;
 import org.telegrise.telegrise.core.elements.Branch;
+import org.telegrise.telegrise.core.elements.BranchDispatchTable;
 import org.telegrise.telegrise.core.elements.DefaultBranch;
 import org.telegrise.telegrise.core.elements.Tree;
 import org.telegrise.telegrise.core.elements.actions.ActionElement;
@@ -18,7 +20,6 @@ import org.telegrise.telegrise.exceptions.TelegRiseRuntimeException;
 import org.telegrise.telegrise.senders.BotSender;
 import org.telegrise.telegrise.senders.UniversalSender;
 import org.telegrise.telegrise.types.BotUser;
-import org.telegrise.telegrise.utils.MessageUtils;
 
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
@@ -28,22 +29,42 @@ import java.util.Optional;
 import java.util.concurrent.BlockingQueue;
 
 public final class TreeExecutor {
-    public static TreeExecutor create(Tree tree, ResourceInjector resourceInjector, BotSender sender, SessionMemoryImpl memory, BlockingQueue<Update> updatesQueue) {
+    public static TreeExecutor create(Tree tree, ResourceInjector resourceInjector, BotSender sender, SessionMemoryImpl memory,
+                                      BlockingQueue<Update> updatesQueue, boolean asyncActions, CallbackAnswerer callbackAnswerer) {
         Object controller = null;
         if (tree.getController() != null)
             controller = new TreeControllerInitializer(tree.getController(), resourceInjector).initialize();
 
-        return new TreeExecutor(memory, controller, tree, sender, updatesQueue, resourceInjector.get(BotUser.class));
+        return new TreeExecutor(memory, controller, tree, sender, updatesQueue, resourceInjector.get(BotUser.class), asyncActions, callbackAnswerer);
     }
 
-    public static void invokeBranch(GeneratedValue<Void> toInvoke, List<ActionElement> actions, ResourcePool pool, BotSender sender, ExecutionOptions options){
+    /**
+     * Invokes the branch and executes its actions, asynchronously if {@code asyncActions} is true (see {@link ActionPipeline}).
+     * If {@code callbackAnswerer} is specified, callback query of the update is answered before the branch is invoked,
+     * and answers of the branch to a query that was answered automatically are skipped.
+     */
+    public static void invokeBranch(GeneratedValue<Void> toInvoke, List<ActionElement> actions, ResourcePool pool, BotSender sender,
+                                    ExecutionOptions options, boolean asyncActions, @Nullable CallbackAnswerer callbackAnswerer){
         if (options.execute() != null && !options.execute()) return;
 
         UniversalSender universalSender = new UniversalSender(sender);
         if (options.execute() != null) {
+            if (callbackAnswerer != null) {
+                callbackAnswerer.answer(pool.getUpdate(), actions, sender);
+                pool.addComponent(callbackAnswerer);
+            }
             if (toInvoke != null) toInvoke.generate(pool);
             if (actions == null) return;
 
+            if (asyncActions) {
+                try {
+                    new ActionPipeline(universalSender, pool).execute(actions);
+                } catch (TelegramApiException e) {
+                    throw new TelegRiseInternalException(e);
+                }
+                return;
+            }
+
             actions.forEach(action -> {
                 try {
                     universalSender.execute(action, pool);
@@ -98,26 +119,37 @@ public final class TreeExecutor {
     @Getter
     private boolean naturallyClosed;
     private final BotUser botUser;
+    @Getter
+    private final boolean asyncActions;
+    @Getter
+    private final CallbackAnswerer callbackAnswerer;
 
     @Getter
     private Branch lastBranch;
 
-    private TreeExecutor(SessionMemoryImpl memory, Object controllerInstance, Tree tree, BotSender sender, BlockingQueue<Update> updatesQueue, BotUser botUser) {
+    private TreeExecutor(SessionMemoryImpl memory, Object controllerInstance, Tree tree, BotSender sender, BlockingQueue<Update> updatesQueue,
+                         BotUser botUser, boolean asyncActions, CallbackAnswerer callbackAnswerer) {
         this.memory = memory;
         this.controllerInstance = controllerInstance;
         this.tree = tree;
         this.sender = sender;
         this.updatesQueue = updatesQueue;
         this.botUser = botUser;
+        this.asyncActions = asyncActions;
+        this.callbackAnswerer = callbackAnswerer;
     }
 
-    public boolean update(Update update){
+    /**
+     * Handles the update of the pool, which must be created for this executor.
+     */
+    public boolean update(ResourcePool resourcePool){
+        assert resourcePool.getCurrentExecutor() == this && resourcePool.getHandler() == this.controllerInstance;
+
         this.closed = false;
-        List<Branch> nextBranches = currentBranch != null ? currentBranch.getBranches() : tree.getBranches();
-        ResourcePool resourcePool = new ResourcePool(update, controllerInstance, this.sender, this.memory, botUser, this, updatesQueue);
+        BranchDispatchTable nextBranches = currentBranch != null ? currentBranch.getDispatchTable() : tree.getDispatchTable();
 
         Branch previous = this.currentBranch;
-        this.currentBranch = this.getNextBranch(nextBranches, resourcePool);
+        this.currentBranch = nextBranches.find(resourcePool);
 
         // Next branch found
         if (this.currentBranch != null){
@@ -135,7 +167,7 @@ public final class TreeExecutor {
                     this.close();
                 }
             }
-        } else if (nextBranches == null || nextBranches.isEmpty()) {       // There is no continuation of the branch
+        } else if (nextBranches.isEmpty()) {       // There is no continuation of the branch
             this.lastBranch = previous;
             this.naturallyClosed = false;
             this.close();
@@ -157,7 +189,7 @@ public final class TreeExecutor {
     }
 
     private void invokeBranch(GeneratedValue<Void> toInvoke, List<ActionElement> actions, ResourcePool pool){
-        invokeBranch(toInvoke, actions, pool, this.sender, ExecutionOptions.always());
+        invokeBranch(toInvoke, actions, pool, this.sender, ExecutionOptions.always(), this.asyncActions, this.callbackAnswerer);
     }
 
     public List<String> getCurrentInterruptionScopes(){
@@ -195,23 +227,6 @@ public final class TreeExecutor {
         }
     }
 
-    private Branch getNextBranch(List<Branch> branches, ResourcePool resourcePool) {
-        if (branches == null) return null;
-
-        for (Branch branch : branches) {
-            if(branch.getKeys() != null && resourcePool.getUpdate().hasMessage() && !MessageUtils.hasMedia(resourcePool.getUpdate().getMessage())
-                    && Arrays.stream(branch.getKeys()).anyMatch(k -> k.equals(resourcePool.getUpdate().getMessage().getText())))
-                return branch;
-            else if (branch.getCallbackTriggers() != null && resourcePool.getUpdate().hasCallbackQuery()
-                    && Arrays.stream(branch.getCallbackTriggers()).anyMatch(t -> t.equals(resourcePool.getUpdate().getCallbackQuery().getData())))
-                return branch;
-            else if (branch.getWhen() != null && branch.getWhen().generate(resourcePool))
-                return branch;
-        }
-
-        return null;
-    }
-
     public void open() {
         this.closed = false;
         this.naturallyClosed = false;
@@ -1,22 +1,27 @@
 package org.telegrise.telegrise.core;
 
 import lombok.Setter;
-import org.jetbrains.annotations.NotNull;
 import org.telegram.telegrambots.meta.api.objects.Update;
 import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
 import org.telegrise.telegrise.UpdateHandler;
 import org.telegrise.telegrise.annotations.Handler;
-import org.telegrise.telegrise.core.utils.ReflectionUtils;
+import org.telegrise.telegrise.types.UpdateType;
 
 import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.List;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
+/**
+ * Selects and applies update handlers.
+ * <p>
+ * Handlers are partitioned at registration into those that are checked before and after trees,
+ * each kept sorted by priority, so that selecting handlers for an update only calls {@link UpdateHandler#canHandle}
+ * of the handlers which {@link Handler#updateTypes() update types} match the update.
+ */
 public class UpdateHandlersController {
-    private final List<UpdateHandler> handlers = new ArrayList<>();
-    private final List<UpdateHandler> absoluteHandlers = new ArrayList<>();
+    private final List<Descriptor> beforeTrees = new ArrayList<>();
+    private final List<Descriptor> afterTrees = new ArrayList<>();
+    private final List<Descriptor> absoluteBeforeTrees = new ArrayList<>();
+    private final List<Descriptor> absoluteAfterTrees = new ArrayList<>();
 
     @Setter
     private ResourceInjector resourceInjector;
@@ -25,41 +30,48 @@ public class UpdateHandlersController {
         this.resourceInjector = injector;
     }
 
-    public List<UpdateHandler> getApplicableHandlers(Update update){
-        var handlers = getUpdateHandlerStream(this.handlers, update, false).collect(Collectors.toList());
-        var absoluteHandler = getUpdateHandlerStream(this.absoluteHandlers, update, false).findFirst();
-
-        absoluteHandler.ifPresent(handlers::add);
+    public List<Descriptor> getApplicableHandlers(Update update){
+        return getApplicable(this.beforeTrees, this.absoluteBeforeTrees, update);
+    }
 
-        return handlers;
+    public List<Descriptor> getApplicableAfterTreesHandler(Update update){
+        return getApplicable(this.afterTrees, this.absoluteAfterTrees, update);
     }
 
-    public List<UpdateHandler> getApplicableAfterTreesHandler(Update update){
-        var handlers = getUpdateHandlerStream(this.handlers, update, true).collect(Collectors.toList());
-        var absoluteHandler = getUpdateHandlerStream(this.absoluteHandlers, update, true).findFirst();
+    private static List<Descriptor> getApplicable(List<Descriptor> handlers, List<Descriptor> absoluteHandlers, Update update) {
+        if (handlers.isEmpty() && absoluteHandlers.isEmpty()) return List.of();
 
-        absoluteHandler.ifPresent(handlers::add);
+        int type = UpdateType.maskOf(update);
+        List<Descriptor> result = null;
+        for (Descriptor descriptor : handlers) {
+            if (descriptor.canHandle(update, type)) {
+                if (result == null) result = new ArrayList<>();
+                result.add(descriptor);
+            }
+        }
 
-        return handlers;
-    }
+        // Absolute handlers are always at the end of the list
+        for (Descriptor descriptor : absoluteHandlers) {
+            if (descriptor.canHandle(update, type)) {
+                if (result == null) return List.of(descriptor);
+                result.add(descriptor);
+                break;
+            }
+        }
 
-    private @NotNull Stream<UpdateHandler> getUpdateHandlerStream(List<UpdateHandler> handlers, Update update, boolean needAfterTrees) {
-        return handlers.stream()
-                .filter(h -> needAfterTrees == ReflectionUtils.annotation(h, Handler.class).afterTrees())
-                .sorted(Comparator.comparingInt(h -> -ReflectionUtils.annotation(h, Handler.class).priority()))
-                .filter(h -> h.canHandle(update));
+        return result == null ? List.of() : result;
     }
 
-    public boolean applyHandlers(Update update, List<UpdateHandler> handlers){
-        for (UpdateHandler handler : handlers) {
+    public boolean applyHandlers(Update update, List<Descriptor> handlers){
+        for (Descriptor descriptor : handlers) {
+            UpdateHandler handler = descriptor.handler();
             try {
                 handler.handle(update);
             } catch (TelegramApiException e) {
                 handler.onException(e);
             }
 
-            Handler annotation = ReflectionUtils.annotation(handler, Handler.class);
-            if (annotation.absolute()) {
+            if (descriptor.absolute()) {
                 // We can 'safely' return here because absolute handlers are always at the end of the list
                 return true;
             }
@@ -72,9 +84,33 @@ public class UpdateHandlersController {
         UpdateHandler instance = ResourceInjector.createInstance(handlerClass);
         this.resourceInjector.injectResources(instance);
 
-        if (handlerClass.getAnnotation(Handler.class).absolute())
-            this.absoluteHandlers.add(instance);
+        Handler annotation = handlerClass.getAnnotation(Handler.class);
+        Descriptor descriptor = new Descriptor(instance, annotation.priority(), annotation.absolute(),
+                UpdateType.maskOf(annotation.updateTypes()));
+
+        if (annotation.absolute())
+            insert(annotation.afterTrees() ? this.absoluteAfterTrees : this.absoluteBeforeTrees, descriptor);
         else
-            this.handlers.add(instance);
+            insert(annotation.afterTrees() ? this.afterTrees : this.beforeTrees, descriptor);
+    }
+
+    // Keeps the list sorted by descending priority, handlers with the same priority remain in order of registration
+    private static void insert(List<Descriptor> handlers, Descriptor descriptor) {
+        int index = handlers.size();
+        while (index > 0 && handlers.get(index - 1).priority() < descriptor.priority())
+            index--;
+
+        handlers.add(index, descriptor);
+    }
+
+    /**
+     * A registered handler with its configuration from the {@link Handler} annotation.
+     *
+     * @param updateTypes mask of the {@link UpdateType update types} that the handler accepts
+     */
+    public record Descriptor(UpdateHandler handler, int priority, boolean absolute, int updateTypes) {
+        boolean canHandle(Update update, int type) {
+            return (this.updateTypes & type) != 0 && this.handler.canHandle(update);
+        }
     }
 }
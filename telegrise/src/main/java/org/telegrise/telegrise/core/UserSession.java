@@ -1,16 +1,19 @@
 package org.telegrise.telegrise.core;
 
 import lombok.Getter;
+import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.telegram.telegrambots.meta.api.objects.Update;
 import org.telegram.telegrambots.meta.api.objects.chat.Chat;
 import org.telegram.telegrambots.meta.generics.TelegramClient;
 import org.telegrise.telegrise.*;
+import org.telegrise.telegrise.application.WebhookReply;
 import org.telegrise.telegrise.core.caching.MethodReferenceCache;
 import org.telegrise.telegrise.core.elements.BotTranscription;
 import org.telegrise.telegrise.core.elements.Root;
 import org.telegrise.telegrise.core.elements.Tree;
+import org.telegrise.telegrise.core.elements.TreeTriggerIndex;
 import org.telegrise.telegrise.core.elements.base.BranchingElement;
 import org.telegrise.telegrise.core.transition.ExecutionOptions;
 import org.telegrise.telegrise.core.transition.TransitionController;
@@ -24,16 +27,19 @@ import org.telegrise.telegrise.utils.MessageUtils;
 import java.util.*;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentLinkedDeque;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Predicate;
 
 import static org.telegrise.telegrise.core.elements.Tree.*;
 
 public class UserSession implements Runnable{
     private static final Logger logger = LoggerFactory.getLogger(UserSession.class);
+    // Session, its memory, sender, injector, controllers and handlers
+    private static final long BASE_RETAINED_SIZE = 4096;
+    private static final long EXECUTOR_SIZE = 256;
     private final SessionIdentifier userIdentifier;
     @Getter
     private final SessionMemoryImpl sessionMemory;
+    @Getter
     private final BotTranscription transcription;
     private BotSender sender;
     @Getter
@@ -41,14 +47,19 @@ public class UserSession implements Runnable{
     @Getter
     private final Deque<TreeExecutor> treeExecutors = new ConcurrentLinkedDeque<>();
 
-    private final BlockingQueue<Update> updatesQueue = new LinkedBlockingQueue<>();
+    // Held until the session is opened, see #open
+    private final SessionMailbox mailbox = new SessionMailbox(true);
+    private final BlockingQueue<Update> updatesQueue = mailbox.getQueue();
     private TransitionController transitionController;
     private UpdateHandlersController updateHandlersController;
     private final MediaCollector mediaCollector = new MediaCollector(this.updatesQueue);
     @Getter
     private TranscriptionManager transcriptionManager;
-    private final AtomicBoolean running = new AtomicBoolean();
-    private long lastUpdateReceivedAt = 0;
+    // Answers callback queries of the session if they are answered automatically
+    private CallbackAnswerer callbackAnswerer;
+    private volatile long lastUpdateReceivedAt = 0;
+    @Getter
+    private volatile long lastAccessedAt = System.currentTimeMillis();
 
     public UserSession(SessionIdentifier sessionIdentifier, BotTranscription transcription) {
         this.userIdentifier = sessionIdentifier;
@@ -68,6 +79,7 @@ public class UserSession implements Runnable{
 
     public void initialize(TelegramClient client, List<Class<? extends UpdateHandler>> classes, ResourceInjector parentInjector){
         this.sender = new BotSender(client, sessionMemory);
+        this.callbackAnswerer = this.transcription.isAutoAnswerCallbacks() ? new CallbackAnswerer() : null;
         this.transitionController = new TransitionController(this.sessionMemory, treeExecutors, transcription.getMemory(), this.sender);
         this.resourceInjector = new ResourceInjector(this.sender, this.sender.getClient(), this.mediaCollector);
         this.resourceInjector.setParent(parentInjector);
@@ -83,41 +95,100 @@ public class UserSession implements Runnable{
         TelegRiseSessionContext.setCurrentContext(userIdentifier, sessionMemory, resourceInjector);
         this.updateHandlersController = new UpdateHandlersController(resourceInjector);
         classes.forEach(this.updateHandlersController::add);
+        this.restoreTreeExecutors();
         TelegRiseSessionContext.clearContext();
 
-        this.sessionMemory.getBranchingElements().add(this.transcription.getRoot());
+        if (this.sessionMemory.getBranchingElements().isEmpty())
+            this.sessionMemory.getBranchingElements().add(this.transcription.getRoot());
     }
 
-    public void update(Update update){
+    /**
+     * Creates executors for the trees of a restored session memory, so that the session continues where it stopped.
+     * Controllers of the trees are created anew.
+     */
+    private void restoreTreeExecutors() {
+        for (BranchingElement element : this.sessionMemory.getBranchingElements())
+            if (element instanceof Tree tree)
+                this.treeExecutors.add(TreeExecutor.create(tree, this.resourceInjector, this.sender, this.sessionMemory, updatesQueue,
+                        this.transcription.isAsyncActions(), this.callbackAnswerer));
+
+        if (!this.treeExecutors.isEmpty() && this.sessionMemory.getCurrentBranch() != null)
+            this.treeExecutors.getLast().setCurrentBranch(this.sessionMemory.getCurrentBranch());
+    }
+
+    /**
+     * Queues the update to be processed by this session.
+     *
+     * @return false if the session was evicted and the update must be passed to a new session
+     */
+    public boolean update(Update update){
         if (transcription.getThrottlingTime() != null &&
                 transcription.getThrottlingTime() > Math.abs(lastUpdateReceivedAt - System.currentTimeMillis())){
-            return;   // Ignores update
+            return true;   // Ignores update
         }
 
-        this.updatesQueue.add(update);
+        if (!this.mailbox.post(update)) return false;
         lastUpdateReceivedAt = System.currentTimeMillis();
+        return true;
     }
 
     public boolean isRunning(){
-        return this.running.get();
+        return this.mailbox.isDraining();
     }
 
+    public void touch(){
+        this.lastAccessedAt = System.currentTimeMillis();
+    }
+
+    /**
+     * Closes the session if it isn't processing updates at the moment, making it reject all upcoming updates.
+     *
+     * @return updates that were queued but not processed, or null if the session is busy and wasn't closed
+     */
+    public @Nullable List<Update> close(){
+        return this.mailbox.close();
+    }
+
+    /**
+     * Roughly estimates the heap size retained by this session, including its memory and pending updates.
+     * The estimation is shallow and meant for eviction decisions, not for precise accounting.
+     *
+     * @return estimated size in bytes
+     */
+    public long estimateRetainedSize(){
+        return BASE_RETAINED_SIZE + this.sessionMemory.estimateRetainedSize()
+                + (long) this.treeExecutors.size() * EXECUTOR_SIZE
+                + (long) this.updatesQueue.size() * SessionMemoryImpl.MESSAGE_SIZE;
+    }
+
+    /**
+     * Allows the session to process updates. Updates received before opening remain queued until the next {@link #run()}.
+     */
+    public void open(){
+        this.mailbox.open();
+    }
+
+    /**
+     * Processes all queued updates, unless another thread is already doing it.
+     * In that case, this method returns immediately and the updates will be handled by that thread.
+     */
     @Override
     public void run() {
-        if (this.running.get()) return;
+        this.mailbox.drain(this::processUpdate);
+    }
 
-        this.running.set(true);
+    private void processUpdate(Update update) {
         TelegRiseSessionContext.setCurrentContext(userIdentifier, sessionMemory, resourceInjector);
+        WebhookReply.bind(update);
 
         try {
-            while (!this.updatesQueue.isEmpty())
-                this.handleUpdate(this.updatesQueue.remove());
+            this.handleUpdate(update);
         } catch (Throwable e) {
+            // Exceptions must not escape the mailbox, otherwise the following updates of this session would be stalled
             logger.error("An error occurred running session {}", userIdentifier, e);
-            throw TelegRiseRuntimeException.unfold(e);
         } finally {
+            WebhookReply.release();
             TelegRiseSessionContext.clearContext();
-            this.running.set(false);
         }
     }
 
@@ -157,35 +228,22 @@ public class UserSession implements Runnable{
         Chat chat = MessageUtils.getChat(update);
         boolean containAll = scopes.contains(INTERRUPT_BY_ALL);
         List<String> lastScopes = List.of(this.sessionMemory.getLastChatTypes());
-        List<Tree> trees = this.transcription.getRoot().getTrees().stream()
-                .filter(t -> t.isChatApplicable(lastScopes, chat))
-                .toList();
+        Predicate<Tree> applicable = t -> t.isChatApplicable(lastScopes, chat);
+        TreeTriggerIndex index = this.transcription.getRoot().getTriggerIndex();
 
         if (update.hasCallbackQuery() && (containAll || scopes.contains(INTERRUPT_BY_CALLBACKS))){
-            Optional<Tree> candidate = trees.stream()
-                    .filter(t -> t.getCallbackTriggers() != null)
-                    .filter(t -> List.of(t.getCallbackTriggers()).contains(update.getCallbackQuery().getData()))
-                    .findFirst();
-
-            if (candidate.isPresent()) return candidate;
+            Tree candidate = index.findByCallback(update.getCallbackQuery().getData(), applicable);
+            if (candidate != null) return Optional.of(candidate);
         }
 
         if (update.hasMessage() && update.getMessage().hasText() && (containAll || scopes.contains(INTERRUPT_BY_COMMANDS))){
-            Optional<Tree> candidate = trees.stream()
-                    .filter(t -> t.getCommands() != null)
-                    .filter(t -> t.isApplicableCommand(update.getMessage().getText(), chat, pool))
-                    .findFirst();
-
-            if (candidate.isPresent()) return candidate;
+            Tree candidate = index.findByCommand(update.getMessage().getText(), chat, pool.getBotUser(), applicable);
+            if (candidate != null) return Optional.of(candidate);
         }
 
         if (update.hasMessage() && update.getMessage().hasText() && (containAll || scopes.contains(INTERRUPT_BY_KEYS))){
-            Optional<Tree> candidate = trees.stream()
-                    .filter(t -> t.getKeys() != null)
-                    .filter(t -> List.of(t.getKeys()).contains(update.getMessage().getText()))
-                    .findFirst();
-
-            if (candidate.isPresent()) return candidate;
+            Tree candidate = index.findByKey(update.getMessage().getText(), applicable);
+            if (candidate != null) return Optional.of(candidate);
         }
 
         return Optional.empty();
@@ -205,7 +263,7 @@ public class UserSession implements Runnable{
 
     private void initializeTree(Update update, Root root) {
         ResourcePool pool = this.createResourcePool(update);
-        Tree tree = root.findTree(this.createResourcePool(update), this.sessionMemory);
+        Tree tree = root.findTree(pool, this.sessionMemory);
 
         if (tree != null) {
             this.initializeTree(update, tree, true);
@@ -214,7 +272,7 @@ public class UserSession implements Runnable{
 
         if (root.getDefaultBranch() != null && root.getDefaultBranch().getWhen().generate(pool)){
             TreeExecutor.invokeBranch(root.getDefaultBranch().getToInvoke(), root.getDefaultBranch().getActions(),
-                    pool, sender, ExecutionOptions.always());
+                    pool, sender, ExecutionOptions.always(), this.transcription.isAsyncActions(), this.callbackAnswerer);
         } else {
             var candidates = this.updateHandlersController.getApplicableAfterTreesHandler(update);
             this.updateHandlersController.applyHandlers(update, candidates);
@@ -231,7 +289,8 @@ public class UserSession implements Runnable{
     private void applyTree(Update update, Tree tree, boolean execute) {
         if (tree.getBranches() != null || (tree.getController() != null && execute)) {
             this.sessionMemory.getBranchingElements().add(tree);
-            TreeExecutor executor = TreeExecutor.create(tree, this.resourceInjector, this.sender, this.sessionMemory, updatesQueue);
+            TreeExecutor executor = TreeExecutor.create(tree, this.resourceInjector, this.sender, this.sessionMemory, updatesQueue,
+                    this.transcription.isAsyncActions(), this.callbackAnswerer);
             this.treeExecutors.add(executor);
 
             try {
@@ -274,7 +333,7 @@ public class UserSession implements Runnable{
 
         boolean ignored;
         try {
-            ignored = executor.update(update);
+            ignored = executor.update(this.createResourcePool(update));
         } finally {
             this.sessionMemory.setCurrentBranch(executor.getCurrentBranch());
         }
@@ -320,12 +379,12 @@ public class UserSession implements Runnable{
             if ((executor.getCurrentInterruptionScopes().contains(INTERRUPT_BY_ALL)
                 || executor.getCurrentInterruptionScopes().contains(INTERRUPT_BY_PREDICATES)))
             {
-                for (Tree tree : this.transcription.getRoot().getTrees()) {
-                    if (tree.getPredicate() != null && tree.isChatApplicable(lastScopes, chat) && tree.getPredicate().generate(pool)) {
-                        // Interrupter found case (tree)
-                        this.interruptTreeChain(update, tree, true);
-                        return;
-                    }
+                Tree tree = this.transcription.getRoot().getTriggerIndex()
+                        .findByPredicate(pool, t -> t.isChatApplicable(lastScopes, chat));
+                if (tree != null) {
+                    // Interrupter found case (tree)
+                    this.interruptTreeChain(update, tree, true);
+                    return;
                 }
             }
 
@@ -348,7 +407,8 @@ public class UserSession implements Runnable{
             this.transitionController.removeExecutor(executor);
         BranchingElement last = this.sessionMemory.getBranchingElements().getLast();
         if (last instanceof Tree && !this.treeExecutors.getLast().getTree().getName().equals(last.getName()))
-            this.treeExecutors.add(TreeExecutor.create((Tree) last, this.resourceInjector, this.sender, this.sessionMemory, updatesQueue));
+            this.treeExecutors.add(TreeExecutor.create((Tree) last, this.resourceInjector, this.sender, this.sessionMemory, updatesQueue,
+                    this.transcription.isAsyncActions(), this.callbackAnswerer));
 
         this.executeBranchingElement(this.sessionMemory.getBranchingElements().getLast(), update, execute);
     }
@@ -370,6 +430,10 @@ public class UserSession implements Runnable{
         }
     }
 
+    /**
+     * Creates a pool for a single phase of handling the update,
+     * so that components added by actions of one phase, like responses and errors, don't leak into the next one.
+     */
     private ResourcePool createResourcePool(Update update) {
         return new ResourcePool(
                 update,
@@ -388,7 +452,8 @@ public class UserSession implements Runnable{
 
     private void executeBranchingElement(BranchingElement element, Update update, ExecutionOptions options){
         if (element.getActions() == null) return;
-        TreeExecutor.invokeBranch(null, element.getActions(), this.createResourcePool(update), sender, options);
+        TreeExecutor.invokeBranch(null, element.getActions(), this.createResourcePool(update), sender, options,
+                this.transcription.isAsyncActions(), this.callbackAnswerer);
     }
 
     public void setStandardLanguage(String code){
@@ -81,6 +81,24 @@ public final class BotTranscription extends NodeElement {
     @Attribute(name = "throttlingTime")  // ms
     private Integer throttlingTime;
 
+    /**
+     * Set to true to execute actions of branches asynchronously: requests of independent actions are sent
+     * without waiting for responses of previous ones, while requests to the same chat keep their order.
+     * Branches still finish before the next update of the session is handled.
+     * Actions that refer to existing messages, like {@code <pin>}, {@code <copy>}, {@code <forward>} and {@code <delete>},
+     * wait for previous actions if their attributes are expressions, since they might use the results of those actions.
+     */
+    @Attribute(name = "asyncActions")
+    private boolean asyncActions = false;
+
+    /**
+     * Set to true to answer callback queries as soon as a branch is invoked for them,
+     * unless the branch contains its own {@code <answer>}. Answers that are sent by controllers will fail in this case,
+     * while {@code <answer>} elements of branches invoked later for the same query, for example by transitions, are skipped.
+     */
+    @Attribute(name = "autoAnswerCallbacks")
+    private boolean autoAnswerCallbacks = false;
+
     @InnerElement(priority = 10, nullable = false)
     private HeadBlock head;
 
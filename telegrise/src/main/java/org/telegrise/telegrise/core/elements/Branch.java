@@ -1,5 +1,6 @@
 package org.telegrise.telegrise.core.elements;
 
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
@@ -89,6 +90,9 @@ public class Branch extends NodeElement implements org.telegrise.telegrise.trans
 
     private int level = -1;
 
+    @Getter(AccessLevel.NONE) @Setter(AccessLevel.NONE)
+    private transient volatile BranchDispatchTable dispatchTable;
+
     @Override
     public void validate(TranscriptionMemory memory) {
         if (level < 2)   // Branches can't be at level 1, only trees do
@@ -104,6 +108,22 @@ public class Branch extends NodeElement implements org.telegrise.telegrise.trans
             throw new TranscriptionParsingException("Undefined interruption scopes", node);
     }
 
+    /**
+     * Returns the lookup of the child branches by their triggers, building it on the first call.
+     */
+    public BranchDispatchTable getDispatchTable() {
+        BranchDispatchTable table = this.dispatchTable;
+        if (table == null)
+            this.dispatchTable = table = new BranchDispatchTable(this.branches);
+
+        return table;
+    }
+
+    public void setBranches(List<Branch> branches) {
+        this.branches = branches;
+        this.dispatchTable = null;
+    }
+
     @Override
     public String[] getChatTypes() {
         return new String[]{ChatTypes.ALL};
@@ -0,0 +1,85 @@
+package org.telegrise.telegrise.core.elements;
+
+import org.jetbrains.annotations.Nullable;
+import org.telegram.telegrambots.meta.api.objects.Update;
+import org.telegrise.telegrise.core.ResourcePool;
+import org.telegrise.telegrise.utils.MessageUtils;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Lookup of the child branches of a tree or a branch by their keys and callback data.
+ * <p>
+ * Each key and callback data is mapped to the position of the first branch that declares it,
+ * so the static triggers are resolved with a single lookup.
+ * Predicates ({@code when}) are evaluated only for the branches declared before the matched one,
+ * which preserves the declaration order: the first branch that can handle the update is chosen,
+ * exactly as a linear scan would do.
+ *
+ * @since 1.0
+ */
+public final class BranchDispatchTable {
+    private static final int NONE = Integer.MAX_VALUE;
+
+    private final Branch[] branches;
+    private final Map<String, Integer> byKey = new HashMap<>();
+    private final Map<String, Integer> byCallback = new HashMap<>();
+    private final int[] withPredicates;
+
+    public BranchDispatchTable(@Nullable List<Branch> branches) {
+        this.branches = branches == null ? new Branch[0] : branches.toArray(Branch[]::new);
+
+        for (int i = 0; i < this.branches.length; i++) {
+            index(this.byKey, this.branches[i].getKeys(), i);
+            index(this.byCallback, this.branches[i].getCallbackTriggers(), i);
+        }
+
+        this.withPredicates = IntStream.range(0, this.branches.length)
+                .filter(i -> this.branches[i].getWhen() != null).toArray();
+    }
+
+    private static void index(Map<String, Integer> map, String @Nullable [] triggers, int position) {
+        if (triggers == null) return;
+
+        for (String trigger : triggers)
+            map.putIfAbsent(trigger, position);
+    }
+
+    /**
+     * @return first branch in declaration order that can handle the update of the pool, or null if there are none
+     */
+    public @Nullable Branch find(ResourcePool pool) {
+        if (this.isEmpty()) return null;
+
+        int matched = this.findStatic(pool.getUpdate());
+        for (int position : this.withPredicates) {
+            if (position >= matched) break;
+            if (this.branches[position].getWhen().generate(pool))
+                return this.branches[position];
+        }
+
+        return matched == NONE ? null : this.branches[matched];
+    }
+
+    private int findStatic(Update update) {
+        int matched = NONE;
+        if (!this.byKey.isEmpty() && update.hasMessage() && !MessageUtils.hasMedia(update.getMessage())) {
+            String text = update.getMessage().getText();
+            if (text != null) matched = this.byKey.getOrDefault(text, NONE);
+        }
+
+        if (!this.byCallback.isEmpty() && update.hasCallbackQuery()) {
+            String data = update.getCallbackQuery().getData();
+            if (data != null) matched = Math.min(matched, this.byCallback.getOrDefault(data, NONE));
+        }
+
+        return matched;
+    }
+
+    public boolean isEmpty() {
+        return this.branches.length == 0;
+    }
+}
@@ -1,8 +1,10 @@
 package org.telegrise.telegrise.core.elements;
 
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
+import org.telegram.telegrambots.meta.api.objects.Update;
 import org.telegram.telegrambots.meta.api.objects.chat.Chat;
 import org.telegrise.telegrise.core.ResourcePool;
 import org.telegrise.telegrise.core.SessionMemoryImpl;
@@ -18,6 +20,7 @@ import org.telegrise.telegrise.core.parser.TranscriptionMemory;
 import org.telegrise.telegrise.utils.MessageUtils;
 
 import java.util.List;
+import java.util.function.Predicate;
 
 /**
  * A root element that contains trees of this transcription.
@@ -61,26 +64,44 @@ public class Root extends NodeElement implements BranchingElement {
 
     private int level = -1;
 
+    @Getter(AccessLevel.NONE) @Setter(AccessLevel.NONE)
+    private transient volatile TreeTriggerIndex triggerIndex;
+
     public Tree findTree(ResourcePool pool, SessionMemoryImpl sessionMemory){
         List<String> chatTypes = List.of(sessionMemory.getLastChatTypes());
         Chat chat = MessageUtils.getChat(pool.getUpdate());
+        Update update = pool.getUpdate();
+        Predicate<Tree> applicable = t -> t.isChatApplicable(chatTypes, chat);
+        TreeTriggerIndex index = this.getTriggerIndex();
 
-        Tree founded = trees.stream()
-                .filter(t -> t.isChatApplicable(chatTypes, chat))
-                .filter(t -> t.canHandleMessage(pool, chat)).findFirst().orElse(null);
+        Tree founded = null;
+        if (update.hasCallbackQuery())
+            founded = index.findByCallback(update.getCallbackQuery().getData(), applicable);
+        else if (update.hasMessage() && update.getMessage().getText() != null)
+            founded = index.findByText(update.getMessage().getText(), chat, pool.getBotUser(), applicable);
 
-        if (founded == null){
-            for (Tree tree : trees) {
-                if (tree.getPredicate() != null && tree.isChatApplicable(chatTypes, chat) && tree.getPredicate().generate(pool)) {
-                    founded = tree;
-                    break;
-                }
-            }
-        }
+        if (founded == null)
+            founded = index.findByPredicate(pool, applicable);
 
         return founded;
     }
 
+    /**
+     * Returns the index of trees by their triggers, building it on the first call.
+     */
+    public TreeTriggerIndex getTriggerIndex() {
+        TreeTriggerIndex index = this.triggerIndex;
+        if (index == null)
+            this.triggerIndex = index = new TreeTriggerIndex(this.trees == null ? List.of() : this.trees);
+
+        return index;
+    }
+
+    public void setTrees(List<Tree> trees) {
+        this.trees = trees;
+        this.triggerIndex = null;
+    }
+
     @Override
     public List<? extends BranchingElement> getChildren() {
         return trees;
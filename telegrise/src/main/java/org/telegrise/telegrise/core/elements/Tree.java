@@ -1,5 +1,6 @@
 package org.telegrise.telegrise.core.elements;
 
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
@@ -130,6 +131,9 @@ public class Tree extends NodeElement implements org.telegrise.telegrise.transcr
 
     private int level = -1;
 
+    @Getter(AccessLevel.NONE) @Setter(AccessLevel.NONE)
+    private transient volatile BranchDispatchTable dispatchTable;
+
     @Override
     public void validate(TranscriptionMemory memory) {
         if (improperInterruptionScopes(this.allowedInterruptions))
@@ -139,6 +143,22 @@ public class Tree extends NodeElement implements org.telegrise.telegrise.transcr
             this.validateSuperclass(this.controller, this.controller.getSuperclass());
     }
 
+    /**
+     * Returns the lookup of the child branches by their triggers, building it on the first call.
+     */
+    public BranchDispatchTable getDispatchTable() {
+        BranchDispatchTable table = this.dispatchTable;
+        if (table == null)
+            this.dispatchTable = table = new BranchDispatchTable(this.branches);
+
+        return table;
+    }
+
+    public void setBranches(List<Branch> branches) {
+        this.branches = branches;
+        this.dispatchTable = null;
+    }
+
     /**
      * Controller for this tree that provides backend logic to the tree such as method references.
      */
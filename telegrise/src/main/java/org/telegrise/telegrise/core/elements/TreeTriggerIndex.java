@@ -0,0 +1,124 @@
+package org.telegrise.telegrise.core.elements;
+
+import org.jetbrains.annotations.Nullable;
+import org.telegram.telegrambots.meta.api.objects.chat.Chat;
+import org.telegrise.telegrise.core.ResourcePool;
+import org.telegrise.telegrise.types.BotUser;
+import org.telegrise.telegrise.types.CommandData;
+import org.telegrise.telegrise.utils.MessageUtils;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * Index of the trees of the root by their static triggers: callback data, keys and commands.
+ * <p>
+ * Each trigger is mapped to the trees that declare it, ordered as they are declared in the root,
+ * so that a lookup returns the same tree as a linear scan would, but only checks chat applicability of the candidates.
+ * Trees with predicates can't be indexed and are evaluated linearly, in declaration order.
+ *
+ * @since 1.0
+ */
+public final class TreeTriggerIndex {
+    private static final Tree[] EMPTY = new Tree[0];
+
+    private final Map<String, Tree[]> byCallback = new HashMap<>();
+    private final Map<String, Tree[]> byKey = new HashMap<>();
+    private final Map<String, Tree[]> byCommand = new HashMap<>();
+    private final Tree[] withPredicates;
+    private final Map<Tree, Integer> order = new IdentityHashMap<>();
+
+    public TreeTriggerIndex(List<Tree> trees) {
+        for (int i = 0; i < trees.size(); i++) {
+            Tree tree = trees.get(i);
+            this.order.putIfAbsent(tree, i);
+
+            index(this.byCallback, tree.getCallbackTriggers(), tree);
+            index(this.byKey, tree.getKeys(), tree);
+            index(this.byCommand, tree.getCommands(), tree);
+        }
+
+        this.withPredicates = trees.stream().filter(t -> t.getPredicate() != null).toArray(Tree[]::new);
+    }
+
+    private static void index(Map<String, Tree[]> map, String @Nullable [] triggers, Tree tree) {
+        if (triggers == null) return;
+
+        for (String trigger : triggers) {
+            Tree[] current = map.getOrDefault(trigger, EMPTY);
+            if (Arrays.asList(current).contains(tree)) continue;
+
+            Tree[] updated = Arrays.copyOf(current, current.length + 1);
+            updated[current.length] = tree;
+            map.put(trigger, updated);
+        }
+    }
+
+    /**
+     * @return first tree that has the callback data as its trigger and is applicable
+     */
+    public @Nullable Tree findByCallback(String data, Predicate<Tree> applicable) {
+        return data == null ? null : first(this.byCallback.get(data), applicable);
+    }
+
+    /**
+     * @return first tree that has the key as its trigger and is applicable
+     */
+    public @Nullable Tree findByKey(String text, Predicate<Tree> applicable) {
+        return first(this.byKey.get(text), applicable);
+    }
+
+    /**
+     * Finds a tree by the command in the text, if the command is addressed to this bot.
+     *
+     * @return first tree that has the command as its trigger and is applicable
+     * @see Tree#isApplicableCommand(String, Chat, ResourcePool)
+     */
+    public @Nullable Tree findByCommand(String text, Chat chat, BotUser botUser, Predicate<Tree> applicable) {
+        return first(this.commandCandidates(text, chat, botUser), applicable);
+    }
+
+    /**
+     * Finds a tree that responds to the text by either a command or a key, in the same way as {@link Tree#canHandleMessage}.
+     *
+     * @return first applicable tree in declaration order
+     */
+    public @Nullable Tree findByText(String text, Chat chat, BotUser botUser, Predicate<Tree> applicable) {
+        Tree byCommand = this.findByCommand(text, chat, botUser, applicable);
+        Tree byKey = this.findByKey(text, applicable);
+
+        if (byCommand == null || byKey == null) return byCommand == null ? byKey : byCommand;
+        return this.order.get(byCommand) <= this.order.get(byKey) ? byCommand : byKey;
+    }
+
+    /**
+     * @return first tree which predicate is true and that is applicable
+     */
+    public @Nullable Tree findByPredicate(ResourcePool pool, Predicate<Tree> applicable) {
+        for (Tree tree : this.withPredicates)
+            if (applicable.test(tree) && tree.getPredicate().generate(pool))
+                return tree;
+
+        return null;
+    }
+
+    private Tree @Nullable [] commandCandidates(String text, Chat chat, BotUser botUser) {
+        CommandData command = MessageUtils.parseCommand(text);
+        if (command == null) return null;
+
+        boolean isUserChat = Objects.requireNonNull(chat).isUserChat();
+        if (isUserChat || command.username() == null || botUser.getUsername().equals(command.username()))
+            return this.byCommand.get(command.name());
+
+        return null;
+    }
+
+    private static @Nullable Tree first(Tree @Nullable [] candidates, Predicate<Tree> applicable) {
+        if (candidates == null) return null;
+
+        for (Tree tree : candidates)
+            if (applicable.test(tree)) return tree;
+
+        return null;
+    }
+}
@@ -35,6 +35,27 @@ public abstract class ActionElement extends NodeElement implements StorableEleme
         return null;
     }
 
+    /**
+     * Returns true if the method of this action can be generated while requests of previous actions are being executed,
+     * which is the case if generating it doesn't send requests and doesn't depend on responses of previous actions.
+     * Used by asynchronous execution of actions, see {@link org.telegrise.telegrise.core.elements.BotTranscription#isAsyncActions()}.
+     */
+    public boolean isIndependent(){
+        return false;
+    }
+
+    /**
+     * Returns true if each of the given values is either not specified or static.
+     * Expressions might refer to results of previous actions, such as the last sent message,
+     * so actions that use them aren't {@link #isIndependent() independent}.
+     */
+    protected static boolean isStatic(GeneratedValue<?>... values){
+        for (GeneratedValue<?> value : values)
+            if (value != null && !value.isStatic()) return false;
+
+        return true;
+    }
+
     @Override
     public void store(TranscriptionMemory memory) {
         if(getName() != null)
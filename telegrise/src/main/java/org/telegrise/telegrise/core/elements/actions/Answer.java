@@ -6,6 +6,7 @@ import lombok.Setter;
 import org.telegram.telegrambots.meta.api.methods.AnswerCallbackQuery;
 import org.telegram.telegrambots.meta.api.methods.botapimethods.PartialBotApiMethod;
 import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegrise.telegrise.core.CallbackAnswerer;
 import org.telegrise.telegrise.core.ResourcePool;
 import org.telegrise.telegrise.core.expressions.GeneratedValue;
 import org.telegrise.telegrise.core.parser.Attribute;
@@ -83,8 +84,13 @@ public class Answer extends ActionElement{
 
     @Override
     public PartialBotApiMethod<?> generateMethod(ResourcePool resourcePool) {
+        String queryId = this.extractCallbackQueryId(resourcePool);
+        // Branch might be invoked by a transition after the query has been answered automatically
+        if (resourcePool.getComponent(CallbackAnswerer.class) instanceof CallbackAnswerer answerer && answerer.isAnswered(queryId))
+            return null;
+
         return AnswerCallbackQuery.builder()
-                .callbackQueryId(this.extractCallbackQueryId(resourcePool))
+                .callbackQueryId(queryId)
                 .text(generateNullableProperty(text, resourcePool))
                 .showAlert(generateNullableProperty(showAlert, resourcePool))
                 .url(generateNullableProperty(url, resourcePool))
@@ -105,4 +111,9 @@ public class Answer extends ActionElement{
     public GeneratedValue<Long> getChatId() {
         return null;
     }
+
+    @Override
+    public boolean isIndependent() {
+        return true;
+    }
 }
@@ -83,4 +83,9 @@ public class ChatAction extends ActionElement{
                 .action(action.generate(resourcePool))
                 .build();
     }
+
+    @Override
+    public boolean isIndependent() {
+        return true;
+    }
 }
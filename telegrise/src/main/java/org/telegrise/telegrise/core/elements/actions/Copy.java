@@ -140,4 +140,9 @@ public class Copy extends ActionElement{
 
         return null;
     }
+
+    @Override
+    public boolean isIndependent() {
+        return isStatic(chatId, when, messageThreadId, fromChat, messageId, disableNotification, protectContent, replyTo, allowSendingWithoutReply);
+    }
 }
@@ -101,4 +101,10 @@ public class Delete extends ActionElement{
                                 .orElseThrow(() -> new TelegRiseRuntimeException("Unable to extract message ID for deletion action", node)))
                 .build();
     }
+
+    @Override
+    public boolean isIndependent() {
+        // Registry is filled with messages sent by previous actions
+        return registry == null && isStatic(chatId, when, messageId);
+    }
 }
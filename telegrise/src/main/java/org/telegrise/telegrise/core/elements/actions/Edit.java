@@ -325,4 +325,10 @@ public class Edit extends ActionElement{
     public Edit toEdit() {
         return this;
     }
+
+    @Override
+    public boolean isIndependent() {
+        // Message to edit and the chat might be taken from messages sent by previous actions
+        return !LAST.equals(this.source) && isStatic(chatId, messageId, inlineMessageId, when);
+    }
 }
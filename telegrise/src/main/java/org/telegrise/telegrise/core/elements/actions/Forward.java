@@ -96,4 +96,9 @@ public class Forward extends ActionElement{
                 .protectContent( generateNullableProperty(protectContent, pool))
                 .build();
     }
+
+    @Override
+    public boolean isIndependent() {
+        return isStatic(chatId, when, messageThreadId, fromChat, messageId, disableNotification, protectContent);
+    }
 }
@@ -69,4 +69,9 @@ public class Pin extends ActionElement{
                 .disableNotification(generateNullableProperty(disableNotification, resourcePool))
                 .build();
     }
+
+    @Override
+    public boolean isIndependent() {
+        return isStatic(chatId, when, messageId, disableNotification);
+    }
 }
@@ -271,4 +271,9 @@ public class Send extends ActionElement{
 
         return edit;
     }
-}
\ No newline at end of file
+
+    @Override
+    public boolean isIndependent() {
+        return true;
+    }
+}
@@ -76,4 +76,9 @@ public class Unpin extends ActionElement{
                     .messageId(messageId.generate(resourcePool))
                     .build();
     }
+
+    @Override
+    public boolean isIndependent() {
+        return true;
+    }
 }
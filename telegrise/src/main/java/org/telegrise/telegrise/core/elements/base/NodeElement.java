@@ -10,18 +10,21 @@ import org.telegrise.telegrise.core.expressions.GeneratedValue;
 import org.telegrise.telegrise.core.parser.ApplicationNamespace;
 import org.telegrise.telegrise.core.parser.LocalNamespace;
 import org.telegrise.telegrise.core.parser.TranscriptionMemory;
+import org.telegrise.telegrise.core.utils.SourceLocation;
 import org.telegrise.telegrise.core.utils.XMLUtils;
 import org.w3c.dom.Document;
+import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.ls.LSSerializer;
 
-import java.io.Serializable;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.*;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Objects;
+import java.util.*;
 
 /**
  * The base class for all elements that can be parsed from XML <b>transcriptions</b>. 
@@ -31,6 +34,7 @@ import java.util.Objects;
 public abstract class NodeElement implements Serializable {
     /**
      * Actual node instance of this element.
+     * Once the transcription is parsed, it is replaced with a {@link XMLUtils#detach detached} copy.
      */
     protected transient Node node;
 
@@ -104,15 +108,20 @@ public abstract class NodeElement implements Serializable {
 
         Document document = node.getNodeType() == Node.DOCUMENT_NODE ? (Document) node : node.getOwnerDocument();
         if (document == null || document.getDocumentURI() == null){
-            builder.append("<unknown source>: ");
+            builder.append("<unknown source>");
         } else {
             try {
-                builder.append(new URI(document.getDocumentURI()).toURL().getFile()).append(": ");
+                builder.append(new URI(document.getDocumentURI()).toURL().getFile());
             } catch (MalformedURLException | URISyntaxException e) {
-                builder.append(node.getOwnerDocument().getDocumentURI()).append(": ");
+                builder.append(node.getOwnerDocument().getDocumentURI());
             }
         }
 
+        SourceLocation location = SourceLocation.of(node);
+        if (location != null)
+            builder.append(':').append(location.line()).append(':').append(location.column());
+        builder.append(": ");
+
         List<String> path = new ArrayList<>();
         traversePath(path, node.getParentNode());
         builder.append(String.join(".", path));
@@ -159,4 +168,118 @@ public abstract class NodeElement implements Serializable {
     public String toString() {
         return NodeElement.formatNode(node);
     }
+
+    @Serial
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeObject(this.node == null ? null : NodeSnapshot.of(this.node));
+    }
+
+    @Serial
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        NodeSnapshot snapshot = (NodeSnapshot) in.readObject();
+        this.node = snapshot == null ? null : snapshot.restore(in);
+    }
+
+    /**
+     * Serializable form of the element's node, which keeps only what is used for hashing and error messages:
+     * the attributes of the node, its document and location, and names of its ancestors.
+     * Positions of the node and its ancestors among their siblings identify nodes of the same document,
+     * which are restored in one document.
+     */
+    private record NodeSnapshot(String documentURI, String[] ancestors, String[] ancestorNames, int[] positions, String name,
+                                String[] attributes, SourceLocation location)
+            implements Serializable {
+        private static final DocumentBuilder builder;
+        // Documents of the streams that are being read, released once a stream is no longer used
+        private static final Map<ObjectInputStream, Map<String, RestoredDocument>> documents = new WeakHashMap<>();
+
+        static {
+            try {
+                builder = DocumentBuilderFactory.newDefaultInstance().newDocumentBuilder();
+            } catch (ParserConfigurationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        static NodeSnapshot of(Node node) {
+            List<Node> ancestors = new ArrayList<>();
+            for (Node parent = node.getParentNode(); parent != null && parent.getNodeType() == Node.ELEMENT_NODE; parent = parent.getParentNode())
+                ancestors.addFirst(parent);
+
+            String[] attributes = new String[node.getAttributes() == null ? 0 : node.getAttributes().getLength() * 2];
+            for (int i = 0; i < attributes.length / 2; i++) {
+                attributes[i * 2] = node.getAttributes().item(i).getNodeName();
+                attributes[i * 2 + 1] = node.getAttributes().item(i).getNodeValue();
+            }
+
+            int[] positions = new int[ancestors.size() + 1];
+            for (int i = 0; i < ancestors.size(); i++)
+                positions[i] = position(ancestors.get(i));
+            positions[ancestors.size()] = position(node);
+
+            Document document = node.getOwnerDocument();
+            return new NodeSnapshot(document == null ? null : document.getDocumentURI(),
+                    ancestors.stream().map(Node::getNodeName).toArray(String[]::new),
+                    ancestors.stream().map(a -> a.getAttributes().getNamedItem("name"))
+                            .map(n -> n == null ? null : n.getNodeValue()).toArray(String[]::new),
+                    positions, node.getNodeName(), attributes, SourceLocation.of(node));
+        }
+
+        private static int position(Node node) {
+            int position = 0;
+            for (Node sibling = node.getPreviousSibling(); sibling != null; sibling = sibling.getPreviousSibling())
+                if (sibling.getNodeType() == Node.ELEMENT_NODE) position++;
+            return position;
+        }
+
+        /**
+         * Restores the node in a document that is shared by the nodes of the same source document read from the stream,
+         * along with their common ancestors.
+         */
+        Node restore(ObjectInputStream in) {
+            RestoredDocument restored;
+            if (this.documentURI == null)
+                restored = new RestoredDocument(this.documentURI);    // Nodes of different documents can't be told apart
+            else
+                synchronized (documents) {
+                    restored = documents.computeIfAbsent(in, k -> new HashMap<>()).computeIfAbsent(this.documentURI, RestoredDocument::new);
+                }
+
+            Node parent = restored.document;
+            for (int i = 0; i < this.ancestors.length; i++) {
+                String tag = this.ancestors[i], name = this.ancestorNames[i];
+                parent = restored.element(parent, Arrays.copyOf(this.positions, i + 1), tag);
+                if (name != null) ((Element) parent).setAttribute("name", name);
+            }
+
+            Element element = restored.element(parent, this.positions, this.name);
+            for (int i = 0; i < this.attributes.length; i += 2)
+                element.setAttribute(this.attributes[i], this.attributes[i + 1]);
+            if (this.location != null) this.location.attach(element);
+
+            return element;
+        }
+    }
+
+    private static final class RestoredDocument {
+        private final Document document;
+        private final Map<List<Integer>, Element> elements = new HashMap<>();
+
+        private RestoredDocument(String documentURI) {
+            synchronized (NodeSnapshot.builder) {
+                this.document = NodeSnapshot.builder.newDocument();
+            }
+            this.document.setDocumentURI(documentURI);
+        }
+
+        /**
+         * Returns the element at the given path, creating it if it wasn't restored yet.
+         */
+        private Element element(Node parent, int[] path, String tag) {
+            return this.elements.computeIfAbsent(Arrays.stream(path).boxed().toList(),
+                    k -> (Element) parent.appendChild(this.document.createElement(tag)));
+        }
+    }
 }
@@ -20,11 +20,18 @@ import org.w3c.dom.Node;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
 
 /**
  * This element links other transcription files specified in {@code src} attribute to the bot.
  * Root elements of linked files can be one of: {@code <trees>}, {@code <keyboards>}, {@code <texts>}.
+ * <p>
+ * If the source is a directory ({@code src="path/*"}), its files are parsed concurrently
+ * and then added to the transcription in alphabetical order.
+ * Files that haven't changed since the transcription was parsed last time are not parsed again, see {@link XMLElementsParser#parseLinked}.
  *
  * @since 0.1
  */
@@ -50,33 +57,72 @@ public class Link extends NodeElement {
             if (files == null)
                 throw new TranscriptionParsingException("Unable to find source '" + this.source + "'", node);
 
-            files = Arrays.stream(files).filter(File::isFile).filter(f -> f.getName().endsWith(".xml")).toArray(File[]::new);
+            // Sorted, so that files are linked in the same order on every platform
+            files = Arrays.stream(files).filter(File::isFile).filter(f -> f.getName().endsWith(".xml")).sorted().toArray(File[]::new);
             sources = new String[files.length];
             for (int i = 0; i < files.length; i++)
                 sources[i] = files[i].getAbsolutePath();
         }
 
-        for (String source : sources)
-            parseSource(source, node, memory, parser);
-    }
-
-    private void parseSource(String source, Node node, TranscriptionMemory memory, XMLElementsParser parser) {
-        try {
+        List<LinkedSource> linked = new ArrayList<>(sources.length);
+        for (String source : sources) {
             File file = new File(source).isAbsolute() ? new File(source) : new File(parser.getRootDirectory(), source);
 
             if (memory.getLinkedFiles().stream().anyMatch(f -> f.getAbsolutePath().equals(file.getAbsolutePath())))
-                return;
+                continue;
             memory.getLinkedFiles().add(file);
 
-            parser.setCurrentTree(null);
-            Document document = XMLUtils.loadDocument(file);
+            linked.add(new LinkedSource(source, file));
+        }
+
+        // Every file is parsed by a forked parser, so that elements it contributes can be cached.
+        // Several files are parsed concurrently and merged in order of linking
+        List<XMLElementsParser> forks = linked.stream().map(l -> parser.fork()).toList();
+        if (linked.size() == 1) {
+            parseLinked(linked.getFirst(), node, forks.getFirst());
+            parser.join(forks.getFirst());
+            return;
+        }
+
+        // Errors are reported for the first file in order of linking, not for the first one to fail
+        RuntimeException[] errors = new RuntimeException[linked.size()];
+        IntStream.range(0, linked.size()).parallel().forEach(i -> {
+            try {
+                parseLinked(linked.get(i), node, forks.get(i));
+            } catch (RuntimeException e) {
+                errors[i] = e;
+            }
+        });
+
+        for (int i = 0; i < linked.size(); i++) {
+            if (errors[i] != null) throw errors[i];
+
+            parser.join(forks.get(i));
+        }
+    }
+
+    private record LinkedSource(String source, File file) {}
+
+    /**
+     * Parses the file, unless it hasn't changed since the last time it was parsed, see {@link XMLElementsParser#parseLinked}.
+     */
+    private static void parseLinked(LinkedSource linked, Node node, XMLElementsParser parser) {
+        LinkableElement linkableElement = parser.parseLinked(linked.file(), () -> parseSource(linked, node, parser));
+
+        if (linkableElement.afterParsedTask() != null)
+            parser.getTranscriptionMemory().getTasks().add(linkableElement.afterParsedTask());
+    }
+
+    private static LinkableElement parseSource(LinkedSource linked, Node node, XMLElementsParser parser) {
+        String source = linked.source();
+        try {
+            Document document = XMLUtils.loadDocument(linked.file());
             NodeElement result = parser.parse(document.getDocumentElement());
 
             if (!(result instanceof LinkableElement linkableElement))
                 throw new TranscriptionParsingException("Unable to link element '" + ReflectionUtils.annotation(result, Element.class).name() + "' in '" + source + "'", node);
 
-            if (linkableElement.afterParsedTask() != null)
-                memory.getTasks().add(linkableElement.afterParsedTask());
+            return linkableElement;
         } catch (IOException e) {
             throw new TranscriptionParsingException("Unable to find source '" + source + "'", node);
         } catch (TranscriptionParsingException | TelegRiseRuntimeException | TelegRiseInternalException e){
@@ -129,6 +129,22 @@ public class Webhook extends NodeElement {
     @Attribute(name = "keyStorePassword")
     private GeneratedValue<String> keyStorePassword;
 
+    /**
+     * If specified, the webhook server waits up to this number of milliseconds for the update to be handled
+     * and sends the first answer to a query or chat action of the handling session as the response to the webhook request,
+     * saving a separate request to the Bot API.
+     * Such methods are not sent to the Bot API and their result is always {@code true}: Telegram doesn't report
+     * whether a method from a webhook response has succeeded.
+     */
+    @Attribute(name = "replyTimeout")
+    private GeneratedValue<Integer> replyTimeout;
+
+    /**
+     * The maximum size of a webhook request body in bytes, larger requests are rejected. Defaults to 1 MiB.
+     */
+    @Attribute(name = "maxBodySize")
+    private GeneratedValue<Integer> maxBodySize = GeneratedValue.ofValue(1 << 20);
+
     @Override
     protected void validate(TranscriptionMemory memory) {
         var pool = new ResourcePool();
@@ -137,7 +137,6 @@ public class Text extends NodeElement implements EmbeddableElement, InteractiveE
             this.entities = original.entities;
             this.conditional = original.conditional;
             this.textConditionalElements = original.textConditionalElements;
-            this.byName = null;
         } catch (TelegRiseRuntimeException e) {
             throw new TranscriptionParsingException(e.getMessage(), node);
         }
@@ -6,13 +6,12 @@ import org.jetbrains.annotations.NotNull;
 import org.telegrise.telegrise.core.expressions.tokens.Token;
 import org.telegrise.telegrise.core.expressions.tokens.ValueToken;
 import org.telegrise.telegrise.core.parser.LocalNamespace;
+import org.telegrise.telegrise.core.utils.XMLUtils;
 import org.telegrise.telegrise.exceptions.TelegRiseInternalException;
 import org.telegrise.telegrise.exceptions.TelegRiseRuntimeException;
 import org.telegrise.telegrise.exceptions.TranscriptionParsingException;
 import org.w3c.dom.Node;
 
-import java.io.IOException;
-import java.lang.reflect.InvocationTargetException;
 import java.text.NumberFormat;
 import java.text.ParseException;
 import java.util.LinkedList;
@@ -21,10 +20,11 @@ import java.util.stream.Collectors;
 
 public class ExpressionFactory {
     @Getter
-    private static final JavaExpressionCompiler javaExpressionCompiler = new JavaExpressionCompiler(JavaExpressionCompiler.getTempDirectory());
+    private static final JavaExpressionCompiler javaExpressionCompiler = JavaExpressionCompiler.createDefault();
     private static final MethodReferenceCompiler methodReferenceCompiler = new MethodReferenceCompiler();
 
     public static @NotNull <T> GeneratedValue<T> createExpression(String text, Class<T> type, Node node, LocalNamespace namespace) {
+        node = XMLUtils.detach(node);  // Expressions keep the node for runtime errors
         Parser parser = new Parser(new Lexer(new CharsStream(text)));
 
         try {
@@ -123,12 +123,7 @@ public class ExpressionFactory {
                     parts.add(GeneratedValue.ofValue(current));
                     pointer += Syntax.EXPRESSION_START.length();
 
-                    try {
-                        parts.add(parseExpression());
-                    } catch (IOException | ClassNotFoundException | InvocationTargetException | NoSuchMethodException |
-                             InstantiationException | IllegalAccessException e) {
-                        throw new TelegRiseInternalException(e);
-                    }
+                    parts.add(parseExpression());
 
                     currentPart = new StringBuilder();
                 } else {
@@ -153,7 +148,7 @@ public class ExpressionFactory {
             return (pool) -> tClass.cast(parts.stream().map(i -> tClass.cast(i.generate(pool)).toString()).collect(Collectors.joining("")));
         }
 
-        private GeneratedValue<String> parseExpression() throws IOException, ClassNotFoundException, InvocationTargetException, NoSuchMethodException, InstantiationException, IllegalAccessException {
+        private GeneratedValue<String> parseExpression() {
             String left = this.source.substring(this.pointer);
             String expression = left.substring(0, left.indexOf(Syntax.EXPRESSION_END));
             pointer += expression.length() + Syntax.EXPRESSION_END.length();
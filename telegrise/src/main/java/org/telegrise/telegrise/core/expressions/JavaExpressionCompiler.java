@@ -6,30 +6,61 @@ import org.jboss.forge.roaster.ParserException;
 import org.jboss.forge.roaster.Roaster;
 import org.jboss.forge.roaster.model.source.JavaClassSource;
 import org.jboss.forge.roaster.model.source.MethodSource;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.telegrise.telegrise.core.ResourcePool;
 import org.telegrise.telegrise.core.parser.LocalNamespace;
 import org.telegrise.telegrise.exceptions.TelegRiseInternalException;
+import org.telegrise.telegrise.exceptions.TelegRiseRuntimeException;
 import org.telegrise.telegrise.exceptions.TranscriptionParsingException;
 import org.w3c.dom.Node;
 
-import javax.tools.JavaCompiler;
-import javax.tools.StandardJavaFileManager;
-import javax.tools.ToolProvider;
-import java.io.File;
-import java.io.IOException;
-import java.io.StringWriter;
-import java.lang.reflect.InvocationTargetException;
+import javax.tools.*;
+import java.io.*;
 import java.net.MalformedURLException;
+import java.net.URI;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
-
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Compiles Java expressions of transcriptions into classes that implement {@link GeneratedValue}.
+ * <p>
+ * Compilation is deferred: expressions that are not present in the temp directory are collected
+ * while the transcription is being parsed and compiled together by {@link #compilePending()},
+ * split into batches that are compiled in parallel.
+ * Compiled classes are loaded only when the expression is generated for the first time.
+ * <p>
+ * By default, classes are compiled to and loaded from the temp directory.
+ * A compiler created by {@link #inMemory(Path)} keeps compiled classes in memory instead
+ * and optionally stores them in a single compressed archive, which is read at startup.
+ * The default compiler can be switched to in-memory mode by the <code>telegrise.compileInMemory</code> property,
+ * the archive is specified by the <code>telegrise.expressionsArchive</code> property.
+ * <p>
+ * Classes are named after a digest of the expression and its context.
+ * The manifest of the temp directory (or the archive) maps class names to the text they were compiled from,
+ * which is compared before the class is reused, so the cache can be safely shared by different applications.
+ */
 public class JavaExpressionCompiler {
+    private static final Logger logger = LoggerFactory.getLogger(JavaExpressionCompiler.class);
+
     // Change to force recompilation of expressions when incompatible changes introduced
     public static final String VERSION = "1.2.4";
     private static final String VERSION_FIELD = "VERSION";
+    private static final int MIN_BATCH_SIZE = 32;
+    private static final String MANIFEST = "manifest.properties";
 
     public static String getTempDirectory(){
         return Objects.requireNonNullElse(
@@ -38,125 +69,343 @@ public class JavaExpressionCompiler {
         );
     }
 
-    private static String className(int hashcode){
-        return "Expression" + hashcode;
+    /**
+     * Creates a compiler configured by system properties: in-memory if <code>telegrise.compileInMemory</code> is true,
+     * with the archive from <code>telegrise.expressionsArchive</code>, otherwise the one that uses {@link #getTempDirectory()}.
+     */
+    public static JavaExpressionCompiler createDefault(){
+        if (!Boolean.getBoolean("telegrise.compileInMemory"))
+            return new JavaExpressionCompiler(getTempDirectory());
+
+        String archive = System.getProperty("telegrise.expressionsArchive");
+        return inMemory(archive == null ? null : Path.of(archive));
     }
 
-    private final File tempDirectoryPath;
-    private final URLClassLoader classLoader;
-    private boolean attemptRecompile = true;
+    /**
+     * Creates a compiler that doesn't use the file system, except for the archive of compiled expressions.
+     *
+     * @param archive file to read compiled expressions from and to write newly compiled ones to, or null
+     */
+    public static JavaExpressionCompiler inMemory(@Nullable Path archive){
+        return new JavaExpressionCompiler(null, archive);
+    }
 
-    public JavaExpressionCompiler(String tempDirectoryPath) {
-        this.tempDirectoryPath = new File(tempDirectoryPath);
+    private static String className(String key){
         try {
-            this.classLoader = URLClassLoader.newInstance(new URL[]{this.tempDirectoryPath.toURI().toURL()}, this.getClass().getClassLoader());
-        } catch (MalformedURLException e) {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            return "Expression" + HexFormat.of().formatHex(digest, 0, 16);
+        } catch (NoSuchAlgorithmException e) {
             throw new TelegRiseInternalException(e);
         }
     }
 
-    public GeneratedValue<?> compile(String expression, LocalNamespace namespace, Class<?> returnType, Node node) throws ClassNotFoundException, NoSuchMethodException, InvocationTargetException, InstantiationException, IllegalAccessException, IOException {
-        int hashcode = this.calculateHashcode(expression, namespace);
+    private final @Nullable File tempDirectoryPath;
+    private final @Nullable Path archive;
+    // Bytecode of compiled classes by their names, if classes are kept in memory
+    private final @Nullable Map<String, byte[]> classes;
+    private final ClassLoader classLoader;
+    private final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    // Names of the classes that are present in the temp directory or in memory
+    private final Set<String> compiledClasses = ConcurrentHashMap.newKeySet();
+    // Keys of compiled expressions by their class names
+    private final Map<String, String> manifest = new ConcurrentHashMap<>();
+    // Names of the expression classes that were requested, only they are written to the archive
+    private final Set<String> usedClasses = ConcurrentHashMap.newKeySet();
+    private final Map<String, ExpressionSource> pending = new LinkedHashMap<>();
 
-        if (this.isExpressionExists(hashcode)){
-            try{
-                return createInstance(hashcode, node);
-            } catch(Throwable t) {
-                if (!attemptRecompile) throw t;
+    public JavaExpressionCompiler(String tempDirectoryPath) {
+        this(new File(tempDirectoryPath), null);
+    }
 
-                // Deletes problematic file
-                for (File f : Objects.requireNonNull(this.tempDirectoryPath.listFiles(((file, s) -> s.equals(className(hashcode) + ".class")))))
-                    //noinspection ResultOfMethodCallIgnored
-                    f.delete();
+    private JavaExpressionCompiler(@Nullable File tempDirectoryPath, @Nullable Path archive) {
+        this.tempDirectoryPath = tempDirectoryPath;
+        this.archive = archive;
 
-                attemptRecompile = false;
-                compile(expression, namespace, returnType, node);
-            }
+        if (tempDirectoryPath == null) {
+            this.classes = new ConcurrentHashMap<>();
+            this.classLoader = new ExpressionClassLoader(this.classes, this.getClass().getClassLoader());
+            if (archive != null) this.readArchive(archive);
+
+            this.compiledClasses.addAll(this.classes.keySet());
+            return;
         }
 
-        JavaClassSource source;
-        List<Class<?>> imported;
+        this.classes = null;
         try {
-            if (returnType == void.class)
-                returnType = Void.class;
-            else if (returnType.isPrimitive())
-                returnType = ClassUtils.primitiveToWrapper(returnType);
-
-            Pair<JavaClassSource, List<Class<?>>> pair = this.createSource(expression, hashcode, returnType, namespace);
-            source = pair.getKey();
-            imported = pair.getValue();
-        } catch (ParserException e) {
-            throw new TranscriptionParsingException("Syntax error in expression: " + e.getProblems().getFirst().getMessage(), node);
+            this.classLoader = URLClassLoader.newInstance(new URL[]{tempDirectoryPath.toURI().toURL()}, this.getClass().getClassLoader());
+        } catch (MalformedURLException e) {
+            throw new TelegRiseInternalException(e);
         }
 
-        File sourceFile = this.createSourceFile(source, hashcode);
-        this.compileSourceFile(sourceFile, node, imported);
+        String[] files = tempDirectoryPath.list((file, s) -> s.endsWith(JavaFileObject.Kind.CLASS.extension));
+        if (files != null)
+            for (String file : files)
+                this.compiledClasses.add(file.substring(0, file.length() - JavaFileObject.Kind.CLASS.extension.length()));
 
-        attemptRecompile = true;
-        return createInstance(hashcode, node);
+        this.manifest.putAll(readManifest(new File(tempDirectoryPath, MANIFEST).toPath()));
     }
 
-    private GeneratedValue<?> createInstance(int hashcode, Node node) throws InstantiationException, IllegalAccessException,
-            InvocationTargetException, NoSuchMethodException, ClassNotFoundException {
-        var result = (GeneratedValue<?>) this.loadExpressionClass(hashcode).getConstructor().newInstance();
-
-        Arrays.stream(result.getClass().getFields())
-                .filter(f -> f.getName().equals(VERSION_FIELD))
-                .map(f -> { try { return f.get(null); } catch (Exception e) { return null; } })
-                .filter(Objects::nonNull)
-                .findFirst().ifPresent(
-                        v -> { if (!v.equals(VERSION)) throw new TranscriptionParsingException("Wrong version of compiled expression was found: " + v, node); }
-                );
+    /**
+     * Returns value of the expression that is compiled either from the cache or by the next call to {@link #compilePending()}.
+     * Syntax errors are reported immediately, while compilation errors are reported when pending expressions are compiled.
+     */
+    public GeneratedValue<?> compile(String expression, LocalNamespace namespace, Class<?> returnType, Node node) {
+        if (returnType == void.class)
+            returnType = Void.class;
+        else if (returnType.isPrimitive())
+            returnType = ClassUtils.primitiveToWrapper(returnType);
+
+        String key = this.calculateKey(expression, returnType, namespace);
+        String className = className(key);
+        CompiledExpression result = new CompiledExpression(this, className, node);
+        this.usedClasses.add(className);
+
+        Class<?> type = returnType;
+        if (this.compiledClasses.contains(className) && key.equals(this.manifest.get(className)))
+            result.recompile = () -> this.enqueue(className, key, expression, type, namespace, node);
+        else
+            this.enqueue(className, key, expression, type, namespace, node);
 
         return result;
     }
 
-    private boolean isExpressionExists(int hashcode){
-        File[] files = this.tempDirectoryPath.listFiles(((file, s) -> s.equals(className(hashcode) + ".class")));
-        return files != null && files.length != 0;
+    /**
+     * Compiles all expressions that were collected since the last call.
+     *
+     * @throws TranscriptionParsingException if any of the expressions can't be compiled
+     */
+    public synchronized void compilePending() {
+        if (this.pending.isEmpty()) return;
+
+        List<ExpressionSource> sources = new ArrayList<>(this.pending.values());
+        this.pending.clear();
+
+        int batches = Math.clamp(sources.size() / MIN_BATCH_SIZE, 1, Runtime.getRuntime().availableProcessors());
+        int batchSize = (sources.size() + batches - 1) / batches;
+        List<List<ExpressionSource>> partition = new ArrayList<>(batches);
+        for (int i = 0; i < sources.size(); i += batchSize)
+            partition.add(sources.subList(i, Math.min(i + batchSize, sources.size())));
+
+        //noinspection resource
+        List<Diagnostic<? extends JavaFileObject>> errors = (partition.size() == 1 ? partition.stream() : partition.parallelStream())
+                .map(this::compileBatch).flatMap(List::stream).toList();
+
+        if (this.archive != null)
+            this.writeArchive(this.archive);
+        else if (this.tempDirectoryPath != null)
+            this.writeManifest(new File(this.tempDirectoryPath, MANIFEST).toPath());
+
+        if (!errors.isEmpty()) {
+            if (!(errors.getFirst().getSource() instanceof ExpressionSource source))
+                throw new TelegRiseRuntimeException(errors.getFirst().getMessage(null));
+
+            String message = errors.stream().filter(d -> d.getSource() == source)
+                    .map(d -> d.getMessage(null)).collect(Collectors.joining("\n"));
+            throw new TranscriptionParsingException("An error occurred while compiling the expression:\n" + message, source.node);
+        }
+    }
+
+    private synchronized void enqueue(String className, String key, String expression, Class<?> returnType, LocalNamespace namespace, Node node) {
+        if (this.pending.containsKey(className)) return;
+
+        try {
+            var pair = this.createSource(expression, className, returnType, namespace);
+            this.pending.put(className, new ExpressionSource(className, key, pair.getKey().toString(), pair.getValue(), node));
+        } catch (ParserException e) {
+            throw new TranscriptionParsingException("Syntax error in expression: " + e.getProblems().getFirst().getMessage(), node);
+        }
+    }
+
+    private synchronized GeneratedValue<?> load(CompiledExpression expression) {
+        this.compilePending();
+
+        try {
+            return createInstance(this.classLoader, expression.className, expression.node);
+        } catch (TranscriptionParsingException | TelegRiseInternalException | LinkageError e) {
+            if (expression.recompile == null) throw e;
+
+            // Deletes problematic class
+            if (this.classes != null)
+                this.classes.remove(expression.className);
+            else
+                //noinspection ResultOfMethodCallIgnored
+                new File(this.tempDirectoryPath, expression.className + JavaFileObject.Kind.CLASS.extension).delete();
+            this.compiledClasses.remove(expression.className);
+
+            expression.recompile.run();
+            expression.recompile = null;
+            return this.load(expression);
+        }
     }
 
-    private Class<?> loadExpressionClass(int hashcode) throws ClassNotFoundException {
-        return Class.forName(className(hashcode), true, this.classLoader);
+    private static GeneratedValue<?> createInstance(ClassLoader classLoader, String className, @Nullable Node node) {
+        GeneratedValue<?> result;
+        Object version;
+        try {
+            Class<?> clazz = Class.forName(className, true, classLoader);
+            result = (GeneratedValue<?>) clazz.getConstructor().newInstance();
+            version = clazz.getField(VERSION_FIELD).get(null);
+        } catch (ReflectiveOperationException e) {
+            throw new TelegRiseInternalException(e);
+        }
+
+        if (!VERSION.equals(version)) {
+            String message = "Wrong version of compiled expression was found: " + version;
+            throw node != null ? new TranscriptionParsingException(message, node) : new TelegRiseRuntimeException(message);
+        }
+
+        return result;
     }
 
-    private void compileSourceFile(File source, Node node, List<Class<?>> imported) throws IOException {
-        List<String> optionList = new ArrayList<>(Arrays.asList(
-                "-d", this.tempDirectoryPath.getAbsolutePath(), "-Xlint:none", "-XDsuppressNotes"
-        ));
+    private List<Diagnostic<? extends JavaFileObject>> compileBatch(List<ExpressionSource> sources) {
+        List<String> optionList = new ArrayList<>(Arrays.asList("-Xlint:none", "-XDsuppressNotes", "-proc:none"));
+        if (this.tempDirectoryPath != null) {
+            optionList.addAll(Arrays.asList("-d", this.tempDirectoryPath.getAbsolutePath()));
+            //noinspection ResultOfMethodCallIgnored
+            this.tempDirectoryPath.mkdirs();
+        }
 
         if (System.getProperty("jdk.module.path") != null){
             optionList.addAll(Arrays.asList("--module-path", System.getProperty("jdk.module.path"),
-                    "--add-modules", String.join(",", imported.stream().map(Class::getModule)
-                            .map(Module::getName).filter(Objects::nonNull)
+                    "--add-modules", String.join(",", sources.stream().flatMap(s -> s.imported.stream())
+                            .map(Class::getModule).map(Module::getName).filter(Objects::nonNull)
                             .map(String::strip).collect(Collectors.toSet()))));
         }
 
-        try (StringWriter err = new StringWriter()){
-            JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
-            StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, null);
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        StandardJavaFileManager standardFileManager = compiler.getStandardFileManager(diagnostics, null, StandardCharsets.UTF_8);
+        try (JavaFileManager fileManager = this.classes == null ? standardFileManager : new MemoryFileManager(standardFileManager, this.classes)) {
+            boolean success = compiler.getTask(null, fileManager, diagnostics, optionList, null, sources).call();
+
+            List<Diagnostic<? extends JavaFileObject>> errors = diagnostics.getDiagnostics().stream()
+                    .filter(d -> d.getKind() == Diagnostic.Kind.ERROR).collect(Collectors.toList());
+            if (success && errors.isEmpty())
+                sources.forEach(s -> {
+                    this.compiledClasses.add(s.className);
+                    this.manifest.put(s.className, s.key);
+                });
+
+            return errors;
+        } catch (IOException e) {
+            throw new TelegRiseInternalException(e);
+        }
+    }
+
+    // Bytecode of the expression class and its nested classes
+    private synchronized Map<String, byte[]> bytecode(String className) {
+        this.compilePending();
+
+        Map<String, byte[]> result = new HashMap<>();
+        if (this.classes != null) {
+            this.classes.forEach((name, bytes) -> {
+                if (name.equals(className) || name.startsWith(className + "$")) result.put(name, bytes);
+            });
+            return result;
+        }
+
+        File[] files = Objects.requireNonNull(this.tempDirectoryPath).listFiles((file, s) ->
+                s.equals(className + JavaFileObject.Kind.CLASS.extension) || s.startsWith(className + "$") && s.endsWith(JavaFileObject.Kind.CLASS.extension));
+        try {
+            for (File file : Objects.requireNonNull(files))
+                result.put(file.getName().substring(0, file.getName().length() - JavaFileObject.Kind.CLASS.extension.length()),
+                        Files.readAllBytes(file.toPath()));
+        } catch (IOException e) {
+            throw new TelegRiseInternalException(e);
+        }
 
-            compiler.getTask(err, fileManager, null, optionList, null,
-                    fileManager.getJavaFileObjectsFromFiles(Collections.singletonList(source))).call();
-            Files.delete(source.toPath());
+        return result;
+    }
 
-            if (!err.toString().isEmpty())
-                throw new TranscriptionParsingException("An error occurred while compiling the expression:\n" + err, node);
+    private void readArchive(Path archive) {
+        if (!Files.exists(archive)) return;
+
+        try (ZipFile zip = new ZipFile(archive.toFile())) {
+            for (ZipEntry entry : Collections.list(zip.entries())) {
+                try (InputStream input = zip.getInputStream(entry)) {
+                    if (entry.getName().equals(MANIFEST)) {
+                        Properties properties = new Properties();
+                        properties.load(input);
+                        properties.forEach((k, v) -> this.manifest.put((String) k, (String) v));
+                    } else if (entry.getName().endsWith(JavaFileObject.Kind.CLASS.extension)) {
+                        String name = entry.getName().substring(0, entry.getName().length() - JavaFileObject.Kind.CLASS.extension.length());
+                        this.classes.put(name, input.readAllBytes());
+                    }
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Unable to read compiled expressions from '{}', they will be recompiled", archive, e);
+            this.classes.clear();
+            this.manifest.clear();
         }
     }
 
-    private File createSourceFile(JavaClassSource source, int hashcode) throws IOException {
-        File result = new File(tempDirectoryPath, className(hashcode) + ".java");
-        //noinspection ResultOfMethodCallIgnored
-        result.getParentFile().mkdirs();
-        Files.writeString(result.toPath(), source.toString());
+    private static Map<String, String> readManifest(Path path) {
+        if (!Files.exists(path)) return Map.of();
+
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        } catch (IOException | IllegalArgumentException e) {
+            logger.warn("Unable to read manifest of compiled expressions '{}', they will be recompiled", path, e);
+            return Map.of();
+        }
 
+        Map<String, String> result = new HashMap<>();
+        properties.forEach((k, v) -> result.put((String) k, (String) v));
         return result;
     }
 
-    private Pair<JavaClassSource, List<Class<?>>> createSource(String expression, int hashcode, Class<?> returnType, LocalNamespace namespace){
+    private void writeManifest(Path path) {
+        // The directory can be shared with other applications, so entries written by them are preserved
+        Properties properties = new Properties();
+        properties.putAll(readManifest(path));
+        properties.putAll(this.manifest);
+
+        try {
+            Path temp = Files.createTempFile(path.getParent(), MANIFEST, ".tmp");
+            try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                properties.store(writer, null);
+            }
+
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warn("Unable to write manifest of compiled expressions to '{}'", path, e);
+        }
+    }
+
+    private void writeArchive(Path archive) {
+        try {
+            Path parent = archive.toAbsolutePath().getParent();
+            Files.createDirectories(parent);
+            Path temp = Files.createTempFile(parent, archive.getFileName().toString(), ".tmp");
+
+            try (ZipOutputStream output = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                Properties properties = new Properties();
+                this.manifest.forEach((name, key) -> { if (this.usedClasses.contains(name)) properties.put(name, key); });
+                output.putNextEntry(new ZipEntry(MANIFEST));
+                properties.store(output, null);
+                output.closeEntry();
+
+                for (var entry : new TreeMap<>(this.classes).entrySet()) {
+                    // Nested classes are named after their expression class
+                    int nested = entry.getKey().indexOf('$');
+                    if (!this.usedClasses.contains(nested == -1 ? entry.getKey() : entry.getKey().substring(0, nested))) continue;
+
+                    output.putNextEntry(new ZipEntry(entry.getKey() + JavaFileObject.Kind.CLASS.extension));
+                    output.write(entry.getValue());
+                    output.closeEntry();
+                }
+            }
+
+            Files.move(temp, archive, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warn("Unable to write compiled expressions to '{}'", archive, e);
+        }
+    }
+
+    private Pair<JavaClassSource, List<Class<?>>> createSource(String expression, String className, Class<?> returnType, LocalNamespace namespace){
         JavaClassSource source = Roaster.create(JavaClassSource.class);
-        source.setName(className(hashcode));
+        source.setName(className);
         source.addImport(GeneratedValue.class);
         source.addImport(ResourcePool.class);
         source.addImport(returnType);
@@ -193,11 +442,123 @@ public class JavaExpressionCompiler {
         return Pair.of(source, resources);
     }
 
-    private int calculateHashcode(String expression, LocalNamespace namespace){
-        return Math.abs((
-                        expression + VERSION + System.getProperty("java.version") +
-                        (namespace.getHandlerClass() != null ? namespace.getHandlerClass().getName() : "") +
-                        namespace.getApplicationNamespace().getImportedClasses().stream().map(Class::getName).sorted().collect(Collectors.joining())
-                ).hashCode());
+    private String calculateKey(String expression, Class<?> returnType, LocalNamespace namespace){
+        return String.join("\n", expression, returnType.getName(), VERSION, System.getProperty("java.version"),
+                namespace.getHandlerClass() != null ? namespace.getHandlerClass().getName() : "",
+                namespace.getApplicationNamespace().getImportedClasses().stream().map(Class::getName).sorted().collect(Collectors.joining(",")));
+    }
+
+    private static final class ExpressionSource extends SimpleJavaFileObject {
+        private final String className;
+        private final String key;
+        private final String code;
+        private final List<Class<?>> imported;
+        private final Node node;
+
+        private ExpressionSource(String className, String key, String code, List<Class<?>> imported, Node node) {
+            super(URI.create("string:///" + className + Kind.SOURCE.extension), Kind.SOURCE);
+            this.className = className;
+            this.key = key;
+            this.code = code;
+            this.imported = imported;
+            this.node = node;
+        }
+
+        @Override
+        public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+            return this.code;
+        }
+    }
+
+    private static final class MemoryFileManager extends ForwardingJavaFileManager<StandardJavaFileManager> {
+        private final Map<String, byte[]> classes;
+
+        private MemoryFileManager(StandardJavaFileManager fileManager, Map<String, byte[]> classes) {
+            super(fileManager);
+            this.classes = classes;
+        }
+
+        @Override
+        public JavaFileObject getJavaFileForOutput(Location location, String className, JavaFileObject.Kind kind, FileObject sibling) {
+            return new SimpleJavaFileObject(URI.create("bytes:///" + className + kind.extension), kind) {
+                @Override
+                public OutputStream openOutputStream() {
+                    return new ByteArrayOutputStream() {
+                        @Override
+                        public void close() {
+                            classes.put(className, this.toByteArray());
+                        }
+                    };
+                }
+            };
+        }
+    }
+
+    private static final class ExpressionClassLoader extends ClassLoader {
+        private final Map<String, byte[]> classes;
+
+        private ExpressionClassLoader(Map<String, byte[]> classes, ClassLoader parent) {
+            super(parent);
+            this.classes = classes;
+        }
+
+        @Override
+        protected Class<?> findClass(String name) throws ClassNotFoundException {
+            byte[] bytes = this.classes.get(name);
+            if (bytes == null) throw new ClassNotFoundException(name);
+
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+
+    /**
+     * Serialized form of compiled expressions, which carries the bytecode of the expression,
+     * so that it can be loaded without the compiler that produced it.
+     */
+    private record SerializedExpression(String className, Map<String, byte[]> classes) implements Serializable {
+        private static final Map<String, byte[]> deserializedClasses = new ConcurrentHashMap<>();
+        private static final ClassLoader deserializedLoader = new ExpressionClassLoader(deserializedClasses, JavaExpressionCompiler.class.getClassLoader());
+
+        @Serial
+        private Object readResolve() {
+            deserializedClasses.putAll(this.classes);
+            synchronized (deserializedLoader) {
+                return createInstance(deserializedLoader, this.className, null);
+            }
+        }
+    }
+
+    private static final class CompiledExpression implements GeneratedValue<Object> {
+        private final transient JavaExpressionCompiler compiler;
+        private final String className;
+        private final transient Node node;
+        // Present when the class was found in the cache, enqueues the expression for recompilation if the class can't be loaded
+        private transient Runnable recompile;
+        private transient volatile GeneratedValue<?> instance;
+
+        private CompiledExpression(JavaExpressionCompiler compiler, String className, Node node) {
+            this.compiler = compiler;
+            this.className = className;
+            this.node = node;
+        }
+
+        @Override
+        public Object generate(ResourcePool resourcePool) {
+            GeneratedValue<?> value = this.instance;
+            if (value == null) {
+                synchronized (this) {
+                    if (this.instance == null)
+                        this.instance = this.compiler.load(this);
+                    value = this.instance;
+                }
+            }
+
+            return value.generate(resourcePool);
+        }
+
+        @Serial
+        private Object writeReplace() {
+            return new SerializedExpression(this.className, this.compiler.bytecode(this.className));
+        }
     }
 }
@@ -24,29 +24,28 @@ import org.w3c.dom.Node;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
-import static org.telegrise.telegrise.core.expressions.references.MethodReference.compileParametersMapping;
-
 @Slf4j
 public class MethodReferenceCompiler {
     // Used to exclude reference duplication
-    private final Map<AccessibleObject, ReferenceExpression> referenceMap = new HashMap<>();
+    private final Map<AccessibleObject, ReferenceExpression> referenceMap = new ConcurrentHashMap<>();
 
     public ReferenceExpression compile(Token rootToken, LocalNamespace namespace, Class<?> returnType, Node node) {
         return switch (rootToken.getTokenType()) {
             case REFERENCE -> this.compileMethodReference((MethodReferenceToken) rootToken, namespace, node);
-            case GENERATOR -> this.compileGenerator((ReferenceGeneratorToken) rootToken, namespace, node);
+            case GENERATOR -> compileGenerator((ReferenceGeneratorToken) rootToken, namespace, node);
             case EXPRESSION -> this.compileExpression((ExpressionToken) rootToken, namespace, returnType, node);
             case IF_CONSTRUCTION -> this.compileIf((IfToken) rootToken, namespace, returnType, node);
-            case VALUE -> this.compileValue((ValueToken) rootToken, returnType);
+            case VALUE -> compileValue((ValueToken) rootToken, returnType);
             default -> null;
         };
     }
 
-    private ReferenceExpression compileValue(ValueToken rootToken, Class<?> returnType) {
+    private static ReferenceExpression compileValue(ValueToken rootToken, Class<?> returnType) {
         Object value = rootToken.getValue(returnType);
         return new ReferenceExpression() {
             @Override
@@ -103,12 +102,12 @@ public class MethodReferenceCompiler {
                 reference.setRight(right);
 
                 if (token.getOperatorToken().getOperator().equals(Syntax.AND_OPERATOR)) {
-                    reference.setOperation((l, r) -> l.invoke() && r.invoke());
+                    reference.setOperation((l, r, pool, instance, args) -> l.invoke(pool, instance, args) && r.invoke(pool, instance, args));
                 } else {
-                    reference.setOperation((l, r) -> l.invoke() || r.invoke());
+                    reference.setOperation((l, r, pool, instance, args) -> l.invoke(pool, instance, args) || r.invoke(pool, instance, args));
                 }
 
-                return reference;
+                return reference.resolve();
             }
             case Syntax.CHAIN_SEPARATOR: {
                 ReferenceExpression right = this.compile(token.getRight(), namespace, returnType, node);
@@ -135,20 +134,20 @@ public class MethodReferenceCompiler {
                 if (!isLeftList || right.parameterTypes().length == 1 && ReflectionUtils.isAssignableAny(
                         right.parameterTypes()[0], List.class, Collection.class, Object.class)
                 ) {
-                    reference.setOperation((l, r) -> r.invoke(l.invoke()));
+                    reference.setOperation((l, r, pool, instance, args) -> r.invokeWith(pool, instance, args, l.invoke(pool, instance, args)));
                 } else if (right.parameterTypes().length == 1 && right.parameterTypes()[0].isArray()) {
-                    reference.setOperation((l, r) -> {
-                        List<?> list = (List<?>) l.invoke();
-                        return r.invoke(list == null ? new Object[0] : new Object[]{ list.toArray() });
+                    reference.setOperation((l, r, pool, instance, args) -> {
+                        List<?> list = (List<?>) l.invoke(pool, instance, args);
+                        return r.invokeWith(pool, instance, args, list == null ? new Object[0] : new Object[]{ list.toArray() });
                     });
                 } else {
-                    reference.setOperation((l, r) -> {
-                        List<?> list = (List<?>) l.invoke();
-                        return list == null ? r.invoke() : r.invoke(list.toArray());
+                    reference.setOperation((l, r, pool, instance, args) -> {
+                        List<?> list = (List<?>) l.invoke(pool, instance, args);
+                        return list == null ? r.invoke(pool, instance, args) : r.invokeWith(pool, instance, args, list.toArray());
                     });
                 }
 
-                return reference;
+                return reference.resolve();
             }
             case Syntax.PARALLEL_SEPARATOR: {
                 ReferenceExpression left = this.compile(token.getLeft(), namespace, returnType, node);
@@ -166,9 +165,9 @@ public class MethodReferenceCompiler {
                 OperationReference<?, ?> reference = new OperationReference<>(left.returnType(), node);
                 reference.setLeft(left);
                 reference.setRight(right);
-                reference.setOperation((l, r) -> {
-                    Object result = l.invoke();
-                    r.invoke();
+                reference.setOperation((l, r, pool, instance, args) -> {
+                    Object result = l.invoke(pool, instance, args);
+                    r.invoke(pool, instance, args);
 
                     return result;
                 });
@@ -177,7 +176,7 @@ public class MethodReferenceCompiler {
                             .collect(Collectors.toSet()).toArray(Class[]::new)
                 );
 
-                return reference;
+                return reference.resolve();
             }
             case Syntax.GREATER_OPERATOR, Syntax.LESS_OPERATOR, Syntax.LESS_OR_EQUALS_OPERATOR, Syntax.GREATER_OR_EQUALS_OPERATOR: {
                 ReferenceExpression left = this.compile(token.getLeft(), namespace, Comparable.class, node);
@@ -194,32 +193,32 @@ public class MethodReferenceCompiler {
                 reference.setRight(right);
 
                 switch (operator){
-                    case Syntax.GREATER_OPERATOR -> reference.setOperation((l, r) -> {
-                        Object lv = l.invoke(), rv = r.invoke();
+                    case Syntax.GREATER_OPERATOR -> reference.setOperation((l, r, pool, instance, args) -> {
+                        Object lv = l.invoke(pool, instance, args), rv = r.invoke(pool, instance, args);
                         if(lv != null && rv != null && rv.getClass().equals(lv.getClass()))
                             return ((Comparable<Object>) lv).compareTo(rv) > 0;
                         else if (rv instanceof Number rn && lv instanceof Number ln)
                             return ln.doubleValue() > rn.doubleValue();
                         return false;
                     });
-                    case Syntax.GREATER_OR_EQUALS_OPERATOR -> reference.setOperation((l, r) -> {
-                        Object lv = l.invoke(), rv = r.invoke();
+                    case Syntax.GREATER_OR_EQUALS_OPERATOR -> reference.setOperation((l, r, pool, instance, args) -> {
+                        Object lv = l.invoke(pool, instance, args), rv = r.invoke(pool, instance, args);
                         if(lv != null && rv != null && rv.getClass().equals(lv.getClass()))
                             return ((Comparable<Object>) lv).compareTo(rv) >= 0;
                         else if (rv instanceof Number rn && lv instanceof Number ln)
                             return ln.doubleValue() >= rn.doubleValue();
                         return false;
                     });
-                    case Syntax.LESS_OPERATOR -> reference.setOperation((l, r) -> {
-                        Object lv = l.invoke(), rv = r.invoke();
+                    case Syntax.LESS_OPERATOR -> reference.setOperation((l, r, pool, instance, args) -> {
+                        Object lv = l.invoke(pool, instance, args), rv = r.invoke(pool, instance, args);
                         if(lv != null && rv != null && rv.getClass().equals(lv.getClass()))
                             return ((Comparable<Object>) lv).compareTo(rv) < 0;
                         else if (rv instanceof Number rn && lv instanceof Number ln)
                             return ln.doubleValue() < rn.doubleValue();
                         return false;
                     });
-                    case Syntax.LESS_OR_EQUALS_OPERATOR -> reference.setOperation((l, r) -> {
-                        Object lv = l.invoke(), rv = r.invoke();
+                    case Syntax.LESS_OR_EQUALS_OPERATOR -> reference.setOperation((l, r, pool, instance, args) -> {
+                        Object lv = l.invoke(pool, instance, args), rv = r.invoke(pool, instance, args);
                         if(lv != null && rv != null && rv.getClass().equals(lv.getClass()))
                             return ((Comparable<Object>) lv).compareTo(rv) <= 0;
                         else if (rv instanceof Number rn && lv instanceof Number ln)
@@ -234,7 +233,7 @@ public class MethodReferenceCompiler {
                                 .collect(Collectors.toSet()).toArray(Class[]::new)
                 );
 
-                return reference;
+                return reference.resolve();
             }
             case Syntax.EQUALS_OPERATOR, Syntax.NOT_EQUALS_OPERATOR: {
                 ReferenceExpression left = this.compile(token.getLeft(), namespace, Object.class, node);
@@ -251,14 +250,14 @@ public class MethodReferenceCompiler {
                 reference.setRight(right);
 
                 if(operator.equals(Syntax.EQUALS_OPERATOR))
-                    reference.setOperation((l, r) -> {
-                        Object lv = l.invoke(), rv = r.invoke();
+                    reference.setOperation((l, r, pool, instance, args) -> {
+                        Object lv = l.invoke(pool, instance, args), rv = r.invoke(pool, instance, args);
                         return Objects.equals(lv, rv) ||
                                 (lv instanceof Number ln && rv instanceof Number rn && ln.doubleValue() == rn.doubleValue());
                     });
                 else
-                    reference.setOperation((l, r) -> {
-                        Object lv = l.invoke(), rv = r.invoke();
+                    reference.setOperation((l, r, pool, instance, args) -> {
+                        Object lv = l.invoke(pool, instance, args), rv = r.invoke(pool, instance, args);
                         return !Objects.equals(lv, rv) &&
                                 !(lv instanceof Number ln && rv instanceof Number rn && ln.doubleValue() == rn.doubleValue());
                     });
@@ -268,7 +267,7 @@ public class MethodReferenceCompiler {
                             .collect(Collectors.toSet()).toArray(Class[]::new)
                 );
 
-                return reference;
+                return reference.resolve();
             }
             case Syntax.LIST_SEPARATOR: {
                 ReferenceExpression left = this.compile(token.getLeft(), namespace, Object.class, node);
@@ -286,33 +285,33 @@ public class MethodReferenceCompiler {
                 boolean rc = ClassUtils.isAssignable(right.returnType(), List.class);
 
                 if (!lc && !rc) {
-                    reference.setOperation((l, r) -> List.of(l.invoke(), r.invoke()));
+                    reference.setOperation((l, r, pool, instance, args) -> List.of(l.invoke(pool, instance, args), r.invoke(pool, instance, args)));
                 } else if(lc && !rc) {
-                    reference.setOperation((l, r) -> {
-                        Object first = l.invoke();
+                    reference.setOperation((l, r, pool, instance, args) -> {
+                        Object first = l.invoke(pool, instance, args);
                         assert first instanceof List : "Left statement expected to return an instance of List, but got " + first.getClass().getName();
 
                         List<Object> copy = new ArrayList<>((List<?>) first);
-                        copy.add(r.invoke());
+                        copy.add(r.invoke(pool, instance, args));
 
                         return copy;
                     });
                 } else if(!lc) {
-                    reference.setOperation((l, r) -> {
-                        Object second = r.invoke();
+                    reference.setOperation((l, r, pool, instance, args) -> {
+                        Object second = r.invoke(pool, instance, args);
                         assert second instanceof List : "Right statement expected to return an instance of List, but got " + second.getClass().getName();
 
                         List<Object> copy = new ArrayList<>((List<?>) second);
-                        copy.addFirst(l.invoke());
+                        copy.addFirst(l.invoke(pool, instance, args));
 
                         return copy;
                     });
                 } else {
-                    reference.setOperation((l, r) -> {
-                        Object first = l.invoke();
+                    reference.setOperation((l, r, pool, instance, args) -> {
+                        Object first = l.invoke(pool, instance, args);
                         assert first instanceof List : "Left statement expected to return an instance of List, but got " + first.getClass().getName();
 
-                        Object second = r.invoke();
+                        Object second = r.invoke(pool, instance, args);
                         assert second instanceof List : "Right statement expected to return an instance of List, but got " + second.getClass().getName();
 
                         List<Object> copy = new ArrayList<>((List<?>) first);
@@ -322,14 +321,14 @@ public class MethodReferenceCompiler {
                     });
                 }
 
-                return reference;
+                return reference.resolve();
             }
         }
 
         throw new IllegalArgumentException();
     }
 
-    private ReferenceExpression compileGenerator(ReferenceGeneratorToken token, LocalNamespace namespace, Node node) {
+    private static ReferenceExpression compileGenerator(ReferenceGeneratorToken token, LocalNamespace namespace, Node node) {
         if (token.getClassName() == null && (BuiltinReferences.GENERATORS.contains(token.getMethod()) || token.getMethod().equals(Syntax.REGISTER))) {
             var dummy = new ReferenceGeneratorToken(BuiltinReferences.class.getName(), token.getMethod(), token.getParams());
             return compileGenerator(dummy, namespace, node);
@@ -451,7 +450,7 @@ public class MethodReferenceCompiler {
         return found[0];
     }
 
-    private ReferenceExpression compileParametrizedReference(Method method, List<PrimitiveToken> parameters, boolean isStatic, LocalNamespace namespace, Node node) {
+    private static ReferenceExpression compileParametrizedReference(Method method, List<PrimitiveToken> parameters, boolean isStatic, LocalNamespace namespace, Node node) {
         if (parameters.stream().allMatch(ValueToken.class::isInstance) &&
                 Arrays.stream(method.getParameters()).noneMatch(p -> p.getType().isArray() || p.isVarArgs()))
             return compileExplicitParametrizedReference(method, parameters, isStatic);
@@ -498,13 +497,14 @@ public class MethodReferenceCompiler {
                 .map(a -> a instanceof String s ? StringEscapeUtils.unescapeJava(s) : a)
                 .toArray();
 
-        Class<?>[] parametersMapping = compileParametersMapping(method);
-        Object referenceHolder =  ReferenceHolders.get(method.getDeclaringClass());
+        MethodInvoker invoker = MethodInvoker.of(method);
+        Class<?> declaringClass = method.getDeclaringClass();
+        Class<?> returnType = method.getReturnType();
 
         return new ReferenceExpression() {
             @Override
-            public Object invoke(ResourcePool pool, Object instance, Object... args) throws InvocationTargetException, IllegalAccessException {
-                return method.invoke(isStatic ? referenceHolder : instance, MethodReference.compileArgs(tokenParams, pool, parametersMapping));
+            public Object invoke(ResourcePool pool, Object instance, Object... args) throws InvocationTargetException {
+                return invoker.invoke(isStatic ? ReferenceHolders.get(declaringClass) : instance, tokenParams, pool);
             }
 
             @Override
@@ -514,7 +514,7 @@ public class MethodReferenceCompiler {
 
             @Override
             public @NotNull Class<?> returnType() {
-                return method.getReturnType();
+                return returnType;
             }
         };
     }
@@ -0,0 +1,155 @@
+package org.telegrise.telegrise.core.expressions.references;
+
+import org.jetbrains.annotations.Nullable;
+import org.telegrise.telegrise.annotations.HiddenParameter;
+import org.telegrise.telegrise.core.ResourcePool;
+import org.telegrise.telegrise.exceptions.TelegRiseInternalException;
+
+import java.io.InvalidObjectException;
+import java.io.ObjectStreamException;
+import java.io.Serial;
+import java.io.Serializable;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.WrongMethodTypeException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Parameter;
+import java.util.stream.IntStream;
+
+/**
+ * Invokes a method through a method handle adapted to the {@code (Object target, Object[] arguments) -> Object} shape.
+ * <p>
+ * Positions and component slots of the parameters annotated with {@link HiddenParameter} are resolved once,
+ * so that on invocation only the hidden values are taken from the resource pool
+ * and the passed arguments are placed into their slots without scanning the whole parameter list.
+ * As with {@link Method#invoke}, exceptions thrown by the method are wrapped into {@link InvocationTargetException},
+ * while arguments that can't be passed to the method cause {@link IllegalArgumentException}.
+ * When deserialized, the invoker is created again for the same method.
+ *
+ * @since 1.0
+ */
+public final class MethodInvoker implements Serializable {
+    private static final MethodType INVOKER_TYPE = MethodType.methodType(Object.class, Object.class, Object[].class);
+    private static final MethodHandle WRAP_TARGET_EXCEPTION;
+
+    static {
+        try {
+            WRAP_TARGET_EXCEPTION = MethodHandles.lookup().findStatic(MethodInvoker.class, "wrapTargetException",
+                    MethodType.methodType(Object.class, Throwable.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final transient Method method;
+    private final transient MethodHandle handle;
+    private final int arity;
+    private final int[] hiddenSlots;
+    private final ResourcePool.ComponentSlot[] hiddenComponents;
+    private final int[] argumentSlots;
+
+    public static MethodInvoker of(Method method) {
+        try {
+            method.setAccessible(true);
+            MethodHandle handle = MethodHandles.lookup().unreflect(method).asFixedArity();
+            // Only exceptions of the method itself are marked, failures of argument adaptation are left as they are
+            MethodHandle wrapper = WRAP_TARGET_EXCEPTION.asType(MethodType.methodType(handle.type().returnType(), Throwable.class));
+            handle = MethodHandles.catchException(handle, Throwable.class,
+                    MethodHandles.dropArguments(wrapper, 1, handle.type().parameterList()));
+            if (Modifier.isStatic(method.getModifiers()))
+                handle = MethodHandles.dropArguments(handle, 0, Object.class);
+
+            int arity = method.getParameterCount();
+            handle = handle.asType(MethodType.genericMethodType(arity + 1))
+                    .asSpreader(Object[].class, arity)
+                    .asType(INVOKER_TYPE);
+
+            return new MethodInvoker(method, handle);
+        } catch (IllegalAccessException e) {
+            throw new TelegRiseInternalException(e);
+        }
+    }
+
+    private MethodInvoker(Method method, MethodHandle handle) {
+        Parameter[] parameters = method.getParameters();
+        this.method = method;
+        this.handle = handle;
+        this.arity = parameters.length;
+        this.hiddenSlots = IntStream.range(0, arity).filter(i -> parameters[i].isAnnotationPresent(HiddenParameter.class)).toArray();
+        this.hiddenComponents = IntStream.of(hiddenSlots).mapToObj(i -> ResourcePool.slotOf(parameters[i].getType()))
+                .toArray(ResourcePool.ComponentSlot[]::new);
+        this.argumentSlots = IntStream.range(0, arity).filter(i -> !parameters[i].isAnnotationPresent(HiddenParameter.class)).toArray();
+    }
+
+    /**
+     * Invokes the method with the passed arguments, filling hidden parameters with the components of the pool.
+     *
+     * @param target instance to invoke the method on, ignored for static methods
+     * @param args arguments of the parameters that aren't hidden, in their declaration order
+     * @param pool resource pool to take values of hidden parameters from
+     */
+    public Object invoke(@Nullable Object target, Object[] args, ResourcePool pool) throws InvocationTargetException {
+        if (args.length != this.argumentSlots.length)
+            throw new IllegalArgumentException("Wrong number of arguments: %d expected, %d passed".formatted(this.argumentSlots.length, args.length));
+
+        Object[] arguments = this.hiddenSlots.length == 0 ? args : this.arrange(args, pool);
+        try {
+            return (Object) this.handle.invokeExact(target, arguments);
+        } catch (TargetException e) {
+            throw new InvocationTargetException(e.getCause());
+        } catch (ClassCastException | NullPointerException | WrongMethodTypeException e) {
+            throw new IllegalArgumentException("Arguments don't match parameters of method '%s': %s".formatted(this.method.getName(), e.getMessage()), e);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new TelegRiseInternalException(e);
+        }
+    }
+
+    private static Object wrapTargetException(Throwable e) throws TargetException {
+        throw new TargetException(e);
+    }
+
+    /**
+     * Marks an exception thrown by the invoked method itself.
+     */
+    private static final class TargetException extends Exception {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        TargetException(Throwable cause) {
+            super(null, cause, false, false);
+        }
+    }
+
+    private Object[] arrange(Object[] args, ResourcePool pool) {
+        Object[] arguments = new Object[this.arity];
+
+        for (int i = 0; i < this.hiddenSlots.length; i++)
+            arguments[this.hiddenSlots[i]] = this.hiddenComponents[i].get(pool);
+
+        for (int i = 0; i < this.argumentSlots.length; i++)
+            arguments[this.argumentSlots[i]] = args[i];
+
+        return arguments;
+    }
+
+    @Serial
+    private Object writeReplace() {
+        return new SerializedForm(this.method.getDeclaringClass(), this.method.getName(), this.method.getParameterTypes());
+    }
+
+    private record SerializedForm(Class<?> declaringClass, String name, Class<?>[] parameterTypes) implements Serializable {
+        @Serial
+        private Object readResolve() throws ObjectStreamException {
+            try {
+                return MethodInvoker.of(this.declaringClass.getDeclaredMethod(this.name, this.parameterTypes));
+            } catch (NoSuchMethodException e) {
+                throw new InvalidObjectException("Method '%s' of %s no longer exists".formatted(this.name, this.declaringClass.getName()));
+            }
+        }
+    }
+}
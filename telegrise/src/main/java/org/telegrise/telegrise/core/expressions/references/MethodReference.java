@@ -16,19 +16,14 @@ import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Parameter;
 import java.util.Arrays;
-import java.util.Map;
-import java.util.stream.IntStream;
 
 public class MethodReference implements ReferenceExpression{
     @Getter
     private transient Method method;
     /**
-     * Length == method.getParametersCount(). If the element is not null,
-     * then the parameter at the same index is annotated as @HiddenParameter
-     * and requires a global value of the type that the element is. Otherwise, it is a regular parameter.
-     * See implementations of prepareParameters and compileArgs methods.
+     * Invokes the method, placing passed arguments and values of @HiddenParameter parameters into their slots.
      */
-    private transient Class<?>[] parametersMapping;
+    private transient MethodInvoker invoker;
     private transient Class<?>[] requiredParameters;
     @Getter
     private final Class<?> declaringClass;
@@ -54,7 +49,7 @@ public class MethodReference implements ReferenceExpression{
                 .map(Parameter::getType)
                 .toArray(Class[]::new);
 
-        this.parametersMapping = compileParametersMapping(method);
+        this.invoker = MethodInvoker.of(method);
     }
 
     @Override
@@ -68,9 +63,9 @@ public class MethodReference implements ReferenceExpression{
         } else {
             Object result;
             if (isStatic)
-                result = method.invoke(ReferenceHolders.get(declaringClass), compileArgs(args, pool, parametersMapping));
+                result = invoker.invoke(ReferenceHolders.get(declaringClass), args, pool);
             else
-                result = method.invoke(instance, compileArgs(args, pool, parametersMapping));
+                result = invoker.invoke(instance, args, pool);
 
             if(cache != null)
                 cache.write(result, pool);
@@ -79,33 +74,6 @@ public class MethodReference implements ReferenceExpression{
         }
     }
 
-    public static Object[] compileArgs(Object[] args, ResourcePool pool, Class<?>[] mappings) {
-        Map<Class<?>, Object> components = pool.getComponents();
-        Object[] result = new Object[mappings.length];
-
-        int i, a;
-        for (i = 0, a = 0; i < mappings.length; i++) {
-            Class<?> mapping = mappings[i];
-            if (mapping != null)
-                result[i] = ResourcePool.extractComponent(components, mapping);
-            else
-                result[i] = args[a++];
-        }
-
-        assert a == args.length;
-
-        return result;
-    }
-
-    public static Class<?>[] compileParametersMapping(Method method) {
-        return IntStream.range(0, method.getParameterCount())
-                .mapToObj(i -> {
-                    var param = method.getParameters()[i];
-                    return param.isAnnotationPresent(HiddenParameter.class) ? param.getType() : null;
-                })
-                .toArray(Class[]::new);
-    }
-
     @Override
     public @NotNull Class<?>[] parameterTypes() {
         return requiredParameters;
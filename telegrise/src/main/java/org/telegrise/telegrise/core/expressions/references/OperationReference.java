@@ -3,19 +3,28 @@ package org.telegrise.telegrise.core.expressions.references;
 import lombok.Setter;
 import org.apache.commons.lang3.ClassUtils;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.telegrise.telegrise.core.ResourcePool;
 import org.telegrise.telegrise.core.expressions.GeneratedValue;
 import org.telegrise.telegrise.exceptions.TelegRiseRuntimeException;
 import org.w3c.dom.Node;
 
+import java.io.Serializable;
 import java.lang.reflect.InvocationTargetException;
 import java.util.Arrays;
-import java.util.List;
-import java.util.Map;
-import java.util.NoSuchElementException;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
+/**
+ * Applies an operation to the results of two references.
+ * <p>
+ * Arguments of the operation are one value per each of its {@link #parameterTypes() parameter types}.
+ * The way they are routed to each side is resolved once by {@link #resolve()} after the operation is compiled,
+ * so that evaluation only picks arguments by their precomputed positions.
+ * A side that doesn't compose its parameters receives the arguments of the operation as is,
+ * which also applies to all operations nested in it (for cases like {@code #getNull -> (#first OPERATOR #second)}).
+ */
 public class OperationReference<L, R> implements ReferenceExpression{
     @Setter
     private ReferenceExpression left, right;
@@ -30,59 +39,71 @@ public class OperationReference<L, R> implements ReferenceExpression{
     private boolean composeLeft = true;
     private final Node node;  // For runtime errors
 
+    private Operand<L> leftOperand;
+    private Operand<R> rightOperand;
+
     public OperationReference(Class<?> returnType, Node node) {
         this.returnType = returnType;
         this.node = node;
     }
 
-    @Override
-    public Object invoke(ResourcePool pool, Object instance, Object... args) throws InvocationTargetException, IllegalAccessException {
-        ExpressionSupplier<L> leftSupplier = (overrideArgs) ->
-                this.invokeSide(this.left, pool, instance, overrideArgs.length == 0 ? args : overrideArgs, composeLeft);
-        ExpressionSupplier<R> rightSupplier = (overrideArgs) ->
-                this.invokeSide(this.right, pool, instance, overrideArgs.length == 0 ? args : overrideArgs, composeRight);
-
-        return operation.apply(leftSupplier, rightSupplier);
+    /**
+     * Resolves the routing of arguments to both sides of this operation.
+     * Must be called after all properties are set and before the reference is invoked.
+     *
+     * @return this reference
+     */
+    public OperationReference<L, R> resolve() {
+        if (this.parameters == null)
+            this.parameters = Stream.concat(Arrays.stream(left.parameterTypes()), Arrays.stream(right.parameterTypes()))
+                    .collect(Collectors.toSet()).toArray(Class[]::new);
+
+        this.leftOperand = this.createOperand(this.left, this.composeLeft);
+        this.rightOperand = this.createOperand(this.right, this.composeRight);
+        return this;
     }
 
-    private <K> K invokeSide(ReferenceExpression reference, ResourcePool pool, Object instance, Object[] args,
-                             boolean flexible) throws InvocationTargetException, IllegalAccessException {
-        Object[] parameters = flexible ? composeParameters(reference, args) : args;
+    private <T> Operand<T> createOperand(ReferenceExpression reference, boolean compose) {
+        if (compose)
+            return new Operand<>(reference, this.route(reference.parameterTypes()), this.node);
 
-        // for cases like #getNull → (#first OPERATOR #second)
-        if (!flexible && reference instanceof OperationReference<?, ?> r){
-            r.setComposeRight(false);
+        if (reference instanceof OperationReference<?, ?> r) {
             r.setComposeLeft(false);
+            r.setComposeRight(false);
+            r.resolve();
         }
 
-        //noinspection unchecked
-        return (K) reference.invoke(pool, instance, parameters);
+        return new Operand<>(reference, null, this.node);
     }
 
-    private Object[] composeParameters(ReferenceExpression reference, Object[] args) {
-        Map<Class<?>, List<Object>> components = Arrays.stream(args).collect(Collectors.groupingBy(Object::getClass, Collectors.toList()));
-
-        if (!Arrays.stream(reference.parameterTypes()).map(p -> p.isPrimitive() ? ClassUtils.primitiveToWrapper(p) : p)
-                .allMatch(p -> components.keySet().stream().anyMatch(c -> ClassUtils.isAssignable(c, p))))
-            throw new TelegRiseRuntimeException("Illegal parameters set: {" + Arrays.stream(reference.parameterTypes())
-                    .map(Class::getSimpleName).collect(Collectors.joining(", ")) + "}");
-
-        Object[] result = new Object[reference.parameterTypes().length];
-        for(int i = 0; i < result.length; i++){
-            Class<?> type = ClassUtils.primitiveToWrapper(reference.parameterTypes()[i]);
-            try{
-                List<Object> value = components.entrySet().stream()
-                        .filter(e -> !e.getValue().isEmpty())
-                        .filter(e -> ClassUtils.isAssignable(e.getKey(), type))
-                        .map(Map.Entry::getValue).findFirst().orElseThrow();
-                result[i] = value.removeFirst();
-            } catch(NullPointerException | IndexOutOfBoundsException | NoSuchElementException e){
-                throw new TelegRiseRuntimeException("Unable to pass arguments of types %s to reference with parameters of types %s"
-                    .formatted(Arrays.stream(args).map(Object::getClass).toList(), Arrays.deepToString(reference.parameterTypes())), node);
-            }
+    /**
+     * For each of the required types, finds the position of an argument which type is assignable to it.
+     * Each argument is used at most once.
+     *
+     * @return positions of the arguments, null if they are passed as is, or {@link Operand#UNRESOLVED} if there are no such arguments
+     */
+    private int @Nullable [] route(Class<?>[] required) {
+        boolean[] used = new boolean[this.parameters.length];
+        int[] route = new int[required.length];
+
+        for (int r = 0; r < required.length; r++) {
+            Class<?> type = ClassUtils.primitiveToWrapper(required[r]);
+            int found = IntStream.range(0, this.parameters.length)
+                    .filter(i -> !used[i] && ClassUtils.isAssignable(ClassUtils.primitiveToWrapper(this.parameters[i]), type))
+                    .findFirst().orElse(-1);
+
+            if (found == -1) return Operand.UNRESOLVED;
+            used[found] = true;
+            route[r] = found;
         }
 
-        return result;
+        boolean identity = route.length == this.parameters.length && IntStream.range(0, route.length).allMatch(i -> route[i] == i);
+        return identity ? null : route;
+    }
+
+    @Override
+    public Object invoke(ResourcePool pool, Object instance, Object... args) throws InvocationTargetException, IllegalAccessException {
+        return operation.apply(this.leftOperand, this.rightOperand, pool, instance, args);
     }
 
     @Override
@@ -104,12 +125,64 @@ public class OperationReference<L, R> implements ReferenceExpression{
     }
 
     @FunctionalInterface
-    public interface Operation<L, R>{
-        Object apply(ExpressionSupplier<L> left, ExpressionSupplier<R> right) throws InvocationTargetException, IllegalAccessException ;
+    public interface Operation<L, R> extends Serializable {
+        Object apply(Operand<L> left, Operand<R> right, ResourcePool pool, Object instance, Object[] args) throws InvocationTargetException, IllegalAccessException;
     }
 
-    @FunctionalInterface
-    public interface ExpressionSupplier<T>{
-        T invoke(Object... args) throws InvocationTargetException, IllegalAccessException ;
+    /**
+     * A side of the operation with the resolved routing of arguments.
+     */
+    public static final class Operand<T> implements Serializable {
+        private static final int[] UNRESOLVED = new int[0];
+        private static final Object[] NO_ARGUMENTS = new Object[0];
+
+        private final ReferenceExpression reference;
+        private final int @Nullable [] route;
+        private final Node node;
+
+        private Operand(ReferenceExpression reference, int @Nullable [] route, Node node) {
+            this.reference = reference;
+            this.route = route;
+            this.node = node;
+        }
+
+        /**
+         * Invokes the side with the arguments of the operation.
+         */
+        public T invoke(ResourcePool pool, Object instance, Object[] args) throws InvocationTargetException, IllegalAccessException {
+            return this.call(pool, instance, this.route == null ? args : this.compose(args));
+        }
+
+        /**
+         * Invokes the side with the specified arguments, passing them as is.
+         * If there are no such arguments, the arguments of the operation are used instead.
+         */
+        public T invokeWith(ResourcePool pool, Object instance, Object[] args, Object... override) throws InvocationTargetException, IllegalAccessException {
+            return override.length == 0 ? this.invoke(pool, instance, args) : this.call(pool, instance, override);
+        }
+
+        @SuppressWarnings("unchecked")
+        private T call(ResourcePool pool, Object instance, Object[] args) throws InvocationTargetException, IllegalAccessException {
+            return (T) this.reference.invoke(pool, instance, args);
+        }
+
+        private Object[] compose(Object[] args) {
+            if (this.route == UNRESOLVED)
+                throw new TelegRiseRuntimeException("Illegal parameters set: {" + Arrays.stream(this.reference.parameterTypes())
+                        .map(Class::getSimpleName).collect(Collectors.joining(", ")) + "}", node);
+            if (this.route.length == 0) return NO_ARGUMENTS;
+
+            Object[] result = new Object[this.route.length];
+            for (int i = 0; i < result.length; i++) {
+                if (this.route[i] >= args.length)
+                    throw new TelegRiseRuntimeException("Unable to pass arguments of types %s to reference with parameters of types %s"
+                            .formatted(Arrays.stream(args).map(a -> a == null ? null : a.getClass()).toList(),
+                                    Arrays.deepToString(this.reference.parameterTypes())), node);
+
+                result[i] = args[this.route[i]];
+            }
+
+            return result;
+        }
     }
 }
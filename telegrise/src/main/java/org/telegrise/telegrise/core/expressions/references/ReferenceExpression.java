@@ -11,7 +11,7 @@ import org.w3c.dom.Node;
 
 import java.io.Serializable;
 import java.lang.reflect.InvocationTargetException;
-import java.util.Map;
+import java.util.Arrays;
 
 public interface ReferenceExpression extends Serializable {
     Object invoke(ResourcePool pool, Object instance, Object... args) throws InvocationTargetException, IllegalAccessException;
@@ -25,13 +25,13 @@ public interface ReferenceExpression extends Serializable {
             throw new TranscriptionParsingException(String.format("Return type '%s' cannot be casted to type '%s'",
                     this.returnType().getSimpleName(), type.getSimpleName()), node);
 
-        return pool -> {
-            Map<Class<?>, Object> components = pool.getComponents();
+        Class<?>[] types = parameterTypes();
+        ResourcePool.ComponentSlot[] slots = Arrays.stream(types).map(ResourcePool::slotOf).toArray(ResourcePool.ComponentSlot[]::new);
 
-            Class<?>[] types = parameterTypes();
+        return pool -> {
             Object[] parameters = new Object[types.length];
             for (int i = 0; i < types.length; i++) {
-                Object o = ResourcePool.extractComponent(components, types[i]);
+                Object o = slots[i].get(pool);
                 parameters[i] = o;
 
                 if (o == null)
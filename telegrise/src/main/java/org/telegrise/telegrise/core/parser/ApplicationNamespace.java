@@ -16,6 +16,7 @@ import java.util.Map;
 public final class ApplicationNamespace {
     // Key is a simple name of class
     private final Map<String, Class<?>> importedClasses = new HashMap<>();
+    @Getter
     private final ClassLoader applicationClassloader;
     @Getter
     private final String applicationPackageName;
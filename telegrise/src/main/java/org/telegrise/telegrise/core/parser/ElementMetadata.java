@@ -0,0 +1,210 @@
+package org.telegrise.telegrise.core.parser;
+
+import org.apache.commons.lang3.StringUtils;
+import org.telegrise.telegrise.core.elements.base.NodeElement;
+import org.telegrise.telegrise.core.expressions.GeneratedValue;
+import org.telegrise.telegrise.core.utils.ReflectionUtils;
+import org.telegrise.telegrise.exceptions.TelegRiseInternalException;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Parsing metadata of a {@link NodeElement} class: its attributes and inner elements
+ * in order of descending priority, with setters resolved to method handles.
+ * <p>
+ * Metadata is built once per element class on first use,
+ * so that {@link XMLElementsParser} doesn't reflect on the class for every parsed node.
+ *
+ * @since 1.0
+ */
+final class ElementMetadata {
+    private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+    private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(Object.class);
+
+    private static final ClassValue<ElementMetadata> CACHE = new ClassValue<>() {
+        @Override
+        protected ElementMetadata computeValue(Class<?> type) {
+            return new ElementMetadata(type);
+        }
+    };
+
+    static ElementMetadata of(Class<?> elementClass) {
+        return CACHE.get(elementClass);
+    }
+
+    private final Class<?> type;
+    private final Element element;
+    private final MethodHandle constructor;
+    private final List<AttributeDescriptor> attributes;
+    private final List<InnerElementDescriptor> innerElements;
+
+    private ElementMetadata(Class<?> type) {
+        this.type = type;
+        this.element = type.getAnnotation(Element.class);
+
+        MethodHandle constructor = null;
+        if (!type.isInterface() && !Modifier.isAbstract(type.getModifiers())) {
+            try {
+                constructor = MethodHandles.publicLookup().findConstructor(type, MethodType.methodType(void.class))
+                        .asType(CONSTRUCTOR_TYPE);
+            } catch (NoSuchMethodException | IllegalAccessException ignored) {
+                // Reported when the element is instantiated
+            }
+        }
+        this.constructor = constructor;
+
+        // Stable sort keeps fields before methods and declaration order for equal priorities
+        this.attributes = Stream.concat(
+                    Arrays.stream(type.getDeclaredFields()).filter(f -> f.isAnnotationPresent(Attribute.class))
+                            .map(f -> (AttributeDescriptor) FieldAttribute.of(f)),
+                    Arrays.stream(type.getDeclaredMethods()).filter(m -> m.isAnnotationPresent(Attribute.class))
+                            .map(MethodAttribute::of)
+                )
+                .sorted(Comparator.comparingDouble((AttributeDescriptor a) -> a.annotation().priority()).reversed())
+                .toList();
+
+        this.innerElements = Arrays.stream(type.getDeclaredFields())
+                .filter(f -> f.isAnnotationPresent(InnerElement.class))
+                .map(InnerElementDescriptor::of)
+                .sorted(Comparator.comparingDouble((InnerElementDescriptor d) -> d.annotation().priority()).reversed())
+                .toList();
+    }
+
+    Element element() {
+        return this.element;
+    }
+
+    List<AttributeDescriptor> attributes() {
+        return this.attributes;
+    }
+
+    List<InnerElementDescriptor> innerElements() {
+        return this.innerElements;
+    }
+
+    Object newInstance() {
+        if (this.constructor == null)
+            throw new TelegRiseInternalException(new NoSuchMethodException(this.type.getName() + ".<init>()"));
+
+        try {
+            return this.constructor.invokeExact();
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new TelegRiseInternalException(e);
+        }
+    }
+
+    /**
+     * Resolves a setter of the property named as the field, as {@code PropertyUtils.setSimpleProperty} would,
+     * falling back to direct assignment of the field if the class declares no public setter.
+     */
+    private static MethodHandle resolveSetter(Field field) {
+        Class<?> owner = field.getDeclaringClass();
+        try {
+            Method method = owner.getMethod("set" + StringUtils.capitalize(field.getName()), field.getType());
+            return MethodHandles.publicLookup().unreflect(method).asType(SETTER_TYPE);
+        } catch (NoSuchMethodException | IllegalAccessException ignored) {}
+
+        try {
+            field.setAccessible(true);
+            return MethodHandles.lookup().unreflectSetter(field).asType(SETTER_TYPE);
+        } catch (IllegalAccessException | RuntimeException e) {
+            throw new TelegRiseInternalException(e);
+        }
+    }
+
+    private static void invoke(MethodHandle setter, Object instance, Object value) {
+        try {
+            setter.invokeExact(instance, value);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new TelegRiseInternalException(e);
+        }
+    }
+
+    sealed interface AttributeDescriptor permits FieldAttribute, MethodAttribute {
+        Attribute annotation();
+    }
+
+    /**
+     * Kind of conversion applied to the attribute's text value before it is assigned to the field.
+     */
+    enum ValueKind { TEXT_CONTENT, ARRAY, EXPRESSION, BOOLEAN, INTEGER, STRING }
+
+    /**
+     * An attribute assigned to the field.
+     *
+     * @param valueType type of the field, or type of the generated value for {@link ValueKind#EXPRESSION expressions}
+     */
+    record FieldAttribute(Attribute annotation, Field field, ValueKind kind, Class<?> valueType, MethodHandle setter)
+            implements AttributeDescriptor {
+        static FieldAttribute of(Field field) {
+            Attribute annotation = field.getAnnotation(Attribute.class);
+            Class<?> type = field.getType();
+
+            ValueKind kind = annotation.isTextContext() ? ValueKind.TEXT_CONTENT
+                    : type.isArray() ? ValueKind.ARRAY
+                    : type.equals(GeneratedValue.class) ? ValueKind.EXPRESSION
+                    : type.equals(boolean.class) || type.equals(Boolean.class) ? ValueKind.BOOLEAN
+                    : type.equals(int.class) || type.equals(Integer.class) ? ValueKind.INTEGER
+                    : ValueKind.STRING;
+
+            MethodHandle setter;
+            if (kind == ValueKind.TEXT_CONTENT) {
+                // Text content is assigned directly to the field, bypassing the setter
+                try {
+                    field.setAccessible(true);
+                    setter = MethodHandles.lookup().unreflectSetter(field).asType(SETTER_TYPE);
+                } catch (IllegalAccessException | RuntimeException e) {
+                    throw new TelegRiseInternalException(e);
+                }
+            } else
+                setter = resolveSetter(field);
+
+            return new FieldAttribute(annotation, field, kind,
+                    kind == ValueKind.EXPRESSION ? ReflectionUtils.getRawGenericType(field) : type, setter);
+        }
+
+        void set(Object instance, Object value) {
+            invoke(this.setter, instance, value);
+        }
+    }
+
+    /**
+     * An attribute processed by the method, which parameters are resolved by type from the parsing resources.
+     */
+    record MethodAttribute(Attribute annotation, Method method, Class<?>[] parameterTypes) implements AttributeDescriptor {
+        static MethodAttribute of(Method method) {
+            method.setAccessible(true);
+            return new MethodAttribute(method.getAnnotation(Attribute.class), method, method.getParameterTypes());
+        }
+    }
+
+    /**
+     * An inner element assigned to the field.
+     *
+     * @param actualType type of the element, or type of list items for list fields
+     * @param actualElement {@link Element} annotation of the {@code actualType}, if present
+     */
+    record InnerElementDescriptor(InnerElement annotation, Field field, Class<?> actualType, Element actualElement,
+                                  boolean list, MethodHandle setter) {
+        static InnerElementDescriptor of(Field field) {
+            Class<?> actualType = ReflectionUtils.getRawGenericType(field);
+            return new InnerElementDescriptor(field.getAnnotation(InnerElement.class), field, actualType,
+                    actualType.getAnnotation(Element.class), List.class.isAssignableFrom(field.getType()), resolveSetter(field));
+        }
+
+        void set(Object instance, Object value) {
+            invoke(this.setter, instance, value);
+        }
+    }
+}
@@ -0,0 +1,288 @@
+package org.telegrise.telegrise.core.parser;
+
+import lombok.extern.slf4j.Slf4j;
+import org.jetbrains.annotations.Nullable;
+import org.reflections.util.ClasspathHelper;
+import org.telegrise.telegrise.core.elements.Tree;
+import org.telegrise.telegrise.core.elements.base.LinkableElement;
+import org.telegrise.telegrise.core.elements.base.NodeElement;
+import org.telegrise.telegrise.core.expressions.JavaExpressionCompiler;
+
+import java.io.*;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystemNotFoundException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps elements parsed from linked files along with digests of the files' content,
+ * so that files that haven't changed since they were parsed are not parsed again when the transcription is reloaded.
+ * <p>
+ * An entry holds the root element of the file and the elements it contributed to the transcription memory.
+ * Entries are kept serialized, and each restoration produces new instances of the elements,
+ * so that elements used by a running transcription are never validated or loaded again.
+ * Restored elements are validated and loaded as part of the new transcription,
+ * so that references to elements of changed files are resolved anew.
+ * <p>
+ * Entries are bound to a fingerprint of the application namespace, which includes the content of the imported classes
+ * and of the application classes, so that changes of controllers, reference holders and other classes
+ * that expressions refer to invalidate the elements.
+ * Application classes are the class files of the application package found in classpath directories;
+ * jar files that contain the package are identified by their size and modification time.
+ * If the <code>telegrise.parseCache</code> property specifies a directory,
+ * entries are also stored there, which allows them to be reused after restart.
+ *
+ * @since 1.0
+ */
+@Slf4j
+final class LinkedFileCache {
+    private static final String FORMAT = "TelegRise linked file " + JavaExpressionCompiler.VERSION;
+    private static final Map<File, Stored> entries = new ConcurrentHashMap<>();
+    // Entries that weren't serialized yet, since their expressions are compiled after the whole transcription is parsed
+    private static final Map<File, Pending> pending = new ConcurrentHashMap<>();
+    // Loaded classes don't change, so the digest of the application classes is computed once per class loader
+    private static final Map<ClassLoader, Map<String, String>> applicationDigests = Collections.synchronizedMap(new WeakHashMap<>());
+
+    /**
+     * Elements that the linked file contributed to the transcription.
+     *
+     * @param treeMemory elements that were stored in memory of the file's trees
+     */
+    record Entry(LinkableElement result, Map<String, NodeElement> standardMemory,
+                 Map<Tree, Map<String, NodeElement>> treeMemory, List<NodeElement> pendingFinalization) implements Serializable {}
+
+    private record Pending(String digest, String fingerprint, Entry entry) {}
+
+    private record Stored(String digest, String fingerprint, byte[] elements) {
+        boolean matches(String digest, String fingerprint) {
+            return this.digest.equals(digest) && this.fingerprint.equals(fingerprint);
+        }
+    }
+
+    /**
+     * @return SHA-256 digest of the file's content, or null if the file can't be read
+     */
+    static @Nullable String digest(File file) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(Files.readAllBytes(file.toPath())));
+        } catch (IOException e) {
+            return null;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Computes a digest of the namespace configuration, the class files of the imported classes and the application classes.
+     */
+    static String fingerprint(ApplicationNamespace namespace) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String part : List.of(namespace.getApplicationPackageName(), namespace.getUpdateName(), namespace.getControllerName(),
+                    namespace.getSenderName(), namespace.getMemoryName()))
+                digest.update((part + '\n').getBytes(StandardCharsets.UTF_8));
+
+            List<Class<?>> classes = new ArrayList<>(namespace.getImportedClasses());
+            classes.sort(Comparator.comparing(Class::getName));
+            for (Class<?> clazz : classes) {
+                digest.update((clazz.getName() + '\n').getBytes(StandardCharsets.UTF_8));
+                String fileName = clazz.getName().substring(clazz.getName().lastIndexOf('.') + 1) + ".class";
+                try (InputStream in = clazz.getResourceAsStream(fileName)) {
+                    if (in != null) digest.update(in.readAllBytes());
+                }
+            }
+
+            digest.update(applicationDigest(namespace).getBytes(StandardCharsets.UTF_8));
+
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String applicationDigest(ApplicationNamespace namespace) {
+        ClassLoader classLoader = namespace.getApplicationClassloader();
+        String packageName = namespace.getApplicationPackageName();
+        Map<String, String> digests;
+        synchronized (applicationDigests) {
+            digests = applicationDigests.computeIfAbsent(classLoader, k -> new ConcurrentHashMap<>());
+        }
+
+        return digests.computeIfAbsent(packageName, k -> digestApplicationClasses(classLoader, packageName));
+    }
+
+    private static String digestApplicationClasses(ClassLoader classLoader, String packageName) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            List<String> roots = ClasspathHelper.forPackage(packageName, classLoader).stream().map(URL::toExternalForm).sorted().toList();
+            for (String root : roots) {
+                digest.update((root + '\n').getBytes(StandardCharsets.UTF_8));
+                Path path;
+                try {
+                    path = Path.of(new URI(root));
+                } catch (URISyntaxException | IllegalArgumentException | FileSystemNotFoundException e) {
+                    continue;   // Classes of unknown locations are not tracked
+                }
+
+                if (Files.isDirectory(path))
+                    digestClassFiles(digest, path, path.resolve(packageName.replace('.', '/')));
+                else if (Files.isRegularFile(path))
+                    digest.update((Files.size(path) + ":" + Files.getLastModifiedTime(path).toMillis() + '\n').getBytes(StandardCharsets.UTF_8));
+            }
+
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void digestClassFiles(MessageDigest digest, Path root, Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) return;
+
+        List<Path> files;
+        try (var stream = Files.walk(directory)) {
+            files = stream.filter(f -> f.toString().endsWith(".class") && Files.isRegularFile(f)).sorted().toList();
+        }
+
+        for (Path file : files) {
+            digest.update((root.relativize(file) + "\n").getBytes(StandardCharsets.UTF_8));
+            digest.update(Files.readAllBytes(file));
+        }
+    }
+
+    /**
+     * Restores new instances of the elements of the file, if it was parsed with the same content and namespace before.
+     */
+    static @Nullable Entry get(File file, String digest, ApplicationNamespace namespace) {
+        File key = file.getAbsoluteFile();
+        String fingerprint = fingerprint(namespace);
+
+        Stored stored = entries.get(key);
+        if (stored == null || !stored.matches(digest, fingerprint)) {
+            stored = read(key, digest, fingerprint);
+            if (stored == null) return null;
+            entries.put(key, stored);
+        }
+
+        try (ObjectInputStream in = new ApplicationObjectInputStream(new ByteArrayInputStream(stored.elements()),
+                namespace.getApplicationClassloader())) {
+            return (Entry) in.readObject();
+        } catch (IOException | ClassNotFoundException | RuntimeException e) {
+            log.debug("Cached elements of '{}' can't be restored, the file will be parsed", file, e);
+            entries.remove(key, stored);
+            return null;
+        }
+    }
+
+    static void put(File file, String digest, ApplicationNamespace namespace, Entry entry) {
+        pending.put(file.getAbsoluteFile(), new Pending(digest, fingerprint(namespace), entry));
+    }
+
+    /**
+     * Serializes entries of the files parsed since the last call and stores them in the cache directory, if it is specified.
+     * Must be called after expressions of the transcription are compiled, but before its elements are loaded.
+     */
+    static synchronized void persist() {
+        Path directory = getDirectory();
+
+        for (Iterator<Map.Entry<File, Pending>> iterator = pending.entrySet().iterator(); iterator.hasNext(); ) {
+            var next = iterator.next();
+            iterator.remove();
+
+            File file = next.getKey();
+            Pending entry = next.getValue();
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                out.writeObject(entry.entry());
+            } catch (IOException | RuntimeException e) {
+                log.warn("Unable to store parsed elements of '{}' in the cache", file, e);
+                continue;
+            }
+
+            Stored stored = new Stored(entry.digest(), entry.fingerprint(), bytes.toByteArray());
+            entries.put(file, stored);
+            if (directory != null) write(directory, file, stored);
+        }
+    }
+
+    private static void write(Path directory, File file, Stored stored) {
+        try {
+            Files.createDirectories(directory);
+            Path target = directory.resolve(fileName(file)), temporary = Files.createTempFile(directory, "entry", ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                out.writeUTF(FORMAT);
+                out.writeUTF(stored.digest());
+                out.writeUTF(stored.fingerprint());
+                out.writeInt(stored.elements().length);
+                out.write(stored.elements());
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(temporary);
+                throw e;
+            }
+
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Unable to store parsed elements of '{}' in the cache", file, e);
+        }
+    }
+
+    private static @Nullable Stored read(File file, String digest, String fingerprint) {
+        Path directory = getDirectory();
+        if (directory == null || !Files.isRegularFile(directory.resolve(fileName(file)))) return null;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(directory.resolve(fileName(file)))))) {
+            if (!in.readUTF().equals(FORMAT) || !in.readUTF().equals(digest) || !in.readUTF().equals(fingerprint)) return null;
+
+            return new Stored(digest, fingerprint, in.readNBytes(in.readInt()));
+        } catch (IOException | RuntimeException e) {
+            log.debug("Cached elements of '{}' can't be read, the file will be parsed", file, e);
+            return null;
+        }
+    }
+
+    private static String fileName(File file) {
+        try {
+            byte[] path = file.getPath().getBytes(StandardCharsets.UTF_8);
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(path), 0, 16) + ".elements";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static @Nullable Path getDirectory() {
+        String directory = System.getProperty("telegrise.parseCache");
+        return directory == null ? null : Path.of(directory);
+    }
+
+    private static final class ApplicationObjectInputStream extends ObjectInputStream {
+        private final ClassLoader classLoader;
+
+        private ApplicationObjectInputStream(InputStream in, ClassLoader classLoader) throws IOException {
+            super(in);
+            this.classLoader = classLoader;
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            try {
+                return Class.forName(desc.getName(), false, this.classLoader);
+            } catch (ClassNotFoundException e) {
+                return super.resolveClass(desc);
+            }
+        }
+    }
+
+    private LinkedFileCache() {}
+}
@@ -5,6 +5,7 @@ import org.slf4j.Logger;
 import org.telegrise.telegrise.core.elements.BotTranscription;
 import org.telegrise.telegrise.core.elements.Branch;
 import org.telegrise.telegrise.core.elements.Tree;
+import org.telegrise.telegrise.core.elements.base.LinkableElement;
 import org.telegrise.telegrise.core.elements.base.NamedElement;
 import org.telegrise.telegrise.core.elements.base.NodeElement;
 import org.telegrise.telegrise.core.utils.ReflectionUtils;
@@ -20,7 +21,7 @@ public final class TranscriptionMemory implements Serializable {
     private static final Logger logger = org.slf4j.LoggerFactory.getLogger(TranscriptionMemory.class);
 
     @Getter
-    private final Map<String, NodeElement> standardMemory = new HashMap<>();
+    private final Map<String, NodeElement> standardMemory = new LinkedHashMap<>();
     private final Map<Tree, Map<String, NodeElement>> treeMemory = new HashMap<>();
     @Getter
     private final List<Consumer<BotTranscription>> tasks = new LinkedList<>();
@@ -29,8 +30,22 @@ public final class TranscriptionMemory implements Serializable {
     @Getter
     private final Set<File> linkedFiles = new HashSet<>();
 
+    // Memory of the transcription that the elements of this memory will be merged into
+    private final transient TranscriptionMemory parent;
     private boolean readOnly = false;
 
+    public TranscriptionMemory() {
+        this(null);
+    }
+
+    /**
+     * Creates memory for elements of a linked file that is parsed independently of other files.
+     * Lookups fall back to the parent memory, which must not be modified until this memory is {@link #merge merged} into it.
+     */
+    TranscriptionMemory(TranscriptionMemory parent) {
+        this.parent = parent;
+    }
+
     public int size() {
         return standardMemory.size();
     }
@@ -48,6 +63,7 @@ public final class TranscriptionMemory implements Serializable {
                 .map(treeMemory::get)
                 .map(map -> map.get(name))
                 .or(() -> Optional.ofNullable(standardMemory.get(name)))
+                .or(() -> Optional.ofNullable(parent).map(p -> p.get(tree, name)))
                 .orElse(null);
     }
 
@@ -73,7 +89,7 @@ public final class TranscriptionMemory implements Serializable {
         if (readOnly) throw new UnsupportedOperationException();
 
         if ((currentTree != null && treeMemory.getOrDefault(currentTree, Map.of()).containsKey(name)) ||
-                (currentTree == null && standardMemory.containsKey(name))) {
+                (currentTree == null && (standardMemory.containsKey(name) || parent != null && parent.containsKey(name)))) {
             throw new TelegRiseRuntimeException("Name '" + name + "' already exists", element.getElementNode());
         }
 
@@ -106,7 +122,49 @@ public final class TranscriptionMemory implements Serializable {
         return Optional.ofNullable(currentTree).map(treeMemory::get)
                 .map(map -> map.containsKey(key))
                 .map(v -> v ? true : null) // so that the code below executes only if the key wasn't found in treeMemory
-                .orElseGet(() -> standardMemory.containsKey(key));
+                .orElseGet(() -> standardMemory.containsKey(key) || parent != null && parent.containsKey(currentTree, key));
+    }
+
+    /**
+     * Adds elements of the memory that was created for this memory, as if they were put in this memory directly.
+     * Memories of linked files must be merged in the same order for name collisions to be reported consistently.
+     */
+    void merge(TranscriptionMemory memory) {
+        if (readOnly) throw new UnsupportedOperationException();
+        assert memory.parent == this;
+
+        memory.standardMemory.forEach((name, element) -> {
+            if (standardMemory.containsKey(name))
+                throw new TelegRiseRuntimeException("Name '" + name + "' already exists", element.getElementNode());
+        });
+
+        standardMemory.putAll(memory.standardMemory);
+        treeMemory.putAll(memory.treeMemory);
+        tasks.addAll(memory.tasks);
+        pendingFinalization.addAll(memory.pendingFinalization);
+        linkedFiles.addAll(memory.linkedFiles);
+    }
+
+    /**
+     * Creates a cache entry of the elements that were put in this memory while the linked file was parsed.
+     */
+    LinkedFileCache.Entry toCacheEntry(LinkableElement result) {
+        Map<Tree, Map<String, NodeElement>> trees = new HashMap<>();
+        treeMemory.forEach((tree, elements) -> trees.put(tree, Map.copyOf(elements)));
+
+        return new LinkedFileCache.Entry(result, Collections.unmodifiableMap(new LinkedHashMap<>(standardMemory)),
+                Collections.unmodifiableMap(trees), List.copyOf(pendingFinalization));
+    }
+
+    /**
+     * Puts the elements of the cached linked file in this memory, as if the file was parsed again.
+     */
+    void restore(LinkedFileCache.Entry entry) {
+        if (readOnly) throw new UnsupportedOperationException();
+
+        standardMemory.putAll(entry.standardMemory());
+        entry.treeMemory().forEach((tree, elements) -> treeMemory.put(tree, new HashMap<>(elements)));
+        pendingFinalization.addAll(entry.pendingFinalization());
     }
 
     public void setReadOnly(){
@@ -2,17 +2,17 @@ package org.telegrise.telegrise.core.parser;
 
 import lombok.Getter;
 import lombok.Setter;
-import org.apache.commons.beanutils.PropertyUtils;
 import org.jetbrains.annotations.NotNull;
-import org.reflections.Reflections;
 import org.telegrise.telegrise.core.elements.Root;
 import org.telegrise.telegrise.core.elements.Tree;
+import org.telegrise.telegrise.core.elements.base.LinkableElement;
 import org.telegrise.telegrise.core.elements.base.NodeElement;
 import org.telegrise.telegrise.core.elements.base.StorableElement;
 import org.telegrise.telegrise.core.expressions.ExpressionFactory;
-import org.telegrise.telegrise.core.expressions.GeneratedValue;
 import org.telegrise.telegrise.core.expressions.Syntax;
+import org.telegrise.telegrise.core.utils.ClassIndex;
 import org.telegrise.telegrise.core.utils.ReflectionUtils;
+import org.telegrise.telegrise.core.utils.XMLUtils;
 import org.telegrise.telegrise.exceptions.TelegRiseInternalException;
 import org.telegrise.telegrise.exceptions.TranscriptionParsingException;
 import org.w3c.dom.NamedNodeMap;
@@ -20,36 +20,102 @@ import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
 import java.io.File;
-import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.*;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 public class XMLElementsParser {
     private static final String ELEMENTS_PACKAGE = "org.telegrise.telegrise.core.elements";
 
     private static Set<Class<? extends NodeElement>> loadClasses(){
-        return new Reflections(ELEMENTS_PACKAGE).getSubTypesOf(NodeElement.class);
+        return ClassIndex.getTypesAnnotatedWith(Element.class, ELEMENTS_PACKAGE, XMLElementsParser.class.getClassLoader()).stream()
+                .filter(NodeElement.class::isAssignableFrom)
+                .map(c -> c.asSubclass(NodeElement.class))
+                .collect(Collectors.toSet());
     }
 
-    private final Map<String, Class<? extends NodeElement>> elements = new HashMap<>();
+    private final Map<String, Class<? extends NodeElement>> elements;
     @Setter @Getter
     private LocalNamespace namespace;
     @Getter
-    private final TranscriptionMemory transcriptionMemory = new TranscriptionMemory();
+    private final TranscriptionMemory transcriptionMemory;
     @Getter
     private final File rootDirectory;
     @Setter
     private Tree currentTree;
+    private final Map<ElementMetadata, Set<String>> innerElementNames = new HashMap<>();
+    // Elements which nodes are to be detached from their documents
+    private final List<NodeElement> parsedElements = new ArrayList<>();
 
     public XMLElementsParser(LocalNamespace namespace, File rootDirectory){
+        this(namespace, rootDirectory, new TranscriptionMemory(), new HashMap<>());
+    }
+
+    private XMLElementsParser(LocalNamespace namespace, File rootDirectory, TranscriptionMemory transcriptionMemory,
+                              Map<String, Class<? extends NodeElement>> elements){
         assert rootDirectory == null || rootDirectory.isDirectory();
 
         this.namespace = namespace;
         this.rootDirectory = rootDirectory;
+        this.transcriptionMemory = transcriptionMemory;
+        this.elements = elements;
+    }
+
+    /**
+     * Creates a parser for a linked file that can be used concurrently with this and other forked parsers.
+     * Elements parsed by the fork are stored in separate memory,
+     * which must be {@link #join joined} into the memory of this parser after the parsing is done.
+     */
+    public XMLElementsParser fork(){
+        return new XMLElementsParser(this.namespace, this.rootDirectory, new TranscriptionMemory(this.transcriptionMemory), this.elements);
+    }
+
+    /**
+     * Merges memory of the forked parser into the memory of this parser.
+     * Forks should be joined in the same order for name collisions to be reported consistently.
+     */
+    public void join(XMLElementsParser fork){
+        this.transcriptionMemory.merge(fork.transcriptionMemory);
+        this.parsedElements.addAll(fork.parsedElements);
+    }
+
+    /**
+     * Parses the linked file using this fork, unless the file hasn't changed since it was parsed before,
+     * in which case its elements are restored from the {@link LinkedFileCache cache}.
+     *
+     * @param parser parses the file and returns its root element
+     */
+    public LinkableElement parseLinked(File file, Supplier<LinkableElement> parser){
+        String digest = LinkedFileCache.digest(file);
+        ApplicationNamespace applicationNamespace = this.namespace.getApplicationNamespace();
+
+        LinkedFileCache.Entry entry = digest == null ? null : LinkedFileCache.get(file, digest, applicationNamespace);
+        if (entry != null) {
+            this.transcriptionMemory.restore(entry);
+            return entry.result();
+        }
+
+        LinkableElement result = parser.get();
+        // Files that link other files are not cached, since changes of the linked files can't be tracked
+        if (digest != null && this.transcriptionMemory.getLinkedFiles().isEmpty())
+            LinkedFileCache.put(file, digest, applicationNamespace, this.transcriptionMemory.toCacheEntry(result));
+
+        return result;
+    }
+
+    /**
+     * Replaces nodes of the parsed elements with their {@link XMLUtils#detach detached} copies,
+     * so that the parsed documents are not retained by the transcription.
+     * Must be called once parsing and finalization of the elements are done.
+     */
+    public void detachNodes(){
+        for (NodeElement element : this.parsedElements)
+            element.setElementNode(XMLUtils.detach(element.getElementNode()));
+
+        this.parsedElements.clear();
     }
 
     public void load(){
@@ -74,7 +140,8 @@ public class XMLElementsParser {
 
     public NodeElement parse(@NotNull Node node, NodeElement parent) throws Exception {
         Class<? extends NodeElement> element = this.elements.get(node.getNodeName());
-        NodeElement instance = element.getConstructor().newInstance();
+        ElementMetadata metadata = ElementMetadata.of(element);
+        NodeElement instance = (NodeElement) metadata.newInstance();
         instance.setElementNode(node);
 
         if (instance instanceof Tree tree)
@@ -97,33 +164,25 @@ public class XMLElementsParser {
         for (int i = 0; i < attributes.getLength(); i++)
             expected.add(attributes.item(i).getNodeName());
 
-        Stream.concat(
-                Arrays.stream(element.getDeclaredFields()).filter(m -> m.isAnnotationPresent(Attribute.class))
-                        .map(f -> Map.<Attribute, Object>entry(f.getAnnotation(Attribute.class), f)),
-                Arrays.stream(element.getDeclaredMethods()).filter(m -> m.isAnnotationPresent(Attribute.class))
-                        .map(m -> Map.<Attribute, Object>entry(m.getAnnotation(Attribute.class), m))
-            )
-            .sorted(Comparator.<Map.Entry<Attribute, Object>>comparingDouble(e -> e.getKey().priority()).reversed())
-            .forEach(entry -> {
-                try {
-                    if(entry.getValue() instanceof Method)
-                        this.parseMethod(instance, resourcesMap, (Method) entry.getValue());
-                    else if (entry.getValue() instanceof Field) {
-                        this.parseField((Field) entry.getValue(), node, instance);
-                    }
-
-                    expected.remove(entry.getKey().name());  // Records attribute as processed
-                } catch (IllegalAccessException | NoSuchMethodException e) {
-                    throw new TelegRiseInternalException(e);
-                } catch (InvocationTargetException e) {
-                    throw new TelegRiseInternalException(e.getTargetException());
+        for (ElementMetadata.AttributeDescriptor attribute : metadata.attributes()) {
+            try {
+                switch (attribute) {
+                    case ElementMetadata.MethodAttribute method -> this.parseMethod(instance, resourcesMap, method);
+                    case ElementMetadata.FieldAttribute field -> this.parseField(field, node, instance);
                 }
-            });
+
+                expected.remove(attribute.annotation().name());  // Records attribute as processed
+            } catch (IllegalAccessException e) {
+                throw new TelegRiseInternalException(e);
+            } catch (InvocationTargetException e) {
+                throw new TelegRiseInternalException(e.getTargetException());
+            }
+        }
 
         if (!expected.isEmpty())
             throw new TranscriptionParsingException("Unrecognized attributes: " + String.join(", ", expected), node);
 
-        if (element.getAnnotation(Element.class).checkInner()){
+        if (metadata.element().checkInner()){
             for (int i = 0; i < node.getChildNodes().getLength(); i++) {
                 Node item = node.getChildNodes().item(i);
                 if (item.getNodeType() == Node.ELEMENT_NODE)
@@ -135,19 +194,16 @@ public class XMLElementsParser {
         if (newNamespace != null)
             this.namespace = newNamespace;
 
-        AtomicBoolean hasEmbedded = new AtomicBoolean(false);
-        Arrays.stream(element.getDeclaredFields())
-                .filter(f -> f.isAnnotationPresent(InnerElement.class))
-                .sorted(Comparator.<Field>comparingDouble(f -> f.getAnnotation(InnerElement.class).priority()).reversed())
-                .forEach(f -> {
-                    Tree oldTree = currentTree;
-                    if (this.parseInnerElement(node, f, instance, expected))
-                        hasEmbedded.set(true);
+        boolean hasEmbedded = false;
+        for (ElementMetadata.InnerElementDescriptor inner : metadata.innerElements()) {
+            Tree oldTree = currentTree;
+            if (this.parseInnerElement(node, metadata, inner, instance, expected))
+                hasEmbedded = true;
 
-                    currentTree = oldTree;
-                });
+            currentTree = oldTree;
+        }
 
-        if (!expected.isEmpty() && !hasEmbedded.get())
+        if (!expected.isEmpty() && !hasEmbedded)
             throw new TranscriptionParsingException("Unrecognized elements: " + String.join(", ", expected), node);
 
         finishElement(instance);
@@ -156,6 +212,8 @@ public class XMLElementsParser {
     }
 
     private void finishElement(NodeElement instance) {
+        this.parsedElements.add(instance);
+
         // ORDER MATTERS:
         if(ReflectionUtils.annotation(instance, Element.class).finishAfterParsing())
             this.transcriptionMemory.getPendingFinalization().add(instance);
@@ -169,22 +227,24 @@ public class XMLElementsParser {
             ((StorableElement) instance).store(transcriptionMemory);
     }
 
-    private void parseMethod(NodeElement instance, Map<Class<?>, Object> resourcesMap, Method method) throws IllegalAccessException, InvocationTargetException {
-        method.setAccessible(true);
-        Object[] parameters = Arrays.stream(method.getParameterTypes()).map(resourcesMap::get).toArray();
+    private void parseMethod(NodeElement instance, Map<Class<?>, Object> resourcesMap, ElementMetadata.MethodAttribute attribute) throws IllegalAccessException, InvocationTargetException {
+        Class<?>[] parameterTypes = attribute.parameterTypes();
+        Object[] parameters = new Object[parameterTypes.length];
+        for (int i = 0; i < parameters.length; i++)
+            parameters[i] = resourcesMap.get(parameterTypes[i]);
 
-        Object result = method.invoke(instance, parameters);
+        Object result = attribute.method().invoke(instance, parameters);
 
         if (result instanceof LocalNamespace)
             this.namespace = (LocalNamespace) result;
     }
 
-    private boolean parseInnerElement(Node node, Field field, NodeElement instance, Set<String> expected){
+    private boolean parseInnerElement(Node node, ElementMetadata metadata, ElementMetadata.InnerElementDescriptor inner, NodeElement instance, Set<String> expected){
         NodeList nodeList = node.getChildNodes();
-        InnerElement fieldData = field.getAnnotation(InnerElement.class);
-        Class<?> actualType = ReflectionUtils.getRawGenericType(field);
+        InnerElement fieldData = inner.annotation();
+        Class<?> actualType = inner.actualType();
 
-        Element innerElementData = actualType.getAnnotation(Element.class);
+        Element innerElementData = inner.actualElement();
 
         HashSet<String> nodeNames = new HashSet<>();
         LinkedList<Node> fieldNodes = new LinkedList<>();
@@ -204,56 +264,40 @@ public class XMLElementsParser {
             if (EmbeddableElement.class.isAssignableFrom(actualType)) {
                 if (nodeList.getLength() == 0) return false;
                 //FIXME optimize (use #text node name)
-                if (Arrays.stream(field.getDeclaringClass().getDeclaredFields())
-                        .filter(f -> f.isAnnotationPresent(InnerElement.class))
-                        .flatMap(f -> {
-                            Class<?> actual = ReflectionUtils.getRawGenericType(f);
-                            if (actual.isAnnotationPresent(Element.class))
-                                return Stream.of(actual);
-                            else
-                                return elements.values().stream().filter(actual::isAssignableFrom);
-                        })
-                        .map(c -> c.getAnnotation(Element.class).name())
-                        .anyMatch(nodeNames::contains)
-                ) {
+                if (this.getInnerElementNames(metadata).stream().anyMatch(nodeNames::contains)) {
                     if (fieldData.nullable()) return false;
                     else {
                         throw new TranscriptionParsingException("Embedded element '" + Objects.requireNonNull(innerElementData).name() + "' is not allowed here, use <" + innerElementData.name() + "> instead", node);
                     }
                 }
 
-                try {
-                    EmbeddableElement embeddableElement = (EmbeddableElement) actualType.getConstructor().newInstance();
-                    embeddableElement.parse(node, this.namespace);
+                EmbeddableElement embeddableElement = (EmbeddableElement) ElementMetadata.of(actualType).newInstance();
+                embeddableElement.parse(node, this.namespace);
 
-                    NodeElement object = (NodeElement) embeddableElement;
+                NodeElement object = (NodeElement) embeddableElement;
 
-                    finishElement(object);
+                finishElement(object);
 
-                    PropertyUtils.setSimpleProperty(instance, field.getName(), object);
-                    return true;
-                } catch (InstantiationException | IllegalAccessException | InvocationTargetException |
-                         NoSuchMethodException e) {
-                    throw new TelegRiseInternalException(e);
-                }
+                inner.set(instance, object);
+                return true;
             }
             else if (fieldData.nullable()) return false;
-            else throw new TranscriptionParsingException("Field \"" + (innerElementData != null ? innerElementData.name() : field.getName()) + "\" can't be null", node);
+            else throw new TranscriptionParsingException("Field \"" + (innerElementData != null ? innerElementData.name() : inner.field().getName()) + "\" can't be null", node);
         }
 
         try {
-            if (List.class.isAssignableFrom(field.getType())) {
-                PropertyUtils.setSimpleProperty(instance, field.getName(), fieldNodes.stream()
+            if (inner.list()) {
+                inner.set(instance, fieldNodes.stream()
                         .map(n -> {
                             try { return parse(n, instance); } catch (Exception e) { throw new TelegRiseInternalException(e); }
                         }).toList()
                 );
             } else {
                 if (fieldNodes.size() == 1)
-                    PropertyUtils.setSimpleProperty(instance, field.getName(), this.parse(fieldNodes.getFirst(), instance));
+                    inner.set(instance, this.parse(fieldNodes.getFirst(), instance));
                 else
                     throw new TranscriptionParsingException(
-                            "Field \"" + (innerElementData != null ? innerElementData.name() : field.getName()) + "\" has more than one definition", node);
+                            "Field \"" + (innerElementData != null ? innerElementData.name() : inner.field().getName()) + "\" has more than one definition", node);
             }
         } catch (Exception e) {
             throw new TelegRiseInternalException(e);
@@ -262,34 +306,39 @@ public class XMLElementsParser {
         return false;
     }
 
-    private void parseField(Field field, Node node, NodeElement instance) throws IllegalAccessException, InvocationTargetException, NoSuchMethodException {
-        field.setAccessible(true);
-        Attribute elementData = field.getAnnotation(Attribute.class);
+    // Names of the elements that can be inner elements of the element, depend on the loaded element classes
+    private Set<String> getInnerElementNames(ElementMetadata metadata) {
+        return this.innerElementNames.computeIfAbsent(metadata, m -> m.innerElements().stream()
+                .flatMap(d -> d.actualElement() != null ? Stream.of(d.actualType())
+                        : elements.values().stream().filter(d.actualType()::isAssignableFrom))
+                .map(c -> c.getAnnotation(Element.class).name())
+                .collect(Collectors.toUnmodifiableSet()));
+    }
 
-        if(elementData.isTextContext())
-            field.set(instance, node.getTextContent());
-        else if (!elementData.name().isEmpty()) {
-            this.setField(node, elementData, instance, field);
+    private void parseField(ElementMetadata.FieldAttribute attribute, Node node, NodeElement instance) {
+        if (attribute.kind() == ElementMetadata.ValueKind.TEXT_CONTENT)
+            attribute.set(instance, node.getTextContent());
+        else if (!attribute.annotation().name().isEmpty()) {
+            this.setField(node, attribute, instance);
         }
     }
 
-    private void setField(Node node, Attribute elementField, Object to, Field field) throws InvocationTargetException, IllegalAccessException, NoSuchMethodException {
+    private void setField(Node node, ElementMetadata.FieldAttribute field, Object to) {
+        Attribute elementField = field.annotation();
         Node attribute = node.getAttributes().getNamedItem(elementField.name());
 
         if (attribute == null && elementField.nullable()) return;
         else if (attribute == null)
             throw new TranscriptionParsingException("Field \"" + elementField.name() + "\" can't be null", node);
 
-        if (field.getType().isArray())
-            PropertyUtils.setSimpleProperty(to, field.getName(), this.parseList(attribute.getNodeValue()));
-        else
-            PropertyUtils.setSimpleProperty(to, field.getName(),
-                    field.getType().equals(GeneratedValue.class) ? ExpressionFactory.createExpression(attribute.getNodeValue(),
-                            ReflectionUtils.getRawGenericType(field), node, namespace)
-                            : field.getType().equals(boolean.class) || field.getType().equals(Boolean.class) ? Boolean.parseBoolean(attribute.getNodeValue())
-                            : field.getType().equals(int.class) || field.getType().equals(Integer.class) ? Integer.parseInt(attribute.getNodeValue())
-                            : attribute.getNodeValue()
-            );
+        String value = attribute.getNodeValue();
+        field.set(to, switch (field.kind()) {
+            case ARRAY -> this.parseList(value);
+            case EXPRESSION -> ExpressionFactory.createExpression(value, field.valueType(), node, namespace);
+            case BOOLEAN -> Boolean.parseBoolean(value);
+            case INTEGER -> Integer.parseInt(value);
+            case STRING, TEXT_CONTENT -> value;
+        });
     }
 
     private String[] parseList(String value){
@@ -1,7 +1,6 @@
 package org.telegrise.telegrise.core.parser;
 
 import org.apache.commons.lang3.time.DurationFormatUtils;
-import org.reflections.Reflections;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.telegrise.telegrise.ReferenceHolders;
@@ -10,15 +9,20 @@ import org.telegrise.telegrise.annotations.TreeController;
 import org.telegrise.telegrise.core.ResourceInjector;
 import org.telegrise.telegrise.core.elements.BotTranscription;
 import org.telegrise.telegrise.core.elements.base.BranchingElement;
+import org.telegrise.telegrise.core.expressions.ExpressionFactory;
 import org.telegrise.telegrise.core.expressions.Syntax;
+import org.telegrise.telegrise.core.utils.ClassIndex;
 import org.telegrise.telegrise.core.utils.XMLUtils;
 import org.telegrise.telegrise.exceptions.TranscriptionParsingException;
 import org.w3c.dom.Document;
 import org.w3c.dom.Node;
+import org.xml.sax.SAXException;
 
-import java.util.LinkedList;
-import java.util.Queue;
-import java.util.Set;
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.File;
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.util.*;
 
 public class XMLTranscriptionParser implements TranscriptionParser{
     private static final Logger logger = LoggerFactory.getLogger(XMLTranscriptionParser.class);
@@ -26,7 +30,18 @@ public class XMLTranscriptionParser implements TranscriptionParser{
     private final Document document;
     private final XMLElementsParser elementsParser;
     private final ApplicationNamespace applicationNamespace;
-    private Reflections reflection;
+    private final Set<String> referenceHolderNames = new TreeSet<>();
+
+    /**
+     * Creates a parser of the transcription file and the files it links.
+     */
+    public static XMLTranscriptionParser of(File transcription, ApplicationNamespace applicationNamespace) throws IOException, SAXException, ParserConfigurationException {
+        XMLElementsParser elementsParser = new XMLElementsParser(new LocalNamespace(null, applicationNamespace), transcription.getParentFile());
+        elementsParser.load();
+        elementsParser.getTranscriptionMemory().getLinkedFiles().add(transcription); // to prevent cyclic imports
+
+        return new XMLTranscriptionParser(XMLUtils.loadDocument(transcription), elementsParser);
+    }
 
     public XMLTranscriptionParser(Document document, XMLElementsParser elementsParser) {
         this.document = document;
@@ -38,13 +53,15 @@ public class XMLTranscriptionParser implements TranscriptionParser{
     public BotTranscription parse() throws Exception {
         long startMillis = System.currentTimeMillis();
 
-        this.reflection = new Reflections(applicationNamespace.getApplicationPackageName());
         this.processInstructions(XMLUtils.getInstructions(document));
         this.processAutoImport();
         this.instantiateStaticReferenceHolders();
 
         BotTranscription result = (BotTranscription) elementsParser.parse(document.getElementsByTagName(
                     BotTranscription.class.getAnnotation(Element.class).name()).item(0));
+        ExpressionFactory.getJavaExpressionCompiler().compilePending();
+        // Stored before finalization, which resolves references between the files
+        LinkedFileCache.persist();
 
         this.elementsParser.getTranscriptionMemory().setReadOnly();
         result.setMemory(this.elementsParser.getTranscriptionMemory());
@@ -59,6 +76,8 @@ public class XMLTranscriptionParser implements TranscriptionParser{
                     p.load(this.elementsParser.getTranscriptionMemory());
                 });
 
+        this.elementsParser.detachNodes();
+
         //noinspection SpellCheckingInspection
         logger.info("Transcription parsed in {}", DurationFormatUtils.formatDuration(
                 System.currentTimeMillis() - startMillis, "s's 'S'ms'"
@@ -68,21 +87,36 @@ public class XMLTranscriptionParser implements TranscriptionParser{
     }
 
     private void instantiateStaticReferenceHolders() {
-        var holders = reflection.getTypesAnnotatedWith(StaticReferenceHolder.class);
+        var holders = this.getTypesAnnotatedWith(StaticReferenceHolder.class);
 
         for (Class<?> holder : holders){
-            ReferenceHolders.add(holder, ResourceInjector.createInstance(holder));
+            // Holders are singletons, the instances are kept when the transcription is reloaded
+            if (ReferenceHolders.get(holder) == null)
+                ReferenceHolders.add(holder, ResourceInjector.createInstance(holder));
             applicationNamespace.addClass(holder);
+            this.referenceHolderNames.add(holder.getName());
         }
     }
 
+    /**
+     * Returns names of the static reference holders of the application that were found by {@link #parse()}.
+     */
+    public Set<String> getReferenceHolderNames() {
+        return Collections.unmodifiableSet(this.referenceHolderNames);
+    }
+
     private void processAutoImport() {
-        Set<Class<?>> controllers = reflection.getTypesAnnotatedWith(TreeController.class);
+        Set<Class<?>> controllers = this.getTypesAnnotatedWith(TreeController.class);
 
         controllers.stream().filter(c -> c.getAnnotation(TreeController.class).autoImport())
                 .forEach(this.applicationNamespace::addClass);
     }
 
+    private Set<Class<?>> getTypesAnnotatedWith(Class<? extends Annotation> annotation) {
+        return ClassIndex.getTypesAnnotatedWith(annotation, this.applicationNamespace.getApplicationPackageName(),
+                this.applicationNamespace.getApplicationClassloader());
+    }
+
     private void processInstructions(Node[] instructions){
         for (Node node : instructions) {
             if (node.getNodeName().equals(Syntax.IMPORT)) {
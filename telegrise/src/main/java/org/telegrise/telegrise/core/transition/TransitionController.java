@@ -104,7 +104,7 @@ public class TransitionController {
         last.setCurrentBranch(branch);
         pool.getMemory().setCurrentBranch(branch);
 
-        TreeExecutor.invokeBranch(branch.getToInvoke(), branch.getActions(), pool, last.getSender(), options);
+        TreeExecutor.invokeBranch(branch.getToInvoke(), branch.getActions(), pool, last.getSender(), options, last.isAsyncActions(), last.getCallbackAnswerer());
     }
 
     private boolean applyBack(Transition transition, ResourcePool pool){
@@ -0,0 +1,91 @@
+package org.telegrise.telegrise.core.utils;
+
+import org.reflections.Reflections;
+import org.reflections.util.ClasspathHelper;
+import org.reflections.util.ConfigurationBuilder;
+import org.reflections.util.FilterBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.telegrise.telegrise.exceptions.TelegRiseInternalException;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.annotation.Annotation;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Finds annotated classes using the index resources produced at compile time by the processor
+ * from <code>telegrise-processor</code> artifact.
+ * <p>
+ * Classpath roots that contain the requested package but have no index
+ * (for example, when the processor wasn't used for them) are scanned by {@link Reflections},
+ * and their classes are merged with the indexed ones.
+ */
+public final class ClassIndex {
+    private static final Logger logger = LoggerFactory.getLogger(ClassIndex.class);
+    // Must match IndexProcessor.INDEX_DIRECTORY
+    private static final String INDEX_DIRECTORY = "META-INF/telegrise/index/";
+
+    public static Set<Class<?>> getTypesAnnotatedWith(Class<? extends Annotation> annotation, String packageName, ClassLoader classLoader) {
+        String prefix = packageName.isEmpty() ? "" : packageName + ".";
+        Set<Class<?>> result = new LinkedHashSet<>();
+        for (String name : readIndex(annotation, classLoader)) {
+            if (!name.startsWith(prefix)) continue;
+
+            try {
+                Class<?> clazz = Class.forName(name, false, classLoader);
+                // Index might contain classes that were removed or no longer annotated
+                if (clazz.isAnnotationPresent(annotation))
+                    result.add(clazz);
+            } catch (ClassNotFoundException | LinkageError e) {
+                logger.debug("Skipping indexed class '{}': {}", name, e.toString());
+            }
+        }
+
+        Collection<URL> unindexed = findUnindexedRoots(annotation, packageName, classLoader);
+        if (!unindexed.isEmpty()) {
+            logger.debug("Scanning {} for classes annotated with @{} in package '{}'", unindexed, annotation.getSimpleName(), packageName);
+            var configuration = new ConfigurationBuilder().setUrls(unindexed).addClassLoaders(classLoader);
+            if (!packageName.isEmpty())
+                configuration.filterInputsBy(new FilterBuilder().includePackage(packageName));
+
+            result.addAll(new Reflections(configuration).getTypesAnnotatedWith(annotation));
+        }
+
+        return result;
+    }
+
+    private static Collection<URL> findUnindexedRoots(Class<? extends Annotation> annotation, String packageName, ClassLoader classLoader) {
+        Set<String> indexed = new HashSet<>();
+        ClasspathHelper.forResource(INDEX_DIRECTORY + annotation.getName(), classLoader)
+                .forEach(url -> indexed.add(url.toExternalForm()));
+
+        // URLs are compared by their string form, since URL.equals might resolve host names
+        List<URL> result = new ArrayList<>();
+        for (URL root : ClasspathHelper.forPackage(packageName, classLoader))
+            if (!indexed.contains(root.toExternalForm()))
+                result.add(root);
+
+        return result;
+    }
+
+    private static Set<String> readIndex(Class<? extends Annotation> annotation, ClassLoader classLoader) {
+        Set<String> result = new TreeSet<>();
+        try {
+            for (URL url : Collections.list(classLoader.getResources(INDEX_DIRECTORY + annotation.getName()))) {
+                try (BufferedReader reader = new BufferedReader(new InputStreamReader(url.openStream(), StandardCharsets.UTF_8))) {
+                    reader.lines().map(String::strip).filter(s -> !s.isEmpty()).forEach(result::add);
+                }
+            }
+        } catch (IOException e) {
+            throw new TelegRiseInternalException(e);
+        }
+
+        return result;
+    }
+
+    private ClassIndex() {}
+}
@@ -0,0 +1,35 @@
+package org.telegrise.telegrise.core.utils;
+
+import org.jetbrains.annotations.Nullable;
+import org.w3c.dom.Node;
+
+import java.io.Serializable;
+
+/**
+ * Position of an element in the transcription file, used in error messages.
+ * Locations are attached to element nodes of documents loaded with {@link XMLUtils#loadDocument}.
+ *
+ * @param file path of the transcription file
+ * @param line line number of the element's start tag, starting with 1
+ * @param column column number of the element's start tag, starting with 1
+ * @since 1.0
+ */
+public record SourceLocation(String file, int line, int column) implements Serializable {
+    static final String KEY = "telegrise.location";
+
+    /**
+     * Returns location of the node, if known.
+     */
+    public static @Nullable SourceLocation of(@Nullable Node node) {
+        return node == null ? null : (SourceLocation) node.getUserData(KEY);
+    }
+
+    public void attach(Node node) {
+        node.setUserData(KEY, this, null);
+    }
+
+    @Override
+    public String toString() {
+        return this.file + ":" + this.line + ":" + this.column;
+    }
+}
@@ -2,16 +2,20 @@ package org.telegrise.telegrise.core.utils;
 
 import org.apache.commons.text.StringEscapeUtils;
 import org.jetbrains.annotations.NotNull;
+import org.telegrise.telegrise.exceptions.TelegRiseInternalException;
 import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 import org.w3c.dom.ls.DOMImplementationLS;
 import org.w3c.dom.ls.LSSerializer;
+import org.xml.sax.Attributes;
+import org.xml.sax.Locator;
 import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
 
-import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
 import java.io.File;
 import java.io.IOException;
 import java.util.LinkedList;
@@ -19,6 +23,8 @@ import java.util.List;
 import java.util.StringJoiner;
 
 public class XMLUtils {
+    private static final String DETACHED_KEY = "telegrise.detached";
+
     @NotNull
     public static LSSerializer getLsSerializer(Node node) {
         Document document = node.getNodeType() == Node.DOCUMENT_NODE ? (Document) node : node.getOwnerDocument();
@@ -84,12 +90,84 @@ public class XMLUtils {
         return result.toArray(new Node[0]);
     }
 
+    /**
+     * Loads the transcription file into a DOM document.
+     * Element nodes of the document are given their {@link SourceLocation source locations},
+     * which are reported by a SAX {@link Locator} while the file is read once more,
+     * since {@link javax.xml.parsers.DocumentBuilder DocumentBuilder} doesn't expose positions of the nodes.
+     */
     public static Document loadDocument(File file) throws IOException, SAXException, ParserConfigurationException {
-        DocumentBuilderFactory dbf = DocumentBuilderFactory.newDefaultInstance();
-        DocumentBuilder db = dbf.newDocumentBuilder();
-        Document document = db.parse(file);
+        Document document = DocumentBuilderFactory.newDefaultInstance().newDocumentBuilder().parse(file);
         document.getDocumentElement().normalize();
 
+        // SAX reports start tags in the same order as elements of the document are listed
+        NodeList elements = document.getElementsByTagName("*");
+        SAXParserFactory.newDefaultInstance().newSAXParser().parse(file, new DefaultHandler() {
+            private Locator locator;
+            private int index;
+
+            @Override
+            public void setDocumentLocator(Locator locator) {
+                this.locator = locator;
+            }
+
+            @Override
+            public void startElement(String uri, String localName, String qName, Attributes attributes) {
+                if (this.index < elements.getLength())
+                    new SourceLocation(file.getPath(), this.locator.getLineNumber(), this.locator.getColumnNumber())
+                            .attach(elements.item(this.index++));
+            }
+        });
+
         return document;
     }
+
+    /**
+     * Returns a copy of the element node that keeps only what is needed for error messages:
+     * its attributes, ancestors and {@link SourceLocation source location}.
+     * Copies of the nodes of the same document share a document that contains no text,
+     * so that the original document can be garbage-collected once it is no longer used for parsing.
+     */
+    public static Node detach(Node node) {
+        if (node == null || node.getNodeType() != Node.ELEMENT_NODE || node.getOwnerDocument() == null
+                || node.getOwnerDocument().getUserData(DETACHED_KEY) == Boolean.TRUE)
+            return node;
+
+        Document source = node.getOwnerDocument();
+        synchronized (source) {
+            Node detached = (Node) node.getUserData(DETACHED_KEY);
+            if (detached != null) return detached;
+
+            Node parent = node.getParentNode();
+            Node detachedParent;
+            if (parent == null)
+                return node;    // Node is not a part of any document, so nothing could be released
+            else if (parent.getNodeType() == Node.DOCUMENT_NODE) {
+                Document document = newDocument();
+                document.setDocumentURI(source.getDocumentURI());
+                document.setUserData(DETACHED_KEY, Boolean.TRUE, null);
+                detachedParent = document;
+            } else
+                detachedParent = detach(parent);
+
+            if (detachedParent == parent) return node;
+
+            Document document = detachedParent.getNodeType() == Node.DOCUMENT_NODE ? (Document) detachedParent : detachedParent.getOwnerDocument();
+            detached = detachedParent.appendChild(document.importNode(node, false));
+
+            SourceLocation location = SourceLocation.of(node);
+            if (location != null) location.attach(detached);
+            node.setUserData(DETACHED_KEY, detached, null);
+
+            return detached;
+        }
+    }
+
+    private static Document newDocument() {
+        try {
+            return DocumentBuilderFactory.newDefaultInstance().newDocumentBuilder().newDocument();
+        } catch (ParserConfigurationException e) {
+            throw new TelegRiseInternalException(e);
+        }
+    }
 }
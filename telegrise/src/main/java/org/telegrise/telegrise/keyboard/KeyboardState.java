@@ -10,6 +10,7 @@ import org.telegrise.telegrise.core.elements.base.BranchingElement;
 import org.telegrise.telegrise.core.elements.keyboard.Keyboard;
 import org.telegrise.telegrise.core.elements.keyboard.Switch;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.function.BiConsumer;
@@ -57,6 +58,23 @@ public final class KeyboardState {
                 ).toArray(ButtonData[][]::new);
     }
 
+    @ApiStatus.Internal
+    public KeyboardState(BranchingElement parent, ButtonData[][] buttonsData, Map<String, String> switchStates){
+        this.parent = parent;
+        this.buttonsData = buttonsData;
+        this.switchStates.putAll(switchStates);
+    }
+
+    @ApiStatus.Internal
+    public ButtonData[][] getButtonsData() {
+        return buttonsData;
+    }
+
+    @ApiStatus.Internal
+    public Map<String, String> getSwitchStates() {
+        return Collections.unmodifiableMap(switchStates);
+    }
+
     /**
      * Returns current state of switch named <code>name</code> in boolean.
      * Can be used only for switches in default mode.
@@ -25,6 +25,7 @@ import org.telegram.telegrambots.meta.api.objects.message.Message;
 import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
 import org.telegram.telegrambots.meta.generics.TelegramClient;
 import org.telegrise.telegrise.SessionMemory;
+import org.telegrise.telegrise.application.WebhookReply;
 import org.telegrise.telegrise.core.SessionMemoryImpl;
 
 import java.io.InputStream;
@@ -143,16 +144,29 @@ public class BotSender {
         return this.client.downloadFileAsStream(filePath);
     }
 
+    @SuppressWarnings("unchecked")
     public <T extends Serializable, Method extends BotApiMethod<T>> CompletableFuture<T> executeAsync(Method method) throws TelegramApiException {
         logger.debug("Executing method: {}", method);
+        // Captured methods return no data, so their result is always true
+        if (WebhookReply.offer(method)) {
+            this.finish(null);
+            return CompletableFuture.completedFuture((T) Boolean.TRUE);
+        }
+
         return this.client.executeAsync(method).thenApply(r -> {
             this.finish(r instanceof Message m ? m : null);
             return r;
         });
     }
 
+    @SuppressWarnings("unchecked")
     public <T extends Serializable, Method extends BotApiMethod<T>> T execute(Method method) throws TelegramApiException {
         logger.debug("Executing method: {}", method);
+        if (WebhookReply.offer(method)) {
+            this.finish(null);
+            return (T) Boolean.TRUE;
+        }
+
         T result = this.client.execute(method);
         this.finish(result instanceof Message m ? m : null);
         return result;
@@ -7,6 +7,7 @@ import org.telegram.telegrambots.meta.api.objects.CallbackQuery;
 import org.telegram.telegrambots.meta.api.objects.message.InaccessibleMessage;
 import org.telegram.telegrambots.meta.api.objects.message.Message;
 import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegrise.telegrise.application.WebhookReply;
 import org.telegrise.telegrise.core.SessionMemoryImpl;
 
 /**
@@ -49,8 +50,8 @@ public class CallbackQueryActionBuilder{
     }
 
     public boolean answer(String text, boolean showAlert) throws TelegramApiException{
-        return this.sender.getClient().execute(
-                AnswerCallbackQuery.builder().callbackQueryId(query.getId()).showAlert(showAlert).text(text).build());
+        var method = AnswerCallbackQuery.builder().callbackQueryId(query.getId()).showAlert(showAlert).text(text).build();
+        return WebhookReply.offer(method) || this.sender.getClient().execute(method);
     }
 
     public EditableMessageActionBuilder message(){
@@ -7,6 +7,8 @@ import org.telegram.telegrambots.meta.api.methods.botapimethods.BotApiMethod;
 import org.telegram.telegrambots.meta.api.methods.botapimethods.PartialBotApiMethod;
 import org.telegram.telegrambots.meta.api.objects.message.Message;
 import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.generics.TelegramClient;
+import org.telegrise.telegrise.application.WebhookReply;
 import org.telegrise.telegrise.core.ResourcePool;
 import org.telegrise.telegrise.core.elements.actions.ActionElement;
 import org.telegrise.telegrise.core.elements.base.NodeElement;
@@ -19,6 +21,7 @@ import java.io.Serializable;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * This class is a wrapper for the {@link BotSender} class
@@ -31,13 +34,20 @@ public class UniversalSender {
     private static final Logger LOGGER = LoggerFactory.getLogger(UniversalSender.class);
 
     private static final Map<String, Method> methods = new HashMap<>();
+    private static final Map<String, Method> asyncMethods = new HashMap<>();
     private static final String METHOD_NAME = "execute";
+    private static final String ASYNC_METHOD_NAME = "executeAsync";
 
     static {
         Arrays.stream(BotSender.class.getMethods())
                 .filter(method -> Objects.equals(method.getName(), METHOD_NAME)
                         && method.getParameterTypes().length == 1 && PartialBotApiMethod.class.isAssignableFrom(method.getParameterTypes()[0]))
                 .forEach(m -> methods.put(m.getParameterTypes()[0].getName(), m));
+
+        Arrays.stream(TelegramClient.class.getMethods())
+                .filter(method -> Objects.equals(method.getName(), ASYNC_METHOD_NAME)
+                        && method.getParameterTypes().length == 1 && PartialBotApiMethod.class.isAssignableFrom(method.getParameterTypes()[0]))
+                .forEach(m -> asyncMethods.put(m.getParameterTypes()[0].getName(), m));
     }
 
     private final BotSender sender;
@@ -75,32 +85,89 @@ public class UniversalSender {
         }
     }
 
+    /**
+     * Executes any instance of {@link PartialBotApiMethod} asynchronously using {@link TelegramClient#executeAsync}.
+     * Unlike {@link #execute(PartialBotApiMethod)}, sent messages are not marked as the last sent message.
+     *
+     * @param method method to execute
+     * @return future of the corresponding return value
+     */
+    @SuppressWarnings("unchecked")
+    public CompletableFuture<Serializable> executeAsync(PartialBotApiMethod<? extends Serializable> method) {
+        if (method == null) return CompletableFuture.completedFuture(null);
+
+        if (method instanceof BotApiMethod) {
+            if (WebhookReply.offer(method)) return CompletableFuture.completedFuture(Boolean.TRUE);
+
+            try {
+                return sender.getClient().executeAsync((BotApiMethod<Serializable>) method);
+            } catch (TelegramApiException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+
+        try {
+            var invokable = asyncMethods.get(method.getClass().getName());
+            if (invokable == null)
+                throw new InvalidClassException(method.getClass().getName(), "Unable to execute this implementation of PartialBotApiMethod");
+
+            return (CompletableFuture<Serializable>) invokable.invoke(sender.getClient(), method);
+        } catch (InvalidClassException | IllegalAccessException e) {
+            LOGGER.error("An error occurred during invocation of an undefined api method", e);
+            throw new TelegRiseInternalException(e);
+        } catch (InvocationTargetException e) {
+            LOGGER.error("An error occurred during invocation of an undefined api method", e.getTargetException());
+            throw new TelegRiseInternalException(e.getTargetException());
+        }
+    }
+
     @ApiStatus.Internal
     public void execute(ActionElement action, ResourcePool pool) throws TelegramApiException {
         if (action.getWhen() != null && !action.getWhen().generate(pool)) return;
 
-        PartialBotApiMethod<?> method;
-        try {
-            method = action.generateMethod(pool);
-        } catch (Exception e){
-            throw TelegRiseRuntimeException.unfold(e, action.getElementNode());
-        }
+        PartialBotApiMethod<?> method = generateMethod(action, pool);
 
         Object result;
         try {
             result = this.execute(method);
-            LOGGER.debug("Action {} has been executed: {}\nAnd returned: {}", NodeElement.formatNode(action.getElementNode()), method, result);
         } catch (TelegramApiException e) {
-            if (action.getOnError() != null){
-                pool.addComponent(e);
-                pool.addComponent(action.getElementNode());
-                action.getOnError().generate(pool);
-                return;
-            } else {
-                LOGGER.error("An error occurred while executing transcription action:\n\n{}\n", NodeElement.formatNode(action.getElementNode()), e);
-                throw e;
-            }
+            handleError(action, pool, e);
+            return;
+        }
+
+        handleResult(action, pool, method, result);
+    }
+
+    @ApiStatus.Internal
+    public static PartialBotApiMethod<?> generateMethod(ActionElement action, ResourcePool pool) {
+        try {
+            return action.generateMethod(pool);
+        } catch (Exception e){
+            throw TelegRiseRuntimeException.unfold(e, action.getElementNode());
+        }
+    }
+
+    /**
+     * Invokes {@code onError} of the action, or rethrows the exception if the action doesn't have it.
+     */
+    @ApiStatus.Internal
+    public static void handleError(ActionElement action, ResourcePool pool, TelegramApiException e) throws TelegramApiException {
+        if (action.getOnError() != null){
+            pool.addComponent(e);
+            pool.addComponent(action.getElementNode());
+            action.getOnError().generate(pool);
+        } else {
+            LOGGER.error("An error occurred while executing transcription action:\n\n{}\n", NodeElement.formatNode(action.getElementNode()), e);
+            throw e;
         }
+    }
+
+    /**
+     * Marks the sent message as the last sent message and passes the result to {@code returnConsumer} of the action.
+     */
+    @ApiStatus.Internal
+    public static void handleResult(ActionElement action, ResourcePool pool, PartialBotApiMethod<?> method, Object result) {
+        LOGGER.debug("Action {} has been executed: {}\nAnd returned: {}", NodeElement.formatNode(action.getElementNode()), method, result);
 
         if (result instanceof List<?> resultList) {
             if (!resultList.isEmpty() && resultList.getFirst() instanceof Message)
@@ -0,0 +1,271 @@
+package org.telegrise.telegrise.storage;
+
+import org.jetbrains.annotations.Nullable;
+import org.telegrise.telegrise.SessionIdentifier;
+import org.telegrise.telegrise.SessionStore;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Session store that persists states in memory-mapped segment files of the specified directory.
+ * <p>
+ * States are appended to the current segment as records, and the in-memory index points to the latest record
+ * of each session, so that loading a session is a single copy from the mapped memory.
+ * When a segment is full, a new one is started.
+ * Records that were overwritten or deleted remain in the segments until more than half of the stored data is garbage,
+ * in which case live records are compacted into new segments and the old ones are deleted.
+ * The index is rebuilt by scanning the segments when the store is opened.
+ * <p>
+ * Only one store can use a directory at a time.
+ *
+ * @since 1.0
+ */
+public final class MappedFileSessionStore implements SessionStore {
+    private static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+    private static final int MAGIC = 0x54525353;  // TRSS
+    private static final int VERSION = 1;
+    private static final int SEGMENT_HEADER_SIZE = 8;
+    // Marker, user id, chat id, length
+    private static final int RECORD_HEADER_SIZE = 1 + 8 + 8 + 4;
+    private static final byte END = 0;
+    private static final byte STATE = 1;
+    private static final byte TOMBSTONE = 2;
+
+    private final Path directory;
+    private final int segmentSize;
+    private final Map<SessionIdentifier, Location> index = new ConcurrentHashMap<>();
+    private final List<Segment> segments = new ArrayList<>();
+    private Segment current;
+    private long liveBytes;
+    private long totalBytes;
+    private boolean closed;
+
+    public MappedFileSessionStore(Path directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * @param directory directory of segment files, is created if it doesn't exist
+     * @param segmentSize maximum size of a segment file in bytes, states that don't fit get a segment of their own
+     */
+    public MappedFileSessionStore(Path directory, int segmentSize) throws IOException {
+        if (segmentSize <= SEGMENT_HEADER_SIZE + RECORD_HEADER_SIZE)
+            throw new IllegalArgumentException("Segment size is too small: " + segmentSize);
+
+        this.directory = Files.createDirectories(directory);
+        this.segmentSize = segmentSize;
+        this.open();
+    }
+
+    @Override
+    public byte @Nullable [] load(SessionIdentifier identifier) {
+        Location location = this.index.get(identifier);
+        if (location == null) return null;
+
+        byte[] state = new byte[location.length];
+        // Absolute bulk get doesn't touch the position of the buffer, so it is safe to read concurrently
+        location.segment.buffer.get(location.offset + RECORD_HEADER_SIZE, state);
+        return state;
+    }
+
+    @Override
+    public synchronized void save(SessionIdentifier identifier, byte[] state) throws IOException {
+        this.ensureOpen();
+        Location location = this.append(STATE, identifier, state);
+        this.release(this.index.put(identifier, location));
+        this.liveBytes += location.size();
+
+        this.compactIfNeeded();
+    }
+
+    @Override
+    public synchronized void delete(SessionIdentifier identifier) throws IOException {
+        this.ensureOpen();
+        Location previous = this.index.remove(identifier);
+        if (previous == null) return;
+
+        this.release(previous);
+        this.append(TOMBSTONE, identifier, new byte[0]);
+        this.compactIfNeeded();
+    }
+
+    /**
+     * @return number of stored sessions
+     */
+    public int size() {
+        return this.index.size();
+    }
+
+    /**
+     * Writes all changes to the storage device.
+     */
+    public synchronized void flush() {
+        this.segments.forEach(s -> s.buffer.force());
+    }
+
+    /**
+     * Rewrites live records into new segments and deletes the old ones.
+     */
+    public synchronized void compact() throws IOException {
+        this.ensureOpen();
+        List<Segment> old = new ArrayList<>(this.segments);
+        this.current = this.createSegment(this.nextSegmentId(), this.segmentSize);
+        this.liveBytes = 0;
+        this.totalBytes = SEGMENT_HEADER_SIZE;
+
+        for (var entry : this.index.entrySet()) {
+            Location location = this.append(STATE, entry.getKey(), this.load(entry.getKey()));
+            entry.setValue(location);
+            this.liveBytes += location.size();
+        }
+        this.flush();
+
+        // Segments are deleted from the oldest one, so a crash in between leaves the newer tombstones in place
+        for (Segment segment : old) {
+            this.segments.remove(segment);
+            segment.channel.close();
+            Files.delete(segment.path);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (this.closed) return;
+        this.closed = true;
+
+        this.flush();
+        for (Segment segment : this.segments)
+            segment.channel.close();
+    }
+
+    private void open() throws IOException {
+        List<Path> files;
+        try (Stream<Path> stream = Files.list(this.directory)) {
+            files = stream.filter(p -> p.getFileName().toString().matches("sessions-\\d+\\.seg")).sorted().toList();
+        }
+
+        for (Path file : files) {
+            Segment segment = this.openSegment(file);
+            this.segments.add(segment);
+            this.scan(segment);
+            this.current = segment;
+        }
+
+        if (this.current == null)
+            this.current = this.createSegment(0, this.segmentSize);
+    }
+
+    private void scan(Segment segment) {
+        MappedByteBuffer buffer = segment.buffer;
+        int position = SEGMENT_HEADER_SIZE;
+        this.totalBytes += SEGMENT_HEADER_SIZE;
+
+        while (position + RECORD_HEADER_SIZE <= buffer.capacity() && buffer.get(position) != END) {
+            byte marker = buffer.get(position);
+            SessionIdentifier identifier = SessionIdentifier.of(buffer.getLong(position + 1), buffer.getLong(position + 9));
+            int length = buffer.getInt(position + 17);
+            Location location = new Location(segment, position, length);
+            if (length < 0 || position + location.size() > buffer.capacity()) break;   // Incomplete record
+
+            this.release(marker == STATE ? this.index.put(identifier, location) : this.index.remove(identifier));
+            if (marker == STATE) this.liveBytes += location.size();
+            this.totalBytes += location.size();
+            position += location.size();
+        }
+
+        segment.position = position;
+    }
+
+    private Location append(byte marker, SessionIdentifier identifier, byte[] state) throws IOException {
+        int size = RECORD_HEADER_SIZE + state.length;
+        if (this.current.position + size > this.current.buffer.capacity())
+            this.current = this.createSegment(this.nextSegmentId(), Math.max(this.segmentSize, SEGMENT_HEADER_SIZE + size));
+
+        MappedByteBuffer buffer = this.current.buffer;
+        int offset = this.current.position;
+        buffer.putLong(offset + 1, identifier.getUserId());
+        buffer.putLong(offset + 9, identifier.getChatId());
+        buffer.putInt(offset + 17, state.length);
+        buffer.put(offset + RECORD_HEADER_SIZE, state);
+        // Marker is written last, so that an incomplete record is treated as the end of the segment
+        buffer.put(offset, marker);
+
+        this.current.position += size;
+        this.totalBytes += size;
+        return new Location(this.current, offset, state.length);
+    }
+
+    private void release(@Nullable Location location) {
+        if (location != null) this.liveBytes -= location.size();
+    }
+
+    private void compactIfNeeded() throws IOException {
+        if (this.totalBytes > this.segmentSize && this.liveBytes * 2 < this.totalBytes)
+            this.compact();
+    }
+
+    private int nextSegmentId() {
+        return this.segments.isEmpty() ? 0 : this.segments.getLast().id + 1;
+    }
+
+    private Segment createSegment(int id, int capacity) throws IOException {
+        Path path = this.directory.resolve("sessions-%06d.seg".formatted(id));
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        Segment segment = new Segment(id, path, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity));
+        segment.buffer.putInt(0, MAGIC);
+        segment.buffer.putInt(4, VERSION);
+        segment.position = SEGMENT_HEADER_SIZE;
+
+        this.segments.add(segment);
+        this.totalBytes += SEGMENT_HEADER_SIZE;
+        return segment;
+    }
+
+    private Segment openSegment(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+        if (buffer.capacity() < SEGMENT_HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            channel.close();
+            throw new IOException("File '%s' is not a session store segment of version %d".formatted(path, VERSION));
+        }
+
+        String name = path.getFileName().toString();
+        int id = Integer.parseInt(name.substring("sessions-".length(), name.length() - ".seg".length()));
+        return new Segment(id, path, channel, buffer);
+    }
+
+    private void ensureOpen() throws IOException {
+        if (this.closed) throw new IOException("Session store is closed");
+    }
+
+    private static final class Segment {
+        private final int id;
+        private final Path path;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private int position;
+
+        private Segment(int id, Path path, FileChannel channel, MappedByteBuffer buffer) {
+            this.id = id;
+            this.path = path;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+    }
+
+    private record Location(Segment segment, int offset, int length) {
+        int size() {
+            return RECORD_HEADER_SIZE + this.length;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package org.telegrise.telegrise.storage;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Encodes values of the specified type that are stored in the memory map of sessions.
+ * <p>
+ * Session snapshots natively support strings, primitive wrappers, byte arrays, lists, sets, maps and messages.
+ * Other values are written using Java serialization, which is much slower and produces larger snapshots.
+ * Implementing a codec for such values allows storing them compactly,
+ * as well as storing values that are not {@link java.io.Serializable Serializable} at all.
+ * <pre>
+ * {@code
+ * public class OrderCodec implements ValueCodec<Order> {
+ *     public String name() { return "order"; }
+ *     public Class<Order> type() { return Order.class; }
+ *
+ *     public void write(Order value, DataOutput output) throws IOException {
+ *         output.writeLong(value.getId());
+ *         output.writeUTF(value.getStatus());
+ *     }
+ *
+ *     public Order read(DataInput input) throws IOException {
+ *         return new Order(input.readLong(), input.readUTF());
+ *     }
+ * }
+ * }
+ * </pre>
+ *
+ * @param <T> type of values
+ * @see org.telegrise.telegrise.SessionStore
+ * @since 1.0
+ */
+public interface ValueCodec<T> {
+    /**
+     * Name that identifies values of this codec in snapshots.
+     * It must be unique and must not change, otherwise stored values can't be read.
+     */
+    String name();
+
+    /**
+     * Type of values that this codec encodes, including its subclasses.
+     */
+    Class<T> type();
+
+    void write(T value, DataOutput output) throws IOException;
+
+    T read(DataInput input) throws IOException;
+}
@@ -0,0 +1,81 @@
+package org.telegrise.telegrise.types;
+
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.util.function.Predicate;
+
+/**
+ * Types of updates, which are determined by the field of the update that is present.
+ * Can be used to restrict {@link org.telegrise.telegrise.annotations.Handler#updateTypes() update handlers}
+ * to certain types of updates.
+ *
+ * @since 1.0
+ */
+public enum UpdateType {
+    MESSAGE(Update::hasMessage),
+    EDITED_MESSAGE(Update::hasEditedMessage),
+    CHANNEL_POST(Update::hasChannelPost),
+    EDITED_CHANNEL_POST(Update::hasEditedChannelPost),
+    CALLBACK_QUERY(Update::hasCallbackQuery),
+    INLINE_QUERY(Update::hasInlineQuery),
+    CHOSEN_INLINE_RESULT(Update::hasChosenInlineQuery),
+    SHIPPING_QUERY(Update::hasShippingQuery),
+    PRE_CHECKOUT_QUERY(Update::hasPreCheckoutQuery),
+    POLL(Update::hasPoll),
+    POLL_ANSWER(Update::hasPollAnswer),
+    MY_CHAT_MEMBER(Update::hasMyChatMember),
+    CHAT_MEMBER(Update::hasChatMember),
+    CHAT_JOIN_REQUEST(Update::hasChatJoinRequest),
+    MESSAGE_REACTION(u -> u.getMessageReaction() != null),
+    MESSAGE_REACTION_COUNT(u -> u.getMessageReactionCount() != null),
+    CHAT_BOOST(u -> u.getChatBoost() != null),
+    REMOVED_CHAT_BOOST(u -> u.getRemovedChatBoost() != null),
+    BUSINESS_CONNECTION(Update::hasBusinessConnection),
+    BUSINESS_MESSAGE(Update::hasBusinessMessage),
+    EDITED_BUSINESS_MESSAGE(Update::hasEditedBusinessMessage),
+    DELETED_BUSINESS_MESSAGES(Update::hasDeletedBusinessMessage),
+    PAID_MEDIA_PURCHASED(Update::hasPaidMediaPurchased);
+
+    /**
+     * Mask that matches updates of all types, including unknown ones.
+     */
+    public static final int ALL = -1;
+
+    private static final UpdateType[] VALUES = values();
+
+    private final Predicate<Update> predicate;
+
+    UpdateType(Predicate<Update> predicate) {
+        this.predicate = predicate;
+    }
+
+    public boolean matches(Update update) {
+        return this.predicate.test(update);
+    }
+
+    public int mask() {
+        return 1 << this.ordinal();
+    }
+
+    /**
+     * @return mask of the types that are present in the update, or {@link #ALL} if the type is unknown
+     */
+    public static int maskOf(Update update) {
+        int mask = 0;
+        for (UpdateType type : VALUES)
+            if (type.matches(update)) mask |= type.mask();
+
+        return mask == 0 ? ALL : mask;
+    }
+
+    /**
+     * @return mask of the specified types, or {@link #ALL} if there are none
+     */
+    public static int maskOf(UpdateType... types) {
+        int mask = 0;
+        for (UpdateType type : types)
+            mask |= type.mask();
+
+        return mask == 0 ? ALL : mask;
+    }
+}
@@ -0,0 +1,80 @@
+package org.telegrise.telegrise.application;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.telegram.telegrambots.meta.api.objects.Update;
+import org.telegram.telegrambots.meta.api.objects.User;
+import org.telegram.telegrambots.meta.api.objects.chat.Chat;
+import org.telegram.telegrambots.meta.api.objects.message.Message;
+import org.telegrise.telegrise.ReferenceHolders;
+import org.telegrise.telegrise.core.ResourcePool;
+import org.telegrise.telegrise.core.elements.BotTranscription;
+import org.telegrise.telegrise.core.parser.ApplicationNamespace;
+import org.telegrise.telegrise.core.parser.XMLTranscriptionParser;
+import org.telegrise.telegrise.core.parser.XMLTranscriptionParserTest;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.telegrise.telegrise.core.parser.XMLElementsParserTest.assertElements;
+
+class CompiledTranscriptionTest {
+    @Test
+    void readWrite(@TempDir Path directory) throws Exception {
+        File transcription = new File("src/test/resources/parseTestSample.xml");
+        File output = directory.resolve("index.telegrise").toFile();
+        CompiledTranscription.write(transcription, namespace(), output);
+
+        BotTranscription parsed = XMLTranscriptionParser.of(transcription, namespace()).parse();
+        BotTranscription compiled = CompiledTranscription.read(output, this.getClass().getClassLoader());
+
+        Update update = new Update();
+        update.setMessage(new Message());
+        update.getMessage().setChat(new Chat(-1L, "chat"));
+        update.getMessage().setFrom(new User(-2L, "First Name", false));
+
+        assertElements(parsed, compiled, new ResourcePool(update, new XMLTranscriptionParserTest(), null, null, null));
+        assertNotNull(compiled.getRoot().getTrees().getFirst().getElementNode());
+        // Restored nodes of the same file share the document and the ancestors
+        assertSame(compiled.getRoot().getElementNode(), compiled.getRoot().getTrees().getFirst().getElementNode().getParentNode());
+        assertSame(compiled.getElementNode(), compiled.getRoot().getElementNode().getParentNode());
+    }
+
+    @Test
+    void recompileChangedSources(@TempDir Path directory) throws Exception {
+        File transcription = Files.writeString(directory.resolve("bot.xml"), """
+                <bot token="token">
+                    <head><link src="trees.xml"/></head>
+                    <root name="Main"/>
+                </bot>""").toFile();
+        Path trees = Files.writeString(directory.resolve("trees.xml"), """
+                <trees>
+                    <tree name="first" command="first"><send chat="-1"><text>Hello</text></send></tree>
+                </trees>""");
+        File output = directory.resolve("index.telegrise").toFile();
+        CompiledTranscription.write(transcription, namespace(), output);
+
+        assertNotNull(CompiledTranscription.read(output, transcription, this.getClass().getClassLoader()));
+        // Transcription isn't available, so the compiled one is used as it is
+        assertNotNull(CompiledTranscription.read(output, directory.resolve("missing.xml").toFile(), this.getClass().getClassLoader()));
+
+        Files.writeString(trees, Files.readString(trees).replace("Hello", "Changed"));
+        assertNull(CompiledTranscription.read(output, transcription, this.getClass().getClassLoader()));
+    }
+
+    @Test
+    void keepHoldersOfApplication(@TempDir Path directory) throws Exception {
+        // Holder registered by another application of the JVM, which couldn't be instantiated on reading
+        ReferenceHolders.add(Integer.class, 0);
+        File output = directory.resolve("index.telegrise").toFile();
+        CompiledTranscription.write(new File("src/test/resources/parseTestSample.xml"), namespace(), output);
+
+        assertDoesNotThrow(() -> CompiledTranscription.read(output, this.getClass().getClassLoader()));
+    }
+
+    private ApplicationNamespace namespace() {
+        return new ApplicationNamespace(this.getClass().getClassLoader(), XMLTranscriptionParserTest.class.getPackageName());
+    }
+}
@@ -0,0 +1,92 @@
+package org.telegrise.telegrise.application;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.telegram.telegrambots.client.okhttp.OkHttpTelegramClient;
+import org.telegram.telegrambots.meta.TelegramUrl;
+import org.telegram.telegrambots.meta.api.methods.AnswerCallbackQuery;
+import org.telegram.telegrambots.meta.api.methods.botapimethods.PartialBotApiMethod;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.objects.Update;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegrise.telegrise.senders.BotSender;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WebhookReplyTest {
+    // Nothing listens on the port, so methods that weren't captured fail
+    private final BotSender sender = new BotSender(new OkHttpTelegramClient("1:token",
+            new TelegramUrl("http", "localhost", 1, false)), null);
+
+    @AfterEach
+    void after() {
+        WebhookReply.release();
+    }
+
+    private static Update update(int id) {
+        Update update = new Update();
+        update.setUpdateId(id);
+        return update;
+    }
+
+    private static AnswerCallbackQuery answer(String id) {
+        return AnswerCallbackQuery.builder().callbackQueryId(id).build();
+    }
+
+    @Test
+    void captureFirstEligibleMethod() throws Exception {
+        Update update = update(1);
+        CompletableFuture<PartialBotApiMethod<?>> future = WebhookReply.expect(update).await(5, TimeUnit.SECONDS);
+        WebhookReply.bind(update);
+
+        assertThrows(TelegramApiException.class, () -> this.sender.execute(SendMessage.builder().chatId(1L).text("text").build()));
+        assertFalse(future.isDone());
+
+        assertTrue(this.sender.execute(answer("first")));
+        assertThrows(TelegramApiException.class, () -> this.sender.execute(answer("second")));
+
+        JsonNode response = new ObjectMapper().valueToTree(future.get());
+        assertEquals("answercallbackquery", response.get("method").asText().toLowerCase());
+        assertEquals("first", response.get("callback_query_id").asText());
+    }
+
+    @Test
+    void completeWithoutMethod() throws Exception {
+        Update update = update(2);
+        var future = WebhookReply.expect(update).await(5, TimeUnit.SECONDS);
+        WebhookReply.bind(update);
+        WebhookReply.release();
+
+        assertNull(future.get(1, TimeUnit.SECONDS));
+        // Methods issued after the update was handled are executed normally
+        assertFalse(WebhookReply.offer(answer("late")));
+    }
+
+    @Test
+    void timeout() throws Exception {
+        Update update = update(3);
+        var future = WebhookReply.expect(update).await(50, TimeUnit.MILLISECONDS);
+
+        assertNull(future.get(1, TimeUnit.SECONDS));
+        WebhookReply.bind(update);
+        assertFalse(WebhookReply.offer(answer("late")));
+    }
+
+    @Test
+    void cancelUnboundReply() throws Exception {
+        Update update = update(4);
+        WebhookReply reply = WebhookReply.expect(update);
+        var future = reply.await(5, TimeUnit.SECONDS);
+        reply.cancel();
+
+        assertNull(future.get(1, TimeUnit.SECONDS));
+        // Session that takes the update later doesn't capture its methods
+        WebhookReply.bind(update);
+        assertFalse(WebhookReply.offer(answer("late")));
+    }
+}
@@ -0,0 +1,225 @@
+package org.telegrise.telegrise.core;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.telegram.telegrambots.client.okhttp.OkHttpTelegramClient;
+import org.telegram.telegrambots.meta.TelegramUrl;
+import org.telegram.telegrambots.meta.api.objects.CallbackQuery;
+import org.telegram.telegrambots.meta.api.objects.Update;
+import org.telegram.telegrambots.meta.api.objects.chat.Chat;
+import org.telegram.telegrambots.meta.api.objects.message.Message;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
+import org.telegrise.telegrise.SessionIdentifier;
+import org.telegrise.telegrise.core.elements.BotTranscription;
+import org.telegrise.telegrise.core.elements.Branch;
+import org.telegrise.telegrise.core.elements.Tree;
+import org.telegrise.telegrise.core.parser.ApplicationNamespace;
+import org.telegrise.telegrise.core.parser.XMLTranscriptionParser;
+import org.telegrise.telegrise.senders.BotSender;
+import org.telegrise.telegrise.senders.UniversalSender;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ActionPipelineTest {
+    private static final String TOKEN = "1:token";
+    private static final long DELAY_MILLIS = 200;
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static final String TRANSCRIPTION = """
+            <bot token="token" asyncActions="true">
+                <head/>
+                <root name="Main">
+                    <tree name="first" command="first">
+                        <branch name="independent" when="${false}">
+                            <send chat="1">a</send>
+                            <send chat="2">b</send>
+                            <send chat="3">c</send>
+                            <send chat="1">d</send>
+                        </branch>
+                        <branch name="failed" when="${false}">
+                            <send chat="1">fail</send>
+                            <send chat="1">skipped</send>
+                            <send chat="2">other</send>
+                        </branch>
+                        <branch name="consumer" when="${false}">
+                            <send chat="1" returnConsumer='::register("sent")'>a</send>
+                            <delete chat="1" registry="sent"/>
+                        </branch>
+                        <branch name="lastMessage" when="${false}">
+                            <send chat="1">a</send>
+                            <pin chat="1" messageId="${pool.getMemory().getLastSentMessage().getMessageId()}"/>
+                        </branch>
+                        <branch name="editLastMessage" when="${false}">
+                            <send chat="1">a</send>
+                            <edit chat="1" source="callback" type="text" messageId="${pool.getMemory().getLastSentMessage().getMessageId()}">
+                                <text>b</text>
+                            </edit>
+                        </branch>
+                    </tree>
+                </root>
+            </bot>""";
+
+    private record Received(String method, String chatId, String text, String messageId) {}
+
+    private HttpServer server;
+    private final ConcurrentLinkedQueue<Received> received = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger messageIds = new AtomicInteger();
+    private BotTranscription transcription;
+    private ResourcePool pool;
+
+    @BeforeEach
+    void before(@TempDir Path directory) throws Exception {
+        this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        this.server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        this.server.createContext("/", this::handle);
+        this.server.start();
+
+        ApplicationNamespace namespace = new ApplicationNamespace(this.getClass().getClassLoader(), this.getClass().getPackageName());
+        this.transcription = XMLTranscriptionParser.of(Files.writeString(directory.resolve("bot.xml"), TRANSCRIPTION).toFile(), namespace).parse();
+
+        TelegramUrl url = new TelegramUrl("http", "localhost", this.server.getAddress().getPort(), false);
+        SessionMemoryImpl memory = new SessionMemoryImpl(this.transcription.hashCode(), SessionIdentifier.of(1L, 1L), this.transcription.getRoleMap());
+        BotSender sender = new BotSender(new OkHttpTelegramClient(TOKEN, url), memory);
+        this.pool = new ResourcePool(callbackUpdate(), null, sender, memory, null);
+    }
+
+    private static Update callbackUpdate() {
+        Message message = new Message();
+        message.setMessageId(100);
+        message.setDate(1700000000);
+        message.setText("callback");
+        message.setChat(new Chat(1L, "private"));
+
+        CallbackQuery query = new CallbackQuery();
+        query.setId("1");
+        query.setMessage(message);
+
+        Update update = new Update();
+        update.setCallbackQuery(query);
+        return update;
+    }
+
+    @AfterEach
+    void after() {
+        this.server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestURI().getPath().substring(exchange.getRequestURI().getPath().lastIndexOf('/') + 1);
+        JsonNode request = MAPPER.readTree(exchange.getRequestBody());
+        String chatId = request.get("chat_id").asText(), text = request.has("text") ? request.get("text").asText() : null;
+        String ids = request.has("message_ids") ? request.get("message_ids").toString()
+                : request.has("message_id") ? request.get("message_id").asText() : null;
+        this.received.add(new Received(method, chatId, text != null ? text : ids, request.has("message_id") ? request.get("message_id").asText() : null));
+
+        try {
+            Thread.sleep(DELAY_MILLIS);
+        } catch (InterruptedException e) {
+            throw new IOException(e);
+        }
+
+        int code = 200;
+        String response;
+        if ("fail".equals(text)) {
+            code = 400;
+            response = "{\"ok\":false,\"error_code\":400,\"description\":\"Bad Request\"}";
+        } else if (method.equalsIgnoreCase("sendMessage")) {
+            response = "{\"ok\":true,\"result\":{\"message_id\":%d,\"date\":1700000000,\"chat\":{\"id\":%s,\"type\":\"private\"},\"text\":\"%s\"}}"
+                    .formatted(this.messageIds.incrementAndGet(), chatId, text);
+        } else {
+            response = "{\"ok\":true,\"result\":true}";
+        }
+
+        byte[] body = response.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(code, body.length);
+        exchange.getResponseBody().write(body);
+        exchange.close();
+    }
+
+    private ActionPipeline pipeline() {
+        return new ActionPipeline(new UniversalSender(this.pool.getSender()), this.pool);
+    }
+
+    private Branch branch(String name) {
+        Tree tree = (Tree) this.transcription.getRoot().getChildren().getFirst();
+        return tree.getChildren().stream().filter(c -> name.equals(c.getName())).map(Branch.class::cast).findFirst().orElseThrow();
+    }
+
+    private List<String> texts(String chatId) {
+        return this.received.stream().filter(r -> r.chatId().equals(chatId)).map(Received::text).toList();
+    }
+
+    @Test
+    void sendIndependentRequests() throws Exception {
+        long start = System.nanoTime();
+        this.pipeline().execute(this.branch("independent").getActions());
+        long elapsed = (System.nanoTime() - start) / 1_000_000;
+
+        // Chats 2 and 3 are served along with the first request to chat 1, synchronous execution would take 800 ms
+        assertTrue(elapsed < 3 * DELAY_MILLIS, "Actions took " + elapsed + " ms");
+        assertEquals(List.of("a", "d"), this.texts("1"));
+        assertEquals(List.of("b"), this.texts("2"));
+        assertEquals(List.of("c"), this.texts("3"));
+
+        // Results are applied in order of the actions
+        assertEquals("d", this.pool.getMemory().getLastSentMessage().getText());
+    }
+
+    @Test
+    void skipRequestsAfterFailure() {
+        assertThrows(TelegramApiRequestException.class, () -> this.pipeline().execute(this.branch("failed").getActions()));
+
+        assertEquals(List.of("fail"), this.texts("1"));
+        assertEquals(List.of("other"), this.texts("2"));
+    }
+
+    @Test
+    void waitForReturnConsumer() throws Exception {
+        this.pipeline().execute(this.branch("consumer").getActions());
+
+        List<Received> requests = List.copyOf(this.received);
+        assertEquals(2, requests.size());
+        assertTrue(requests.get(1).method().equalsIgnoreCase("deleteMessages"));
+        // Message registered by the consumer is deleted
+        assertEquals("[1]", requests.get(1).text());
+    }
+
+    @Test
+    void waitForExpressions() throws Exception {
+        this.pipeline().execute(this.branch("lastMessage").getActions());
+
+        List<Received> requests = List.copyOf(this.received);
+        assertEquals(2, requests.size());
+        assertTrue(requests.get(1).method().equalsIgnoreCase("pinChatMessage"));
+        // Expression is generated after the response of the message is applied
+        assertEquals("1", requests.get(1).text());
+    }
+
+    @Test
+    void waitForEditExpressions() throws Exception {
+        this.pipeline().execute(this.branch("editLastMessage").getActions());
+
+        List<Received> requests = List.copyOf(this.received);
+        assertEquals(2, requests.size());
+        assertTrue(requests.get(1).method().equalsIgnoreCase("editMessageText"));
+        // Edit of a callback message is independent unless its message is generated from previous actions
+        assertEquals("1", requests.get(1).messageId());
+    }
+}
@@ -0,0 +1,117 @@
+package org.telegrise.telegrise.core;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.telegram.telegrambots.client.okhttp.OkHttpTelegramClient;
+import org.telegram.telegrambots.meta.TelegramUrl;
+import org.telegram.telegrambots.meta.api.objects.CallbackQuery;
+import org.telegram.telegrambots.meta.api.objects.Update;
+import org.telegrise.telegrise.core.elements.actions.ActionElement;
+import org.telegrise.telegrise.core.elements.actions.ActionGroup;
+import org.telegrise.telegrise.core.elements.actions.Answer;
+import org.telegrise.telegrise.core.elements.actions.Send;
+import org.telegrise.telegrise.senders.BotSender;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CallbackAnswererTest {
+    private static final String TOKEN = "1:token";
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private HttpServer server;
+    private final BlockingQueue<String> answered = new LinkedBlockingQueue<>();
+    private BotSender sender;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        this.server.createContext("/", this::handle);
+        this.server.start();
+
+        TelegramUrl url = new TelegramUrl("http", "localhost", this.server.getAddress().getPort(), false);
+        this.sender = new BotSender(new OkHttpTelegramClient(TOKEN, url), null);
+    }
+
+    @AfterEach
+    void stopServer() {
+        this.server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        this.answered.add(MAPPER.readTree(exchange.getRequestBody()).get("callback_query_id").asText());
+
+        byte[] body = "{\"ok\":true,\"result\":true}".getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, body.length);
+        exchange.getResponseBody().write(body);
+        exchange.close();
+    }
+
+    private static Update callback(String id) {
+        Update update = new Update();
+        CallbackQuery query = new CallbackQuery();
+        query.setId(id);
+        update.setCallbackQuery(query);
+        return update;
+    }
+
+    @Test
+    void answerOncePerQuery() throws Exception {
+        CallbackAnswerer answerer = new CallbackAnswerer();
+        List<ActionElement> actions = List.of(new Send());
+
+        answerer.answer(callback("first"), actions, this.sender);
+        // Branch invoked by a transition for the same update
+        answerer.answer(callback("first"), actions, this.sender);
+        answerer.answer(callback("second"), actions, this.sender);
+
+        // Answers are sent asynchronously, so they may arrive in any order
+        assertEquals(Set.of("first", "second"), Set.of(this.answered.poll(5, TimeUnit.SECONDS), this.answered.poll(5, TimeUnit.SECONDS)));
+        assertNull(this.answered.poll(200, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void skipBranchesWithAnswer() throws Exception {
+        CallbackAnswerer answerer = new CallbackAnswerer();
+        ActionGroup group = new ActionGroup();
+        group.setActions(List.of(new Answer()));
+
+        answerer.answer(callback("own"), List.of(new Send(), new Answer()), this.sender);
+        // Following branches of the update don't answer it either
+        answerer.answer(callback("own"), List.of(new Send()), this.sender);
+        answerer.answer(callback("group"), List.of(group), this.sender);
+        answerer.answer(new Update(), List.of(new Send()), this.sender);
+
+        assertNull(this.answered.poll(300, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void skipAnswersOfAnsweredQueries() throws Exception {
+        CallbackAnswerer answerer = new CallbackAnswerer();
+        answerer.answer(callback("auto"), List.of(new Send()), this.sender);
+        assertEquals("auto", this.answered.poll(5, TimeUnit.SECONDS));
+
+        // Branch invoked by a transition for the same update
+        ResourcePool pool = new ResourcePool(callback("auto"), null, this.sender, null, null);
+        pool.addComponent(answerer);
+        assertNull(new Answer().generateMethod(pool));
+
+        assertNotNull(new Answer().generateMethod(new ResourcePool(callback("auto"), null, this.sender, null, null)));
+        pool = new ResourcePool(callback("other"), null, this.sender, null, null);
+        pool.addComponent(answerer);
+        assertNotNull(new Answer().generateMethod(pool));
+    }
+}
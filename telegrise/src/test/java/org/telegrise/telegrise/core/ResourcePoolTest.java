@@ -0,0 +1,48 @@
+package org.telegrise.telegrise.core;
+
+import org.junit.jupiter.api.Test;
+import org.telegram.telegrambots.meta.api.objects.Update;
+import org.telegrise.telegrise.SessionIdentifier;
+import org.telegrise.telegrise.SessionMemory;
+import org.telegrise.telegrise.types.ApiResponse;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResourcePoolTest {
+    @Test
+    void components() {
+        Update update = new Update();
+        SessionMemoryImpl memory = new SessionMemoryImpl(0, SessionIdentifier.ofUserOnly(1L), Map.of());
+        ResourcePool pool = new ResourcePool(update, null, null, memory, null);
+
+        assertSame(update, ResourcePool.slotOf(Update.class).get(pool));
+        assertSame(memory, ResourcePool.slotOf(SessionMemory.class).get(pool));
+        assertSame(pool, ResourcePool.slotOf(ResourcePool.class).get(pool));
+        assertNull(pool.getComponent(ApiResponse.class));
+
+        // Essential resources are read from their fields, even if they are set later
+        pool.setApiResponse(new ApiResponse("result"));
+        assertEquals("result", ((ApiResponse) pool.getComponent(ApiResponse.class)).getValue());
+
+        for (int i = 0; i < 20; i++)
+            pool.addComponent(i % 2 == 0 ? Integer.valueOf(i) : "value" + i);
+        pool.addComponent(new StringBuilder("builder"));
+        pool.addComponent(1L);
+
+        assertEquals(18, pool.getComponent(Integer.class));
+        assertEquals("value19", ResourcePool.slotOf(String.class).get(pool));
+        assertEquals(1L, pool.getComponent(long.class));
+        assertInstanceOf(CharSequence.class, pool.getComponent(CharSequence.class));
+        assertNull(pool.getComponent(Thread.class));
+
+        // Grows the table of components
+        List<Object> others = List.of(new ArrayList<>(), new LinkedList<>(), new HashMap<>(), new TreeMap<>(),
+                new HashSet<>(), new TreeSet<>(), new ArrayDeque<>(), new StringBuffer(), new Object(), Boolean.TRUE);
+        others.forEach(pool::addComponent);
+        for (Object other : others)
+            assertSame(other, pool.getComponent(other.getClass()));
+        assertEquals(18, pool.getComponent(Integer.class));
+    }
+}
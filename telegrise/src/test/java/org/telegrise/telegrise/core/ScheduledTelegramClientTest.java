@@ -0,0 +1,221 @@
+package org.telegrise.telegrise.core;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.telegram.telegrambots.client.okhttp.OkHttpTelegramClient;
+import org.telegram.telegrambots.meta.TelegramUrl;
+import org.telegram.telegrambots.meta.api.methods.send.SendChatAction;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.objects.message.Message;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
+import org.telegrise.telegrise.RateLimitPolicy;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ScheduledTelegramClientTest {
+    private static final String TOKEN = "1:token";
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private record Received(String chatId, String text, long time) {}
+
+    private HttpServer server;
+    private final ConcurrentLinkedQueue<Received> received = new ConcurrentLinkedQueue<>();
+    // Number of following requests that are answered with 429
+    private final AtomicInteger limited = new AtomicInteger();
+
+    @BeforeEach
+    void startServer() throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        this.server.createContext("/bot" + TOKEN + "/sendmessage", this::handle);
+        this.server.createContext("/bot" + TOKEN + "/sendChatAction", this::handleAction);
+        this.server.start();
+    }
+
+    @AfterEach
+    void stopServer() {
+        this.server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        JsonNode request = MAPPER.readTree(exchange.getRequestBody());
+        String chatId = request.get("chat_id").asText();
+
+        String response;
+        int code;
+        if (this.limited.getAndUpdate(l -> Math.max(0, l - 1)) > 0) {
+            code = 429;
+            response = "{\"ok\":false,\"error_code\":429,\"description\":\"Too Many Requests: retry after 1\",\"parameters\":{\"retry_after\":1}}";
+        } else {
+            this.received.add(new Received(chatId, request.get("text").asText(), System.nanoTime()));
+            code = 200;
+            response = "{\"ok\":true,\"result\":{\"message_id\":1,\"date\":1700000000,\"chat\":{\"id\":%s,\"type\":\"private\"}}}"
+                    // Chats addressed by username are answered with a made-up id
+                    .formatted(chatId.startsWith("@") ? "-1" : chatId);
+        }
+
+        byte[] body = response.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(code, body.length);
+        exchange.getResponseBody().write(body);
+        exchange.close();
+    }
+
+    private void handleAction(HttpExchange exchange) throws IOException {
+        JsonNode request = MAPPER.readTree(exchange.getRequestBody());
+        this.received.add(new Received(request.get("chat_id").asText(), request.get("action").asText(), System.nanoTime()));
+
+        byte[] body = "{\"ok\":true,\"result\":true}".getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, body.length);
+        exchange.getResponseBody().write(body);
+        exchange.close();
+    }
+
+    private ScheduledTelegramClient createClient(RateLimitPolicy policy) {
+        TelegramUrl url = new TelegramUrl("http", "localhost", this.server.getAddress().getPort(), false);
+        return new ScheduledTelegramClient(new OkHttpTelegramClient(TOKEN, url), policy);
+    }
+
+    private static SendMessage message(long chatId, String text) {
+        return SendMessage.builder().chatId(chatId).text(text).build();
+    }
+
+    private static SendMessage message(String chatId, String text) {
+        return SendMessage.builder().chatId(chatId).text(text).build();
+    }
+
+    @Test
+    void sendInOrderPerChat() {
+        ScheduledTelegramClient client = this.createClient(RateLimitPolicy.DEFAULT.withChatPerSecond(10));
+
+        List<CompletableFuture<Message>> futures = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            futures.add(client.executeAsync(message(1, "first " + i)));
+            futures.add(client.executeAsync(message(2, "second " + i)));
+        }
+        futures.forEach(CompletableFuture::join);
+
+        for (String chatId : List.of("1", "2")) {
+            List<Received> chat = this.received.stream().filter(r -> r.chatId().equals(chatId)).toList();
+            assertEquals(5, chat.size());
+            for (int i = 0; i < chat.size(); i++) {
+                assertTrue(chat.get(i).text().endsWith(" " + i));
+                // 100 ms between messages of a chat after the burst, with a margin for the timer precision
+                if (i >= ScheduledTelegramClient.PRIVATE_CHAT_BURST) assertTrue(chat.get(i).time() - chat.get(i - 1).time() >= 90_000_000);
+            }
+        }
+
+        // Chats are limited independently, so both were served in about 200 ms
+        long first = this.received.stream().mapToLong(Received::time).min().orElseThrow();
+        long last = this.received.stream().mapToLong(Received::time).max().orElseThrow();
+        assertTrue(last - first < 1_000_000_000L);
+    }
+
+    @Test
+    void spreadGroupMessages() throws Exception {
+        ScheduledTelegramClient client = this.createClient(RateLimitPolicy.DEFAULT.withChatPerSecond(10).withGroupPerMinute(6000));
+
+        List<CompletableFuture<Message>> futures = new ArrayList<>();
+        for (int i = 0; i < 3; i++)
+            futures.add(client.executeAsync(message("@channel", "text " + i)));
+        for (var future : futures) future.get();
+
+        // Channels addressed by username are groups, which don't allow bursts
+        List<Received> chat = List.copyOf(this.received);
+        assertEquals(3, chat.size());
+        for (int i = 1; i < chat.size(); i++)
+            assertTrue(chat.get(i).time() - chat.get(i - 1).time() >= 90_000_000);
+    }
+
+    @Test
+    void chatActionsAreNotLimited() throws Exception {
+        ScheduledTelegramClient client = this.createClient(RateLimitPolicy.DEFAULT);
+
+        for (int i = 0; i < 10; i++)
+            client.execute(SendChatAction.builder().chatId(-1L).action("typing").build());
+        // Chat actions don't consume tokens of the chat, so the message isn't delayed
+        client.execute(message(-1, "text"));
+
+        // Limited as messages, these requests would take 10 seconds
+        assertEquals(11, this.received.size());
+        long first = this.received.stream().mapToLong(Received::time).min().orElseThrow();
+        long last = this.received.stream().mapToLong(Received::time).max().orElseThrow();
+        assertTrue(last - first < 3_000_000_000L);
+    }
+
+    @Test
+    void globalLimit() throws Exception {
+        ScheduledTelegramClient client = this.createClient(RateLimitPolicy.DEFAULT.withGlobalPerSecond(10).withChatPerSecond(100));
+        // Connection is established beforehand, so that its delay doesn't shift the first requests; the bucket is refilled meanwhile
+        client.execute(message(100, "warmup"));
+        Thread.sleep(1000);
+        this.received.clear();
+
+        List<CompletableFuture<Message>> futures = new ArrayList<>();
+        for (int i = 0; i < 15; i++)
+            futures.add(client.executeAsync(message(i, "text")));
+        for (var future : futures) future.get();
+
+        // First 10 requests pass at once, the rest are spread by 100 ms
+        assertEquals(15, this.received.size());
+        long first = this.received.stream().mapToLong(Received::time).min().orElseThrow();
+        long last = this.received.stream().mapToLong(Received::time).max().orElseThrow();
+        assertTrue(last - first >= 450_000_000L, "Requests were received within " + (last - first) / 1_000_000 + " ms");
+    }
+
+    @Test
+    void retryAfterTooManyRequests() throws Exception {
+        ScheduledTelegramClient client = this.createClient(RateLimitPolicy.DEFAULT.withChatPerSecond(100));
+        this.limited.set(1);
+
+        long start = System.nanoTime();
+        Message message = client.execute(message(1, "retried"));
+
+        assertEquals(1L, message.getChatId());
+        assertEquals(1, this.received.size());
+        assertTrue(System.nanoTime() - start >= 950_000_000L);
+        // Pause of a chat doesn't affect other chats
+        start = System.nanoTime();
+        client.execute(message(2, "other"));
+        assertTrue(System.nanoTime() - start < 500_000_000L);
+    }
+
+    @Test
+    void retriesExhausted() {
+        ScheduledTelegramClient client = this.createClient(RateLimitPolicy.DEFAULT.withMaxRetries(0));
+        this.limited.set(1);
+
+        TelegramApiRequestException exception = assertThrows(TelegramApiRequestException.class, () -> client.execute(message(1, "text")));
+        assertEquals(429, exception.getErrorCode());
+        assertEquals(0, this.received.size());
+        // Lane is released, so the chat is still served
+        assertDoesNotThrow(() -> client.execute(message(1, "text")));
+    }
+
+    @Test
+    void releaseIdleChats() throws Exception {
+        ScheduledTelegramClient client = this.createClient(RateLimitPolicy.DEFAULT.withChatPerSecond(50));
+        for (int i = 0; i < 4; i++)
+            client.execute(message(i, "text"));
+
+        // Buckets of the chats are refilled in 20 ms after their last request
+        Thread.sleep(50);
+        client.execute(message(10, "text"));
+        client.releaseIdleChats();
+        assertEquals(1, client.getActiveChats());
+    }
+}
@@ -0,0 +1,114 @@
+package org.telegrise.telegrise.core;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestReporter;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SessionMailboxTest {
+    @Test
+    void drainSerially() throws InterruptedException {
+        int updates = 20_000;
+        SessionMailbox mailbox = new SessionMailbox();
+        AtomicInteger active = new AtomicInteger();
+        AtomicInteger processed = new AtomicInteger();
+        AtomicInteger overlaps = new AtomicInteger();
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < updates; i++) {
+                executor.submit(() -> {
+                    mailbox.post(new Update());
+                    mailbox.drain(u -> {
+                        if (active.incrementAndGet() > 1) overlaps.incrementAndGet();
+                        processed.incrementAndGet();
+                        active.decrementAndGet();
+                    });
+                });
+            }
+
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+        }
+
+        assertEquals(0, overlaps.get());
+        assertEquals(updates, processed.get());
+        assertTrue(mailbox.isEmpty());
+        assertFalse(mailbox.isDraining());
+    }
+
+    @Test
+    void heldMailbox() {
+        SessionMailbox mailbox = new SessionMailbox(true);
+        AtomicInteger processed = new AtomicInteger();
+
+        mailbox.post(new Update());
+        assertFalse(mailbox.drain(u -> processed.incrementAndGet()));
+        assertEquals(0, processed.get());
+
+        mailbox.open();
+        assertTrue(mailbox.drain(u -> processed.incrementAndGet()));
+        assertEquals(1, processed.get());
+    }
+
+    @Test
+    void deliverToManyChats() throws InterruptedException {
+        this.deliver(1_000, 5);
+    }
+
+    @Test
+    @Tag("benchmark")
+    void throughputWithManyChats(TestReporter reporter) throws InterruptedException {
+        int chats = 100_000, updatesPerChat = 5;
+        long elapsed = this.deliver(chats, updatesPerChat);
+
+        reporter.publishEntry("throughput", "%d updates across %d chats in %d ms (%.0f updates/s)".formatted(
+                (long) chats * updatesPerChat, chats, TimeUnit.NANOSECONDS.toMillis(elapsed), chats * updatesPerChat / (elapsed / 1e9)));
+    }
+
+    private long deliver(int chats, int updatesPerChat) throws InterruptedException {
+        SessionMailbox[] mailboxes = new SessionMailbox[chats];
+        AtomicInteger[] counters = new AtomicInteger[chats];
+        for (int i = 0; i < chats; i++) {
+            mailboxes[i] = new SessionMailbox();
+            counters[i] = new AtomicInteger();
+        }
+
+        AtomicLong processed = new AtomicLong();
+        long start = System.nanoTime();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int u = 0; u < updatesPerChat; u++) {
+                for (int c = 0; c < chats; c++) {
+                    SessionMailbox mailbox = mailboxes[c];
+                    AtomicInteger counter = counters[c];
+                    executor.submit(() -> {
+                        mailbox.post(new Update());
+                        mailbox.drain(update -> {
+                            counter.incrementAndGet();
+                            processed.incrementAndGet();
+                        });
+                    });
+                }
+            }
+
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(2, TimeUnit.MINUTES));
+        }
+        long elapsed = System.nanoTime() - start;
+
+        assertEquals((long) chats * updatesPerChat, processed.get());
+        for (int i = 0; i < chats; i++) {
+            assertEquals(updatesPerChat, counters[i].get());
+            assertTrue(mailboxes[i].isEmpty());
+        }
+
+        return elapsed;
+    }
+}
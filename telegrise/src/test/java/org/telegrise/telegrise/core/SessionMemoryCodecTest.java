@@ -0,0 +1,270 @@
+package org.telegrise.telegrise.core;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.TestReporter;
+import org.telegram.telegrambots.meta.api.objects.chat.Chat;
+import org.telegram.telegrambots.meta.api.objects.message.Message;
+import org.telegrise.telegrise.SessionIdentifier;
+import org.telegrise.telegrise.core.elements.BotTranscription;
+import org.telegrise.telegrise.core.elements.Branch;
+import org.telegrise.telegrise.core.elements.Tree;
+import org.telegrise.telegrise.core.elements.base.BranchingElement;
+import org.telegrise.telegrise.core.parser.ApplicationNamespace;
+import org.telegrise.telegrise.core.parser.LocalNamespace;
+import org.telegrise.telegrise.core.parser.XMLElementsParser;
+import org.telegrise.telegrise.core.parser.XMLTranscriptionParser;
+import org.telegrise.telegrise.core.utils.XMLUtils;
+import org.telegrise.telegrise.keyboard.KeyboardState;
+import org.telegrise.telegrise.storage.ValueCodec;
+
+import java.io.*;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class SessionMemoryCodecTest {
+    private BotTranscription transcription;
+    private SessionMemoryCodec codec;
+
+    @BeforeAll
+    void before() throws Exception {
+        var elementsParser = new XMLElementsParser(
+                new LocalNamespace(null, new ApplicationNamespace(this.getClass().getClassLoader(), this.getClass().getPackageName())),
+                new File("src/test/resources/")
+        );
+        elementsParser.load();
+
+        File file = new File("src/test/resources/parseTestSample.xml");
+        this.transcription = new XMLTranscriptionParser(XMLUtils.loadDocument(file), elementsParser).parse();
+        this.codec = new SessionMemoryCodec(transcription);
+        this.codec.addValueCodec(new PointCodec());
+    }
+
+    @Test
+    void roundTrip() throws IOException {
+        SessionMemoryImpl memory = this.createMemory();
+        memory.put("unsupported", new Object());
+
+        SessionMemoryImpl restored = this.codec.decode(this.codec.encode(memory));
+        assertNotNull(restored);
+
+        assertEquals(memory.getSessionIdentifier(), restored.getSessionIdentifier());
+        assertEquals("en", restored.getLanguageCode());
+
+        // Elements are restored as the same instances of the transcription
+        assertIterableEquals(memory.getBranchingElements(), restored.getBranchingElements());
+        assertSame(memory.getBranchingElements().getLast(), restored.getBranchingElements().getLast());
+        assertSame(memory.getCurrentBranch(), restored.getCurrentBranch());
+
+        KeyboardState state = restored.getKeyboardStates().get("name:first");
+        assertSame(memory.getCurrentBranch(), state.getParent());
+        assertFalse(state.isEnabled(0, 1));
+        assertTrue(state.isEnabled(0, 0));
+        assertEquals("cb", state.getButtonsData()[0][0].getCallback());
+        assertEquals(KeyboardState.SWITCH_ENABLED, state.getSwitchValue("switch"));
+
+        assertEquals(42, restored.getRegistry("sent").getFirst().getMessageId());
+        assertEquals("Hello", restored.getLastSentMessage().getText());
+
+        Map<String, Object> expected = new HashMap<>(memory.getMemoryMap());
+        expected.remove("unsupported");
+        assertArrayEquals((byte[]) expected.remove("bytes"), (byte[]) restored.getMemoryMap().remove("bytes"));
+        assertEquals(expected, restored.getMemoryMap());
+    }
+
+    @Test
+    void collections() throws IOException {
+        SessionMemoryImpl memory = new SessionMemoryImpl(transcription.hashCode(), SessionIdentifier.ofUserOnly(1L), transcription.getRoleMap());
+        memory.put("nulls", new ArrayList<>(Arrays.asList("a", null)));
+        memory.put("hashSet", new HashSet<>(Arrays.asList(1, null)));
+        memory.put("hashMap", new HashMap<>(Collections.singletonMap("key", null)));
+        memory.put("sorted", new TreeMap<>(Map.of("b", 2, "a", 1)));
+        memory.put("concurrent", new ConcurrentHashMap<>(Map.of("key", 1)));
+        memory.put("linked", new LinkedList<>(List.of(3, 2, 1)));
+        memory.put("enum", new EnumMap<>(Map.of(TimeUnit.SECONDS, 1)));
+
+        SessionMemoryImpl restored = this.codec.decode(this.codec.encode(memory));
+        assertNotNull(restored);
+
+        for (var entry : memory.getMemoryMap().entrySet()) {
+            Object value = restored.getMemoryMap().get(entry.getKey());
+            assertEquals(entry.getValue(), value, entry.getKey());
+            assertSame(entry.getValue().getClass(), value.getClass(), entry.getKey());
+        }
+        assertIterableEquals(List.of("a", "b"), ((SortedMap<?, ?>) restored.getMemoryMap().get("sorted")).keySet());
+    }
+
+    @Test
+    void anotherTranscription() throws IOException {
+        byte[] snapshot = this.codec.encode(new SessionMemoryImpl(1, SessionIdentifier.ofUserOnly(1L), Map.of()));
+        assertNull(this.codec.decode(snapshot));
+        assertThrows(IOException.class, () -> this.codec.decode(new byte[]{1, 2, 3}));
+    }
+
+    @Test
+    void smallerThanJavaSerialization() throws IOException {
+        SessionMemoryImpl memory = this.createMemory();
+        assertTrue(this.codec.encode(memory).length < this.serialize(this.createJavaState(memory)).length);
+    }
+
+    @Test
+    @Tag("benchmark")
+    void compareWithJavaSerialization(TestReporter reporter) throws IOException, ClassNotFoundException {
+        SessionMemoryImpl memory = this.createMemory();
+        HashMap<String, Object> javaState = this.createJavaState(memory);
+
+        int iterations = 10_000;
+        byte[] compact = null, java = null;
+        for (int warmup = 0; warmup < 2; warmup++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++)
+                compact = this.codec.encode(memory);
+            for (int i = 0; i < iterations; i++)
+                this.codec.decode(compact);
+            long compactTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++)
+                java = this.serialize(javaState);
+            for (int i = 0; i < iterations; i++)
+                try (ObjectInputStream input = new ObjectInputStream(new ByteArrayInputStream(java))) {
+                    input.readObject();
+                }
+            long javaTime = System.nanoTime() - start;
+
+            if (warmup == 1)
+                reporter.publishEntry("comparison", "SessionMemoryCodec: %d bytes, %d ms; ObjectOutputStream: %d bytes, %d ms (%d round trips)".formatted(
+                        compact.length, TimeUnit.NANOSECONDS.toMillis(compactTime),
+                        java.length, TimeUnit.NANOSECONDS.toMillis(javaTime), iterations));
+        }
+    }
+
+    /**
+     * Collects the state that the codec stores into serializable collections.
+     * Transcription elements are referenced by their paths in the tree, as the codec does.
+     */
+    private HashMap<String, Object> createJavaState(SessionMemoryImpl memory) {
+        HashMap<String, Object> javaState = new HashMap<>(memory.getMemoryMap());
+        javaState.put("transcription", memory.getTranscriptionHashcode());
+        javaState.put("identifier", memory.getSessionIdentifier());
+        javaState.put("language", memory.getLanguageCode());
+        javaState.put("role", memory.getUserRole() == null ? null : memory.getUserRole().name());
+
+        javaState.put("navigation", memory.getBranchingElements().stream().map(this::path).collect(Collectors.toCollection(ArrayList::new)));
+        javaState.put("branch", this.path(memory.getCurrentBranch()));
+        javaState.put("jumps", memory.getJumpPoints().stream()
+                .map(j -> new ArrayList<>(List.of(this.path(j.from()), this.path(j.to()))))
+                .collect(Collectors.toCollection(ArrayList::new)));
+        HashMap<String, Object> keyboards = new HashMap<>();
+        memory.getKeyboardStates().forEach((name, state) -> {
+            ArrayList<Object> buttons = new ArrayList<>();
+            for (KeyboardState.ButtonData[] row : state.getButtonsData()) {
+                ArrayList<Object> rowButtons = new ArrayList<>();
+                for (KeyboardState.ButtonData button : row)
+                    rowButtons.add(new ArrayList<>(Arrays.asList(button.isVisible(), button.getText(), button.getCallback())));
+                buttons.add(rowButtons);
+            }
+            keyboards.put(name, new ArrayList<>(List.of(this.path(state.getParent()), buttons, new HashMap<>(state.getSwitchStates()))));
+        });
+        javaState.put("keyboards", keyboards);
+
+        javaState.put("registry", new ArrayList<>(memory.getRegistry("sent")));
+        javaState.put("last", memory.getLastSentMessage());
+        return javaState;
+    }
+
+    private int[] path(BranchingElement element) {
+        return element == null ? null : Objects.requireNonNull(this.path(this.transcription.getRoot(), element, new int[0]));
+    }
+
+    private int[] path(BranchingElement current, BranchingElement element, int[] path) {
+        if (current == element) return path;
+        if (current.getChildren() == null) return null;
+
+        for (int i = 0; i < current.getChildren().size(); i++) {
+            int[] childPath = Arrays.copyOf(path, path.length + 1);
+            childPath[path.length] = i;
+            int[] result = this.path(current.getChildren().get(i), element, childPath);
+            if (result != null) return result;
+        }
+        return null;
+    }
+
+    private byte[] serialize(Object value) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream output = new ObjectOutputStream(bytes)) {
+            output.writeObject(value);
+        }
+        return bytes.toByteArray();
+    }
+
+    private SessionMemoryImpl createMemory() {
+        SessionMemoryImpl memory = new SessionMemoryImpl(transcription.hashCode(), SessionIdentifier.of(10L, -20L), transcription.getRoleMap());
+        memory.setLanguageCode("en");
+
+        Tree tree = transcription.getRoot().getTrees().getFirst();
+        Branch branch = tree.getBranches().getFirst().getBranches().getFirst();
+        memory.getBranchingElements().add(transcription.getRoot());
+        memory.getBranchingElements().add(tree);
+        memory.setCurrentBranch(branch);
+
+        KeyboardState.ButtonData[][] buttons = {{
+                new KeyboardState.ButtonData(true, "Button", "cb"),
+                new KeyboardState.ButtonData(false, null, null)
+        }};
+        memory.getKeyboardStates().put("name:first", new KeyboardState(branch, buttons, Map.of("switch", KeyboardState.SWITCH_ENABLED)));
+
+        Message message = new Message();
+        message.setMessageId(42);
+        message.setText("Hello");
+        message.setChat(new Chat(-20L, "private"));
+        memory.putToRegistry("sent", message);
+        memory.setLastSentMessage(message);
+
+        memory.put("string", "value");
+        memory.put("int", -5);
+        memory.put("long", 1L << 40);
+        memory.put("double", 0.5);
+        memory.put("flag", true);
+        memory.put("bytes", new byte[]{1, 2, 3});
+        memory.put("list", new ArrayList<>(List.of("a", 1, List.of(2L))));
+        memory.put("set", new LinkedHashSet<>(Set.of("x")));
+        memory.put("map", new LinkedHashMap<>(Map.of("key", Map.of("nested", 3))));
+        memory.put("date", LocalDate.of(2024, 1, 1));
+        memory.put("point", new Point(3, 4));
+        return memory;
+    }
+
+    record Point(int x, int y) implements Serializable {}
+
+    static final class PointCodec implements ValueCodec<Point> {
+        @Override
+        public String name() {
+            return "point";
+        }
+
+        @Override
+        public Class<Point> type() {
+            return Point.class;
+        }
+
+        @Override
+        public void write(Point value, DataOutput output) throws IOException {
+            output.writeInt(value.x());
+            output.writeInt(value.y());
+        }
+
+        @Override
+        public Point read(DataInput input) throws IOException {
+            return new Point(input.readInt(), input.readInt());
+        }
+    }
+}
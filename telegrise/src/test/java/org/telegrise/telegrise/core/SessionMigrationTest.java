@@ -0,0 +1,152 @@
+package org.telegrise.telegrise.core;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.io.TempDir;
+import org.telegrise.telegrise.SessionIdentifier;
+import org.telegrise.telegrise.core.elements.BotTranscription;
+import org.telegrise.telegrise.core.elements.Branch;
+import org.telegrise.telegrise.core.elements.Tree;
+import org.telegrise.telegrise.core.elements.base.BranchingElement;
+import org.telegrise.telegrise.core.parser.ApplicationNamespace;
+import org.telegrise.telegrise.core.parser.XMLTranscriptionParser;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class SessionMigrationTest {
+    private static final String PREVIOUS = """
+            <bot token="token">
+                <head/>
+                <root name="Main">
+                    <tree name="first" command="first">
+                        <send chat="-1"><text>First</text></send>
+                        <branch name="kept" when="${true}">
+                            <send chat="-1"><text>Kept</text></send>
+                            <branch when="${true}"><send chat="-1"><text>Unnamed</text></send></branch>
+                        </branch>
+                        <branch name="removed" when="${false}"><send chat="-1"><text>Removed</text></send></branch>
+                    </tree>
+                </root>
+            </bot>""";
+
+    private static final String RELOADED = """
+            <bot token="token">
+                <head/>
+                <root name="Main">
+                    <tree name="first" command="first">
+                        <send chat="-1"><text>First, changed</text></send>
+                        <branch name="added" when="${false}"><send chat="-1"><text>Added</text></send></branch>
+                        <branch name="kept" when="${true}">
+                            <send chat="-1"><text>Kept, changed</text></send>
+                            <branch when="${true}"><send chat="-1"><text>Unnamed, changed</text></send></branch>
+                        </branch>
+                    </tree>
+                </root>
+            </bot>""";
+
+    private BotTranscription previous, reloaded;
+    private SessionMigration migration;
+
+    @BeforeAll
+    void before(@TempDir Path directory) throws Exception {
+        ApplicationNamespace namespace = new ApplicationNamespace(this.getClass().getClassLoader(), this.getClass().getPackageName());
+        this.previous = XMLTranscriptionParser.of(Files.writeString(directory.resolve("previous.xml"), PREVIOUS).toFile(), namespace).parse();
+        this.reloaded = XMLTranscriptionParser.of(Files.writeString(directory.resolve("reloaded.xml"), RELOADED).toFile(), namespace).parse();
+        this.migration = new SessionMigration(this.previous, this.reloaded);
+    }
+
+    @Test
+    void mapElements() {
+        Tree previousTree = tree(this.previous), reloadedTree = tree(this.reloaded);
+
+        assertSame(this.reloaded.getRoot(), this.migration.map(this.previous.getRoot()));
+        assertSame(reloadedTree, this.migration.map(previousTree));
+        assertSame(child(reloadedTree, "kept"), this.migration.map(child(previousTree, "kept")));
+        assertNull(this.migration.map(child(previousTree, "removed")));
+
+        // Unnamed elements are matched by position
+        assertSame(child(reloadedTree, "kept").getChildren().getFirst(),
+                this.migration.map(child(previousTree, "kept").getChildren().getFirst()));
+    }
+
+    @Test
+    void migrate() {
+        Tree previousTree = tree(this.previous);
+        SessionMemoryImpl memory = this.createMemory();
+        memory.getBranchingElements().add(previousTree);
+        memory.setCurrentBranch(child(previousTree, "kept"));
+
+        SessionMemoryImpl migrated = this.migration.migrate(memory);
+
+        assertEquals(this.reloaded.hashCode(), migrated.getTranscriptionHashcode());
+        assertEquals(memory.getSessionIdentifier(), migrated.getSessionIdentifier());
+        assertEquals("en", migrated.getLanguageCode());
+        assertEquals(1, migrated.get("value"));
+        assertIterableEquals(List.of(this.reloaded.getRoot(), tree(this.reloaded)), migrated.getBranchingElements());
+        assertSame(child(tree(this.reloaded), "kept"), migrated.getCurrentBranch());
+    }
+
+    @Test
+    void migrateRemovedBranch() {
+        Tree previousTree = tree(this.previous);
+        SessionMemoryImpl memory = this.createMemory();
+        memory.getBranchingElements().add(previousTree);
+        memory.setCurrentBranch(child(previousTree, "removed"));
+
+        SessionMemoryImpl migrated = this.migration.migrate(memory);
+
+        // Session starts from the root, but keeps its memory
+        assertTrue(migrated.getBranchingElements().isEmpty());
+        assertNull(migrated.getCurrentBranch());
+        assertEquals(1, migrated.get("value"));
+    }
+
+    @Test
+    void decodePreviousSnapshots() throws Exception {
+        SessionMemoryCodec codec = new SessionMemoryCodec(this.previous);
+        SessionMemoryImpl memory = this.createMemory();
+        memory.getBranchingElements().add(tree(this.previous));
+        memory.setCurrentBranch(child(tree(this.previous), "kept"));
+        byte[] snapshot = codec.encode(memory);
+
+        assertEquals(this.previous.hashCode(), this.reloaded.hashCode());
+        // Snapshot of the previous structure is migrated
+        SessionMemoryImpl migrated = codec.withTranscription(this.reloaded, this.migration).decode(snapshot);
+        assertNotNull(migrated);
+        assertEquals(1, migrated.get("value"));
+        assertEquals("en", migrated.getLanguageCode());
+        assertIterableEquals(List.of(this.reloaded.getRoot(), tree(this.reloaded)), migrated.getBranchingElements());
+        assertSame(child(tree(this.reloaded), "kept"), migrated.getCurrentBranch());
+
+        // Structure of the snapshot is unknown, so only its navigation is lost
+        SessionMemoryImpl restored = new SessionMemoryCodec(this.reloaded).decode(snapshot);
+        assertNotNull(restored);
+        assertEquals(1, restored.get("value"));
+        assertEquals("en", restored.getLanguageCode());
+        assertTrue(restored.getBranchingElements().isEmpty());
+        assertNull(restored.getCurrentBranch());
+    }
+
+    private SessionMemoryImpl createMemory() {
+        SessionMemoryImpl memory = new SessionMemoryImpl(this.previous.hashCode(), SessionIdentifier.of(1L, 2L), this.previous.getRoleMap());
+        memory.setLanguageCode("en");
+        memory.put("value", 1);
+        memory.getBranchingElements().add(this.previous.getRoot());
+        return memory;
+    }
+
+    private static Tree tree(BotTranscription transcription) {
+        return (Tree) transcription.getRoot().getChildren().getFirst();
+    }
+
+    private static Branch child(BranchingElement element, String name) {
+        return element.getChildren().stream().filter(c -> name.equals(c.getName()))
+                .map(Branch.class::cast).findFirst().orElseThrow();
+    }
+}
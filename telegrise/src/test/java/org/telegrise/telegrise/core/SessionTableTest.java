@@ -0,0 +1,205 @@
+package org.telegrise.telegrise.core;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.io.TempDir;
+import org.telegram.telegrambots.meta.api.objects.Update;
+import org.telegrise.telegrise.SessionEvictionPolicy;
+import org.telegrise.telegrise.SessionIdentifier;
+import org.telegrise.telegrise.core.elements.BotTranscription;
+import org.telegrise.telegrise.core.parser.ApplicationNamespace;
+import org.telegrise.telegrise.core.parser.XMLTranscriptionParser;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class SessionTableTest {
+    private BotTranscription transcription;
+
+    @BeforeAll
+    void before(@TempDir Path directory) throws Exception {
+        ApplicationNamespace namespace = new ApplicationNamespace(this.getClass().getClassLoader(), this.getClass().getPackageName());
+        this.transcription = XMLTranscriptionParser.of(Files.writeString(directory.resolve("bot.xml"), """
+                <bot token="token">
+                    <head/>
+                    <root name="Main">
+                        <tree name="first" command="first"><send chat="-1"><text>First</text></send></tree>
+                    </root>
+                </bot>""").toFile(), namespace).parse();
+    }
+
+    private UserSession session(long id) {
+        UserSession session = new UserSession(SessionIdentifier.ofUserOnly(id), this.transcription);
+        session.open();
+        return session;
+    }
+
+    @Test
+    void removeBeforeWriteBack() throws Exception {
+        SessionIdentifier identifier = SessionIdentifier.ofUserOnly(1L);
+        CountDownLatch writing = new CountDownLatch(1), written = new CountDownLatch(1), evicted = new CountDownLatch(1);
+
+        SessionTable table = new SessionTable(s -> {
+            writing.countDown();
+            try {
+                written.await();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }, (s, l) -> evicted.countDown());
+        table.setPolicy(SessionEvictionPolicy.lru().withMaxSessions(1));
+        table.put(identifier, this.session(1));
+        Thread.sleep(5);
+        // Exceeding the limit starts the eviction
+        table.put(SessionIdentifier.ofUserOnly(2L), this.session(2));
+
+        assertTrue(writing.await(5, TimeUnit.SECONDS));
+
+        // Session is no longer found while it is written back, but new sessions wait for the write-back to finish
+        assertNull(table.peek(identifier));
+        CompletableFuture<Void> lookup = CompletableFuture.runAsync(() -> table.awaitRemoval(identifier));
+        Thread.sleep(100);
+        assertFalse(lookup.isDone());
+
+        written.countDown();
+        lookup.get(5, TimeUnit.SECONDS);
+        assertTrue(evicted.await(5, TimeUnit.SECONDS));
+        assertEquals(1, table.size());
+    }
+
+    /**
+     * Creates a table with sessions accessed in order of their identifiers, without starting the maintenance.
+     */
+    private SessionTable fill(int count, List<UserSession> evicted) throws InterruptedException {
+        SessionTable table = new SessionTable(s -> {}, (s, l) -> evicted.add(s));
+        for (int i = 1; i <= count; i++) {
+            table.put(SessionIdentifier.ofUserOnly((long) i), this.session(i));
+            Thread.sleep(2);
+        }
+        return table;
+    }
+
+    private static List<Long> identifiers(Collection<UserSession> sessions) {
+        return sessions.stream().map(s -> s.getSessionMemory().getSessionIdentifier().getUserId()).sorted().toList();
+    }
+
+    @Test
+    void evictLeastRecentlyUsed() throws Exception {
+        List<UserSession> evicted = new ArrayList<>();
+        SessionTable table = this.fill(10, evicted);
+        table.get(SessionIdentifier.ofUserOnly(1L));
+
+        table.setPolicy(SessionEvictionPolicy.lru().withMaxSessions(5));
+        assertEquals(5, table.evict());
+        assertEquals(List.of(1L, 7L, 8L, 9L, 10L), identifiers(table.values()));
+        assertEquals(List.of(2L, 3L, 4L, 5L, 6L), identifiers(evicted));
+        assertEquals(0, table.evict());
+    }
+
+    @Test
+    void evictByRetainedSize() throws Exception {
+        List<UserSession> evicted = new ArrayList<>();
+        SessionTable table = this.fill(6, evicted);
+        long size = table.values().iterator().next().estimateRetainedSize();
+
+        table.setPolicy(SessionEvictionPolicy.lru().withMaxRetainedSize(size * 3));
+        table.evict();
+        assertTrue(table.values().stream().mapToLong(UserSession::estimateRetainedSize).sum() <= size * 3);
+        // The most recent sessions are kept
+        assertTrue(identifiers(table.values()).contains(6L));
+        assertTrue(identifiers(evicted).contains(1L));
+    }
+
+    @Test
+    void evictIdleSessions() throws Exception {
+        List<UserSession> evicted = new ArrayList<>();
+        SessionTable table = this.fill(3, evicted);
+        table.setPolicy(SessionEvictionPolicy.lru().withIdleTimeout(Duration.ofMillis(50)));
+
+        Thread.sleep(100);
+        table.get(SessionIdentifier.ofUserOnly(2L));
+        assertEquals(2, table.evict());
+        assertEquals(List.of(2L), identifiers(table.values()));
+        assertEquals(List.of(1L, 3L), identifiers(evicted));
+    }
+
+    @Test
+    void evictionListener() throws Exception {
+        List<UserSession> written = new ArrayList<>();
+        Map<Long, List<Update>> leftovers = new HashMap<>();
+        SessionTable table = new SessionTable(written::add,
+                (s, l) -> leftovers.put(s.getSessionMemory().getSessionIdentifier().getUserId(), l));
+
+        UserSession queued = this.session(1), busy = new UserSession(SessionIdentifier.ofUserOnly(2L), this.transcription);
+        Update update = new Update();
+        assertTrue(queued.update(update));
+        table.put(SessionIdentifier.ofUserOnly(1L), queued);
+        table.put(SessionIdentifier.ofUserOnly(2L), busy);
+        table.setPolicy(SessionEvictionPolicy.lru().withIdleTimeout(Duration.ofMillis(1)));
+        Thread.sleep(10);
+
+        // Session that is still being initialized is skipped
+        assertEquals(1, table.evict());
+        assertEquals(List.of(queued), written);
+        assertEquals(Map.of(1L, List.of(update)), leftovers);
+        assertSame(busy, table.peek(SessionIdentifier.ofUserOnly(2L)));
+        // Evicted session rejects new updates
+        assertFalse(queued.update(new Update()));
+    }
+
+    @Test
+    void passLeftoversToReplacement() throws Exception {
+        SessionIdentifier identifier = SessionIdentifier.ofUserOnly(1L);
+        SessionTable table = new SessionTable(s -> {}, (s, l) -> {});
+        UserSession evicted = this.session(1);
+        Update queued = new Update(), newer = new Update();
+        assertTrue(evicted.update(queued));
+        table.put(identifier, evicted);
+        table.setPolicy(SessionEvictionPolicy.lru().withIdleTimeout(Duration.ofMillis(1)));
+        Thread.sleep(10);
+
+        assertEquals(1, table.evict());
+        assertTrue(table.hasLeftovers(identifier));
+
+        // Leftovers are posted before the replacement is published, so newer updates are queued after them
+        UserSession replacement = this.session(1);
+        assertNull(table.putIfAbsent(identifier, replacement));
+        assertTrue(replacement.update(newer));
+        assertFalse(table.hasLeftovers(identifier));
+        assertEquals(List.of(queued, newer), replacement.close());
+    }
+
+    @Test
+    void frequencySketch() {
+        var sketch = new SessionTable.FrequencySketch(1024);
+        for (int i = 0; i < 10; i++) sketch.increment(42);
+        sketch.increment(7);
+
+        assertEquals(10, sketch.frequency(42));
+        assertTrue(sketch.frequency(7) >= 1);
+        assertTrue(sketch.frequency(42) > sketch.frequency(7));
+
+        for (int i = 0; i < 100; i++) sketch.increment(42);
+        assertEquals(15, sketch.frequency(42));
+    }
+
+    @Test
+    void frequencySketchDecay() {
+        var sketch = new SessionTable.FrequencySketch(64);
+        for (int i = 0; i < 15; i++) sketch.increment(42);
+
+        // Enough distinct keys to trigger halving of counters
+        for (int i = 0; i < 64 * 10; i++) sketch.increment(1000 + i);
+
+        assertTrue(sketch.frequency(42) < 15);
+    }
+}
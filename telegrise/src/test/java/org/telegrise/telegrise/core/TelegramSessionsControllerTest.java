@@ -0,0 +1,289 @@
+package org.telegrise.telegrise.core;
+
+import org.jetbrains.annotations.Nullable;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.telegram.telegrambots.client.okhttp.OkHttpTelegramClient;
+import org.telegram.telegrambots.meta.TelegramUrl;
+import org.telegram.telegrambots.meta.api.objects.Update;
+import org.telegram.telegrambots.meta.api.objects.User;
+import org.telegram.telegrambots.meta.api.objects.chat.Chat;
+import org.telegram.telegrambots.meta.api.objects.message.Message;
+import org.telegrise.telegrise.SessionEvictionPolicy;
+import org.telegrise.telegrise.SessionIdentifier;
+import org.telegrise.telegrise.SessionMemory;
+import org.telegrise.telegrise.SessionStore;
+import org.telegrise.telegrise.core.elements.BotTranscription;
+import org.telegrise.telegrise.core.parser.ApplicationNamespace;
+import org.telegrise.telegrise.core.parser.XMLTranscriptionParser;
+import org.telegrise.telegrise.storage.MappedFileSessionStore;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TelegramSessionsControllerTest {
+    private static final String BOT = """
+            <bot token="token">
+                <head/>
+                <root name="Main">
+                    <tree name="first" command="first">
+                        <send chat="-1"><text>First</text></send>
+                    </tree>
+                </root>
+            </bot>""";
+
+    private static final String PREVIOUS = """
+            <bot token="token">
+                <head/>
+                <root name="Main">
+                    <tree name="first" command="first">
+                        <branch name="kept" when="${false}"><send chat="-1"><text>Kept</text></send></branch>
+                    </tree>
+                </root>
+            </bot>""";
+
+    private static final String RELOADED = """
+            <bot token="token">
+                <head/>
+                <root name="Main">
+                    <tree name="added" command="added">
+                        <branch name="added" when="${false}"><send chat="-1"><text>Added</text></send></branch>
+                    </tree>
+                    <tree name="first" command="first">
+                        <branch name="added" when="${false}"><send chat="-1"><text>Added</text></send></branch>
+                        <branch name="kept" when="${false}"><send chat="-1"><text>Kept, changed</text></send></branch>
+                    </tree>
+                </root>
+            </bot>""";
+
+    // Sessions in these tests never reach the Bot API
+    private static final TelegramUrl UNREACHABLE = new TelegramUrl("http", "localhost", 1, false);
+    private static final SessionIdentifier IDENTIFIER = SessionIdentifier.of(1L, 1L);
+
+    @TempDir
+    Path directory;
+
+    private BotTranscription parse(String name, String xml) throws Exception {
+        ApplicationNamespace namespace = new ApplicationNamespace(this.getClass().getClassLoader(), this.getClass().getPackageName());
+        return XMLTranscriptionParser.of(Files.writeString(this.directory.resolve(name), xml).toFile(), namespace).parse();
+    }
+
+    private TelegramSessionsController start(BotTranscription transcription, @Nullable SessionStore store) {
+        var controller = new TelegramSessionsController(transcription, new ArrayList<>(), List.of());
+        controller.setClient(new OkHttpTelegramClient("1:token", UNREACHABLE));
+        controller.setMainInjector(new ResourceInjector());
+        controller.setSessionStore(store);
+        controller.initialize();
+        return controller;
+    }
+
+    private static Update message(int updateId, String text) {
+        Message message = new Message();
+        message.setMessageId(updateId);
+        message.setDate(1700000000);
+        message.setText(text);
+        message.setChat(new Chat(1L, "private"));
+        message.setFrom(new User(1L, "Name", false));
+
+        Update update = new Update();
+        update.setUpdateId(updateId);
+        update.setMessage(message);
+        return update;
+    }
+
+    @Test
+    void writeBackAndHydrate() throws Exception {
+        BotTranscription transcription = this.parse("bot.xml", BOT);
+        Path sessions = this.directory.resolve("sessions");
+
+        var controller = this.start(transcription, new MappedFileSessionStore(sessions));
+        controller.createSession(IDENTIFIER, "en");
+        controller.getSessionMemory(IDENTIFIER).put("value", 42);
+        // Writes the session back to the store
+        controller.shutdown();
+
+        var restarted = this.start(transcription, new MappedFileSessionStore(sessions));
+        assertFalse(restarted.isSessionActive(IDENTIFIER));
+
+        restarted.onUpdateReceived(message(1, "hello"));
+        assertEquals(42, restarted.getSessionMemory(IDENTIFIER).get("value"));
+        assertEquals("en", restarted.getSessionMemory(IDENTIFIER).getLanguageCode());
+        restarted.shutdown();
+    }
+
+    @Test
+    void killInactiveSessions() throws Exception {
+        var controller = this.start(this.parse("bot.xml", BOT), null);
+        List<SessionIdentifier> destroyed = new ArrayList<>();
+        controller.registerSessionDestructionCallback((identifier, memory) -> destroyed.add(identifier));
+
+        controller.killSession(IDENTIFIER);
+        assertEquals(List.of(), destroyed);
+
+        controller.reinitializeSession(IDENTIFIER);
+        assertTrue(controller.isSessionActive(IDENTIFIER));
+        controller.killSession(IDENTIFIER);
+        assertEquals(List.of(IDENTIFIER), destroyed);
+        assertFalse(controller.isSessionActive(IDENTIFIER));
+    }
+
+    @Test
+    void killDuringWriteBack() throws Exception {
+        CountDownLatch saving = new CountDownLatch(1), saved = new CountDownLatch(1);
+        BlockingStore store = new BlockingStore(saving, saved);
+        var controller = this.start(this.parse("bot.xml", BOT), store);
+        SessionIdentifier evicted = SessionIdentifier.of(2L, 2L);
+
+        controller.createSession(evicted, "en");
+        controller.setEvictionPolicy(SessionEvictionPolicy.lru().withMaxSessions(1));
+        // Exceeds the limit, so the least recently used session is evicted
+        controller.createSession(IDENTIFIER, "en");
+        assertTrue(saving.await(5, TimeUnit.SECONDS));
+        assertFalse(controller.isSessionActive(evicted));
+
+        Thread kill = Thread.ofVirtual().start(() -> controller.killSession(evicted));
+        Thread.sleep(50);
+        // Kill waits for the write-back, so that the stored state is deleted after it
+        assertTrue(kill.isAlive());
+        saved.countDown();
+
+        assertTrue(kill.join(Duration.ofSeconds(5)));
+        assertNull(store.load(evicted));
+    }
+
+    @Test
+    void reloadLiveSessions() throws Exception {
+        BotTranscription previous = this.parse("previous.xml", PREVIOUS), reloaded = this.parse("reloaded.xml", RELOADED);
+        var controller = this.start(previous, null);
+        controller.createSession(IDENTIFIER, "en");
+        controller.getSessionMemory(IDENTIFIER).put("value", 42);
+
+        // Update that was queued, but not processed before the reload
+        UserSession session = controller.peekSession(IDENTIFIER);
+        assertTrue(session.update(message(1, "/first")));
+        controller.reloadTranscription(reloaded);
+
+        UserSession migrated = controller.peekSession(IDENTIFIER);
+        assertNotSame(session, migrated);
+        assertSame(reloaded, controller.getTranscription());
+        assertSame(reloaded, migrated.getTranscription());
+        assertEquals(42, migrated.getSessionMemory().get("value"));
+        // Queued update was processed by the migrated session
+        assertSame(reloaded.getRoot().getTrees().get(1), migrated.getSessionMemory().getCurrentTree());
+        assertFalse(session.update(message(2, "text")));
+    }
+
+    @Test
+    void reloadStoredSessions() throws Exception {
+        BotTranscription previous = this.parse("previous.xml", PREVIOUS), reloaded = this.parse("reloaded.xml", RELOADED);
+        Path sessions = this.directory.resolve("sessions");
+
+        var controller = this.start(previous, new MappedFileSessionStore(sessions));
+        controller.onUpdateReceived(message(1, "/first"));
+        controller.getSessionMemory(IDENTIFIER).put("value", 42);
+        controller.shutdown();
+
+        var restarted = this.start(previous, new MappedFileSessionStore(sessions));
+        restarted.reloadTranscription(reloaded);
+        restarted.onUpdateReceived(message(2, "text"));
+
+        // Session that was stored with the previous structure is migrated
+        SessionMemory memory = restarted.getSessionMemory(IDENTIFIER);
+        assertEquals(42, memory.get("value"));
+        assertSame(reloaded.getRoot().getTrees().get(1), memory.getCurrentTree());
+        restarted.shutdown();
+    }
+
+    @Test
+    void writeBackPreviousSessions() throws Exception {
+        BotTranscription previous = this.parse("previous.xml", PREVIOUS), reloaded = this.parse("reloaded.xml", RELOADED);
+        // Released latches, so the store doesn't block
+        BlockingStore store = new BlockingStore(new CountDownLatch(0), new CountDownLatch(0));
+
+        var controller = this.start(previous, store);
+        controller.onUpdateReceived(message(1, "/first"));
+        UserSession session = controller.peekSession(IDENTIFIER);
+        controller.reloadTranscription(reloaded);
+        // Session of the previous transcription that is written back during the reload, e.g. by eviction
+        controller.writeBack(session);
+
+        var restarted = this.start(previous, store);
+        restarted.reloadTranscription(reloaded);
+        restarted.onUpdateReceived(message(2, "text"));
+
+        // Navigation is stored with the previous structure and migrated
+        assertSame(reloaded.getRoot().getTrees().get(1), restarted.getSessionMemory(IDENTIFIER).getCurrentTree());
+    }
+
+    @Test
+    void reloadKilledSessions() throws Exception {
+        BotTranscription previous = this.parse("previous.xml", PREVIOUS), reloaded = this.parse("reloaded.xml", RELOADED);
+        var controller = this.start(previous, null);
+        CountDownLatch initializing = new CountDownLatch(1), initialized = new CountDownLatch(1);
+        controller.setSessionInitializer(memory -> {
+            initializing.countDown();
+            try {
+                initialized.await();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+
+        // Session is busy while it is initialized, so the reload waits for it
+        Thread creation = Thread.ofVirtual().start(() -> controller.createSession(IDENTIFIER, "en"));
+        assertTrue(initializing.await(5, TimeUnit.SECONDS));
+        Thread reload = Thread.ofVirtual().start(() -> controller.reloadTranscription(reloaded));
+        Thread.sleep(50);
+        assertTrue(reload.isAlive());
+
+        controller.killSession(IDENTIFIER);
+        initialized.countDown();
+
+        assertTrue(reload.join(Duration.ofSeconds(5)));
+        assertTrue(creation.join(Duration.ofSeconds(5)));
+        // Killed session is not restored by the migration
+        assertFalse(controller.isSessionActive(IDENTIFIER));
+        assertSame(reloaded, controller.getTranscription());
+    }
+
+    private static final class BlockingStore implements SessionStore {
+        private final Map<SessionIdentifier, byte[]> states = new ConcurrentHashMap<>();
+        private final CountDownLatch saving, saved;
+
+        BlockingStore(CountDownLatch saving, CountDownLatch saved) {
+            this.saving = saving;
+            this.saved = saved;
+        }
+
+        @Override
+        public byte @Nullable [] load(SessionIdentifier identifier) {
+            return this.states.get(identifier);
+        }
+
+        @Override
+        public void save(SessionIdentifier identifier, byte[] state) throws IOException {
+            this.saving.countDown();
+            try {
+                if (!this.saved.await(5, TimeUnit.SECONDS)) throw new IOException("Write-back wasn't released");
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            this.states.put(identifier, state);
+        }
+
+        @Override
+        public void delete(SessionIdentifier identifier) {
+            this.states.remove(identifier);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package org.telegrise.telegrise.core;
+
+import org.junit.jupiter.api.Test;
+import org.telegram.telegrambots.meta.api.objects.CallbackQuery;
+import org.telegram.telegrambots.meta.api.objects.Update;
+import org.telegram.telegrambots.meta.api.objects.message.Message;
+import org.telegrise.telegrise.UpdateHandler;
+import org.telegrise.telegrise.annotations.Handler;
+import org.telegrise.telegrise.types.UpdateType;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UpdateHandlersControllerTest {
+    @Test
+    void selection() {
+        UpdateHandlersController controller = new UpdateHandlersController(new ResourceInjector());
+        List.of(Low.class, Absolute.class, High.class, CallbacksOnly.class, SecondAbsolute.class, AfterTrees.class)
+                .forEach(controller::add);
+
+        Update message = new Update();
+        message.setMessage(new Message());
+        assertEquals(List.of(High.class, Low.class, Absolute.class), types(controller.getApplicableHandlers(message)));
+
+        Update callback = new Update();
+        callback.setCallbackQuery(new CallbackQuery());
+        assertEquals(List.of(High.class, CallbacksOnly.class, Low.class, Absolute.class), types(controller.getApplicableHandlers(callback)));
+
+        assertEquals(List.of(AfterTrees.class), types(controller.getApplicableAfterTreesHandler(message)));
+        assertTrue(controller.applyHandlers(message, controller.getApplicableHandlers(message)));
+        assertFalse(controller.applyHandlers(message, controller.getApplicableAfterTreesHandler(message)));
+    }
+
+    private static List<Class<?>> types(List<UpdateHandlersController.Descriptor> descriptors) {
+        return descriptors.stream().<Class<?>>map(d -> d.handler().getClass()).toList();
+    }
+
+    public static abstract class TestHandler implements UpdateHandler {
+        @Override
+        public boolean canHandle(Update update) {
+            return true;
+        }
+
+        @Override
+        public void handle(Update update) {}
+    }
+
+    @Handler(absolute = false)
+    public static class Low extends TestHandler {}
+
+    @Handler(absolute = false, priority = 10)
+    public static class High extends TestHandler {}
+
+    @Handler(absolute = false, priority = 5, updateTypes = UpdateType.CALLBACK_QUERY)
+    public static class CallbacksOnly extends TestHandler {
+        @Override
+        public boolean canHandle(Update update) {
+            assertTrue(update.hasCallbackQuery());
+            return true;
+        }
+    }
+
+    @Handler
+    public static class Absolute extends TestHandler {}
+
+    @Handler
+    public static class SecondAbsolute extends TestHandler {}
+
+    @Handler(absolute = false, afterTrees = true)
+    public static class AfterTrees extends TestHandler {}
+}
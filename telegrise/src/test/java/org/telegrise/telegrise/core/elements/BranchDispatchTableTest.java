@@ -0,0 +1,124 @@
+package org.telegrise.telegrise.core.elements;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestReporter;
+import org.telegram.telegrambots.meta.api.objects.CallbackQuery;
+import org.telegram.telegrambots.meta.api.objects.Update;
+import org.telegram.telegrambots.meta.api.objects.message.Message;
+import org.telegrise.telegrise.core.ResourcePool;
+import org.telegrise.telegrise.core.expressions.GeneratedValue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BranchDispatchTableTest {
+    private static Branch branch(String[] keys, String[] callbacks, GeneratedValue<Boolean> when) {
+        Branch branch = new Branch();
+        branch.setKeys(keys);
+        branch.setCallbackTriggers(callbacks);
+        branch.setWhen(when);
+        return branch;
+    }
+
+    private static ResourcePool message(String text) {
+        Message message = new Message();
+        message.setText(text);
+        Update update = new Update();
+        update.setMessage(message);
+        return new ResourcePool(update, null, null, null, null);
+    }
+
+    private static ResourcePool callback(String data) {
+        CallbackQuery query = new CallbackQuery();
+        query.setData(data);
+        Update update = new Update();
+        update.setCallbackQuery(query);
+        return new ResourcePool(update, null, null, null, null);
+    }
+
+    @Test
+    void declarationOrder() {
+        Branch byKey = branch(new String[]{"A", "B"}, null, null);
+        Branch predicate = branch(null, null, pool -> pool.getUpdate().hasCallbackQuery());
+        Branch byCallback = branch(new String[]{"A"}, new String[]{"cb"}, null);
+        Branch always = branch(new String[]{"C"}, null, GeneratedValue.ofValue(true));
+        Branch late = branch(new String[]{"D"}, null, null);
+        BranchDispatchTable table = new BranchDispatchTable(List.of(byKey, predicate, byCallback, always, late));
+
+        assertSame(byKey, table.find(message("A")));
+        assertSame(predicate, table.find(callback("cb")));
+        assertSame(always, table.find(message("C")));
+        // A predicate declared before the matched branch wins
+        assertSame(always, table.find(message("D")));
+        assertSame(always, table.find(message(null)));
+
+        assertNull(new BranchDispatchTable(List.of(byKey, late)).find(message("C")));
+        assertNull(new BranchDispatchTable(null).find(message("A")));
+    }
+
+    @Test
+    void wideFanOut() {
+        int width = 500;
+        List<Branch> branches = wideBranches(width);
+        BranchDispatchTable table = new BranchDispatchTable(branches);
+
+        for (ResourcePool pool : new ResourcePool[]{message("key" + (width - 1)), message("alias0"), callback("cb" + (width / 2)), message("missing")})
+            assertSame(linearScan(branches, pool), table.find(pool));
+    }
+
+    @Test
+    @Tag("benchmark")
+    void wideFanOutLookup(TestReporter reporter) {
+        int width = 500, iterations = 200_000;
+        List<Branch> branches = wideBranches(width);
+        BranchDispatchTable table = new BranchDispatchTable(branches);
+        ResourcePool[] pools = {message("key" + (width - 1)), callback("cb" + (width / 2)), message("missing")};
+
+        for (int warmup = 0; warmup < 2; warmup++) {
+            long start = System.nanoTime();
+            int found = 0;
+            for (int i = 0; i < iterations; i++)
+                if (linearScan(branches, pools[i % pools.length]) != null) found++;
+            long linearTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            int indexed = 0;
+            for (int i = 0; i < iterations; i++)
+                if (table.find(pools[i % pools.length]) != null) indexed++;
+            long tableTime = System.nanoTime() - start;
+
+            assertEquals(found, indexed);
+            if (warmup == 1)
+                reporter.publishEntry("lookup", "Branch fan-out of %d: linear scan %d ms, dispatch table %d ms (%d updates)".formatted(
+                        width, TimeUnit.NANOSECONDS.toMillis(linearTime), TimeUnit.NANOSECONDS.toMillis(tableTime), iterations));
+        }
+    }
+
+    private static List<Branch> wideBranches(int width) {
+        List<Branch> branches = new ArrayList<>(width);
+        for (int i = 0; i < width; i++)
+            branches.add(branch(new String[]{"key" + i, "alias" + i}, new String[]{"cb" + i}, null));
+        return branches;
+    }
+
+    // The lookup that was used before the dispatch table
+    private static Branch linearScan(List<Branch> branches, ResourcePool pool) {
+        for (Branch branch : branches) {
+            if (branch.getKeys() != null && pool.getUpdate().hasMessage()
+                    && Arrays.stream(branch.getKeys()).anyMatch(k -> k.equals(pool.getUpdate().getMessage().getText())))
+                return branch;
+            else if (branch.getCallbackTriggers() != null && pool.getUpdate().hasCallbackQuery()
+                    && Arrays.stream(branch.getCallbackTriggers()).anyMatch(t -> t.equals(pool.getUpdate().getCallbackQuery().getData())))
+                return branch;
+            else if (branch.getWhen() != null && branch.getWhen().generate(pool))
+                return branch;
+        }
+
+        return null;
+    }
+}
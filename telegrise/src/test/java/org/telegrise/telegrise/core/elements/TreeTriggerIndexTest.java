@@ -0,0 +1,42 @@
+package org.telegrise.telegrise.core.elements;
+
+import org.junit.jupiter.api.Test;
+import org.telegram.telegrambots.meta.api.objects.User;
+import org.telegram.telegrambots.meta.api.objects.chat.Chat;
+import org.telegrise.telegrise.types.BotUser;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TreeTriggerIndexTest {
+    private static Tree tree(String name, String[] commands, String[] keys, String[] callbacks, String[] chats) {
+        Tree tree = new Tree();
+        tree.setName(name);
+        tree.setCommands(commands);
+        tree.setKeys(keys);
+        tree.setCallbackTriggers(callbacks);
+        tree.setChatTypes(chats);
+        return tree;
+    }
+
+    @Test
+    void lookup() {
+        Tree groupOnly = tree("group", new String[]{"start"}, null, new String[]{"cb"}, new String[]{"group"});
+        Tree byKey = tree("key", null, new String[]{"/start", "Menu"}, null, null);
+        Tree byCommand = tree("command", new String[]{"start", "help"}, null, new String[]{"cb"}, null);
+        TreeTriggerIndex index = new TreeTriggerIndex(List.of(groupOnly, byKey, byCommand));
+
+        Chat privateChat = new Chat(1L, "private");
+        BotUser bot = new BotUser(new User(2L, "Bot", true, null, "bot", null, null, null, null, null, null, null, null));
+        List<String> chatTypes = List.of("all");
+
+        assertSame(byCommand, index.findByCallback("cb", t -> t.isChatApplicable(chatTypes, privateChat)));
+        assertSame(byCommand, index.findByCommand("/help", privateChat, bot, t -> t.isChatApplicable(chatTypes, privateChat)));
+        // Declaration order is preserved between keys and commands
+        assertSame(byKey, index.findByText("/start", privateChat, bot, t -> t.isChatApplicable(chatTypes, privateChat)));
+        assertSame(groupOnly, index.findByText("/start", new Chat(3L, "group"), bot, t -> true));
+        assertNull(index.findByKey("Unknown", t -> true));
+        assertNull(index.findByCommand("/start@other_bot", new Chat(3L, "group"), bot, t -> true));
+    }
+}
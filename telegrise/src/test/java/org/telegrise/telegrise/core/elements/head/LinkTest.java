@@ -2,15 +2,31 @@ package org.telegrise.telegrise.core.elements.head;
 
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.telegrise.telegrise.core.ResourcePool;
+import org.telegrise.telegrise.core.elements.BotTranscription;
+import org.telegrise.telegrise.core.elements.Tree;
+import org.telegrise.telegrise.core.elements.actions.Send;
+import org.telegrise.telegrise.core.elements.base.NodeElement;
 import org.telegrise.telegrise.core.elements.keyboard.Keyboard;
 import org.telegrise.telegrise.core.parser.ApplicationNamespace;
 import org.telegrise.telegrise.core.parser.LocalNamespace;
 import org.telegrise.telegrise.core.parser.XMLElementsParser;
+import org.telegrise.telegrise.core.parser.XMLTranscriptionParser;
+import org.telegrise.telegrise.exceptions.TelegRiseInternalException;
+import org.telegrise.telegrise.exceptions.TelegRiseRuntimeException;
 import org.w3c.dom.Node;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.stream.IntStream;
 
+import static org.junit.jupiter.api.Assertions.*;
 import static org.telegrise.telegrise.core.parser.XMLElementsParserTest.assertElements;
 import static org.telegrise.telegrise.core.parser.XMLElementsParserTest.toNode;
 
@@ -40,4 +56,139 @@ class LinkTest {
         result.setByName(null);
         assertElements(parser.getTranscriptionMemory().get("first"), result, new ResourcePool());
     }
-}
\ No newline at end of file
+
+    @Test
+    void linkDirectory(@TempDir Path directory) throws Exception {
+        int files = 40;
+        for (int i = 0; i < files; i++)
+            writeKeyboards(directory.resolve("keyboards%02d.xml".formatted(i)), "k" + i);
+
+        XMLElementsParser parser = createParser(directory);
+        parser.parse(toNode("<link src=\"" + directory.toAbsolutePath() + "/*\"/>"));
+
+        List<String> expected = IntStream.range(0, files).mapToObj(i -> "k" + i).toList();
+        assertEquals(expected, List.copyOf(parser.getTranscriptionMemory().getStandardMemory().keySet()));
+        assertEquals(files, parser.getTranscriptionMemory().getLinkedFiles().size());
+        assertEquals("k7", ((Keyboard) parser.getTranscriptionMemory().get("k7")).getName());
+    }
+
+    @Test
+    void linkDirectoryCollision(@TempDir Path directory) throws Exception {
+        for (int i = 0; i < 20; i++)
+            writeKeyboards(directory.resolve("keyboards%02d.xml".formatted(i)), "k" + i);
+        writeKeyboards(directory.resolve("a.xml"), "k10");
+
+        // The duplicate is always reported in the file that comes later
+        for (int attempt = 0; attempt < 5; attempt++) {
+            XMLElementsParser parser = createParser(directory);
+            Exception exception = assertThrows(TelegRiseInternalException.class,
+                    () -> parser.parse(toNode("<link src=\"" + directory.toAbsolutePath() + "/*\"/>")));
+            assertInstanceOf(TelegRiseRuntimeException.class, exception.getCause());
+            assertEquals("Name 'k10' already exists", exception.getCause().getMessage());
+            assertTrue(exception.getCause().toString().contains("placeholder=\"keyboards10\""), exception.getCause().toString());
+        }
+    }
+
+    @Test
+    void reuseUnchangedFiles(@TempDir Path directory) throws Exception {
+        Files.writeString(directory.resolve("bot.xml"), """
+                <bot token="token">
+                    <head><link src="trees.xml"/><link src="texts.xml"/></head>
+                    <root name="Main"/>
+                </bot>""");
+        Files.writeString(directory.resolve("trees.xml"), """
+                <trees>
+                    <tree name="first" command="first">
+                        <send chat="-1"><text byName="greeting"/></send>
+                    </tree>
+                </trees>""");
+        Files.writeString(directory.resolve("texts.xml"), """
+                <texts><text name="greeting" global="true">Hello</text></texts>""");
+        File transcription = directory.resolve("bot.xml").toFile();
+        ApplicationNamespace namespace = createNamespace();
+
+        BotTranscription first = XMLTranscriptionParser.of(transcription, namespace).parse();
+        Files.writeString(directory.resolve("texts.xml"), """
+                <texts><text name="greeting" global="true">Changed</text></texts>""");
+        BotTranscription second = XMLTranscriptionParser.of(transcription, namespace).parse();
+
+        // Unchanged trees are restored as new instances, so loading them doesn't affect the running transcription
+        Tree firstTree = first.getRoot().getTrees().getFirst(), secondTree = second.getRoot().getTrees().getFirst();
+        assertNotSame(firstTree, secondTree);
+        assertEquals("Hello", ((Send) firstTree.getActions().getFirst()).getText().generateText(new ResourcePool()));
+        assertEquals("Changed", ((Send) secondTree.getActions().getFirst()).getText().generateText(new ResourcePool()));
+    }
+
+    @Test
+    void restoreFromCacheDirectory(@TempDir Path directory, @TempDir Path cache) throws Exception {
+        Files.writeString(directory.resolve("bot.xml"), """
+                <bot token="token">
+                    <head><link src="trees.xml"/><link src="keyboards.xml"/></head>
+                    <root name="Main"/>
+                </bot>""");
+        Files.writeString(directory.resolve("trees.xml"), """
+                <trees>
+                    <tree name="first" command="first">
+                        <send chat="-1"><text>Hello</text><keyboard byName="k0"/></send>
+                    </tree>
+                </trees>""");
+        writeKeyboards(directory.resolve("keyboards.xml"), "k0");
+        File transcription = directory.resolve("bot.xml").toFile();
+
+        System.setProperty("telegrise.parseCache", cache.toString());
+        try {
+            XMLTranscriptionParser.of(transcription, createNamespace()).parse();
+            List<Path> entries;
+            try (var files = Files.list(cache)) {
+                entries = files.toList();
+            }
+            assertEquals(2, entries.size());
+            for (Path entry : entries)
+                Files.setLastModifiedTime(entry, FileTime.fromMillis(0));
+
+            // Trees are restored from the cache, but their reference to the changed keyboard is resolved anew
+            Files.writeString(directory.resolve("keyboards.xml"), Files.readString(directory.resolve("keyboards.xml"))
+                    .replace("First", "Changed"));
+            BotTranscription result = XMLTranscriptionParser.of(transcription, createNamespace()).parse();
+
+            Tree tree = result.getRoot().getTrees().getFirst();
+            Keyboard keyboard = ((Send) tree.getActions().getFirst()).getKeyboard();
+            assertEquals("Changed", keyboard.getRows().getFirst().getButtons().getFirst().getText().generate(new ResourcePool()));
+            assertEquals(1, entries.stream().filter(this::isModified).count());
+        } finally {
+            System.clearProperty("telegrise.parseCache");
+        }
+    }
+
+    private boolean isModified(Path entry) {
+        try {
+            return Files.getLastModifiedTime(entry).toMillis() != 0;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private ApplicationNamespace createNamespace() {
+        return new ApplicationNamespace(this.getClass().getClassLoader(), "org.telegram.telegrise");
+    }
+
+    private XMLElementsParser createParser(Path directory) {
+        return createParser(directory, createNamespace());
+    }
+
+    private XMLElementsParser createParser(Path directory, ApplicationNamespace namespace) {
+        XMLElementsParser parser = new XMLElementsParser(new LocalNamespace(null, namespace), directory.toFile());
+        parser.load();
+        return parser;
+    }
+
+    private static void writeKeyboards(Path file, String name) throws IOException {
+        Files.writeString(file, """
+                <?xml version="1.0" encoding="UTF-8" ?>
+                <keyboards>
+                    <keyboard name="%s" type="inline" placeholder="%s">
+                        <row><button data="first">First</button></row>
+                    </keyboard>
+                </keyboards>""".formatted(name, file.getFileName().toString().replace(".xml", "")));
+    }
+}
@@ -1,18 +1,33 @@
 package org.telegrise.telegrise.core.expressions;
 
+import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestReporter;
+import org.junit.jupiter.api.io.TempDir;
 import org.telegram.telegrambots.meta.api.objects.CallbackQuery;
 import org.telegram.telegrambots.meta.api.objects.Update;
 import org.telegrise.telegrise.core.ResourcePool;
 import org.telegrise.telegrise.core.parser.ApplicationNamespace;
 import org.telegrise.telegrise.core.parser.LocalNamespace;
 import org.telegrise.telegrise.exceptions.TranscriptionParsingException;
+import org.w3c.dom.Node;
 
+import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.telegrise.telegrise.core.parser.XMLElementsParserTest.toNode;
 
 public class JavaExpressionCompilerTest {
@@ -36,6 +51,87 @@ public class JavaExpressionCompilerTest {
         assertThrows(TranscriptionParsingException.class, () -> parser.compile(finalExpression1, namespace, String.class, toNode("<tag expression=\"${" + finalExpression1 + "}\"/>")).generate(resourcePool));
     }
 
+    @Test
+    void compilePending(@TempDir Path directory) throws IOException {
+        JavaExpressionCompiler compiler = new JavaExpressionCompiler(directory.toString());
+        LocalNamespace namespace = new LocalNamespace(this.getClass(), new ApplicationNamespace(this.getClass().getClassLoader(),""));
+        ResourcePool resourcePool = new ResourcePool(new Update(), this, null, null, null);
+        Node node = toNode("<tag expression='${...}'/>");
+
+        // Enough expressions to be split into several batches
+        List<GeneratedValue<?>> values = IntStream.range(0, 64)
+                .<GeneratedValue<?>>mapToObj(i -> compiler.compile(i + " * 2", namespace, Integer.class, node)).toList();
+        compiler.compilePending();
+
+        for (int i = 0; i < values.size(); i++)
+            assertEquals(i * 2, values.get(i).generate(resourcePool));
+
+        // Classes from the temp directory are loaded without compilation
+        File[] files = Objects.requireNonNull(directory.toFile().listFiles());
+        long modified = Arrays.stream(files).mapToLong(File::lastModified).max().orElseThrow();
+        JavaExpressionCompiler cached = new JavaExpressionCompiler(directory.toString());
+        assertEquals(14, cached.compile("7 * 2", namespace, Integer.class, node).generate(resourcePool));
+        assertEquals(modified, Arrays.stream(Objects.requireNonNull(directory.toFile().listFiles())).mapToLong(File::lastModified).max().orElseThrow());
+        assertEquals(files.length, Objects.requireNonNull(directory.toFile().listFiles()).length);
+
+        // Classes are recompiled if the manifest doesn't confirm the text they were compiled from
+        Path manifest = directory.resolve("manifest.properties");
+        Properties properties = new Properties();
+        try (var reader = Files.newBufferedReader(manifest)) { properties.load(reader); }
+        String className = properties.stringPropertyNames().stream()
+                .filter(n -> properties.getProperty(n).startsWith("7 * 2\n")).findFirst().orElseThrow();
+        properties.setProperty(className, "8 * 2");
+        try (var writer = Files.newBufferedWriter(manifest)) { properties.store(writer, null); }
+
+        JavaExpressionCompiler verified = new JavaExpressionCompiler(directory.toString());
+        verified.compile("7 * 2", namespace, Integer.class, node);
+        verified.compilePending();
+        try (var reader = Files.newBufferedReader(manifest)) { properties.load(reader); }
+        assertTrue(properties.getProperty(className).startsWith("7 * 2\n"));
+
+        compiler.compile("undefined * 2", namespace, Integer.class, node);
+        assertThrows(TranscriptionParsingException.class, compiler::compilePending);
+    }
+
+    @Test
+    @Tag("benchmark")
+    void compilationTime(@TempDir Path directory, TestReporter reporter) {
+        JavaExpressionCompiler compiler = new JavaExpressionCompiler(directory.toString());
+        LocalNamespace namespace = new LocalNamespace(this.getClass(), new ApplicationNamespace(this.getClass().getClassLoader(),""));
+        Node node = toNode("<tag expression='${...}'/>");
+
+        int expressions = 500;
+        for (int i = 0; i < expressions; i++)
+            compiler.compile(i + " * 2", namespace, Integer.class, node);
+
+        long start = System.nanoTime();
+        compiler.compilePending();
+        reporter.publishEntry("compilation", "Compiled %d expressions in %d ms".formatted(expressions, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+    }
+
+    @Test
+    void inMemory(@TempDir Path directory) throws IOException {
+        Path archive = directory.resolve("expressions.zip");
+        JavaExpressionCompiler compiler = JavaExpressionCompiler.inMemory(archive);
+        LocalNamespace namespace = new LocalNamespace(this.getClass(), new ApplicationNamespace(this.getClass().getClassLoader(),""));
+        ResourcePool resourcePool = new ResourcePool(new Update(), this, null, null, null);
+        Node node = toNode("<tag expression='${...}'/>");
+
+        GeneratedValue<?> value = compiler.compile("new Object(){ public String toString(){ return \"nested\"; } }", namespace, String.class, node);
+        compiler.compilePending();
+        assertEquals("nested", value.generate(resourcePool));
+        try (var files = Files.list(directory)) {
+            assertEquals(List.of(archive), files.toList());
+        }
+
+        // Expressions from the archive are loaded without compilation
+        FileTime modified = Files.getLastModifiedTime(archive);
+        JavaExpressionCompiler warm = JavaExpressionCompiler.inMemory(archive);
+        value = warm.compile("new Object(){ public String toString(){ return \"nested\"; } }", namespace, String.class, node);
+        assertEquals("nested", value.generate(resourcePool));
+        assertEquals(modified, Files.getLastModifiedTime(archive));
+    }
+
     @SuppressWarnings("unused")
     public String getData(CallbackQuery query, String s){
         return query.getData() + s;
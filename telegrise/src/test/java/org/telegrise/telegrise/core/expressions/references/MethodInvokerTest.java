@@ -0,0 +1,134 @@
+package org.telegrise.telegrise.core.expressions.references;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestReporter;
+import org.telegrise.telegrise.SessionIdentifier;
+import org.telegrise.telegrise.SessionMemory;
+import org.telegrise.telegrise.annotations.HiddenParameter;
+import org.telegrise.telegrise.annotations.Reference;
+import org.telegrise.telegrise.core.ResourcePool;
+import org.telegrise.telegrise.core.SessionMemoryImpl;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MethodInvokerTest {
+    private final ResourcePool pool = new ResourcePool(null, this, null, new SessionMemoryImpl(0, SessionIdentifier.ofUserOnly(7L), Map.of()), null);
+
+    @Test
+    void invoke() throws Exception {
+        MethodInvoker hidden = MethodInvoker.of(MethodInvokerTest.class.getDeclaredMethod("hidden", String.class, SessionMemory.class, int.class));
+        assertEquals("a7:3", hidden.invoke(this, new Object[]{"a", 3}, pool));
+
+        MethodInvoker staticInvoker = MethodInvoker.of(MethodInvokerTest.class.getDeclaredMethod("sum", int[].class));
+        assertEquals(6, staticInvoker.invoke(null, new Object[]{new int[]{1, 2, 3}}, pool));
+
+        MethodInvoker voidInvoker = MethodInvoker.of(MethodInvokerTest.class.getDeclaredMethod("fail"));
+        var exception = assertThrows(InvocationTargetException.class, () -> voidInvoker.invoke(this, new Object[0], pool));
+        assertInstanceOf(UnsupportedOperationException.class, exception.getCause());
+
+        assertThrows(IllegalArgumentException.class, () -> hidden.invoke(this, new Object[]{"a"}, pool));
+    }
+
+    @Test
+    void adaptationFailures() throws Exception {
+        MethodInvoker hidden = MethodInvoker.of(MethodInvokerTest.class.getDeclaredMethod("hidden", String.class, SessionMemory.class, int.class));
+        assertThrows(IllegalArgumentException.class, () -> hidden.invoke(this, new Object[]{"a", "3"}, pool));
+        assertThrows(IllegalArgumentException.class, () -> hidden.invoke(this, new Object[]{"a", null}, pool));
+
+        // Same exceptions thrown by the method itself are still reported as its own
+        MethodInvoker cast = MethodInvoker.of(MethodInvokerTest.class.getDeclaredMethod("cast", Object.class));
+        var exception = assertThrows(InvocationTargetException.class, () -> cast.invoke(null, new Object[]{1}, pool));
+        assertInstanceOf(ClassCastException.class, exception.getCause());
+        assertEquals("text", cast.invoke(null, new Object[]{"text"}, pool));
+    }
+
+    @Test
+    void invokeReferences() throws Exception {
+        Method instanceMethod = MethodInvokerTest.class.getDeclaredMethod("hidden", String.class, SessionMemory.class, int.class);
+        instanceMethod.setAccessible(true);
+        MethodReference instanceReference = new MethodReference(instanceMethod, false);
+        MethodReference staticReference = new MethodReference(MethodInvokerTest.class.getDeclaredMethod("twice", int.class), true);
+
+        assertEquals(42, staticReference.invoke(pool, null, new Object[]{21}));
+        assertEquals("a7:3", instanceReference.invoke(pool, this, new Object[]{"a", 3}));
+    }
+
+    @Test
+    @Tag("benchmark")
+    void compareWithReflection(TestReporter reporter) throws Exception {
+        Method instanceMethod = MethodInvokerTest.class.getDeclaredMethod("hidden", String.class, SessionMemory.class, int.class);
+        Method staticMethod = MethodInvokerTest.class.getDeclaredMethod("twice", int.class);
+        instanceMethod.setAccessible(true);
+        MethodReference instanceReference = new MethodReference(instanceMethod, false);
+        MethodReference staticReference = new MethodReference(staticMethod, true);
+
+        Class<?>[] instanceMapping = mapping(instanceMethod), staticMapping = mapping(staticMethod);
+        int iterations = 1_000_000;
+        Object[] instanceArgs = {"a", 3}, staticArgs = {21};
+        for (int warmup = 0; warmup < 2; warmup++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                instanceMethod.invoke(this, reflectiveArgs(instanceArgs, pool, instanceMapping));
+                staticMethod.invoke(null, reflectiveArgs(staticArgs, pool, staticMapping));
+            }
+            long reflectionTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                instanceReference.invoke(pool, this, instanceArgs);
+                staticReference.invoke(pool, null, staticArgs);
+            }
+            long invokerTime = System.nanoTime() - start;
+
+            if (warmup == 1)
+                reporter.publishEntry("comparison", "Method.invoke: %d ms, MethodInvoker: %d ms (%d static and instance calls)".formatted(
+                        TimeUnit.NANOSECONDS.toMillis(reflectionTime), TimeUnit.NANOSECONDS.toMillis(invokerTime), iterations));
+        }
+    }
+
+    // The way arguments were arranged before method invokers
+    private static Object[] reflectiveArgs(Object[] args, ResourcePool pool, Class<?>[] mapping) {
+        Object[] result = new Object[mapping.length];
+        for (int i = 0, a = 0; i < result.length; i++)
+            result[i] = mapping[i] != null ? pool.getComponent(mapping[i]) : args[a++];
+
+        return result;
+    }
+
+    private static Class<?>[] mapping(Method method) {
+        return Arrays.stream(method.getParameters())
+                .map(p -> p.isAnnotationPresent(HiddenParameter.class) ? p.getType() : null)
+                .toArray(Class[]::new);
+    }
+
+    @Reference
+    private String hidden(String prefix, @HiddenParameter SessionMemory memory, int value) {
+        return prefix + memory.getSessionIdentifier().getUserId() + ":" + value;
+    }
+
+    public static int sum(int... values) {
+        int sum = 0;
+        for (int v : values) sum += v;
+        return sum;
+    }
+
+    @Reference
+    public static int twice(int value) {
+        return value * 2;
+    }
+
+    public static String cast(Object value) {
+        return (String) value;
+    }
+
+    public void fail() {
+        throw new UnsupportedOperationException();
+    }
+}
@@ -0,0 +1,90 @@
+package org.telegrise.telegrise.core.expressions.references;
+
+import org.junit.jupiter.api.Test;
+import org.telegrise.telegrise.SessionIdentifier;
+import org.telegrise.telegrise.SessionMemory;
+import org.telegrise.telegrise.annotations.Reference;
+import org.telegrise.telegrise.core.ResourcePool;
+import org.telegrise.telegrise.core.SessionMemoryImpl;
+import org.telegrise.telegrise.core.expressions.*;
+import org.telegrise.telegrise.core.parser.ApplicationNamespace;
+import org.telegrise.telegrise.core.parser.LocalNamespace;
+import org.w3c.dom.Node;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.telegrise.telegrise.core.parser.XMLElementsParserTest.toNode;
+
+class OperationReferenceTest {
+    private final MethodReferenceCompiler compiler = new MethodReferenceCompiler();
+    private final LocalNamespace namespace = new LocalNamespace(OperationReferenceTest.class,
+            new ApplicationNamespace(this.getClass().getClassLoader(), ""));
+    private final Node node = toNode("<tag/>");
+
+    private <T> GeneratedValue<T> compile(String expression, Class<T> type) throws ReferenceParsingException {
+        Parser parser = new Parser(new Lexer(new CharsStream(expression)));
+        return compiler.compile(parser.parse(), namespace, type, node).toGeneratedValue(type, node);
+    }
+
+    @Test
+    void sharedBySessions() throws Exception {
+        GeneratedValue<Long> sum = compile("(#userId, #userId -> #twice) -> #sum", Long.class);
+        GeneratedValue<Boolean> compare = compile("#userId >= #chatId", Boolean.class);
+        GeneratedValue<Boolean> direct = compile("#userId -> (#positive AND #positive)", Boolean.class);
+
+        int sessions = 64, iterations = 2_000;
+        List<Callable<Void>> tasks = new ArrayList<>();
+        AtomicInteger evaluated = new AtomicInteger();
+        for (int s = 1; s <= sessions; s++) {
+            long userId = s, chatId = s % 2 == 0 ? s : s + 1;
+            tasks.add(() -> {
+                var memory = new SessionMemoryImpl(0, SessionIdentifier.of(userId, chatId), Map.of());
+                for (int i = 0; i < iterations; i++) {
+                    ResourcePool pool = new ResourcePool(null, this, null, memory, null);
+                    assertEquals(userId * 3, sum.generate(pool));
+                    assertEquals(userId == chatId, compare.generate(pool));
+                    assertTrue(direct.generate(pool));
+                    evaluated.incrementAndGet();
+                }
+                return null;
+            });
+        }
+
+        try (ExecutorService executor = Executors.newFixedThreadPool(16)) {
+            for (Future<Void> future : executor.invokeAll(tasks))
+                future.get(30, TimeUnit.SECONDS);
+        }
+
+        assertEquals(sessions * iterations, evaluated.get());
+    }
+
+    @Reference
+    public long userId(SessionMemory memory) {
+        return memory.getSessionIdentifier().getUserId();
+    }
+
+    @Reference
+    public long chatId(SessionMemory memory) {
+        return memory.getSessionIdentifier().getChatId();
+    }
+
+    @Reference
+    public long twice(Long value) {
+        return value * 2;
+    }
+
+    @Reference
+    public long sum(Long first, Long second) {
+        return first + second;
+    }
+
+    @Reference
+    public boolean positive(Long value) {
+        return value > 0;
+    }
+}
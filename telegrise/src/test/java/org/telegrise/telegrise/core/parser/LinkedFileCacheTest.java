@@ -0,0 +1,79 @@
+package org.telegrise.telegrise.core.parser;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.telegrise.telegrise.core.elements.Tree;
+
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LinkedFileCacheTest {
+    private File prepare(Path directory) throws Exception {
+        Files.writeString(directory.resolve("bot.xml"), """
+                <bot token="token">
+                    <head><link src="trees.xml"/></head>
+                    <root name="Main"/>
+                </bot>""");
+        Files.writeString(directory.resolve("trees.xml"), """
+                <trees>
+                    <tree name="first" command="first">
+                        <send chat="-1"><text>Hello</text></send>
+                    </tree>
+                </trees>""");
+
+        return directory.resolve("trees.xml").toFile();
+    }
+
+    private ApplicationNamespace createNamespace() {
+        return new ApplicationNamespace(this.getClass().getClassLoader(), "org.telegram.telegrise");
+    }
+
+    @Test
+    void restoreNewInstances(@TempDir Path directory) throws Exception {
+        File trees = this.prepare(directory);
+        ApplicationNamespace namespace = this.createNamespace();
+        XMLTranscriptionParser.of(directory.resolve("bot.xml").toFile(), namespace).parse();
+
+        String digest = LinkedFileCache.digest(trees);
+        LinkedFileCache.Entry first = LinkedFileCache.get(trees, digest, namespace);
+        LinkedFileCache.Entry second = LinkedFileCache.get(trees, digest, namespace);
+
+        assertNotNull(first);
+        assertNotNull(second);
+        assertNotSame(first.result(), second.result());
+        assertNotSame(first.standardMemory().get("first"), second.standardMemory().get("first"));
+        assertInstanceOf(Tree.class, first.standardMemory().get("first"));
+    }
+
+    @Test
+    void invalidateOnChangedClasses(@TempDir Path directory) throws Exception {
+        File trees = this.prepare(directory);
+        ApplicationNamespace namespace = this.createNamespace();
+        XMLTranscriptionParser.of(directory.resolve("bot.xml").toFile(), namespace).parse();
+        String digest = LinkedFileCache.digest(trees);
+
+        // Elements might refer to methods of the imported classes, which are different now
+        namespace.addClass(LinkedFileCacheTest.class);
+        assertNull(LinkedFileCache.get(trees, digest, namespace));
+    }
+
+    @Test
+    void invalidateOnChangedApplicationClasses(@TempDir Path directory) throws Exception {
+        Path classes = directory.resolve("classes");
+        Path controller = Files.createDirectories(classes.resolve("com/example")).resolve("Controller.class");
+        URL[] classpath = {classes.toUri().toURL()};
+
+        Files.write(controller, new byte[]{1});
+        String first = LinkedFileCache.fingerprint(new ApplicationNamespace(new URLClassLoader(classpath, null), "com.example"));
+        // Application is rebuilt, expressions might refer to classes that are different now
+        Files.write(controller, new byte[]{2});
+        String second = LinkedFileCache.fingerprint(new ApplicationNamespace(new URLClassLoader(classpath, null), "com.example"));
+
+        assertNotEquals(first, second);
+    }
+}
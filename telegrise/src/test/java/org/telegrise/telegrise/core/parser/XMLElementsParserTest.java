@@ -1,7 +1,9 @@
 package org.telegrise.telegrise.core.parser;
 
 import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestReporter;
 import org.telegram.telegrambots.meta.api.objects.Update;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardButton;
@@ -218,6 +220,52 @@ public class XMLElementsParserTest {
     }
 
 
+    @Test
+    void parseLargeTranscription() throws Exception {
+        int branches = 200;
+        Node node = largeTree(branches);
+
+        // Element metadata is reused by parsers created later
+        for (int round = 0; round < 2; round++) {
+            XMLElementsParser parser = new XMLElementsParser(new LocalNamespace(), null);
+            parser.load();
+
+            Tree tree = (Tree) parser.parse(node);
+            assertEquals(branches, tree.getBranches().size());
+            assertArrayEquals(new String[]{"cb" + (branches - 1)}, tree.getBranches().getLast().getCallbackTriggers());
+            assertEquals(2, tree.getBranches().getLast().getActions().size());
+        }
+    }
+
+    @Test
+    @Tag("benchmark")
+    void parsingTime(TestReporter reporter) throws Exception {
+        int branches = 2000;  // 5 elements each, 10k elements in total
+        Node node = largeTree(branches);
+
+        for (int round = 0; round < 3; round++) {
+            XMLElementsParser parser = new XMLElementsParser(new LocalNamespace(), null);
+            parser.load();
+
+            long start = System.nanoTime();
+            parser.parse(node);
+            long time = System.nanoTime() - start;
+
+            if (round == 2)
+                reporter.publishEntry("parsing", "Parsed transcription of %d elements in %d ms".formatted(branches * 5, time / 1_000_000));
+        }
+    }
+
+    private static Node largeTree(int branches) {
+        StringBuilder xml = new StringBuilder("<tree name=\"large\">");
+        for (int i = 0; i < branches; i++)
+            xml.append("<branch when=\"true\" callback=\"cb").append(i).append("\">")
+                    .append("<send chat=\"-1\"><text>First ").append(i).append("</text></send>")
+                    .append("<send chat=\"-1\"><text parseMode=\"markdown\">Second ").append(i).append("</text></send>")
+                    .append("</branch>");
+        return toNode(xml.append("</tree>").toString());
+    }
+
     public static void assertElements(NodeElement expected, NodeElement actual, ResourcePool pool){
         if (expected == actual)
             return;
@@ -24,12 +24,14 @@ import org.telegrise.telegrise.core.elements.media.Photo;
 import org.telegrise.telegrise.core.elements.text.Text;
 import org.telegrise.telegrise.core.expressions.GeneratedValue;
 import org.w3c.dom.Document;
+import org.w3c.dom.Node;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import java.io.File;
 import java.util.List;
 
+import static org.junit.jupiter.api.Assertions.*;
 import static org.telegrise.telegrise.core.parser.XMLElementsParserTest.assertElements;
 
 @TreeController
@@ -37,13 +39,14 @@ import static org.telegrise.telegrise.core.parser.XMLElementsParserTest.assertEl
 public class XMLTranscriptionParserTest {
 
     private BotTranscription transcription;
+    private Document document;
     private Update update;
 
     @BeforeAll
     void before() throws Exception {
         DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
         DocumentBuilder db = dbf.newDocumentBuilder();
-        Document document = db.parse(new File("src/test/resources/parseTestSample.xml"));
+        this.document = db.parse(new File("src/test/resources/parseTestSample.xml"));
         document.getDocumentElement().normalize();
 
         var elementParser = new XMLElementsParser(
@@ -62,6 +65,15 @@ public class XMLTranscriptionParserTest {
         this.update.getMessage().setFrom(new User(-2L, "First Name", false));
     }
 
+    @Test
+    void detachedNodes() {
+        Node root = transcription.getRoot().getElementNode();
+        assertEquals("Main", root.getAttributes().getNamedItem("name").getNodeValue());
+        assertNotSame(document, root.getOwnerDocument());
+        assertEquals("", root.getOwnerDocument().getDocumentElement().getTextContent());
+        assertSame(root.getOwnerDocument(), transcription.getRoot().getTrees().getFirst().getElementNode().getOwnerDocument());
+    }
+
     @Test
     void parse() {
         Photo photo = new Photo();
@@ -0,0 +1,54 @@
+package org.telegrise.telegrise.core.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.reflections.Reflections;
+import org.telegrise.telegrise.annotations.Handler;
+import org.telegrise.telegrise.core.parser.Element;
+
+import javax.tools.ToolProvider;
+import java.lang.annotation.Annotation;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClassIndexTest {
+    @Test
+    void matchesClasspathScan() {
+        assertIndexed(Element.class, "org.telegrise.telegrise.core.elements");
+        assertIndexed(Handler.class, "org.telegrise.telegrise.bot");
+    }
+
+    @Test
+    void scanUnindexedRoots(@TempDir Path directory) throws Exception {
+        Path source = Files.createDirectories(directory.resolve("org/telegrise/telegrise/bot")).resolve("Unindexed.java");
+        Files.writeString(source, """
+                package org.telegrise.telegrise.bot;
+
+                @org.telegrise.telegrise.annotations.Handler
+                public class Unindexed {}
+                """);
+        // Compiled without the processor, so this root has no index
+        int status = ToolProvider.getSystemJavaCompiler().run(null, null, null,
+                "-proc:none", "-cp", System.getProperty("java.class.path"), "-d", directory.toString(), source.toString());
+        assertEquals(0, status);
+
+        try (var loader = new URLClassLoader(new URL[]{directory.toUri().toURL()}, this.getClass().getClassLoader())) {
+            var classes = ClassIndex.getTypesAnnotatedWith(Handler.class, "org.telegrise.telegrise.bot", loader);
+
+            assertTrue(classes.contains(loader.loadClass("org.telegrise.telegrise.bot.Unindexed")));
+            assertTrue(classes.containsAll(new Reflections("org.telegrise.telegrise.bot").getTypesAnnotatedWith(Handler.class)));
+        }
+    }
+
+    private void assertIndexed(Class<? extends Annotation> annotation, String packageName) {
+        assertNotNull(this.getClass().getClassLoader().getResource("META-INF/telegrise/index/" + annotation.getName()));
+
+        var indexed = ClassIndex.getTypesAnnotatedWith(annotation, packageName, this.getClass().getClassLoader());
+        assertFalse(indexed.isEmpty());
+        assertEquals(new Reflections(packageName).getTypesAnnotatedWith(annotation), indexed);
+    }
+}
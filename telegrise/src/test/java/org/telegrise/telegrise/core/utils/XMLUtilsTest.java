@@ -0,0 +1,83 @@
+package org.telegrise.telegrise.core.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.telegrise.telegrise.core.elements.base.NodeElement;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.SAXParseException;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class XMLUtilsTest {
+    private static final String TRANSCRIPTION = """
+            <?xml version="1.0" encoding="UTF-8" ?>
+            <?import java.util.List?>
+            <bot>
+                <!-- comment -->
+                <tree name="first">
+                    <send chat="-1"><text>Hello &amp; <![CDATA[<b>]]></text></send>
+                </tree>
+            </bot>""";
+
+    @Test
+    void loadDocument(@TempDir Path directory) throws Exception {
+        File file = Files.writeString(directory.resolve("bot.xml"), TRANSCRIPTION).toFile();
+
+        Document loaded = XMLUtils.loadDocument(file);
+        Document expected = DocumentBuilderFactory.newDefaultInstance().newDocumentBuilder().parse(file);
+        expected.getDocumentElement().normalize();
+
+        assertTrue(expected.getDocumentElement().isEqualNode(loaded.getDocumentElement()));
+        assertEquals(1, XMLUtils.getInstructions(loaded).length);
+        assertEquals("java.util.List", XMLUtils.getInstructions(loaded)[0].getNodeValue());
+        assertEquals(file.toURI().toString(), loaded.getDocumentURI());
+
+        Node send = loaded.getElementsByTagName("send").item(0);
+        SourceLocation location = SourceLocation.of(send);
+        assertNotNull(location);
+        assertEquals(file.getPath(), location.file());
+        assertEquals(6, location.line());
+        assertEquals(5, SourceLocation.of(loaded.getElementsByTagName("tree").item(0)).line());
+        assertEquals(3, SourceLocation.of(loaded.getDocumentElement()).line());
+        assertTrue(NodeElement.formatNode(send).startsWith(file.getPath() + ":6:"), NodeElement.formatNode(send));
+    }
+
+    @Test
+    void loadMalformedDocument(@TempDir Path directory) throws Exception {
+        File file = Files.writeString(directory.resolve("bot.xml"), "<bot>\n<tree></bot>").toFile();
+
+        SAXParseException exception = assertThrows(SAXParseException.class, () -> XMLUtils.loadDocument(file));
+        assertEquals(2, exception.getLineNumber());
+    }
+
+    @Test
+    void detach(@TempDir Path directory) throws Exception {
+        File file = Files.writeString(directory.resolve("bot.xml"), TRANSCRIPTION).toFile();
+        Document document = XMLUtils.loadDocument(file);
+        Node send = document.getElementsByTagName("send").item(0);
+
+        Node detached = XMLUtils.detach(send);
+        assertNotSame(send, detached);
+        assertNotSame(document, detached.getOwnerDocument());
+        assertSame(detached, XMLUtils.detach(send));
+        assertSame(detached, XMLUtils.detach(detached));
+
+        assertEquals("-1", ((Element) detached).getAttribute("chat"));
+        assertFalse(detached.hasChildNodes());
+        assertEquals("first", ((Element) detached.getParentNode()).getAttribute("name"));
+        assertEquals(SourceLocation.of(send), SourceLocation.of(detached));
+        assertEquals(NodeElement.formatNode(send).lines().findFirst(), NodeElement.formatNode(detached).lines().findFirst());
+
+        // Copies of other nodes of the document share the same detached document
+        Node text = XMLUtils.detach(document.getElementsByTagName("text").item(0));
+        assertSame(detached, text.getParentNode());
+        assertEquals("", detached.getOwnerDocument().getDocumentElement().getTextContent());
+    }
+}
@@ -0,0 +1,64 @@
+package org.telegrise.telegrise.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.telegrise.telegrise.SessionIdentifier;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MappedFileSessionStoreTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void saveAndReopen() throws IOException {
+        SessionIdentifier first = SessionIdentifier.of(1L, 2L), second = SessionIdentifier.ofUserOnly(3L);
+
+        try (var store = new MappedFileSessionStore(directory, 4096)) {
+            store.save(first, new byte[]{1, 2, 3});
+            store.save(second, new byte[]{4});
+            store.save(first, new byte[]{5, 6});
+            store.delete(second);
+
+            assertArrayEquals(new byte[]{5, 6}, store.load(first));
+            assertNull(store.load(second));
+        }
+
+        try (var store = new MappedFileSessionStore(directory, 4096)) {
+            assertEquals(1, store.size());
+            assertArrayEquals(new byte[]{5, 6}, store.load(first));
+            assertNull(store.load(second));
+        }
+    }
+
+    @Test
+    void largeStatesAndCompaction() throws IOException {
+        try (var store = new MappedFileSessionStore(directory, 1024)) {
+            byte[] large = new byte[5000];
+            large[4999] = 42;
+            store.save(SessionIdentifier.ofUserOnly(0L), large);
+
+            for (int i = 0; i < 1000; i++)
+                store.save(SessionIdentifier.ofUserOnly(i % 10 + 1L), new byte[]{(byte) i});
+
+            assertArrayEquals(large, store.load(SessionIdentifier.ofUserOnly(0L)));
+            assertArrayEquals(new byte[]{(byte) 999}, store.load(SessionIdentifier.ofUserOnly(10L)));
+            assertEquals(11, store.size());
+        }
+
+        try (Stream<Path> files = Files.list(directory)) {
+            // Overwritten states must have been compacted
+            assertTrue(files.count() < 10);
+        }
+
+        try (var store = new MappedFileSessionStore(directory, 1024)) {
+            assertEquals(11, store.size());
+            assertEquals(42, store.load(SessionIdentifier.ofUserOnly(0L))[4999]);
+        }
+    }
+}